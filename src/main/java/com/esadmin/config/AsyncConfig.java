@@ -15,6 +15,18 @@ public class AsyncConfig {
     @Value("${app.sync.thread-pool-size:10}")
     private int threadPoolSize;
 
+    @Value("${app.sync.pipeline.executor-threads:0}")
+    private int pipelineExecutorThreads;
+
+    @Value("${app.sync.partition.concurrency:4}")
+    private int partitionConcurrency;
+
+    @Value("${app.sync.scheduler.max-full-syncs:2}")
+    private int maxFullSyncs;
+
+    /**
+     * 表单同步作业的工作线程池，由 SyncScheduler 控制同时运行的作业数
+     */
     @Bean(name = "syncTaskExecutor")
     public Executor syncTaskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -22,8 +34,41 @@ public class AsyncConfig {
         executor.setMaxPoolSize(threadPoolSize * 2);
         executor.setQueueCapacity(500);
         executor.setThreadNamePrefix("SyncTask-");
-        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        // 线程池满时拒绝而不是在调用线程上执行，由 SyncScheduler 把作业记为失败，避免调度线程被整个表单同步占住
+        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 所有同步流水线共用的文档构建、发送线程池；流水线有待处理数据时才提交排空任务，不占用专属线程
+     */
+    @Bean(name = "syncPipelineExecutor")
+    public ThreadPoolTaskExecutor syncPipelineExecutor() {
+        int threads = pipelineExecutorThreads > 0
+                ? pipelineExecutorThreads
+                : Math.max(2, Runtime.getRuntime().availableProcessors());
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("SyncPipeline-");
+        executor.setDaemon(true);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 分区并行全量同步的分片读取线程池，所有表单共用；可同时容纳 max-full-syncs 个全量同步各自的分片并发
+     */
+    @Bean(name = "syncSliceExecutor")
+    public ThreadPoolTaskExecutor syncSliceExecutor() {
+        int threads = Math.max(1, partitionConcurrency) * Math.max(1, maxFullSyncs);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("SyncSlice-");
+        executor.setDaemon(true);
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+}
@@ -22,6 +22,9 @@ public class DatabaseInitializer implements CommandLineRunner {
         try {
             initializeReviewPolicyTable();
             initializeFormDepartmentPermissionTable();
+            initializeSyncRecordTable();
+            initializeReviewPolicyVersionTable();
+            initializePermissionVersionTable();
         } catch (Exception e) {
             log.error("数据库初始化失败", e);
         }
@@ -199,4 +202,107 @@ public class DatabaseInitializer implements CommandLineRunner {
             throw new RuntimeException("数据库表初始化失败", e);
         }
     }
-}
\ No newline at end of file
+    
+    private void initializeSyncRecordTable() {
+        try {
+            if (checkTableExists("SYNC_RECORD")) {
+                // 早期版本的表只有同步时间列，补齐检查点列
+                String[] columns = {
+                        "SYNC_STATUS VARCHAR(20)", "SYNC_MODE VARCHAR(20)",
+                        "LAST_MODIFY_DATE DATETIME", "LAST_RECORD_ID BIGINT",
+                        "RESUME_INDEX VARCHAR(200)", "RESUME_LAST_ID BIGINT",
+                        "PENDING_MODIFY_DATE DATETIME", "PENDING_RECORD_ID BIGINT"
+                };
+                for (String column : columns) {
+                    try {
+                        jdbcTemplate.execute("ALTER TABLE SYNC_RECORD ADD " + column);
+                        log.info("SYNC_RECORD 表新增列: {}", column);
+                    } catch (Exception e) {
+                        log.debug("SYNC_RECORD 表列已存在或新增失败: {}, {}", column, e.getMessage());
+                    }
+                }
+                log.info("SYNC_RECORD 表已存在，跳过初始化");
+                return;
+            }
+            
+            log.info("SYNC_RECORD 表不存在，开始创建...");
+            
+            String createTableSql = "CREATE TABLE SYNC_RECORD (" +
+                    "FORM_ID VARCHAR(300) NOT NULL, " +
+                    "LAST_SYNC_TIME DATETIME, " +
+                    "SYNC_STATUS VARCHAR(20), " +
+                    "SYNC_MODE VARCHAR(20), " +
+                    "LAST_MODIFY_DATE DATETIME, " +
+                    "LAST_RECORD_ID BIGINT, " +
+                    "RESUME_INDEX VARCHAR(200), " +
+                    "RESUME_LAST_ID BIGINT, " +
+                    "PENDING_MODIFY_DATE DATETIME, " +
+                    "PENDING_RECORD_ID BIGINT, " +
+                    "CREATE_TIME DATETIME, " +
+                    "UPDATE_TIME DATETIME, " +
+                    "PRIMARY KEY (FORM_ID)" +
+                    ")";
+            jdbcTemplate.execute(createTableSql);
+            
+            log.info("SYNC_RECORD 表创建成功");
+            
+        } catch (Exception e) {
+            // 检查点表不可用时同步仍可进行，只是不能续传
+            log.error("创建 SYNC_RECORD 表失败", e);
+        }
+    }
+    
+    private void initializeReviewPolicyVersionTable() {
+        try {
+            if (checkTableExists("REVIEW_POLICY_VERSION")) {
+                log.info("REVIEW_POLICY_VERSION 表已存在，跳过初始化");
+                return;
+            }
+            
+            log.info("REVIEW_POLICY_VERSION 表不存在，开始创建...");
+            
+            // 单行版本号：审核策略每次写入加一，各实例据此判断内存快照是否过期
+            jdbcTemplate.execute("CREATE TABLE REVIEW_POLICY_VERSION (" +
+                    "ID INT NOT NULL, " +
+                    "VERSION BIGINT NOT NULL, " +
+                    "UPDATE_TIME DATETIME, " +
+                    "PRIMARY KEY (ID)" +
+                    ")");
+            jdbcTemplate.update("INSERT INTO REVIEW_POLICY_VERSION (ID, VERSION, UPDATE_TIME) VALUES (1, 0, ?)",
+                    new java.sql.Timestamp(System.currentTimeMillis()));
+            
+            log.info("REVIEW_POLICY_VERSION 表创建成功");
+            
+        } catch (Exception e) {
+            // 版本表不可用时审核策略快照只在本实例写入时刷新
+            log.error("创建 REVIEW_POLICY_VERSION 表失败", e);
+        }
+    }
+    
+    private void initializePermissionVersionTable() {
+        try {
+            if (checkTableExists("PERMISSION_VERSION")) {
+                log.info("PERMISSION_VERSION 表已存在，跳过初始化");
+                return;
+            }
+            
+            log.info("PERMISSION_VERSION 表不存在，开始创建...");
+            
+            // 单行版本号：部门权限每次保存或删除加一，各实例据此判断内存中的权限矩阵是否过期
+            jdbcTemplate.execute("CREATE TABLE PERMISSION_VERSION (" +
+                    "ID INT NOT NULL, " +
+                    "VERSION BIGINT NOT NULL, " +
+                    "UPDATE_TIME DATETIME, " +
+                    "PRIMARY KEY (ID)" +
+                    ")");
+            jdbcTemplate.update("INSERT INTO PERMISSION_VERSION (ID, VERSION, UPDATE_TIME) VALUES (1, 0, ?)",
+                    new java.sql.Timestamp(System.currentTimeMillis()));
+            
+            log.info("PERMISSION_VERSION 表创建成功");
+            
+        } catch (Exception e) {
+            // 版本表不可用时权限矩阵只在本实例保存权限时重建
+            log.error("创建 PERMISSION_VERSION 表失败", e);
+        }
+    }
+}
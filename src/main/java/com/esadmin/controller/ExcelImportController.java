@@ -2,9 +2,11 @@ package com.esadmin.controller;
 
 import com.esadmin.dto.ExcelImportMetadata;
 import com.esadmin.dto.ExcelImportResult;
+import com.esadmin.service.DataSourceCatalog;
 import com.esadmin.service.ExcelImportService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -23,6 +25,9 @@ public class ExcelImportController {
 
     private final ExcelImportService excelImportService;
 
+    @Autowired
+    private DataSourceCatalog dataSourceCatalog;
+
     public ExcelImportController(ExcelImportService excelImportService) {
         this.excelImportService = excelImportService;
     }
@@ -71,6 +76,7 @@ public class ExcelImportController {
         Map<String, Object> response = new HashMap<>();
         try {
             ExcelImportResult result = excelImportService.importExcel(file, name, sheetName, cover);
+            dataSourceCatalog.invalidate();
 
             Map<String, Object> data = new HashMap<>();
             data.put("table_name", result.getTableName());
@@ -134,6 +140,7 @@ public class ExcelImportController {
         Map<String, Object> response = new HashMap<>();
         try {
             excelImportService.deleteImport(tableName);
+            dataSourceCatalog.invalidate();
             
             response.put("success", true);
             response.put("message", "删除成功");
@@ -220,4 +220,23 @@ public class FormDepartmentPermissionController {
             return ResponseEntity.ok(response);
         }
     }
+
+    /**
+     * 权限矩阵状态
+     */
+    @GetMapping("/matrix")
+    public ResponseEntity<Map<String, Object>> getPermissionMatrixStatus() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", permissionService.getPermissionMatrixStatus());
+            response.put("message", "获取成功");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "获取失败: " + e.getMessage());
+            return ResponseEntity.ok(response);
+        }
+    }
 }
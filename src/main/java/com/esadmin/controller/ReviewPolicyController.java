@@ -181,4 +181,27 @@ public class ReviewPolicyController {
             return ResponseEntity.status(500).body(response);
         }
     }
+    
+    /**
+     * 审核策略内存快照的版本号和策略数
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> getSnapshotStatus() {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            response.put("success", true);
+            response.put("data", reviewPolicyService.getSnapshotStatus());
+            response.put("message", "获取审核策略快照状态成功");
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("获取审核策略快照状态失败", e);
+            response.put("success", false);
+            response.put("message", "获取审核策略快照状态失败: " + e.getMessage());
+            
+            return ResponseEntity.status(500).body(response);
+        }
+    }
 }
\ No newline at end of file
@@ -3,12 +3,20 @@ package com.esadmin.controller;
 import com.esadmin.dto.FormDto;
 import com.esadmin.dto.SyncRequest;
 import com.esadmin.dto.SyncResult;
+import com.esadmin.dto.SyncSliceProgress;
 import com.esadmin.service.AsyncSyncService;
+import com.esadmin.service.BatchSizeTuner;
+import com.esadmin.service.BulkDispatcher;
+import com.esadmin.service.ChangePoller;
+import com.esadmin.service.DbReadPermits;
 import com.esadmin.service.FormService;
+import com.esadmin.service.ReconcileService;
+import com.esadmin.service.SyncScheduler;
 import com.esadmin.service.SyncService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -23,6 +31,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/sync")
@@ -36,6 +47,27 @@ public class SyncController {
     
     @Autowired
     private AsyncSyncService asyncSyncService;
+
+    @Autowired
+    private BulkDispatcher bulkDispatcher;
+
+    @Autowired
+    private ReconcileService reconcileService;
+
+    @Autowired
+    private SyncScheduler syncScheduler;
+
+    @Autowired
+    private ChangePoller changePoller;
+
+    @Autowired
+    private BatchSizeTuner batchSizeTuner;
+
+    @Autowired
+    private DbReadPermits dbReadPermits;
+
+    @Value("${app.sync.scheduler.manual-wait-seconds:600}")
+    private long manualWaitSeconds;
     
     public SyncController(SyncService syncService, FormService formService) {
         this.syncService = syncService;
@@ -83,11 +115,27 @@ public class SyncController {
         try {
             log.info("同步表单: formId={}, fullSync={}", formId, request.getFullSync());
             
-            SyncResult result = syncService.syncFormData(formId, request.getFullSync());
+            // 经调度器排在批量同步之前执行；该表单已在同步时挂到已有作业上
+            SyncScheduler.Ticket ticket = syncScheduler.submitManual(formId, request.getFullSync());
+            SyncResult result;
+            try {
+                result = ticket.getFuture().get(manualWaitSeconds, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // 作业仍在调度器中运行，返回任务ID供前端查询进度
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("message", "同步仍在进行中，请稍后查看同步状态");
+                response.put("task_id", ticket.getTaskId());
+                response.put("attached", ticket.isAttached());
+                response.put("running", true);
+                return ResponseEntity.accepted().body(response);
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", result.isSuccess());
             response.put("message", result.getMessage());
+            response.put("task_id", ticket.getTaskId());
+            response.put("attached", ticket.isAttached());
             if (result.isSuccess()) {
                 response.put("count", result.getCount());
                 response.put("elapsed_time", result.getElapsedTime());
@@ -107,6 +155,33 @@ public class SyncController {
         }
     }
 
+    @PostMapping("/reconcile/{formId}")
+    public ResponseEntity<Map<String, Object>> reconcileForm(@PathVariable String formId) {
+        try {
+            log.info("对账表单: formId={}", formId);
+            
+            SyncResult result = reconcileService.reconcileForm(formId);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", result.isSuccess());
+            response.put("message", result.getMessage());
+            response.put("deleted", result.getCount());
+            response.put("checked", result.getTotal());
+            response.put("elapsed_time", result.getElapsedTime());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("对账表单失败", e);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
     @PostMapping("/sync/all")
     public ResponseEntity<Map<String, Object>> syncAllForms(@Valid @RequestBody SyncRequest request) {
         try {
@@ -115,8 +190,11 @@ public class SyncController {
             List<FormDto> forms = formService.getAllForms();
             List<SyncResult> results = new ArrayList<>();
             
-            for (FormDto form : forms) {
-                SyncResult result = syncService.syncFormData(form.getId(), request.getFullSync());
+            boolean fullSync = Boolean.TRUE.equals(request.getFullSync());
+            List<CompletableFuture<SyncResult>> futures = syncScheduler.submitBatch(forms, formId -> fullSync);
+            for (int i = 0; i < forms.size(); i++) {
+                FormDto form = forms.get(i);
+                SyncResult result = futures.get(i).join();
                 result.setFormName(form.getName());
                 result.setFormId(form.getId());
                 result.setType("form_sync");
@@ -204,6 +282,174 @@ public class SyncController {
         }
     }
 
+    @GetMapping("/partitions/{formId}")
+    public ResponseEntity<Map<String, Object>> getPartitionProgress(@PathVariable String formId) {
+        try {
+            List<SyncSliceProgress> slices = syncService.getPartitionProgress(formId);
+
+            long readCount = 0;
+            long syncedCount = 0;
+            for (SyncSliceProgress slice : slices) {
+                readCount += slice.getReadCount();
+                syncedCount += slice.getSyncedCount();
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", slices);
+            response.put("read_count", readCount);
+            response.put("synced_count", syncedCount);
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("获取分区同步进度失败: formId={}", formId, e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/scheduler")
+    public ResponseEntity<Map<String, Object>> getSchedulerStatus() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            Map<String, Object> status = new HashMap<>(syncScheduler.getStatus());
+            status.put("db_read_permits", dbReadPermits.getStatus());
+            response.put("data", status);
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("获取同步调度状态失败", e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/poller")
+    public ResponseEntity<Map<String, Object>> getPollerStatus() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", changePoller.getStatus());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("获取变更轮询状态失败", e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/jobs/{taskId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String taskId) {
+        try {
+            Map<String, Object> job = syncScheduler.getJob(taskId);
+
+            Map<String, Object> response = new HashMap<>();
+            if (job != null) {
+                response.put("success", true);
+                response.put("data", job);
+            } else {
+                response.put("success", false);
+                response.put("message", "同步作业不存在或已过期");
+            }
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("获取同步作业状态失败: taskId={}", taskId, e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/batch-tuning")
+    public ResponseEntity<Map<String, Object>> getBatchTuning() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", batchSizeTuner.getStatus());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("获取批次大小调整状态失败", e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @PostMapping("/calibrate/{formId}")
+    public ResponseEntity<Map<String, Object>> calibrate(@PathVariable String formId) {
+        try {
+            String tableName = formService.getFormTableName(formId);
+            Map<String, Object> response = new HashMap<>();
+            if (tableName == null || !formService.checkTableExists(tableName)) {
+                response.put("success", false);
+                response.put("message", "无法获取表单数据表");
+                return ResponseEntity.ok(response);
+            }
+
+            log.info("校准批次大小: formId={}, 表={}", formId, tableName);
+            response.put("success", true);
+            response.put("data", batchSizeTuner.calibrate(tableName));
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("校准批次大小失败: formId={}", formId, e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/bulk-metrics")
+    public ResponseEntity<Map<String, Object>> getBulkMetrics() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", bulkDispatcher.getMetrics());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("获取bulk写入指标失败", e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
     @GetMapping(value = "/async/progress/{taskId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamAsyncSyncProgress(@PathVariable String taskId) {
         try {
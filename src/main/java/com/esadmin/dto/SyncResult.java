@@ -5,6 +5,7 @@ public class SyncResult {
     private String message;
     private long count;
     private long total;
+    private long failed;
     private double elapsedTime;
     private double rate;
     private String formName;
@@ -25,6 +26,9 @@ public class SyncResult {
     public long getTotal() { return total; }
     public void setTotal(long total) { this.total = total; }
     
+    public long getFailed() { return failed; }
+    public void setFailed(long failed) { this.failed = failed; }
+    
     public double getElapsedTime() { return elapsedTime; }
     public void setElapsedTime(double elapsedTime) { this.elapsedTime = elapsedTime; }
     
@@ -0,0 +1,101 @@
+package com.esadmin.dto;
+
+/**
+ * 分区并行全量同步中单个ID分片的进度。
+ */
+public class SyncSliceProgress {
+
+    private final int sliceIndex;
+    private final long lowerBoundExclusive;
+    private final long upperBoundInclusive;
+    private volatile String status = "pending";
+    private volatile long cursorId;
+    private volatile long readCount;
+    private volatile long syncedCount;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile String message;
+
+    public SyncSliceProgress(int sliceIndex, long lowerBoundExclusive, long upperBoundInclusive) {
+        this.sliceIndex = sliceIndex;
+        this.lowerBoundExclusive = lowerBoundExclusive;
+        this.upperBoundInclusive = upperBoundInclusive;
+        this.cursorId = lowerBoundExclusive;
+    }
+
+    public int getSliceIndex() {
+        return sliceIndex;
+    }
+
+    public long getLowerBoundExclusive() {
+        return lowerBoundExclusive;
+    }
+
+    public long getUpperBoundInclusive() {
+        return upperBoundInclusive;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(long cursorId) {
+        this.cursorId = cursorId;
+    }
+
+    public long getReadCount() {
+        return readCount;
+    }
+
+    public void setReadCount(long readCount) {
+        this.readCount = readCount;
+    }
+
+    public long getSyncedCount() {
+        return syncedCount;
+    }
+
+    public void setSyncedCount(long syncedCount) {
+        this.syncedCount = syncedCount;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public double getElapsedTime() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long end = endTime > 0 ? endTime : System.currentTimeMillis();
+        return (end - startTime) / 1000.0;
+    }
+}
@@ -3,6 +3,9 @@ package com.esadmin.entity;
 import javax.persistence.*;
 import java.time.LocalDateTime;
 
+/**
+ * 同步检查点：主表以表单ID为键，附表以 "表单ID/附表名" 为键
+ */
 @Entity
 @Table(name = "SYNC_RECORD")
 public class SyncRecord {
@@ -14,6 +17,33 @@ public class SyncRecord {
     @Column(name = "LAST_SYNC_TIME")
     private LocalDateTime lastSyncTime;
 
+    @Column(name = "SYNC_STATUS", length = 20)
+    private String syncStatus; // "running" / "completed" / "failed"
+
+    @Column(name = "SYNC_MODE", length = 20)
+    private String syncMode; // "full" / "incremental"
+
+    // 增量同步游标：已确认写入的最后一条记录的 (modify_date, ID)
+    @Column(name = "LAST_MODIFY_DATE")
+    private LocalDateTime lastModifyDate;
+
+    @Column(name = "LAST_RECORD_ID")
+    private Long lastRecordId;
+
+    // 按ID顺序的全量遍历进行中时的写入索引和已确认的最后ID，中途退出后据此续传
+    @Column(name = "RESUME_INDEX", length = 200)
+    private String resumeIndex;
+
+    @Column(name = "RESUME_LAST_ID")
+    private Long resumeLastId;
+
+    // 全量同步开始时表中最新的 (modify_date, ID)，完成后成为增量同步游标
+    @Column(name = "PENDING_MODIFY_DATE")
+    private LocalDateTime pendingModifyDate;
+
+    @Column(name = "PENDING_RECORD_ID")
+    private Long pendingRecordId;
+
     @Column(name = "CREATE_TIME")
     private LocalDateTime createTime;
 
@@ -27,9 +57,33 @@ public class SyncRecord {
     public LocalDateTime getLastSyncTime() { return lastSyncTime; }
     public void setLastSyncTime(LocalDateTime lastSyncTime) { this.lastSyncTime = lastSyncTime; }
 
+    public String getSyncStatus() { return syncStatus; }
+    public void setSyncStatus(String syncStatus) { this.syncStatus = syncStatus; }
+
+    public String getSyncMode() { return syncMode; }
+    public void setSyncMode(String syncMode) { this.syncMode = syncMode; }
+
+    public LocalDateTime getLastModifyDate() { return lastModifyDate; }
+    public void setLastModifyDate(LocalDateTime lastModifyDate) { this.lastModifyDate = lastModifyDate; }
+
+    public Long getLastRecordId() { return lastRecordId; }
+    public void setLastRecordId(Long lastRecordId) { this.lastRecordId = lastRecordId; }
+
+    public String getResumeIndex() { return resumeIndex; }
+    public void setResumeIndex(String resumeIndex) { this.resumeIndex = resumeIndex; }
+
+    public Long getResumeLastId() { return resumeLastId; }
+    public void setResumeLastId(Long resumeLastId) { this.resumeLastId = resumeLastId; }
+
+    public LocalDateTime getPendingModifyDate() { return pendingModifyDate; }
+    public void setPendingModifyDate(LocalDateTime pendingModifyDate) { this.pendingModifyDate = pendingModifyDate; }
+
+    public Long getPendingRecordId() { return pendingRecordId; }
+    public void setPendingRecordId(Long pendingRecordId) { this.pendingRecordId = pendingRecordId; }
+
     public LocalDateTime getCreateTime() { return createTime; }
     public void setCreateTime(LocalDateTime createTime) { this.createTime = createTime; }
 
     public LocalDateTime getUpdateTime() { return updateTime; }
     public void setUpdateTime(LocalDateTime updateTime) { this.updateTime = updateTime; }
-}
\ No newline at end of file
+}
@@ -84,15 +84,8 @@ public interface FormDepartmentPermissionRepository extends JpaRepository<FormDe
     List<FormDepartmentPermission> findAllActivePermissionsOptimized();
 
     /**
-     * 查询指定部门可访问的数据源Key集合
+     * 所有有效权限的 (数据源类型, 数据源ID, 部门ID)，用于编译权限矩阵
      */
-    @Query("SELECT CONCAT(p.sourceType, ':', p.sourceId) FROM FormDepartmentPermission p " +
-           "WHERE p.isActive = 1 AND p.departmentId = :departmentId")
-    List<String> findActiveSourceKeysByDepartment(@Param("departmentId") String departmentId);
-
-    /**
-     * 查询所有已配置权限的数据源Key集合
-     */
-    @Query("SELECT DISTINCT CONCAT(p.sourceType, ':', p.sourceId) FROM FormDepartmentPermission p WHERE p.isActive = 1")
-    List<String> findAllRestrictedSourceKeys();
+    @Query("SELECT p.sourceType, p.sourceId, p.departmentId FROM FormDepartmentPermission p WHERE p.isActive = 1")
+    List<Object[]> findActiveSourceDepartmentPairs();
 }
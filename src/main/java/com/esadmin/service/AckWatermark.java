@@ -0,0 +1,64 @@
+package com.esadmin.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.TreeSet;
+
+/**
+ * 确认水位：序号不超过水位的分发均已确认写入（含进入死信文件的项）。
+ * bulk 并发完成的顺序不定，先完成的序号暂存，补齐前面的空缺后再推进；整体失败的分发永远不会补齐。
+ * <p>
+ * {@link #complete(long)} 可在任意线程调用；检查点的登记和执行只在读取线程上进行。
+ */
+final class AckWatermark {
+
+    private final TreeSet<Long> completedAhead = new TreeSet<>();
+    private long acknowledged = 0L;
+    private final Deque<PendingCheckpoint> pendingCheckpoints = new ArrayDeque<>();
+
+    /**
+     * 序号为 seq（从 1 开始）的分发已全部确认
+     */
+    synchronized void complete(long seq) {
+        completedAhead.add(seq);
+        while (completedAhead.remove(acknowledged + 1)) {
+            acknowledged++;
+        }
+    }
+
+    synchronized long acknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * 登记检查点：水位到达 requiredSeq 后执行 action；同时执行已满足条件的检查点
+     */
+    void checkpoint(long requiredSeq, Runnable action) {
+        pendingCheckpoints.addLast(new PendingCheckpoint(requiredSeq, action));
+        commitCheckpoints();
+    }
+
+    /**
+     * 按登记顺序取出已满足条件的检查点，多个已满足时只执行最新的一个
+     */
+    void commitCheckpoints() {
+        long current = acknowledged();
+        Runnable latest = null;
+        while (!pendingCheckpoints.isEmpty() && pendingCheckpoints.peekFirst().requiredSeq <= current) {
+            latest = pendingCheckpoints.pollFirst().action;
+        }
+        if (latest != null) {
+            latest.run();
+        }
+    }
+
+    private static final class PendingCheckpoint {
+        private final long requiredSeq;
+        private final Runnable action;
+
+        private PendingCheckpoint(long requiredSeq, Runnable action) {
+            this.requiredSeq = requiredSeq;
+            this.action = action;
+        }
+    }
+}
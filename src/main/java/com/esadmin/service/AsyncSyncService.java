@@ -20,7 +20,7 @@ public class AsyncSyncService {
     private static final Logger log = LoggerFactory.getLogger(AsyncSyncService.class);
 
     @Autowired
-    private SyncService syncService;
+    private SyncScheduler syncScheduler;
 
     @Autowired
     private FormService formService;
@@ -71,7 +71,7 @@ public class AsyncSyncService {
     }
 
     /**
-     * 启动异步同步所有表单
+     * 启动异步同步所有表单：交给同步调度器并发执行，每个表单完成时推送进度
      */
     public String startAsyncSyncAll(boolean fullSync) {
         String taskId = "sync_" + System.currentTimeMillis();
@@ -88,9 +88,7 @@ public class AsyncSyncService {
             syncProgress.put(taskId, progress);
 
             // 异步执行同步任务
-            CompletableFuture.runAsync(() -> {
-                performAsyncSync(taskId, forms, fullSync);
-            });
+            performAsyncSync(taskId, forms, fullSync);
 
             log.info("异步同步任务已启动: taskId={}, 表单数量={}", taskId, forms.size());
             return taskId;
@@ -141,7 +139,7 @@ public class AsyncSyncService {
     }
 
     /**
-     * 执行异步同步
+     * 执行异步同步：表单由调度器并发同步，完成顺序不固定，进度按已完成的表单数计算
      */
     private void performAsyncSync(String taskId, List<FormDto> forms, boolean fullSync) {
         SyncProgress progress = syncProgress.get(taskId);
@@ -150,59 +148,48 @@ public class AsyncSyncService {
             return;
         }
 
-        try {
-            for (int i = 0; i < forms.size(); i++) {
-                FormDto form = forms.get(i);
-                
-                // 更新进度
-                progress.setCurrentIndex(i + 1);
-                progress.setCurrentFormName(form.getName());
-                progress.setCurrentFormId(form.getId());
-                progress.setMessage("正在同步: " + form.getName());
-                
-                sendProgressUpdate(taskId, progress);
-
-                try {
-                    // 执行同步
-                    SyncResult result = syncService.syncFormData(form.getId(), fullSync);
-                    
-                    if (result.isSuccess()) {
-                        progress.setSuccessCount(progress.getSuccessCount() + 1);
-                        log.info("表单同步成功: formId={}, formName={}, 同步条数={}", 
-                                form.getId(), form.getName(), result.getCount());
-                    } else {
-                        progress.setFailureCount(progress.getFailureCount() + 1);
-                        log.error("表单同步失败: formId={}, formName={}, 错误={}", 
-                                form.getId(), form.getName(), result.getMessage());
-                    }
-
-                } catch (Exception e) {
-                    progress.setFailureCount(progress.getFailureCount() + 1);
-                    log.error("表单同步异常: formId={}, formName={}", form.getId(), form.getName(), e);
-                }
+        List<CompletableFuture<SyncResult>> futures = syncScheduler.submitBatch(forms, formId -> fullSync);
+        for (int i = 0; i < forms.size(); i++) {
+            FormDto form = forms.get(i);
+            futures.get(i).whenComplete((result, error) -> onFormCompleted(taskId, progress, form, result, error));
+        }
 
-                // 发送进度更新
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            synchronized (progress) {
+                // 完成
+                progress.setStatus("completed");
+                progress.setMessage(String.format("同步完成: 成功 %d 个，失败 %d 个，耗时 %.1f 秒", 
+                        progress.getSuccessCount(), progress.getFailureCount(), progress.getElapsedTime()));
                 sendProgressUpdate(taskId, progress);
             }
 
-            // 完成
-            progress.setStatus("completed");
-            progress.setMessage(String.format("同步完成: 成功 %d 个，失败 %d 个，耗时 %.1f 秒", 
-                    progress.getSuccessCount(), progress.getFailureCount(), progress.getElapsedTime()));
-            
-            sendProgressUpdate(taskId, progress);
-
             log.info("异步同步任务完成: taskId={}, 成功={}, 失败={}, 耗时={}秒", 
                     taskId, progress.getSuccessCount(), progress.getFailureCount(), progress.getElapsedTime());
-
-        } catch (Exception e) {
-            log.error("异步同步任务失败: taskId={}", taskId, e);
-            progress.setStatus("failed");
-            progress.setMessage("同步失败: " + e.getMessage());
-            sendProgressUpdate(taskId, progress);
-        } finally {
             // 清理资源
             cleanupTask(taskId);
+        });
+    }
+
+    private void onFormCompleted(String taskId, SyncProgress progress, FormDto form, SyncResult result, Throwable error) {
+        synchronized (progress) {
+            progress.setCurrentIndex(progress.getCurrentIndex() + 1);
+            progress.setCurrentFormName(form.getName());
+            progress.setCurrentFormId(form.getId());
+
+            if (error == null && result.isSuccess()) {
+                progress.setSuccessCount(progress.getSuccessCount() + 1);
+                progress.setMessage("已完成: " + form.getName());
+                log.info("表单同步成功: formId={}, formName={}, 同步条数={}", 
+                        form.getId(), form.getName(), result.getCount());
+            } else {
+                progress.setFailureCount(progress.getFailureCount() + 1);
+                progress.setMessage("同步失败: " + form.getName());
+                log.error("表单同步失败: formId={}, formName={}, 错误={}", 
+                        form.getId(), form.getName(), error != null ? error.getMessage() : result.getMessage());
+            }
+
+            // 发送进度更新
+            sendProgressUpdate(taskId, progress);
         }
     }
 
@@ -0,0 +1,329 @@
+package com.esadmin.service;
+
+import com.esadmin.util.CompactRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 自适应批次大小：按表分别调整数据库读取批次（LIMIT）和 bulk 请求的动作数，AIMD 方式——
+ * 指标良好时每批加一个步长，超过目标耗时两倍或 bulk 被 429/503 拒绝时减半。
+ * <p>
+ * 数据库批次依据每批读取耗时（不含向写入缓冲区投递时的阻塞），bulk 动作数依据往返耗时和拒绝率；
+ * 两者的上限还受实测文档字节数约束：一批读取不超过 max-batch-bytes，一个 bulk 不超过 bulk.max-bytes。
+ * 调整结果按表保存在内存中，同一表的下次同步从上次的值开始。
+ */
+@Service
+public class BatchSizeTuner {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchSizeTuner.class);
+
+    /** 校准时最多读取的批次数 */
+    private static final int CALIBRATION_PROBES = 6;
+
+    private final FormService formService;
+    private final DbReadPermits readPermits;
+    private final boolean enabled;
+    private final int initialDbBatchSize;
+    private final int initialBulkActions;
+    private final int dbBatchMin;
+    private final int dbBatchMax;
+    private final int bulkActionsMin;
+    private final int bulkActionsMax;
+    private final long targetFetchMillis;
+    private final long targetBulkMillis;
+    private final long maxBatchBytes;
+    private final long maxBulkBytes;
+
+    private final Map<String, Tuning> tunings = new ConcurrentHashMap<>();
+
+    public BatchSizeTuner(FormService formService,
+                          BulkDispatcher bulkDispatcher,
+                          DbReadPermits readPermits,
+                          @Value("${app.sync.adaptive.enabled:true}") boolean enabled,
+                          @Value("${app.sync.db-batch-size:1000}") int dbBatchSize,
+                          @Value("${app.sync.batch-size:2000}") int batchSize,
+                          @Value("${app.sync.es-bulk-max-actions:4000}") int esBulkMaxActions,
+                          @Value("${app.sync.adaptive.db-batch-min:200}") int dbBatchMin,
+                          @Value("${app.sync.adaptive.db-batch-max:10000}") int dbBatchMax,
+                          @Value("${app.sync.adaptive.bulk-actions-min:200}") int bulkActionsMin,
+                          @Value("${app.sync.adaptive.bulk-actions-max:10000}") int bulkActionsMax,
+                          @Value("${app.sync.adaptive.target-fetch-millis:2000}") long targetFetchMillis,
+                          @Value("${app.sync.adaptive.target-bulk-millis:3000}") long targetBulkMillis,
+                          @Value("${app.sync.adaptive.max-batch-bytes:67108864}") long maxBatchBytes) {
+        this.formService = formService;
+        this.readPermits = readPermits;
+        this.enabled = enabled;
+        this.dbBatchMin = Math.max(1, dbBatchMin);
+        this.dbBatchMax = Math.max(this.dbBatchMin, dbBatchMax);
+        this.bulkActionsMin = Math.max(1, bulkActionsMin);
+        this.bulkActionsMax = Math.max(this.bulkActionsMin, bulkActionsMax);
+        this.initialDbBatchSize = Math.max(1, dbBatchSize);
+        this.initialBulkActions = Math.max(1, Math.min(batchSize, esBulkMaxActions));
+        this.targetFetchMillis = Math.max(1, targetFetchMillis);
+        this.targetBulkMillis = Math.max(1, targetBulkMillis);
+        this.maxBatchBytes = Math.max(1024L, maxBatchBytes);
+        this.maxBulkBytes = bulkDispatcher.getMaxBulkBytes();
+    }
+
+    /**
+     * 表的批次大小；未启用自适应时固定为配置值
+     */
+    public Tuning forTable(String tableName) {
+        if (!enabled) {
+            return new Tuning(tableName, initialDbBatchSize, initialBulkActions, false);
+        }
+        return tunings.computeIfAbsent(tableName.toUpperCase(),
+                key -> new Tuning(tableName, clamp(initialDbBatchSize, dbBatchMin, dbBatchMax),
+                        clamp(initialBulkActions, bulkActionsMin, bulkActionsMax), true));
+    }
+
+    /**
+     * 各表当前的批次大小和最近的测量值
+     */
+    public Map<String, Object> getStatus() {
+        List<Map<String, Object>> tables = new ArrayList<>();
+        for (Tuning tuning : tunings.values()) {
+            tables.add(tuning.describe());
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("db_batch_bounds", List.of(dbBatchMin, dbBatchMax));
+        status.put("bulk_actions_bounds", List.of(bulkActionsMin, bulkActionsMax));
+        status.put("target_fetch_millis", targetFetchMillis);
+        status.put("target_bulk_millis", targetBulkMillis);
+        status.put("tables", tables);
+        return status;
+    }
+
+    /**
+     * 校准：从表头按ID顺序连续读取几批，批次从下限开始逐次加倍，直到读取耗时超过目标、
+     * 字节数超过上限或达到批次上限；按实测的单行字节数确定 bulk 动作数。
+     * 只读数据库、不写ES，bulk 往返耗时和拒绝率仍在之后的同步中继续调整
+     */
+    public Map<String, Object> calibrate(String tableName) {
+        Tuning tuning = forTable(tableName);
+        List<Map<String, Object>> probes = new ArrayList<>();
+        int size = dbBatchMin;
+        int chosen = dbBatchMin;
+        long totalRows = 0;
+        long totalBytes = 0;
+        Long[] cursor = new Long[1];
+
+        for (int i = 0; i < CALIBRATION_PROBES; i++) {
+            long[] bytes = new long[1];
+            int rows;
+            long fetchMillis;
+            // 与同步读取共用连接预算，读取耗时不含等待许可的时间
+            try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                long startNanos = System.nanoTime();
+                rows = formService.streamTableDataBatchByMinId(tableName, size, cursor[0], row -> {
+                    bytes[0] += estimateBytes(row);
+                    Object id = row.get("ID");
+                    if (id instanceof Number) {
+                        cursor[0] = ((Number) id).longValue();
+                    }
+                });
+                fetchMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            }
+
+            Map<String, Object> probe = new LinkedHashMap<>();
+            probe.put("batch_size", size);
+            probe.put("rows", rows);
+            probe.put("fetch_millis", fetchMillis);
+            probe.put("bytes", bytes[0]);
+            probes.add(probe);
+
+            if (rows == 0) {
+                break;
+            }
+            totalRows += rows;
+            totalBytes += bytes[0];
+            if (fetchMillis > targetFetchMillis || bytes[0] > maxBatchBytes) {
+                // 超出目标时取上一档（已是下限时保持下限）
+                break;
+            }
+            chosen = size;
+            if (rows < size || size >= dbBatchMax) {
+                // 表行数不足一批时更大的批次测不出差别
+                break;
+            }
+            size = (int) Math.min(dbBatchMax, size * 2L);
+        }
+
+        long documentBytes = totalRows > 0 ? Math.max(1, totalBytes / totalRows) : 0;
+        tuning.calibrated(chosen, documentBytes);
+
+        Map<String, Object> result = tuning.describe();
+        result.put("probes", probes);
+        log.info("批次大小校准完成: 表={}, 读取批次={}, bulk动作数={}, 单行约 {} 字节",
+                tableName, tuning.dbBatchSize(), tuning.bulkActions(), documentBytes);
+        return result;
+    }
+
+    /**
+     * 行序列化为JSON后的大致字节数（中文按UTF-8三字节计）
+     */
+    private static long estimateBytes(CompactRow row) {
+        long bytes = 2;
+        CompactRow.Columns columns = row.columns();
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = row.value(i);
+            bytes += columns.name(i).length() + 4;
+            if (value == null) {
+                bytes += 4;
+            } else if (value instanceof Number || value instanceof Boolean) {
+                bytes += 12;
+            } else {
+                bytes += utf8Length(value.toString()) + 2;
+            }
+        }
+        return bytes;
+    }
+
+    private static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            length += c < 0x80 ? 1 : (c < 0x800 ? 2 : 3);
+        }
+        return length;
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * 单张表的批次大小，读取线程和 bulk 响应线程并发更新
+     */
+    public final class Tuning {
+        private final String tableName;
+        private final boolean adaptive;
+        private volatile int dbBatchSize;
+        private volatile int bulkActions;
+        /** 平均每个文档的字节数（指数移动平均），0 表示尚未测量 */
+        private long documentBytes;
+        private long lastFetchMillis;
+        private long lastBulkMillis;
+        private long bulkResponses;
+        private long rejectedResponses;
+        private long lastBulkDecreaseNanos;
+
+        private Tuning(String tableName, int dbBatchSize, int bulkActions, boolean adaptive) {
+            this.tableName = tableName;
+            this.dbBatchSize = dbBatchSize;
+            this.bulkActions = bulkActions;
+            this.adaptive = adaptive;
+        }
+
+        public int dbBatchSize() {
+            return dbBatchSize;
+        }
+
+        public int bulkActions() {
+            return bulkActions;
+        }
+
+        /**
+         * 一批读取完成：limit 为本批的 LIMIT，fetchNanos 为读取耗时（不含投递阻塞）。不足一批的末批不参与调整
+         */
+        public synchronized void recordFetch(int limit, int rows, long fetchNanos) {
+            lastFetchMillis = fetchNanos / 1_000_000L;
+            if (!adaptive || rows < limit || limit != dbBatchSize) {
+                return;
+            }
+            int cap = byteCap(dbBatchMin, dbBatchMax, maxBatchBytes);
+            if (lastFetchMillis > targetFetchMillis * 2) {
+                dbBatchSize = Math.max(dbBatchMin, dbBatchSize / 2);
+            } else if (lastFetchMillis < targetFetchMillis) {
+                dbBatchSize = Math.min(cap, dbBatchSize + dbBatchMin);
+            }
+            if (dbBatchSize > cap) {
+                dbBatchSize = cap;
+            }
+        }
+
+        /**
+         * 构建出的请求体：用于估计单个文档的字节数
+         */
+        public synchronized void recordBody(int actions, long bytes) {
+            if (actions <= 0) {
+                return;
+            }
+            long perDocument = Math.max(1, bytes / actions);
+            documentBytes = documentBytes == 0 ? perDocument : (documentBytes * 4 + perDocument) / 5;
+        }
+
+        /**
+         * bulk 响应：有拒绝或往返耗时超过目标两倍时减半（同一轮在途请求的多个响应只减一次），
+         * 耗时低于目标时加一个步长
+         */
+        public synchronized void recordBulk(int actions, long roundTripMillis, int rejected) {
+            lastBulkMillis = roundTripMillis;
+            bulkResponses++;
+            if (rejected > 0) {
+                rejectedResponses++;
+            }
+            if (!adaptive) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (rejected > 0 || roundTripMillis > targetBulkMillis * 2) {
+                if (now - lastBulkDecreaseNanos > targetBulkMillis * 1_000_000L) {
+                    bulkActions = Math.max(bulkActionsMin, bulkActions / 2);
+                    lastBulkDecreaseNanos = now;
+                    log.debug("bulk动作数减半: 表={}, 动作数={}, 往返 {} ms, 拒绝 {} 项",
+                            tableName, bulkActions, roundTripMillis, rejected);
+                }
+            } else if (roundTripMillis < targetBulkMillis && actions >= bulkActions) {
+                bulkActions = Math.min(byteCap(bulkActionsMin, bulkActionsMax, maxBulkBytes),
+                        bulkActions + bulkActionsMin);
+            }
+        }
+
+        private synchronized void calibrated(int dbBatchSize, long documentBytes) {
+            if (documentBytes > 0) {
+                this.documentBytes = documentBytes;
+            }
+            if (!adaptive) {
+                return;
+            }
+            // bulk 动作数从恰好装满一个请求体开始，之后按往返耗时和拒绝率调整
+            this.dbBatchSize = Math.min(dbBatchSize, byteCap(dbBatchMin, dbBatchMax, maxBatchBytes));
+            this.bulkActions = byteCap(bulkActionsMin, bulkActionsMax, maxBulkBytes);
+        }
+
+        /**
+         * 按平均文档字节数计算的批次上限
+         */
+        private int byteCap(int min, int max, long byteBudget) {
+            if (documentBytes <= 0) {
+                return max;
+            }
+            return clamp(byteBudget / documentBytes, min, max);
+        }
+
+        private synchronized Map<String, Object> describe() {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("table_name", tableName);
+            item.put("adaptive", adaptive);
+            item.put("db_batch_size", dbBatchSize);
+            item.put("bulk_actions", bulkActions);
+            item.put("document_bytes", documentBytes);
+            item.put("last_fetch_millis", lastFetchMillis);
+            item.put("last_bulk_millis", lastBulkMillis);
+            item.put("bulk_responses", bulkResponses);
+            item.put("rejected_responses", rejectedResponses);
+            return item;
+        }
+    }
+}
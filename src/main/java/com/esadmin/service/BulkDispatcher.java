@@ -0,0 +1,560 @@
+package com.esadmin.service;
+
+import com.esadmin.util.NdjsonBulkBody;
+import org.elasticsearch.client.ResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步 bulk 分发器：全局限制同时在途的 bulk 请求数，请求异步发送、在 I/O 线程上完成；
+ * 整体 429 / 网络异常以及单项 429 / 503 的重试由调度线程延时重发，不阻塞任何工作线程；
+ * 永久失败的文档写入死信文件。
+ * 同步任务通过 {@link Session} 提交请求体并等待自己的请求全部完成。
+ */
+@Service
+public class BulkDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkDispatcher.class);
+
+    /** 关闭时等待已排队死信写入完成的最长时间 */
+    private static final long SHUTDOWN_DRAIN_SECONDS = 10;
+
+    private final EsBulkWriter bulkWriter;
+    private final DeadLetterWriter deadLetterWriter;
+    private final int maxInFlight;
+    private final long maxBulkBytes;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final String timeout;
+    private final Semaphore permits;
+    private final ScheduledExecutorService retryScheduler;
+    /** 已排定、尚未开始的重发；关闭时逐个取消并按失败结束 */
+    private final Set<PendingRetry> pendingRetries = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong totalRequests = new AtomicLong();
+    private final AtomicLong totalDocuments = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriedDocuments = new AtomicLong();
+    private final ThroughputMeter throughput = new ThroughputMeter();
+
+    public BulkDispatcher(EsBulkWriter bulkWriter,
+                          DeadLetterWriter deadLetterWriter,
+                          @Value("${app.sync.bulk.max-in-flight:2}") int maxInFlight,
+                          @Value("${app.sync.bulk.max-bytes:10485760}") long maxBulkBytes,
+                          @Value("${app.sync.es-max-retries:5}") int maxRetries,
+                          @Value("${app.sync.es-retry-initial-backoff-millis:200}") long initialBackoffMillis,
+                          @Value("${app.sync.es-retry-max-backoff-millis:5000}") long maxBackoffMillis,
+                          @Value("${app.sync.es-bulk-timeout-seconds:60}") int bulkTimeoutSeconds) {
+        this.bulkWriter = bulkWriter;
+        this.deadLetterWriter = deadLetterWriter;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxBulkBytes = Math.max(1024L, maxBulkBytes);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoffMillis = Math.max(50L, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+        this.timeout = Math.max(5, bulkTimeoutSeconds) + "s";
+        this.permits = new Semaphore(this.maxInFlight);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 单个bulk请求体的字节上限，构建阶段按此拆分
+     */
+    public long getMaxBulkBytes() {
+        return maxBulkBytes;
+    }
+
+    public Session openSession(String name) {
+        return new Session(name);
+    }
+
+    /**
+     * 分发器运行指标：在途深度、累计量和最近一分钟吞吐
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("in_flight", inFlight.get());
+        metrics.put("max_in_flight", maxInFlight);
+        metrics.put("peak_in_flight", peakInFlight.get());
+        metrics.put("max_bulk_bytes", maxBulkBytes);
+        metrics.put("total_requests", totalRequests.get());
+        metrics.put("failed_requests", failedRequests.get());
+        metrics.put("total_documents", totalDocuments.get());
+        metrics.put("failed_documents", failedDocuments.get());
+        metrics.put("total_bytes", totalBytes.get());
+        metrics.put("retries", retries.get());
+        metrics.put("retried_documents", retriedDocuments.get());
+        metrics.put("dead_letter_documents", deadLetterWriter.getWrittenCount());
+        metrics.put("dead_letter_dir", deadLetterWriter.getDirectory());
+        metrics.put("docs_per_second", throughput.documentsPerSecond());
+        metrics.put("bytes_per_second", throughput.bytesPerSecond());
+        return metrics;
+    }
+
+    private void send(Session session, NdjsonBulkBody body, int attempt, CompletionListener listener) {
+        long sentAt = System.nanoTime();
+        try {
+            bulkWriter.executeAsync(body, timeout, null, (result, error) -> {
+                totalRequests.incrementAndGet();
+                totalBytes.addAndGet(body.sizeInBytes());
+                long roundTripMillis = (System.nanoTime() - sentAt) / 1_000_000L;
+                if (error == null) {
+                    handleResult(session, body, result, attempt, roundTripMillis, listener);
+                    return;
+                }
+                boolean retryable = isRetryable(error);
+                session.observeResponse(body.actionCount(), roundTripMillis, retryable ? body.actionCount() : 0);
+                if (attempt < maxRetries && retryable) {
+                    scheduleRetry(session, body, attempt + 1, describe(error), listener);
+                } else {
+                    failRequest(session, body, error, listener);
+                }
+            });
+        } catch (RuntimeException e) {
+            failRequest(session, body, e, listener);
+        }
+    }
+
+    /**
+     * 逐项处理bulk结果：成功项直接计数；429/503 拒绝的项按原字节组成新请求体延时重发，
+     * 只有它们参与退避；映射错误等永久失败项（以及重试耗尽的项）写入死信文件
+     */
+    private void handleResult(Session session, NdjsonBulkBody body, EsBulkWriter.BulkResult result, int attempt,
+                              long roundTripMillis, CompletionListener listener) {
+        int succeeded = result.getSuccessCount();
+        session.succeeded.addAndGet(succeeded);
+        totalDocuments.addAndGet(succeeded);
+        throughput.record(succeeded, body.sizeInBytes());
+
+        if (!result.hasFailures()) {
+            session.observeResponse(body.actionCount(), roundTripMillis, 0);
+            finishRequest(session, body, listener, true);
+            return;
+        }
+
+        List<EsBulkWriter.ItemFailure> rejected = new ArrayList<>();
+        List<EsBulkWriter.ItemFailure> permanent = new ArrayList<>();
+        for (EsBulkWriter.ItemFailure failure : result.getFailures()) {
+            if (isRetryableStatus(failure.getStatus())) {
+                rejected.add(failure);
+            } else {
+                permanent.add(failure);
+            }
+        }
+        session.observeResponse(body.actionCount(), roundTripMillis, rejected.size());
+
+        NdjsonBulkBody retryBody = null;
+        if (!rejected.isEmpty()) {
+            if (attempt < maxRetries) {
+                retryBody = bulkWriter.acquire();
+                for (EsBulkWriter.ItemFailure failure : rejected) {
+                    retryBody.copyAction(body, failure.getPosition());
+                }
+                retriedDocuments.addAndGet(rejected.size());
+            } else {
+                for (EsBulkWriter.ItemFailure failure : rejected) {
+                    permanent.add(new EsBulkWriter.ItemFailure(failure.getPosition(), failure.getId(),
+                            failure.getStatus(), failure.getType(),
+                            "重试 " + attempt + " 次后仍被拒绝: " + failure.getReason()));
+                }
+            }
+        }
+
+        if (!permanent.isEmpty()) {
+            session.failed.addAndGet(permanent.size());
+            failedDocuments.addAndGet(permanent.size());
+            log.error("批量同步部分失败: {}, {} 项写入死信文件, {}",
+                    session.name, permanent.size(), result.buildFailureMessage(5));
+            writeDeadLetters(session.name, permanent);
+        }
+
+        if (retryBody != null) {
+            bulkWriter.release(body);
+            scheduleRetry(session, retryBody, attempt + 1, rejected.size() + " 项被拒绝", listener);
+        } else {
+            // 永久失败项已进入死信文件，视为已处理
+            finishRequest(session, body, listener, true);
+        }
+    }
+
+    private void scheduleRetry(Session session, NdjsonBulkBody body, int attempt, String cause,
+                               CompletionListener listener) {
+        if (session.aborted) {
+            failRequest(session, body, new IllegalStateException("同步已中止，不再重发"), listener);
+            return;
+        }
+        long delay = Math.min(initialBackoffMillis << Math.min(20, attempt - 1), maxBackoffMillis);
+        retries.incrementAndGet();
+        log.warn("bulk请求 {} 失败: {}，{} ms 后重发 {} 项 (第 {}/{})",
+                session.name, cause, delay, body.actionCount(), attempt, maxRetries);
+        PendingRetry retry = new PendingRetry(session, body, attempt, listener);
+        pendingRetries.add(retry);
+        try {
+            retry.future = retryScheduler.schedule(retry, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingRetries.remove(retry);
+            failRequest(session, body, e, listener);
+        }
+    }
+
+    /**
+     * 应用关闭：取消尚未开始的重发（按失败结束，唤醒等待中的同步），
+     * 已排队的死信写入在限定时间内执行完，超时未执行的记入日志
+     */
+    @PreDestroy
+    public void shutdown() {
+        int cancelledRetries = 0;
+        long cancelledDocuments = 0;
+        for (PendingRetry retry : pendingRetries) {
+            if (!pendingRetries.remove(retry)) {
+                continue;
+            }
+            ScheduledFuture<?> future = retry.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            cancelledRetries++;
+            cancelledDocuments += retry.body.actionCount();
+            failRequest(retry.session, retry.body, new IllegalStateException("应用关闭，取消重发"), retry.listener);
+        }
+
+        retryScheduler.shutdown();
+        int droppedDeadLetters = 0;
+        try {
+            if (!retryScheduler.awaitTermination(SHUTDOWN_DRAIN_SECONDS, TimeUnit.SECONDS)) {
+                droppedDeadLetters = retryScheduler.shutdownNow().size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedDeadLetters = retryScheduler.shutdownNow().size();
+        }
+
+        if (cancelledRetries > 0 || droppedDeadLetters > 0) {
+            log.warn("bulk分发器关闭: 取消 {} 个待重发请求（{} 项未写入），{} 个死信写入未执行",
+                    cancelledRetries, cancelledDocuments, droppedDeadLetters);
+        }
+    }
+
+    private void failRequest(Session session, NdjsonBulkBody body, Exception error, CompletionListener listener) {
+        int actions = body.actionCount();
+        session.failed.addAndGet(actions);
+        failedDocuments.addAndGet(actions);
+        failedRequests.incrementAndGet();
+        log.error("批量同步记录失败: {}, 批次大小={}", session.name, actions, error);
+        finishRequest(session, body, listener, false);
+    }
+
+    /**
+     * 一个提交（含其所有重试）结束：归还请求体和在途名额，先回调再唤醒等待者
+     */
+    private void finishRequest(Session session, NdjsonBulkBody body, CompletionListener listener,
+                               boolean acknowledged) {
+        bulkWriter.release(body);
+        inFlight.decrementAndGet();
+        permits.release();
+        if (listener != null) {
+            try {
+                listener.onComplete(acknowledged);
+            } catch (RuntimeException e) {
+                log.warn("bulk完成回调执行失败: {}", session.name, e);
+            }
+        }
+        session.requestDone();
+    }
+
+    /**
+     * 死信写文件放到调度线程执行，不占用HTTP客户端的I/O线程
+     */
+    private void writeDeadLetters(String source, List<EsBulkWriter.ItemFailure> failures) {
+        try {
+            retryScheduler.execute(() -> deadLetterWriter.write(source, failures));
+        } catch (RejectedExecutionException e) {
+            deadLetterWriter.write(source, failures);
+        }
+    }
+
+    /**
+     * 一次排定的重发，开始执行时从待重发集合中认领，已被关闭流程认领的不再发送
+     */
+    private final class PendingRetry implements Runnable {
+        private final Session session;
+        private final NdjsonBulkBody body;
+        private final int attempt;
+        private final CompletionListener listener;
+        private volatile ScheduledFuture<?> future;
+
+        private PendingRetry(Session session, NdjsonBulkBody body, int attempt, CompletionListener listener) {
+            this.session = session;
+            this.body = body;
+            this.attempt = attempt;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (pendingRetries.remove(this)) {
+                send(session, body, attempt, listener);
+            }
+        }
+    }
+
+    private static boolean isRetryableStatus(int status) {
+        return status == 429 || status == 503;
+    }
+
+    private static String describe(Exception error) {
+        if (error instanceof ResponseException) {
+            return ((ResponseException) error).getResponse().getStatusLine().toString();
+        }
+        return error.getMessage();
+    }
+
+    private static boolean isRetryable(Exception error) {
+        if (error instanceof ResponseException) {
+            return ((ResponseException) error).getResponse().getStatusLine().getStatusCode() == 429;
+        }
+        return error instanceof IOException;
+    }
+
+    /**
+     * 一个提交（含其所有重试）结束时的回调，在HTTP客户端I/O线程或重试调度线程上执行，不能阻塞。
+     * acknowledged 为 false 表示整个请求失败，其中的文档既未写入也未进入死信文件
+     */
+    @FunctionalInterface
+    public interface CompletionListener {
+        void onComplete(boolean acknowledged);
+    }
+
+    /**
+     * 每次bulk响应（含重试）的观察回调：动作数、往返耗时和被 429/503 拒绝的动作数，
+     * 在HTTP客户端I/O线程上执行，不能阻塞
+     */
+    @FunctionalInterface
+    public interface ResponseObserver {
+        void onResponse(int actions, long roundTripMillis, int rejected);
+    }
+
+    /**
+     * 一次同步任务的提交会话：统计本任务的确认写入数，并可等待本任务的在途请求全部结束
+     */
+    public final class Session {
+        private final String name;
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private int pending;
+        private volatile boolean aborted;
+        private volatile ResponseObserver observer;
+
+        private Session(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 观察本会话每次bulk响应，用于自适应调整批次大小
+         */
+        public void observe(ResponseObserver observer) {
+            this.observer = observer;
+        }
+
+        /**
+         * 提交请求体，在途请求已满时阻塞等待；请求完成后请求体自动归还对象池
+         */
+        public void submit(NdjsonBulkBody body) {
+            submit(body, null);
+        }
+
+        /**
+         * 提交请求体，整个提交（含重试）结束时回调 listener
+         */
+        public void submit(NdjsonBulkBody body, CompletionListener listener) {
+            if (body.isEmpty()) {
+                bulkWriter.release(body);
+                if (listener != null) {
+                    listener.onComplete(true);
+                }
+                return;
+            }
+            if (aborted) {
+                reject(body, listener);
+                return;
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                bulkWriter.release(body);
+                throw new IllegalStateException("等待bulk发送名额被中断: " + name, e);
+            }
+            synchronized (this) {
+                if (aborted) {
+                    permits.release();
+                    reject(body, listener);
+                    return;
+                }
+                pending++;
+            }
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            send(this, body, 0, listener);
+        }
+
+        /**
+         * 等待本会话提交的请求全部完成（含重试）
+         */
+        public synchronized void awaitCompletion() {
+            try {
+                while (pending > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待bulk请求完成被中断: " + name, e);
+            }
+        }
+
+        /**
+         * 中止本会话（同步异常退出、目标索引即将丢弃时调用）：不再接受新的请求体，取消已排定的重发，
+         * 并等待已发出的请求结束，避免它们在索引删除后写入、被ES自动重建为普通索引。
+         * 等待期间不响应中断（已发出的请求最长在超时时间内结束），返回前恢复中断标记
+         */
+        public void abort() {
+            synchronized (this) {
+                aborted = true;
+            }
+            for (PendingRetry retry : pendingRetries) {
+                if (retry.session != this || !pendingRetries.remove(retry)) {
+                    continue;
+                }
+                ScheduledFuture<?> future = retry.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                failRequest(this, retry.body, new IllegalStateException("同步已中止，取消重发"), retry.listener);
+            }
+
+            boolean interrupted = false;
+            synchronized (this) {
+                while (pending > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public long succeededCount() {
+            return succeeded.get();
+        }
+
+        public long failedCount() {
+            return failed.get();
+        }
+
+        /**
+         * 会话已中止时拒绝新的请求体：按失败计数并回调，不发送
+         */
+        private void reject(NdjsonBulkBody body, CompletionListener listener) {
+            int actions = body.actionCount();
+            bulkWriter.release(body);
+            failed.addAndGet(actions);
+            failedDocuments.addAndGet(actions);
+            if (listener != null) {
+                listener.onComplete(false);
+            }
+        }
+
+        private void observeResponse(int actions, long roundTripMillis, int rejected) {
+            ResponseObserver current = observer;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.onResponse(actions, roundTripMillis, rejected);
+            } catch (RuntimeException e) {
+                log.warn("bulk响应观察回调执行失败: {}", name, e);
+            }
+        }
+
+        private synchronized void requestDone() {
+            pending--;
+            if (pending == 0) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 按秒分桶的滑动窗口吞吐统计（最近60秒）
+     */
+    private static final class ThroughputMeter {
+        private static final int WINDOW_SECONDS = 60;
+
+        private final long[] seconds = new long[WINDOW_SECONDS];
+        private final long[] documents = new long[WINDOW_SECONDS];
+        private final long[] bytes = new long[WINDOW_SECONDS];
+
+        private synchronized void record(long documentCount, long byteCount) {
+            long now = System.currentTimeMillis() / 1000L;
+            int slot = (int) (now % WINDOW_SECONDS);
+            if (seconds[slot] != now) {
+                seconds[slot] = now;
+                documents[slot] = 0L;
+                bytes[slot] = 0L;
+            }
+            documents[slot] += documentCount;
+            bytes[slot] += byteCount;
+        }
+
+        private synchronized double documentsPerSecond() {
+            return sum(documents) / (double) WINDOW_SECONDS;
+        }
+
+        private synchronized double bytesPerSecond() {
+            return sum(bytes) / (double) WINDOW_SECONDS;
+        }
+
+        private long sum(long[] values) {
+            long now = System.currentTimeMillis() / 1000L;
+            long total = 0L;
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                if (now - seconds[i] < WINDOW_SECONDS) {
+                    total += values[i];
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.esadmin.service;
+
+import com.esadmin.dto.FormDto;
+import com.esadmin.dto.SyncResult;
+import com.esadmin.entity.SyncRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 准实时变更轮询：每个周期对到期的表单做一次廉价探测——主表和附表的 MAX(modify_date)、MAX(ID)
+ * 与检查点中的增量游标比较，只有确有变化的表单才交给 {@link SyncScheduler} 做增量同步。
+ * <p>
+ * 探测按 probe-batch-size 个表拼成一条 UNION ALL 查询，两个聚合分别走 modify_date 索引和主键。
+ * 每个表单的探测间隔自适应：发现变化后回到 min-interval，连续无变化时翻倍直到 max-interval，
+ * 很少变化的表单因此很少被查询。只轮询已经同步过、有增量游标（带 modify_date 列）的表，
+ * 首次同步和没有 modify_date 的表仍由夜间定时任务处理。
+ */
+@Service
+public class ChangePoller {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangePoller.class);
+
+    /** 表单列表（及其主表、附表）重新加载的间隔 */
+    private static final long FORMS_REFRESH_MILLIS = 10 * 60 * 1000L;
+
+    private final FormService formService;
+    private final SyncCheckpointService checkpointService;
+    private final SyncScheduler syncScheduler;
+    private final boolean enabled;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final int probeBatchSize;
+
+    private final Map<String, FormState> states = new ConcurrentHashMap<>();
+    private volatile long formsLoadedAt;
+
+    public ChangePoller(FormService formService,
+                        SyncCheckpointService checkpointService,
+                        SyncScheduler syncScheduler,
+                        @Value("${app.sync.poller.enabled:true}") boolean enabled,
+                        @Value("${app.sync.poller.min-interval-seconds:30}") long minIntervalSeconds,
+                        @Value("${app.sync.poller.max-interval-seconds:1800}") long maxIntervalSeconds,
+                        @Value("${app.sync.poller.probe-batch-size:50}") int probeBatchSize) {
+        this.formService = formService;
+        this.checkpointService = checkpointService;
+        this.syncScheduler = syncScheduler;
+        this.enabled = enabled;
+        this.minIntervalMillis = Math.max(1, minIntervalSeconds) * 1000L;
+        this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalSeconds * 1000L);
+        this.probeBatchSize = Math.max(1, probeBatchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${app.sync.poller.tick-seconds:30}",
+            initialDelayString = "${app.sync.poller.tick-seconds:30}", timeUnit = TimeUnit.SECONDS)
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            refreshForms();
+
+            long now = System.currentTimeMillis();
+            List<FormState> due = new ArrayList<>();
+            List<ProbeTarget> targets = new ArrayList<>();
+            for (FormState state : states.values()) {
+                if (state.inFlight || state.nextProbeAt > now) {
+                    continue;
+                }
+                int probed = 0;
+                for (ProbeTarget target : state.targets) {
+                    SyncRecord checkpoint = checkpointService.load(target.checkpointKey);
+                    target.cursor = checkpoint != null ? checkpoint.getLastModifyDate() : null;
+                    if (target.cursor != null) {
+                        targets.add(target);
+                        probed++;
+                    }
+                }
+                if (probed > 0) {
+                    due.add(state);
+                } else {
+                    // 尚未同步过，留给首次同步
+                    state.nextProbeAt = now + maxIntervalMillis;
+                }
+            }
+            if (targets.isEmpty()) {
+                return;
+            }
+
+            Map<ProbeTarget, Probe> probes = probe(targets);
+
+            List<FormState> changed = new ArrayList<>();
+            for (FormState state : due) {
+                if (hasChanged(state, probes)) {
+                    state.lastChangeAt = now;
+                    changed.add(state);
+                } else {
+                    state.backoff(now);
+                }
+            }
+            log.debug("变更探测: {} 个表单 {} 个表，有变化的表单 {} 个", due.size(), targets.size(), changed.size());
+            if (!changed.isEmpty()) {
+                submit(changed);
+            }
+        } catch (Exception e) {
+            log.error("变更轮询失败", e);
+        }
+    }
+
+    /**
+     * 轮询状态：每个表单的当前探测间隔、下次探测时间和最近一次发现变化的时间
+     */
+    public Map<String, Object> getStatus() {
+        List<Map<String, Object>> forms = new ArrayList<>();
+        for (FormState state : states.values()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("form_id", state.form.getId());
+            item.put("form_name", state.form.getName());
+            item.put("tables", state.targets.size());
+            item.put("interval_seconds", state.intervalMillis / 1000);
+            item.put("next_probe_at", state.nextProbeAt);
+            item.put("last_change_at", state.lastChangeAt == 0 ? null : state.lastChangeAt);
+            item.put("in_flight", state.inFlight);
+            forms.add(item);
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("min_interval_seconds", minIntervalMillis / 1000);
+        status.put("max_interval_seconds", maxIntervalMillis / 1000);
+        status.put("forms", forms);
+        return status;
+    }
+
+    private void refreshForms() {
+        long now = System.currentTimeMillis();
+        if (now - formsLoadedAt < FORMS_REFRESH_MILLIS) {
+            return;
+        }
+        List<FormDto> forms = formService.getAllForms();
+        if (forms == null) {
+            return;
+        }
+
+        Set<String> formIds = new HashSet<>();
+        for (FormDto form : forms) {
+            formIds.add(form.getId());
+            if (!states.containsKey(form.getId())) {
+                List<ProbeTarget> targets = resolveTargets(form.getId());
+                if (!targets.isEmpty()) {
+                    states.put(form.getId(), new FormState(form, targets, now));
+                }
+            }
+        }
+        states.keySet().retainAll(formIds);
+        formsLoadedAt = now;
+        log.info("变更轮询表单列表已加载: {} 个表单可轮询", states.size());
+    }
+
+    /**
+     * 表单中带 modify_date 列的主表和附表
+     */
+    private List<ProbeTarget> resolveTargets(String formId) {
+        List<ProbeTarget> targets = new ArrayList<>();
+        String tableName = formService.getFormTableName(formId);
+        if (tableName == null || !formService.hasColumn(tableName, "modify_date")) {
+            return targets;
+        }
+        targets.add(new ProbeTarget(formId, tableName));
+        for (Map<String, Object> subTable : formService.getFormSubTables(formId)) {
+            String subTableName = formService.getSubTableName(subTable);
+            if (subTableName != null && formService.hasColumn(subTableName, "modify_date")) {
+                targets.add(new ProbeTarget(SyncCheckpointService.subTableKey(formId, subTableName), subTableName));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * 任一表的 MAX(modify_date) 越过检查点游标，或 MAX(ID) 与上次探测不同（同一时刻新增的行）
+     */
+    private boolean hasChanged(FormState state, Map<ProbeTarget, Probe> probes) {
+        boolean changed = false;
+        for (ProbeTarget target : state.targets) {
+            Probe probe = probes.get(target);
+            if (probe == null) {
+                continue;
+            }
+            if (probe.maxModifyDate != null && probe.maxModifyDate.isAfter(target.cursor)) {
+                changed = true;
+            }
+            if (target.lastMaxId != null && probe.maxId != null && !probe.maxId.equals(target.lastMaxId)) {
+                changed = true;
+            }
+            target.lastMaxId = probe.maxId;
+        }
+        return changed;
+    }
+
+    /**
+     * 分批执行 UNION ALL 探测；某一批失败时逐表重试，找出出错的表
+     */
+    private Map<ProbeTarget, Probe> probe(List<ProbeTarget> targets) {
+        Map<ProbeTarget, Probe> probes = new HashMap<>();
+        for (int from = 0; from < targets.size(); from += probeBatchSize) {
+            List<ProbeTarget> chunk = targets.subList(from, Math.min(targets.size(), from + probeBatchSize));
+            try {
+                probeChunk(chunk, probes);
+            } catch (Exception e) {
+                log.warn("批量变更探测失败，逐表重试: {}", e.getMessage());
+                for (ProbeTarget target : chunk) {
+                    try {
+                        probeChunk(List.of(target), probes);
+                    } catch (Exception single) {
+                        log.warn("变更探测失败: tableName={}, 原因={}", target.tableName, single.getMessage());
+                    }
+                }
+            }
+        }
+        return probes;
+    }
+
+    private void probeChunk(List<ProbeTarget> chunk, Map<ProbeTarget, Probe> probes) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT ").append(i).append(" AS IDX, MAX(modify_date) AS MAX_MODIFY, MAX(ID) AS MAX_ID FROM ")
+                    .append(chunk.get(i).tableName);
+        }
+        formService.getJdbcTemplate().query(sql.toString(), rs -> {
+            ProbeTarget target = chunk.get(rs.getInt(1));
+            Timestamp maxModify = rs.getTimestamp(2);
+            long maxId = rs.getLong(3);
+            Long maxIdValue = rs.wasNull() ? null : maxId;
+            probes.put(target, new Probe(maxModify != null ? maxModify.toLocalDateTime() : null, maxIdValue));
+        });
+    }
+
+    private void submit(List<FormState> changed) {
+        List<FormDto> forms = new ArrayList<>(changed.size());
+        for (FormState state : changed) {
+            state.inFlight = true;
+            forms.add(state.form);
+        }
+        log.info("变更探测发现 {} 个表单有变化，提交增量同步", forms.size());
+
+        List<CompletableFuture<SyncResult>> futures = syncScheduler.submitBatch(forms, formId -> false);
+        for (int i = 0; i < changed.size(); i++) {
+            FormState state = changed.get(i);
+            futures.get(i).whenComplete((result, error) -> {
+                long now = System.currentTimeMillis();
+                if (error == null && result != null && result.isSuccess()) {
+                    // 刚有变化的表单很可能继续变化，按最短间隔再探测
+                    state.intervalMillis = minIntervalMillis;
+                    state.nextProbeAt = now + minIntervalMillis;
+                } else {
+                    log.warn("变更触发的增量同步失败: formId={}, 原因={}", state.form.getId(),
+                            error != null ? error.getMessage() : result != null ? result.getMessage() : null);
+                    state.backoff(now);
+                }
+                state.inFlight = false;
+            });
+        }
+    }
+
+    private final class FormState {
+        private final FormDto form;
+        private final List<ProbeTarget> targets;
+        private volatile long intervalMillis = minIntervalMillis;
+        private volatile long nextProbeAt;
+        private volatile long lastChangeAt;
+        private volatile boolean inFlight;
+
+        private FormState(FormDto form, List<ProbeTarget> targets, long now) {
+            this.form = form;
+            this.targets = targets;
+            this.nextProbeAt = now;
+        }
+
+        private void backoff(long now) {
+            intervalMillis = Math.min(maxIntervalMillis, intervalMillis * 2);
+            nextProbeAt = now + intervalMillis;
+        }
+    }
+
+    /**
+     * 一张被探测的表：cursor 为本轮从检查点读到的增量游标，lastMaxId 为上次探测到的 MAX(ID)
+     */
+    private static final class ProbeTarget {
+        private final String checkpointKey;
+        private final String tableName;
+        private LocalDateTime cursor;
+        private Long lastMaxId;
+
+        private ProbeTarget(String checkpointKey, String tableName) {
+            this.checkpointKey = checkpointKey;
+            this.tableName = tableName;
+        }
+    }
+
+    private static final class Probe {
+        private final LocalDateTime maxModifyDate;
+        private final Long maxId;
+
+        private Probe(LocalDateTime maxModifyDate, Long maxId) {
+            this.maxModifyDate = maxModifyDate;
+            this.maxId = maxId;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.esadmin.service;
+
+import com.esadmin.util.RecordHashFile;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * 内容指纹变更检测：每个文档带 content_hash 字段（投影列的64位指纹），
+ * 同时在本地按索引保存一份按ID排序的指纹文件。无法依赖 modify_date 的增量同步按ID顺序扫描全表，
+ * 与指纹文件归并比对，只重写指纹变化或新增的行。
+ * <p>
+ * 指纹文件不存在（首次运行、全量同步后失效）时改为从ES按 record_id 顺序读取 content_hash 比对，
+ * 尚无 content_hash 的旧文档视为已变化、重写一次。
+ */
+@Service
+public class ContentHashService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentHashService.class);
+
+    private static final String FIELD = "content_hash";
+
+    private final RestHighLevelClient esClient;
+    private final boolean enabled;
+    private final boolean always;
+    private final Path directory;
+    private final int esPageSize;
+
+    public ContentHashService(RestHighLevelClient esClient,
+                              @Value("${app.sync.content-hash.enabled:true}") boolean enabled,
+                              @Value("${app.sync.content-hash.always:false}") boolean always,
+                              @Value("${app.sync.content-hash.dir:data/content-hash}") String directory,
+                              @Value("${app.sync.content-hash.es-page-size:10000}") int esPageSize) {
+        this.esClient = esClient;
+        this.enabled = enabled;
+        this.always = always;
+        this.directory = Paths.get(directory);
+        this.esPageSize = Math.max(1, esPageSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 增量同步是否总是使用指纹比对（表有 modify_date 索引但该字段不可靠时开启）
+     */
+    public boolean isAlways() {
+        return enabled && always;
+    }
+
+    /**
+     * 打开索引的指纹比对游标：优先读本地指纹文件，不存在或损坏时从ES读取
+     */
+    public Lookup openLookup(String indexName) {
+        Path file = fileFor(indexName);
+        if (Files.isRegularFile(file)) {
+            try {
+                log.info("使用本地指纹文件比对: {}", file.toAbsolutePath());
+                return new FileLookup(RecordHashFile.open(file));
+            } catch (IOException e) {
+                log.warn("读取指纹文件失败，改为从ES读取指纹: {}", file.toAbsolutePath(), e);
+            }
+        }
+        log.info("本地指纹文件不存在，从ES读取指纹比对: {}", indexName);
+        return new EsLookup(indexName);
+    }
+
+    /**
+     * 开始写入新的指纹文件（临时文件），同步成功后 {@link Store#commit()} 原子替换旧文件
+     */
+    public Store openStore(String indexName) throws IOException {
+        Files.createDirectories(directory);
+        Path file = fileFor(indexName);
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        return new Store(file, temp, RecordHashFile.create(temp));
+    }
+
+    /**
+     * 索引数据被整体重写（全量同步）后删除指纹文件，下次比对从ES读取
+     */
+    public void invalidate(String indexName) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (Files.deleteIfExists(fileFor(indexName))) {
+                log.info("全量同步后删除指纹文件: {}", indexName);
+            }
+        } catch (IOException e) {
+            log.warn("删除指纹文件失败: {}", indexName, e);
+        }
+    }
+
+    private Path fileFor(String indexName) {
+        return directory.resolve(indexName + ".hash");
+    }
+
+    /**
+     * 指纹比对游标，查询的ID必须非递减；读取失败抛出 UncheckedIOException
+     */
+    public interface Lookup extends AutoCloseable {
+        /**
+         * 该ID已存在且指纹相同
+         */
+        boolean matches(long id, long hash);
+
+        @Override
+        void close();
+    }
+
+    private static final class FileLookup implements Lookup {
+        private final RecordHashFile.Reader reader;
+
+        private FileLookup(RecordHashFile.Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean matches(long id, long hash) {
+            try {
+                return reader.seek(id) && reader.hash() == hash;
+            } catch (IOException e) {
+                throw new UncheckedIOException("读取指纹文件失败", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.debug("关闭指纹文件失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 从ES按 record_id 升序 search_after 分页读取 content_hash（doc values），每次只保留一页
+     */
+    private final class EsLookup implements Lookup {
+        private final String indexName;
+        private long[] ids = new long[0];
+        private long[] hashes = new long[0];
+        private boolean[] hashed = new boolean[0];
+        private int position;
+        private Object[] searchAfter;
+        private boolean exhausted;
+
+        private EsLookup(String indexName) {
+            this.indexName = indexName;
+        }
+
+        @Override
+        public boolean matches(long id, long hash) {
+            while (true) {
+                while (position < ids.length && ids[position] < id) {
+                    position++;
+                }
+                if (position < ids.length) {
+                    return ids[position] == id && hashed[position] && hashes[position] == hash;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                fetch();
+            }
+        }
+
+        private void fetch() {
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(QueryBuilders.existsQuery("record_id"))
+                    .fetchSource(false)
+                    .docValueField(FIELD)
+                    .sort("record_id", SortOrder.ASC)
+                    .size(esPageSize)
+                    .trackTotalHits(false);
+            if (searchAfter != null) {
+                source.searchAfter(searchAfter);
+            }
+            SearchResponse response;
+            try {
+                response = esClient.search(new SearchRequest(indexName).source(source), RequestOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new UncheckedIOException("从ES读取指纹失败: " + indexName, e);
+            }
+
+            SearchHit[] hits = response.getHits().getHits();
+            ids = new long[hits.length];
+            hashes = new long[hits.length];
+            hashed = new boolean[hits.length];
+            int size = 0;
+            for (SearchHit hit : hits) {
+                Object[] sortValues = hit.getSortValues();
+                if (sortValues.length == 0 || !(sortValues[0] instanceof Number)) {
+                    continue;
+                }
+                ids[size] = ((Number) sortValues[0]).longValue();
+                DocumentField field = hit.field(FIELD);
+                if (field != null && field.getValue() instanceof Number) {
+                    hashes[size] = ((Number) field.getValue()).longValue();
+                    hashed[size] = true;
+                }
+                size++;
+            }
+            if (size < hits.length) {
+                ids = Arrays.copyOf(ids, size);
+            }
+            position = 0;
+            exhausted = hits.length < esPageSize;
+            if (hits.length > 0) {
+                searchAfter = hits[hits.length - 1].getSortValues();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 同步过程中写出的新指纹文件：按扫描顺序记录每一行的当前指纹
+     */
+    public static final class Store implements AutoCloseable {
+        private final Path file;
+        private final Path temp;
+        private final RecordHashFile.Writer writer;
+        private boolean closed;
+
+        private Store(Path file, Path temp, RecordHashFile.Writer writer) {
+            this.file = file;
+            this.temp = temp;
+            this.writer = writer;
+        }
+
+        public void append(long id, long hash) {
+            try {
+                writer.append(id, hash);
+            } catch (IOException e) {
+                throw new UncheckedIOException("写入指纹文件失败: " + temp, e);
+            }
+        }
+
+        /**
+         * 变化的行都已确认写入ES后替换旧指纹文件
+         */
+        public void commit() throws IOException {
+            writer.close();
+            closed = true;
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("指纹文件已更新: {}, {} 条", file.toAbsolutePath(), writer.count());
+        }
+
+        /**
+         * 未提交时丢弃临时文件，旧指纹文件保持不变
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writer.close();
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("删除临时指纹文件失败: {}", temp, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.esadmin.service;
+
+import com.esadmin.dto.ExcelImportMetadata;
+import com.esadmin.dto.FormDto;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据源目录：全部表单和 Excel 导入的ID、名称、索引名、表名的不可变快照，供搜索的权限过滤、
+ * 部门权限和审核策略共用。
+ * <p>
+ * 表单定义的 JSON 字段和 Excel 的列信息只在重建快照时解析一次。后台每 check-seconds 秒
+ * 对 CAP_FORM_DEFINITION、EXCEL_IMPORT_META 的 ID/名称列做一次轻量探测，签名变化时重建；表单
+ * 结构（表名）等不在探测列中的变化由 max-age-seconds 的定期重建兜底，Excel 导入和删除后调用
+ * {@link #invalidate()} 立即重建。读取方只读快照，不会在请求线程上探测或重建。
+ */
+@Service
+public class DataSourceCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceCatalog.class);
+
+    private static final String FORM_SIGNATURE_SQL =
+            "SELECT ID, NAME FROM CAP_FORM_DEFINITION WHERE DELETE_FLAG = 0 ORDER BY ID";
+    private static final String EXCEL_SIGNATURE_SQL =
+            "SELECT ID, TABLE_NAME, INDEX_NAME, DISPLAY_NAME FROM EXCEL_IMPORT_META ORDER BY ID";
+
+    private final FormService formService;
+    private final ExcelImportService excelImportService;
+    private final JdbcTemplate jdbcTemplate;
+    private final long maxAgeMillis;
+
+    private volatile Snapshot snapshot;
+    private volatile long checkedAt;
+
+    public DataSourceCatalog(FormService formService,
+                             ExcelImportService excelImportService,
+                             JdbcTemplate jdbcTemplate,
+                             @Value("${app.search.catalog.max-age-seconds:600}") long maxAgeSeconds) {
+        this.formService = formService;
+        this.excelImportService = excelImportService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxAgeMillis = Math.max(0, maxAgeSeconds) * 1000L;
+    }
+
+    public long version() {
+        return snapshot().version;
+    }
+
+    /**
+     * 全部表单（未删除、有名称），只读
+     */
+    public List<FormDto> forms() {
+        return snapshot().forms;
+    }
+
+    /**
+     * 全部 Excel 导入，按导入时间倒序，只读
+     */
+    public List<ExcelImportMetadata> excelImports() {
+        return snapshot().excelImports;
+    }
+
+    public FormDto form(String formId) {
+        return formId != null ? snapshot().formById.get(formId) : null;
+    }
+
+    public String formName(String formId) {
+        FormDto form = form(formId);
+        return form != null ? form.getName() : null;
+    }
+
+    /**
+     * 表单主表名（FIELD_INFO 中 front_formmain.tableName）
+     */
+    public String formTableName(String formId) {
+        return formId != null ? snapshot().formTableNames.get(formId) : null;
+    }
+
+    /**
+     * 按表名查找 Excel 导入（不区分大小写）
+     */
+    public ExcelImportMetadata excelByTable(String tableName) {
+        return tableName != null ? snapshot().excelByTable.get(tableName.toUpperCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * 按索引名查找 Excel 导入（不区分大小写）
+     */
+    public ExcelImportMetadata excelByIndex(String indexName) {
+        return indexName != null ? snapshot().excelByIndex.get(indexName.toLowerCase(Locale.ROOT)) : null;
+    }
+
+    public String excelDisplayName(String tableName) {
+        ExcelImportMetadata excel = excelByTable(tableName);
+        return excel != null ? excel.getDisplayName() : null;
+    }
+
+    /**
+     * 数据源有变化（Excel 导入、删除等）时立即重建
+     */
+    public void invalidate() {
+        rebuild(null, null);
+    }
+
+    public Map<String, Object> getStatus() {
+        Snapshot current = snapshot();
+        Map<String, Object> status = new HashMap<>();
+        status.put("version", current.version);
+        status.put("forms", current.forms.size());
+        status.put("excel_imports", current.excelImports.size());
+        status.put("built_at", current.builtAt);
+        status.put("checked_at", checkedAt);
+        return status;
+    }
+
+    /**
+     * 当前快照；只在首次使用时同步构建，之后由 {@link #check()} 在后台替换
+     */
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                rebuild(null, null);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 后台探测：超过 max-age 整体重建，否则签名变化时重建；探测失败时继续使用当前快照
+     */
+    @Scheduled(fixedDelayString = "${app.search.catalog.check-seconds:30}",
+            initialDelayString = "${app.search.catalog.check-seconds:30}", timeUnit = TimeUnit.SECONDS)
+    public void check() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (maxAgeMillis > 0 && System.currentTimeMillis() - current.builtAt >= maxAgeMillis) {
+                rebuild(null, null);
+                return;
+            }
+            String formSignature = signature(FORM_SIGNATURE_SQL);
+            String excelSignature = signature(EXCEL_SIGNATURE_SQL);
+            if (formSignature != null && excelSignature != null
+                    && (!formSignature.equals(current.formSignature)
+                        || !excelSignature.equals(current.excelSignature))) {
+                log.info("数据源目录有变化，重新构建");
+                rebuild(formSignature, excelSignature);
+            }
+        } finally {
+            checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 重新加载表单和 Excel 导入并替换快照；签名为 null 时先探测。加载失败时保留旧快照
+     */
+    private synchronized void rebuild(String formSignature, String excelSignature) {
+        long startTime = System.currentTimeMillis();
+        if (formSignature == null) {
+            formSignature = signature(FORM_SIGNATURE_SQL);
+        }
+        if (excelSignature == null) {
+            excelSignature = signature(EXCEL_SIGNATURE_SQL);
+        }
+
+        Snapshot previous = snapshot;
+        List<FormDto> forms;
+        List<ExcelImportMetadata> excelImports;
+        try {
+            forms = formService.getAllForms();
+        } catch (Exception e) {
+            log.error("加载表单数据源失败", e);
+            forms = previous != null ? previous.forms : null;
+        }
+        try {
+            excelImports = excelImportService.listImports();
+        } catch (Exception e) {
+            log.error("加载Excel数据源失败", e);
+            excelImports = previous != null ? previous.excelImports : null;
+        }
+
+        long version = previous != null ? previous.version + 1 : 1;
+        snapshot = new Snapshot(version, forms, excelImports, formSignature, excelSignature);
+        checkedAt = System.currentTimeMillis();
+        log.info("数据源目录构建完成: 版本={}, 表单 {} 个, Excel {} 个, 耗时 {} ms", version,
+                snapshot.forms.size(), snapshot.excelImports.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 按ID顺序对探测列做滚动哈希，查询失败返回 null
+     */
+    private String signature(String sql) {
+        try {
+            long[] state = {0, 1};
+            jdbcTemplate.query(sql, rs -> {
+                int columns = rs.getMetaData().getColumnCount();
+                long hash = state[1];
+                for (int i = 1; i <= columns; i++) {
+                    String value = rs.getString(i);
+                    hash = 31 * hash + (value != null ? value.hashCode() : 0);
+                }
+                state[0]++;
+                state[1] = hash;
+            });
+            return state[0] + ":" + Long.toHexString(state[1]);
+        } catch (Exception e) {
+            log.debug("数据源目录探测失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String extractTableName(FormDto form) {
+        Map<String, Object> fieldInfo = form.getFieldInfo();
+        Object frontFormMain = fieldInfo != null ? fieldInfo.get("front_formmain") : null;
+        if (frontFormMain instanceof Map) {
+            Object tableName = ((Map<String, Object>) frontFormMain).get("tableName");
+            return tableName != null ? tableName.toString() : null;
+        }
+        return null;
+    }
+
+    private static final class Snapshot {
+        private final long version;
+        private final long builtAt = System.currentTimeMillis();
+        private final String formSignature;
+        private final String excelSignature;
+        private final List<FormDto> forms;
+        private final List<ExcelImportMetadata> excelImports;
+        private final Map<String, FormDto> formById;
+        private final Map<String, String> formTableNames;
+        private final Map<String, ExcelImportMetadata> excelByTable;
+        private final Map<String, ExcelImportMetadata> excelByIndex;
+
+        private Snapshot(long version, List<FormDto> forms, List<ExcelImportMetadata> excelImports,
+                         String formSignature, String excelSignature) {
+            this.version = version;
+            this.formSignature = formSignature;
+            this.excelSignature = excelSignature;
+
+            List<FormDto> formList = new ArrayList<>();
+            Map<String, FormDto> byId = new LinkedHashMap<>();
+            Map<String, String> tableNames = new HashMap<>();
+            if (forms != null) {
+                for (FormDto form : forms) {
+                    if (form == null || StringUtils.isBlank(form.getId())) {
+                        continue;
+                    }
+                    formList.add(form);
+                    byId.putIfAbsent(form.getId(), form);
+                    String tableName = extractTableName(form);
+                    if (tableName != null) {
+                        tableNames.put(form.getId(), tableName);
+                    }
+                }
+            }
+
+            List<ExcelImportMetadata> excelList = new ArrayList<>();
+            Map<String, ExcelImportMetadata> byTable = new HashMap<>();
+            Map<String, ExcelImportMetadata> byIndex = new HashMap<>();
+            if (excelImports != null) {
+                for (ExcelImportMetadata excel : excelImports) {
+                    if (excel == null) {
+                        continue;
+                    }
+                    excelList.add(excel);
+                    if (StringUtils.isNotBlank(excel.getTableName())) {
+                        byTable.putIfAbsent(excel.getTableName().toUpperCase(Locale.ROOT), excel);
+                    }
+                    if (StringUtils.isNotBlank(excel.getIndexName())) {
+                        byIndex.putIfAbsent(excel.getIndexName().toLowerCase(Locale.ROOT), excel);
+                    }
+                }
+            }
+
+            this.forms = Collections.unmodifiableList(formList);
+            this.excelImports = Collections.unmodifiableList(excelList);
+            this.formById = Collections.unmodifiableMap(byId);
+            this.formTableNames = Collections.unmodifiableMap(tableNames);
+            this.excelByTable = Collections.unmodifiableMap(byTable);
+            this.excelByIndex = Collections.unmodifiableMap(byIndex);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.esadmin.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 同步读取数据库的全局许可：所有同步读取（主表游标、分区分片、附表、内嵌附表、对账）在执行查询前取得一个许可，
+ * 查询结束（含流式转交写入缓冲区）后归还，使同时进行的同步查询不超过数据库连接池容量。
+ * <p>
+ * 许可总数 = 连接池上限 - reserved-connections（留给搜索、检查点写入等其他请求）。
+ * 游标读取会在转交写入缓冲区时因反压阻塞，而缓冲区的构建线程还要读取内嵌附表行，
+ * 因此游标读取最多占用总数减去 lookup-reserved 个许可，剩余许可始终可供内嵌附表等短查询使用，避免互相等待。
+ */
+@Service
+public class DbReadPermits {
+
+    private static final Logger log = LoggerFactory.getLogger(DbReadPermits.class);
+
+    private final int totalPermits;
+    private final int cursorPermits;
+    private final Semaphore permits;
+    private final Semaphore cursors;
+
+    public DbReadPermits(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                         @Value("${app.sync.db-read.reserved-connections:2}") int reservedConnections,
+                         @Value("${app.sync.db-read.lookup-reserved:1}") int lookupReserved) {
+        this.totalPermits = Math.max(2, poolSize - Math.max(0, reservedConnections));
+        this.cursorPermits = Math.max(1, totalPermits - Math.max(1, lookupReserved));
+        this.permits = new Semaphore(totalPermits, true);
+        this.cursors = new Semaphore(cursorPermits, true);
+        log.info("同步数据库读取许可: 总数={}, 游标读取上限={} (连接池上限={})", totalPermits, cursorPermits, poolSize);
+    }
+
+    /**
+     * 游标读取（主表、分片、附表）：读取期间会向写入缓冲区转交行，可能因反压阻塞
+     */
+    public Permit acquireCursor(String reader) {
+        acquire(cursors, reader);
+        try {
+            acquire(permits, reader);
+        } catch (RuntimeException e) {
+            cursors.release();
+            throw e;
+        }
+        return new Permit(true);
+    }
+
+    /**
+     * 短查询（内嵌附表行、对账分页）：查询期间不等待其他读取
+     */
+    public Permit acquireLookup(String reader) {
+        acquire(permits, reader);
+        return new Permit(false);
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("total_permits", totalPermits);
+        status.put("cursor_permits", cursorPermits);
+        status.put("in_use", totalPermits - permits.availablePermits());
+        status.put("cursors_in_use", cursorPermits - cursors.availablePermits());
+        status.put("waiting", permits.getQueueLength() + cursors.getQueueLength());
+        return status;
+    }
+
+    private static void acquire(Semaphore semaphore, String reader) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待数据库读取许可被中断: " + reader, e);
+        }
+    }
+
+    /**
+     * 一个已取得的许可，关闭时归还
+     */
+    public final class Permit implements AutoCloseable {
+        private final boolean cursor;
+        private boolean released;
+
+        private Permit(boolean cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            permits.release();
+            if (cursor) {
+                cursors.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.esadmin.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bulk 死信文件：无法写入ES的文档（映射错误、重试耗尽等）按天追加到本地 JSON Lines 文件，
+ * 每行记录来源、文档ID、状态码和失败原因，便于修复后针对性重同步，而不必重跑整个表单。
+ */
+@Service
+public class DeadLetterWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterWriter.class);
+
+    private static final DateTimeFormatter FILE_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    public DeadLetterWriter(ObjectMapper objectMapper,
+                            @Value("${app.sync.dead-letter.dir:logs/dead-letter}") String directory) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * 追加一批失败项，写文件失败只记日志
+     */
+    public synchronized void write(String source, List<EsBulkWriter.ItemFailure> failures) {
+        if (failures == null || failures.isEmpty()) {
+            return;
+        }
+
+        Path file = directory.resolve("bulk-dead-letter-" + LocalDate.now().format(FILE_DATE_FORMATTER) + ".jsonl");
+        String time = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        try {
+            Files.createDirectories(directory);
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (EsBulkWriter.ItemFailure failure : failures) {
+                    Map<String, Object> line = new LinkedHashMap<>();
+                    line.put("time", time);
+                    line.put("source", source);
+                    line.put("id", failure.getId());
+                    line.put("status", failure.getStatus());
+                    line.put("type", failure.getType());
+                    line.put("reason", failure.getReason());
+                    writer.write(objectMapper.writeValueAsString(line));
+                    writer.newLine();
+                }
+            }
+            writtenCount.addAndGet(failures.size());
+            log.warn("{} 条文档写入死信文件: {}, 来源={}", failures.size(), file.toAbsolutePath(), source);
+        } catch (IOException e) {
+            log.error("写入死信文件失败: {}, 来源={}, 丢失 {} 条失败记录", file.toAbsolutePath(), source, failures.size(), e);
+        }
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public String getDirectory() {
+        return directory.toAbsolutePath().toString();
+    }
+}
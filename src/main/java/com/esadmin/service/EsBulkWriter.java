@@ -0,0 +1,312 @@
+package com.esadmin.service;
+
+import com.esadmin.util.NdjsonBulkBody;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpEntity;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于低级 RestClient 的 bulk 写入：请求体为池化的 NDJSON 字节缓冲区，
+ * 响应通过 filter_path 只返回每项状态和错误信息，并用流式解析器读取。
+ */
+@Service
+public class EsBulkWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(EsBulkWriter.class);
+
+    /** 只保留错误标记和每项的状态/错误原因，成功项仅剩一个状态码，保持与请求一一对应的顺序 */
+    private static final String FILTER_PATH = "errors,items.*.status,items.*.error.type,items.*.error.reason";
+
+    private final RestHighLevelClient esClient;
+    private final JsonFactory jsonFactory;
+    private final BlockingQueue<NdjsonBulkBody> pool;
+    private final int initialBufferBytes;
+    private final long maxRetainedBytes;
+
+    public EsBulkWriter(RestHighLevelClient esClient,
+                        ObjectMapper objectMapper,
+                        @Value("${app.sync.bulk-writer.pool-size:16}") int poolSize,
+                        @Value("${app.sync.bulk-writer.initial-buffer-bytes:1048576}") int initialBufferBytes,
+                        @Value("${app.sync.bulk-writer.max-retained-bytes:33554432}") long maxRetainedBytes) {
+        this.esClient = esClient;
+        // ObjectMapper 的工厂带有 codec，文档兜底时可直接 writeObject(Map)
+        this.jsonFactory = objectMapper.getFactory();
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.initialBufferBytes = initialBufferBytes;
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * 从对象池取一个空的请求体，池空时新建
+     */
+    public NdjsonBulkBody acquire() {
+        NdjsonBulkBody body = pool.poll();
+        return body != null ? body : new NdjsonBulkBody(jsonFactory, initialBufferBytes);
+    }
+
+    /**
+     * 归还请求体；超大缓冲区直接丢弃，避免池中长期占用内存
+     */
+    public void release(NdjsonBulkBody body) {
+        if (body == null) {
+            return;
+        }
+        body.reset();
+        if (body.capacity() <= maxRetainedBytes) {
+            pool.offer(body);
+        }
+    }
+
+    /**
+     * 发送 bulk 请求。整体失败（如 429、网络异常）以异常抛出，由调用方决定是否重试
+     *
+     * @param timeout 服务端超时，如 "60s"，为空则不设置
+     * @param refresh refresh 参数（"true" / "wait_for"），为空则不设置
+     */
+    public BulkResult execute(NdjsonBulkBody body, String timeout, String refresh) throws IOException {
+        if (body.isEmpty()) {
+            return BulkResult.allSucceeded(0);
+        }
+
+        Response response = esClient.getLowLevelClient().performRequest(buildRequest(body, timeout, refresh));
+        return parseResponse(body, response.getEntity());
+    }
+
+    /**
+     * 异步发送 bulk 请求，不占用调用线程；结果或异常在 HTTP 客户端的 I/O 线程上回调，
+     * 回调中不能执行阻塞操作
+     */
+    public Cancellable executeAsync(NdjsonBulkBody body, String timeout, String refresh,
+                                    BiConsumer<BulkResult, Exception> callback) {
+        return esClient.getLowLevelClient().performRequestAsync(buildRequest(body, timeout, refresh),
+                new ResponseListener() {
+                    @Override
+                    public void onSuccess(Response response) {
+                        BulkResult result;
+                        try {
+                            result = parseResponse(body, response.getEntity());
+                        } catch (Exception e) {
+                            callback.accept(null, e);
+                            return;
+                        }
+                        callback.accept(result, null);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        callback.accept(null, exception);
+                    }
+                });
+    }
+
+    private Request buildRequest(NdjsonBulkBody body, String timeout, String refresh) {
+        Request request = new Request("POST", "/_bulk");
+        request.addParameter("filter_path", FILTER_PATH);
+        if (timeout != null) {
+            request.addParameter("timeout", timeout);
+        }
+        if (refresh != null) {
+            request.addParameter("refresh", refresh);
+        }
+        request.setEntity(body.toEntity());
+        return request;
+    }
+
+    private BulkResult parseResponse(NdjsonBulkBody body, HttpEntity entity) throws IOException {
+        int actions = body.actionCount();
+        if (entity == null) {
+            log.warn("bulk响应为空，按全部成功处理: 操作数={}", actions);
+            return BulkResult.allSucceeded(actions);
+        }
+
+        try (InputStream in = entity.getContent(); JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("无法解析bulk响应");
+            }
+
+            List<ItemFailure> failures = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("errors".equals(field)) {
+                    if (!parser.getBooleanValue()) {
+                        // 没有失败项，无需再读 items
+                        return BulkResult.allSucceeded(actions);
+                    }
+                } else if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                    int position = 0;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        ItemFailure failure = parseItem(parser, body, position);
+                        if (failure != null) {
+                            failures.add(failure);
+                        }
+                        position++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new BulkResult(actions, failures);
+        }
+    }
+
+    /**
+     * 解析单项 {"index":{"status":...,"error":{...}}}，成功返回 null；删除不存在的文档（404 无错误）视为成功
+     */
+    private ItemFailure parseItem(JsonParser parser, NdjsonBulkBody body, int position) throws IOException {
+        String operation = null;
+        int status = 0;
+        String type = null;
+        String reason = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            operation = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("status".equals(field)) {
+                    status = parser.getIntValue();
+                } else if ("error".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String errorField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("type".equals(errorField)) {
+                            type = parser.getText();
+                        } else if ("reason".equals(errorField)) {
+                            reason = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("error".equals(field)) {
+                    reason = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        if (status < 300 && type == null && reason == null) {
+            return null;
+        }
+        if ("delete".equals(operation) && status == 404 && type == null && reason == null) {
+            return null;
+        }
+        String id = position < body.actionCount() ? body.id(position) : null;
+        return new ItemFailure(position, id, status, type, reason);
+    }
+
+    /**
+     * bulk 请求结果：总操作数和失败项
+     */
+    public static final class BulkResult {
+        private final int actionCount;
+        private final List<ItemFailure> failures;
+
+        BulkResult(int actionCount, List<ItemFailure> failures) {
+            this.actionCount = actionCount;
+            this.failures = failures;
+        }
+
+        static BulkResult allSucceeded(int actionCount) {
+            return new BulkResult(actionCount, Collections.emptyList());
+        }
+
+        public int getActionCount() {
+            return actionCount;
+        }
+
+        public int getSuccessCount() {
+            return actionCount - failures.size();
+        }
+
+        public boolean hasFailures() {
+            return !failures.isEmpty();
+        }
+
+        public List<ItemFailure> getFailures() {
+            return failures;
+        }
+
+        /**
+         * 失败摘要，只列出前 limit 项
+         */
+        public String buildFailureMessage(int limit) {
+            StringBuilder message = new StringBuilder();
+            message.append("失败 ").append(failures.size()).append('/').append(actionCount).append(" 项");
+            int shown = Math.min(limit, failures.size());
+            for (int i = 0; i < shown; i++) {
+                ItemFailure failure = failures.get(i);
+                message.append("; [").append(failure.getId()).append("] ")
+                        .append(failure.getStatus()).append(' ')
+                        .append(failure.getType()).append(": ").append(failure.getReason());
+            }
+            if (failures.size() > shown) {
+                message.append("; ...");
+            }
+            return message.toString();
+        }
+    }
+
+    /**
+     * bulk 中单项的失败信息，position 为该项在请求中的序号
+     */
+    public static final class ItemFailure {
+        private final int position;
+        private final String id;
+        private final int status;
+        private final String type;
+        private final String reason;
+
+        ItemFailure(int position, String id, int status, String type, String reason) {
+            this.position = position;
+            this.id = id;
+            this.status = status;
+            this.type = type;
+            this.reason = reason;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.esadmin.service;
 
 import com.esadmin.dto.ExcelImportMetadata;
 import com.esadmin.dto.ExcelImportResult;
+import com.esadmin.util.NdjsonBulkBody;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
@@ -10,10 +12,6 @@ import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
@@ -61,6 +59,7 @@ public class ExcelImportService {
     private final JdbcTemplate jdbcTemplate;
     private final RestHighLevelClient esClient;
     private final ObjectMapper objectMapper;
+    private final EsBulkWriter bulkWriter;
     private final DataFormatter dataFormatter = new DataFormatter();
 
     private final Map<String, Map<String, String>> columnLabelCache = new ConcurrentHashMap<>();
@@ -68,10 +67,12 @@ public class ExcelImportService {
 
     public ExcelImportService(JdbcTemplate jdbcTemplate,
                               RestHighLevelClient esClient,
-                              ObjectMapper objectMapper) {
+                              ObjectMapper objectMapper,
+                              EsBulkWriter bulkWriter) {
         this.jdbcTemplate = jdbcTemplate;
         this.esClient = esClient;
         this.objectMapper = objectMapper;
+        this.bulkWriter = bulkWriter;
     }
 
     /**
@@ -1161,62 +1162,29 @@ public class ExcelImportService {
                            String tableName,
                            String displayName,
                            ExcelParsedData parsedData) {
-        BulkRequest bulkRequest = new BulkRequest();
-        bulkRequest.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
-
-        Map<String, String> labelMap = parsedData.getColumnLabelMap();
-        LocalDateTime now = LocalDateTime.now();
+        ExcelDocumentWriter documentWriter = new ExcelDocumentWriter(tableName, displayName, parsedData);
+        NdjsonBulkBody body = bulkWriter.acquire();
         int recordId = 1;
 
-        for (Map<String, String> row : parsedData.getRows()) {
-            Map<String, Object> doc = new LinkedHashMap<>();
-            doc.put("source_type", "excel");
-            doc.put("table_name", tableName);
-            doc.put("excel_name", displayName);
-            doc.put("sheet_name", parsedData.getSheetName());
-            doc.put("record_id", recordId);
-            doc.put("sync_time", now.format(ES_TIME_FORMATTER));
-
-            int primaryCounter = 0;
-            for (ExcelColumn column : parsedData.getColumns()) {
-                String columnName = column.getColumnName();
-                String header = column.getHeader();
-                String value = StringUtils.defaultString(row.get(columnName));
-
-                if (StringUtils.isBlank(value)) {
-                    continue;
-                }
-
-                if (isSystemField(header)) {
-                    // 避免覆盖系统字段
-                    header = header + "_字段";
+        try {
+            for (Map<String, String> row : parsedData.getRows()) {
+                int currentId = recordId;
+                body.addIndex(indexName, tableName + "-" + currentId,
+                        generator -> documentWriter.write(generator, row, currentId));
+
+                if (body.actionCount() >= ES_BATCH_SIZE) {
+                    executeBulk(body, "true");
+                    body.reset();
                 }
 
-                doc.put(header, value);
-
-                if (primaryCounter < 6) {
-                    doc.put("_primary_field_" + primaryCounter, header);
-                    doc.put("_primary_value_" + primaryCounter, value);
-                    primaryCounter++;
-                }
+                recordId++;
             }
 
-            doc.put("column_labels", labelMap);
-
-            bulkRequest.add(new IndexRequest(indexName)
-                    .id(tableName + "-" + recordId)
-                    .source(doc, XContentType.JSON));
-
-            if (bulkRequest.numberOfActions() >= ES_BATCH_SIZE) {
-                executeBulk(bulkRequest);
-                bulkRequest = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+            if (!body.isEmpty()) {
+                executeBulk(body, "true");
             }
-
-            recordId++;
-        }
-
-        if (bulkRequest.numberOfActions() > 0) {
-            executeBulk(bulkRequest);
+        } finally {
+            bulkWriter.release(body);
         }
     }
 
@@ -1224,8 +1192,7 @@ public class ExcelImportService {
      * 流式ES批量索引，适用于大数据量
      */
     private void streamingBulkIndex(String indexName, String tableName, String displayName, ExcelParsedData parsedData) {
-        Map<String, String> labelMap = parsedData.getColumnLabelMap();
-        LocalDateTime now = LocalDateTime.now();
+        ExcelDocumentWriter documentWriter = new ExcelDocumentWriter(tableName, displayName, parsedData);
         List<Map<String, String>> rows = parsedData.getRows();
         int totalRows = rows.size();
         int processedRows = 0;
@@ -1233,80 +1200,49 @@ public class ExcelImportService {
 
         log.info("开始流式ES索引，总行数: {}", totalRows);
 
-        for (int i = 0; i < totalRows; i += ES_BATCH_SIZE) {
-            int endIndex = Math.min(i + ES_BATCH_SIZE, totalRows);
-            List<Map<String, String>> batch = rows.subList(i, endIndex);
-            
-            BulkRequest bulkRequest = new BulkRequest();
-            bulkRequest.setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
-
-            for (Map<String, String> row : batch) {
-                Map<String, Object> doc = new LinkedHashMap<>();
-                doc.put("source_type", "excel");
-                doc.put("table_name", tableName);
-                doc.put("excel_name", displayName);
-                doc.put("sheet_name", parsedData.getSheetName());
-                doc.put("record_id", recordId);
-                doc.put("sync_time", now.format(ES_TIME_FORMATTER));
-
-                int primaryCounter = 0;
-                for (ExcelColumn column : parsedData.getColumns()) {
-                    String columnName = column.getColumnName();
-                    String header = column.getHeader();
-                    String value = StringUtils.defaultString(row.get(columnName));
-
-                    if (StringUtils.isBlank(value)) {
-                        continue;
-                    }
+        NdjsonBulkBody body = bulkWriter.acquire();
+        try {
+            for (int i = 0; i < totalRows; i += ES_BATCH_SIZE) {
+                int endIndex = Math.min(i + ES_BATCH_SIZE, totalRows);
+                List<Map<String, String>> batch = rows.subList(i, endIndex);
+
+                for (Map<String, String> row : batch) {
+                    int currentId = recordId;
+                    body.addIndex(indexName, tableName + "-" + currentId,
+                            generator -> documentWriter.write(generator, row, currentId));
+                    recordId++;
+                }
 
-                    if (isSystemField(header)) {
-                        header = header + "_字段";
-                    }
+                try {
+                    executeBulk(body, "wait_for");
+                    body.reset();
+                    processedRows += batch.size();
 
-                    doc.put(header, value);
+                    log.debug("流式ES索引进度: {}/{} 行 ({:.1f}%)",
+                        processedRows, totalRows, (double)processedRows / totalRows * 100);
 
-                    if (primaryCounter < 6) {
-                        doc.put("_primary_field_" + primaryCounter, header);
-                        doc.put("_primary_value_" + primaryCounter, value);
-                        primaryCounter++;
+                    // 定期释放内存
+                    if (processedRows % (ES_BATCH_SIZE * 5) == 0) {
+                        System.gc();
                     }
-                }
 
-                doc.put("column_labels", labelMap);
-
-                bulkRequest.add(new IndexRequest(indexName)
-                        .id(tableName + "-" + recordId)
-                        .source(doc, XContentType.JSON));
-                
-                recordId++;
-            }
-
-            try {
-                executeBulk(bulkRequest);
-                processedRows += batch.size();
-                
-                log.debug("流式ES索引进度: {}/{} 行 ({:.1f}%)", 
-                    processedRows, totalRows, (double)processedRows / totalRows * 100);
-                
-                // 定期释放内存
-                if (processedRows % (ES_BATCH_SIZE * 5) == 0) {
-                    System.gc();
+                } catch (Exception e) {
+                    log.error("流式ES索引失败: 批次 {}-{}", i, endIndex, e);
+                    throw new IllegalStateException("ES索引失败: " + e.getMessage());
                 }
-                
-            } catch (Exception e) {
-                log.error("流式ES索引失败: 批次 {}-{}", i, endIndex, e);
-                throw new IllegalStateException("ES索引失败: " + e.getMessage());
             }
+        } finally {
+            bulkWriter.release(body);
         }
 
         log.info("流式ES索引完成，总行数: {}", processedRows);
     }
 
-    private void executeBulk(BulkRequest bulkRequest) {
+    private void executeBulk(NdjsonBulkBody body, String refresh) {
         try {
-            BulkResponse response = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-            if (response.hasFailures()) {
-                throw new IllegalStateException("ES批量写入失败: " + response.buildFailureMessage());
+            EsBulkWriter.BulkResult result = bulkWriter.execute(body, null, refresh);
+            if (result.hasFailures()) {
+                throw new IllegalStateException("ES批量写入失败: " + result.buildFailureMessage(10));
             }
         } catch (Exception e) {
             log.error("ES批量写入失败", e);
@@ -1314,6 +1250,128 @@ public class ExcelImportService {
         }
     }
 
+    /**
+     * Excel行到ES文档的写出器：每次导入构建一次，列的目标字段名和 column_labels 的JSON
+     * 预先算好，逐行直接写入bulk请求体的生成器。表头有重复时保留原先 Map 覆盖的语义
+     */
+    private final class ExcelDocumentWriter {
+        private final String tableName;
+        private final String displayName;
+        private final String sheetName;
+        private final List<ExcelColumn> columns;
+        private final String[] fieldNames;
+        private final Map<String, String> labelMap;
+        private final String labelJson;
+        private final String syncTime;
+        private final boolean streamable;
+
+        private ExcelDocumentWriter(String tableName, String displayName, ExcelParsedData parsedData) {
+            this.tableName = tableName;
+            this.displayName = displayName;
+            this.sheetName = parsedData.getSheetName();
+            this.columns = parsedData.getColumns();
+            this.labelMap = parsedData.getColumnLabelMap();
+            this.syncTime = LocalDateTime.now().format(ES_TIME_FORMATTER);
+            this.fieldNames = new String[columns.size()];
+
+            Set<String> keys = new HashSet<>(Arrays.asList(
+                    "source_type", "table_name", "excel_name", "sheet_name", "record_id", "sync_time", "column_labels"));
+            for (int i = 0; i < 6; i++) {
+                keys.add("_primary_field_" + i);
+                keys.add("_primary_value_" + i);
+            }
+            boolean unique = true;
+            for (int i = 0; i < fieldNames.length; i++) {
+                String header = columns.get(i).getHeader();
+                if (isSystemField(header)) {
+                    // 避免覆盖系统字段
+                    header = header + "_字段";
+                }
+                fieldNames[i] = header;
+                unique &= keys.add(header);
+            }
+            this.streamable = unique;
+
+            String json;
+            try {
+                json = objectMapper.writeValueAsString(labelMap);
+            } catch (Exception e) {
+                throw new IllegalStateException("序列化列标签失败: " + e.getMessage());
+            }
+            this.labelJson = json;
+        }
+
+        private void write(JsonGenerator generator, Map<String, String> row, int recordId) throws IOException {
+            if (!streamable) {
+                generator.writeObject(buildMap(row, recordId));
+                return;
+            }
+
+            generator.writeStartObject();
+            generator.writeStringField("source_type", "excel");
+            generator.writeStringField("table_name", tableName);
+            generator.writeStringField("excel_name", displayName);
+            generator.writeStringField("sheet_name", sheetName);
+            generator.writeNumberField("record_id", recordId);
+            generator.writeStringField("sync_time", syncTime);
+
+            int primaryCounter = 0;
+            String[] primaryFields = new String[6];
+            String[] primaryValues = new String[6];
+            for (int i = 0; i < fieldNames.length; i++) {
+                String value = StringUtils.defaultString(row.get(columns.get(i).getColumnName()));
+                if (StringUtils.isBlank(value)) {
+                    continue;
+                }
+
+                generator.writeStringField(fieldNames[i], value);
+
+                if (primaryCounter < 6) {
+                    primaryFields[primaryCounter] = fieldNames[i];
+                    primaryValues[primaryCounter] = value;
+                    primaryCounter++;
+                }
+            }
+            for (int i = 0; i < primaryCounter; i++) {
+                generator.writeStringField("_primary_field_" + i, primaryFields[i]);
+                generator.writeStringField("_primary_value_" + i, primaryValues[i]);
+            }
+
+            generator.writeFieldName("column_labels");
+            generator.writeRawValue(labelJson);
+            generator.writeEndObject();
+        }
+
+        private Map<String, Object> buildMap(Map<String, String> row, int recordId) {
+            Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("source_type", "excel");
+            doc.put("table_name", tableName);
+            doc.put("excel_name", displayName);
+            doc.put("sheet_name", sheetName);
+            doc.put("record_id", recordId);
+            doc.put("sync_time", syncTime);
+
+            int primaryCounter = 0;
+            for (int i = 0; i < fieldNames.length; i++) {
+                String value = StringUtils.defaultString(row.get(columns.get(i).getColumnName()));
+                if (StringUtils.isBlank(value)) {
+                    continue;
+                }
+
+                doc.put(fieldNames[i], value);
+
+                if (primaryCounter < 6) {
+                    doc.put("_primary_field_" + primaryCounter, fieldNames[i]);
+                    doc.put("_primary_value_" + primaryCounter, value);
+                    primaryCounter++;
+                }
+            }
+
+            doc.put("column_labels", labelMap);
+            return doc;
+        }
+    }
+
     private void ensureMetadataTable() {
         if (checkTableExists(META_TABLE)) {
             return;
@@ -14,14 +14,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
 import java.math.BigInteger;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -36,10 +42,7 @@ public class FormDepartmentPermissionServiceUltra {
     private OrgDepartmentRepository departmentRepository;
 
     @Autowired
-    private FormService formService;
-
-    @Autowired
-    private ExcelImportService excelImportService;
+    private DataSourceCatalog dataSourceCatalog;
     
     @Autowired
     private PerformanceMonitor performanceMonitor;
@@ -47,6 +50,12 @@ public class FormDepartmentPermissionServiceUltra {
     @PersistenceContext
     private EntityManager entityManager;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** 当前权限矩阵，权限保存后或 PERMISSION_VERSION 变化时整体替换；版本即数据库中的版本号 */
+    private volatile PermissionMatrix permissionMatrix;
+
     /**
      * 超级优化的权限列表获取 - 分层缓存 + 延迟加载
      */
@@ -138,61 +147,28 @@ public class FormDepartmentPermissionServiceUltra {
     }
 
     /**
-     * 带缓存的表单获取
+     * 表单和Excel列表取自共享的数据源目录
      */
     private List<FormDto> loadAllForms() {
-        try {
-            List<FormDto> forms = formService.getAllForms();
-            if (forms != null) {
-                return forms;
-            }
-        } catch (Exception e) {
-            log.error("获取表单列表失败: {}", e.getMessage());
-        }
-        return Collections.emptyList();
+        return dataSourceCatalog.forms();
     }
 
     private List<ExcelImportMetadata> loadAllExcelImports() {
-        try {
-            List<ExcelImportMetadata> excelList = excelImportService.listImports();
-            if (excelList != null) {
-                return excelList;
-            }
-        } catch (Exception e) {
-            log.error("获取Excel列表失败: {}", e.getMessage());
-        }
-        return Collections.emptyList();
+        return dataSourceCatalog.excelImports();
     }
 
     private Optional<FormDto> findFormById(String formId) {
         if (StringUtils.isBlank(formId)) {
             return Optional.empty();
         }
-        try {
-            return Optional.ofNullable(formService.getFormById(formId));
-        } catch (Exception e) {
-            log.error("根据ID获取表单失败: {}", formId, e);
-            return Optional.empty();
-        }
+        return Optional.ofNullable(dataSourceCatalog.form(formId));
     }
 
     private Optional<ExcelImportMetadata> findExcelByTableName(String tableName) {
         if (StringUtils.isBlank(tableName)) {
             return Optional.empty();
         }
-        try {
-            List<ExcelImportMetadata> excelList = excelImportService.listImports();
-            if (excelList == null) {
-                return Optional.empty();
-            }
-            return excelList.stream()
-                    .filter(Objects::nonNull)
-                    .filter(excel -> tableName.equalsIgnoreCase(excel.getTableName()))
-                    .findFirst();
-        } catch (Exception e) {
-            log.error("根据表名获取Excel数据源失败: {}", tableName, e);
-            return Optional.empty();
-        }
+        return Optional.ofNullable(dataSourceCatalog.excelByTable(tableName));
     }
 
     private Optional<SourceMetadata> resolveSourceMetadata(String sourceType, String sourceId) {
@@ -329,6 +305,7 @@ public class FormDepartmentPermissionServiceUltra {
      * 清除内存缓存
      */
     public void clearAllCaches() {
+        reloadPermissionMatrix();
         log.info("已清除权限相关缓存");
     }
 
@@ -433,6 +410,7 @@ public class FormDepartmentPermissionServiceUltra {
 
     @Transactional
     public void saveSourcePermissions(String sourceType, String sourceId, List<String> departmentIds, Long creatorId) {
+        markPermissionsChanged();
         log.info("[Permission] 开始保存权限: sourceType={}, sourceId={}, departments={}, creatorId={}",
                 sourceType, sourceId, departmentIds, creatorId);
         SourceMetadata sourceMetadata = resolveSourceMetadataOrDefault(sourceType, sourceId);
@@ -476,49 +454,157 @@ public class FormDepartmentPermissionServiceUltra {
         if (sourceType == null || sourceId == null || departmentId == null) {
             return false;
         }
-
-        String deptKey = String.valueOf(departmentId);
-        boolean hasAnyPermission = permissionRepository.hasAnyPermissionForSource(sourceType, sourceId);
-        if (!hasAnyPermission) {
-            return true;
-        }
-
-        return permissionRepository.hasPermission(sourceType, sourceId, deptKey);
+        return isAccessible(String.valueOf(departmentId), sourceType, sourceId);
     }
 
     @Transactional
     public void removeSourcePermissions(String sourceType, String sourceId) {
         permissionRepository.deleteBySource(sourceType, sourceId);
+        markPermissionsChanged();
+    }
+
+    /**
+     * 部门能否访问该数据源（数据源未配置部门限制时所有部门可访问）
+     */
+    public boolean isAccessible(String departmentId, String sourceType, String sourceId) {
+        return permissionMatrix().isAccessible(departmentId, buildSourceKey(sourceType, sourceId));
+    }
+
+    /**
+     * 部门可访问的数据源ID列表（表单为表单ID，Excel 为 "excel:索引名"），只读。
+     * 结果缓存在当前权限矩阵上，权限变化或数据源目录版本变化后重新计算
+     */
+    public List<String> getAccessibleSourceIds(String departmentId) {
+        PermissionMatrix matrix = permissionMatrix();
+        long catalogVersion = dataSourceCatalog.version();
+        List<String> cached = matrix.cachedAccessible(departmentId, catalogVersion);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<String> accessible = new ArrayList<>();
+        for (FormDto form : dataSourceCatalog.forms()) {
+            if (matrix.isAccessible(departmentId, buildSourceKey("form", form.getId()))) {
+                accessible.add(form.getId());
+            }
+        }
+        for (ExcelImportMetadata excel : dataSourceCatalog.excelImports()) {
+            if (StringUtils.isAnyBlank(excel.getTableName(), excel.getIndexName())) {
+                continue;
+            }
+            if (matrix.isAccessible(departmentId, buildSourceKey("excel", excel.getTableName()))) {
+                accessible.add("excel:" + excel.getIndexName());
+            }
+        }
+        return matrix.cacheAccessible(departmentId, catalogVersion, accessible);
     }
 
-    public PermissionMatrix buildPermissionMatrix(String departmentId) {
-        Set<String> restrictedKeys = new HashSet<>();
+    /**
+     * 权限矩阵状态：版本、数据源数、部门数
+     */
+    public Map<String, Object> getPermissionMatrixStatus() {
+        PermissionMatrix matrix = permissionMatrix();
+        Map<String, Object> status = new HashMap<>();
+        status.put("version", matrix.version());
+        status.put("restricted_sources", matrix.sourceCount());
+        status.put("departments", matrix.departmentCount());
+        status.put("built_at", matrix.builtAt());
+        return status;
+    }
+
+    /**
+     * 当前权限矩阵；只在首次使用时同步加载，之后由 {@link #checkPermissionVersion()} 在后台按版本号重新加载
+     */
+    private PermissionMatrix permissionMatrix() {
+        PermissionMatrix current = permissionMatrix;
+        return current != null ? current : reloadPermissionMatrix();
+    }
+
+    /**
+     * 后台比对 PERMISSION_VERSION，其他实例保存权限后在一个检查周期内重新加载
+     */
+    @Scheduled(fixedDelayString = "${app.search.permission-matrix.version-check-seconds:5}",
+            initialDelayString = "${app.search.permission-matrix.version-check-seconds:5}", timeUnit = TimeUnit.SECONDS)
+    public void checkPermissionVersion() {
+        PermissionMatrix current = permissionMatrix;
+        if (current == null) {
+            return;
+        }
+        Long version = readPermissionVersion();
+        if (version != null && version != current.version()) {
+            log.info("部门权限版本变化: {} -> {}，重新加载权限矩阵", current.version(), version);
+            reloadPermissionMatrix();
+        }
+    }
+
+    /**
+     * 整表编译权限矩阵并替换；加载失败时保留旧矩阵，没有旧矩阵时本次按无部门限制处理，下次调用重试
+     */
+    private synchronized PermissionMatrix reloadPermissionMatrix() {
+        PermissionMatrix previous = permissionMatrix;
+        Long dbVersion = readPermissionVersion();
+        long version = dbVersion != null ? dbVersion : -1;
         try {
-            List<String> restrictedList = permissionRepository.findAllRestrictedSourceKeys();
-            if (restrictedList != null) {
-                restrictedList.stream()
-                        .filter(StringUtils::isNotBlank)
-                        .forEach(key -> restrictedKeys.add(key.trim()));
+            long start = System.currentTimeMillis();
+            PermissionMatrix.Builder builder = new PermissionMatrix.Builder();
+            for (Object[] row : permissionRepository.findActiveSourceDepartmentPairs()) {
+                String sourceType = row[0] != null ? row[0].toString() : null;
+                String sourceId = row[1] != null ? row[1].toString().trim() : null;
+                String departmentId = row[2] != null ? row[2].toString().trim() : null;
+                if (StringUtils.isAnyBlank(sourceType, sourceId)) {
+                    continue;
+                }
+                builder.add(buildSourceKey(sourceType, sourceId), StringUtils.defaultIfBlank(departmentId, null));
             }
+            PermissionMatrix matrix = builder.build(version);
+            permissionMatrix = matrix;
+            log.info("权限矩阵加载完成: 版本={}, 受限数据源 {} 个, 部门 {} 个, 耗时 {} ms", version,
+                    matrix.sourceCount(), matrix.departmentCount(), System.currentTimeMillis() - start);
+            return matrix;
         } catch (Exception e) {
-            log.warn("加载受限数据源列表失败", e);
+            log.error("加载权限矩阵失败", e);
+            return previous != null ? previous : PermissionMatrix.empty(0);
         }
+    }
 
-        Set<String> allowedKeys = new HashSet<>();
-        if (departmentId != null) {
-            try {
-                List<String> allowedList = permissionRepository.findActiveSourceKeysByDepartment(departmentId);
-                if (allowedList != null) {
-                    allowedList.stream()
-                            .filter(StringUtils::isNotBlank)
-                            .forEach(key -> allowedKeys.add(key.trim()));
-                }
-            } catch (Exception e) {
-                log.warn("加载部门{}的数据源权限失败", departmentId, e);
+    /**
+     * 保存或删除权限时在同一事务中把版本号加一，事务提交后重新加载本实例的权限矩阵
+     */
+    private void markPermissionsChanged() {
+        try {
+            int updated = jdbcTemplate.update(
+                    "UPDATE PERMISSION_VERSION SET VERSION = VERSION + 1, UPDATE_TIME = ? WHERE ID = 1",
+                    new Timestamp(System.currentTimeMillis()));
+            if (updated == 0) {
+                jdbcTemplate.update("INSERT INTO PERMISSION_VERSION (ID, VERSION, UPDATE_TIME) VALUES (1, 1, ?)",
+                        new Timestamp(System.currentTimeMillis()));
             }
+        } catch (Exception e) {
+            log.warn("更新部门权限版本号失败，其他实例要到版本再次变化后才能看到本次修改: {}", e.getMessage());
         }
+        reloadPermissionMatrixAfterCommit();
+    }
 
-        return new PermissionMatrix(allowedKeys, restrictedKeys);
+    private Long readPermissionVersion() {
+        try {
+            return jdbcTemplate.queryForObject("SELECT VERSION FROM PERMISSION_VERSION WHERE ID = 1", Long.class);
+        } catch (Exception e) {
+            log.debug("读取部门权限版本号失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void reloadPermissionMatrixAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reloadPermissionMatrix();
+                }
+            });
+        } else {
+            reloadPermissionMatrix();
+        }
     }
 
     public List<FormDepartmentPermissionDto> searchPermissions(String keyword) {
@@ -537,24 +623,6 @@ public class FormDepartmentPermissionServiceUltra {
     }
 }
 
-class PermissionMatrix {
-    private final Set<String> allowedSourceKeys;
-    private final Set<String> restrictedSourceKeys;
-
-    PermissionMatrix(Set<String> allowedSourceKeys, Set<String> restrictedSourceKeys) {
-        this.allowedSourceKeys = allowedSourceKeys != null ? allowedSourceKeys : Collections.emptySet();
-        this.restrictedSourceKeys = restrictedSourceKeys != null ? restrictedSourceKeys : Collections.emptySet();
-    }
-
-    boolean isRestricted(String key) {
-        return key != null && restrictedSourceKeys.contains(key);
-    }
-
-    boolean isAllowed(String key) {
-        return key != null && allowedSourceKeys.contains(key);
-    }
-}
-
 class SourceMetadata {
     private final String sourceType;
     private final String sourceId;
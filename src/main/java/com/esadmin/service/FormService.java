@@ -3,6 +3,7 @@ package com.esadmin.service;
 import com.esadmin.dto.FormDto;
 import com.esadmin.entity.FormDefinition;
 import com.esadmin.repository.FormDefinitionRepository;
+import com.esadmin.util.CompactRow;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
@@ -11,12 +12,19 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 import org.springframework.dao.DataAccessResourceFailureException;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 public class FormService {
@@ -27,6 +35,9 @@ public class FormService {
     private final ObjectMapper objectMapper;
     private final JdbcTemplate jdbcTemplate;
     
+    @Value("${app.sync.db-fetch-size:1000}")
+    private int dbFetchSize;
+    
     public FormService(FormDefinitionRepository formRepository, ObjectMapper objectMapper, JdbcTemplate jdbcTemplate) {
         this.formRepository = formRepository;
         this.objectMapper = objectMapper;
@@ -224,96 +235,104 @@ public class FormService {
         }
     }
 
-    public List<Map<String, Object>> getTableDataBatch(String tableName, int limit, int offset, LocalDateTime modifyDateAfter) {
-        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName);
+    /**
+     * 流式读取基于最小ID的数据批次，逐行回调，不在内存中保留整批数据；返回读取行数
+     */
+    public int streamTableDataBatchByMinId(String tableName, int limit, Long minId, Consumer<CompactRow> consumer) {
         List<Object> params = new ArrayList<>();
+        String sql = buildMinIdCursorSql(tableName, limit, minId, params);
+        return streamRows(sql, params.toArray(), consumer);
+    }
 
-        if (modifyDateAfter != null) {
-            sql.append(" WHERE modify_date >= ?");
-            params.add(modifyDateAfter);
+    private String buildMinIdCursorSql(String tableName, int limit, Long minId, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName);
+        if (minId != null) {
+            sql.append(" WHERE ID > ?");
+            params.add(minId);
         }
-
-        sql.append(" ORDER BY ID LIMIT ? OFFSET ?");
+        // 不使用OFFSET，纯游标分页
+        sql.append(" ORDER BY ID LIMIT ?");
         params.add(limit);
-        params.add(offset);
+        return sql.toString();
+    }
+    
+    /**
+     * 在ID区间 (minIdExclusive, maxIdInclusive] 内按ID游标流式读取数据批次（用于分区并行全量同步），
+     * 逐行回调并返回读取行数；查询失败直接抛出，由调用方将分片标记为失败
+     */
+    public int streamTableDataBatchByIdRange(String tableName, int limit, long minIdExclusive, long maxIdInclusive,
+                                             Consumer<CompactRow> consumer) {
+        String sql = "SELECT * FROM " + tableName + " WHERE ID > ? AND ID <= ? ORDER BY ID LIMIT ?";
+        return streamRows(sql, new Object[]{minIdExclusive, maxIdInclusive, limit}, consumer);
+    }
 
+    /**
+     * 获取表的ID范围，返回 [minId, maxId]；空表返回null
+     */
+    public long[] getTableIdRange(String tableName) {
         try {
-            return jdbcTemplate.queryForList(sql.toString(), params.toArray());
+            Map<String, Object> row = jdbcTemplate.queryForMap("SELECT MIN(ID) AS MIN_ID, MAX(ID) AS MAX_ID FROM " + tableName);
+            Object minObj = row.get("MIN_ID");
+            Object maxObj = row.get("MAX_ID");
+            if (minObj == null || maxObj == null) {
+                return null;
+            }
+            return new long[]{((Number) minObj).longValue(), ((Number) maxObj).longValue()};
         } catch (Exception e) {
-            log.error("获取表数据失败: " + e.getMessage());
-            return new ArrayList<>();
+            log.error("获取表ID范围失败: tableName={}", tableName, e);
+            return null;
         }
     }
-    
+
     /**
-     * 基于最小ID获取数据批次（用于ES增量同步）
+     * 获取表中按 (modify_date, ID) 排序的最后一条记录，返回含 MODIFY_DATE、RECORD_ID 的Map；空表或查询失败返回null
      */
-    public List<Map<String, Object>> getTableDataBatchByMinId(String tableName, int limit, int offset, Long minId) {
-        log.debug("getTableDataBatchByMinId调用：tableName={}, limit={}, offset={}, minId={}", tableName, limit, offset, minId);
-        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName);
-        List<Object> params = new ArrayList<>();
-        
-        if (minId != null) {
-            log.debug("minId不为null，添加WHERE条件：minId={}", minId);
-            sql.append(" WHERE ID > ?");
-            params.add(minId);
-        } else {
-            log.debug("minId为null，跳过WHERE条件");
+    public Map<String, Object> getLatestModifyCursor(String tableName) {
+        String sql = "SELECT modify_date AS MODIFY_DATE, ID AS RECORD_ID FROM " + tableName
+                + " WHERE modify_date IS NOT NULL ORDER BY modify_date DESC, ID DESC LIMIT 1";
+        try {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql);
+            return rows.isEmpty() ? null : rows.get(0);
+        } catch (Exception e) {
+            log.warn("获取表最新修改游标失败: tableName={}, 原因={}", tableName, e.getMessage());
+            return null;
         }
-        
-        sql.append(" ORDER BY ID LIMIT ?");
-        params.add(limit);
-        // 不使用OFFSET，纯游标分页
-        
+    }
+
+    /**
+     * 按ID分位数切分表，返回每个分片的ID上界（升序，最后一个为MAX(ID)）
+     * 使用NTILE在ID索引上扫描一次，数据分布不均时比MIN/MAX等分更均衡
+     */
+    public List<Long> getTableIdQuantiles(String tableName, int buckets) {
+        String sql = "SELECT MAX(ID) AS UPPER_ID FROM (SELECT ID, NTILE(" + Math.max(1, buckets) + ") OVER (ORDER BY ID) AS BUCKET FROM "
+                + tableName + ") t GROUP BY BUCKET ORDER BY UPPER_ID";
         try {
-            log.debug("执行SQL: {}, 参数: {}", sql.toString(), params);
-            List<Map<String, Object>> result = jdbcTemplate.queryForList(sql.toString(), params.toArray());
-            log.debug("查询结果: {} 条记录", result.size());
-            if (!result.isEmpty()) {
-                log.debug("第一条记录ID: {}, 最后一条记录ID: {}", 
-                    result.get(0).get("ID"), result.get(result.size()-1).get("ID"));
+            List<Long> bounds = new ArrayList<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList(sql)) {
+                Object upper = row.get("UPPER_ID");
+                if (upper instanceof Number) {
+                    bounds.add(((Number) upper).longValue());
+                }
             }
-            return result;
+            return bounds;
         } catch (Exception e) {
-            log.error("基于ID获取表数据失败: " + e.getMessage());
+            log.warn("按分位数切分表失败，将使用MIN/MAX等分: tableName={}, 原因={}", tableName, e.getMessage());
             return new ArrayList<>();
         }
     }
-    
+
     /**
-     * 基于修改时间和记录ID的安全增量查询（避免同一时间多条记录丢失）
+     * 表中是否有该列（查数据字典），查询失败返回 false
      */
-    public List<Map<String, Object>> getTableDataBatchSafeIncremental(String tableName, int limit, int offset, 
-                                                                      LocalDateTime lastModifyDate, Long lastRecordId) {
-        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName);
-        List<Object> params = new ArrayList<>();
-
-        if (lastModifyDate != null && lastRecordId != null) {
-            // 使用安全的增量查询条件：
-            // WHERE modify_date > lastModifyDate OR (modify_date = lastModifyDate AND id > lastRecordId)
-            sql.append(" WHERE modify_date > ? OR (modify_date = ? AND ID > ?)");
-            params.add(lastModifyDate);
-            params.add(lastModifyDate);
-            params.add(lastRecordId);
-        } else if (lastModifyDate != null) {
-            // 如果只有时间没有ID，使用 >= 避免丢失同一时间的记录
-            sql.append(" WHERE modify_date >= ?");
-            params.add(lastModifyDate);
-        }
-
-        // 按时间和ID排序确保顺序稳定
-        sql.append(" ORDER BY modify_date, ID LIMIT ? OFFSET ?");
-        params.add(limit);
-        params.add(offset);
-
+    public boolean hasColumn(String tableName, String columnName) {
         try {
-            List<Map<String, Object>> result = jdbcTemplate.queryForList(sql.toString(), params.toArray());
-            log.debug("安全增量查询: 表={}, 条件时间={}, 条件ID={}, 返回记录数={}", 
-                     tableName, lastModifyDate, lastRecordId, result.size());
-            return result;
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM USER_TAB_COLUMNS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?",
+                    Integer.class, tableName.toUpperCase(), columnName.toUpperCase());
+            return count != null && count > 0;
         } catch (Exception e) {
-            log.error("安全增量获取表数据失败: " + e.getMessage());
-            return new ArrayList<>();
+            log.warn("查询表 {} 的列 {} 失败: {}", tableName, columnName, e.getMessage());
+            return false;
         }
     }
 
@@ -432,6 +451,26 @@ public class FormService {
         }
     }
     
+    /**
+     * 确保表的某一列有索引（如附表的主表外键列，按主表ID批量读取附表行时使用）
+     */
+    public boolean ensureColumnIndex(String tableName, String columnName) {
+        String indexName = "IDX_" + tableName + "_" + columnName.toUpperCase();
+        try {
+            Integer indexCount = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM USER_INDEXES WHERE INDEX_NAME = ? AND TABLE_NAME = ?",
+                    Integer.class, indexName, tableName.toUpperCase());
+            if (indexCount == null || indexCount == 0) {
+                jdbcTemplate.execute("CREATE INDEX " + indexName + " ON " + tableName + " (" + columnName + ")");
+                log.info("成功为表 {} 的 {} 字段创建索引: {}", tableName, columnName, indexName);
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("为表 {} 的 {} 字段创建索引失败", tableName, columnName, e);
+            return false;
+        }
+    }
+
     /**
      * 为表单表创建增量同步所需的索引
      */
@@ -472,12 +511,33 @@ public class FormService {
     }
     
     /**
-     * 高效的增量查询 - 使用游标分页避免大OFFSET
+     * 流式增量查询，逐行回调；返回读取行数
      */
-    public List<Map<String, Object>> getTableDataIncrementalCursor(String tableName, int limit, 
-                                                                   LocalDateTime lastModifyDate, Long lastId) {
-        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName);
+    public int streamTableDataIncrementalCursor(String tableName, int limit, LocalDateTime lastModifyDate,
+                                                Long lastId, Consumer<CompactRow> consumer) {
+        List<Object> params = new ArrayList<>();
+        String sql = buildIncrementalCursorSql(tableName, limit, lastModifyDate, lastId, params);
+        return streamRows(sql, params.toArray(), consumer);
+    }
+
+    /**
+     * 流式增量查询，只读取指定列（如附表的 ID、modify_date 和主表外键）；返回读取行数
+     */
+    public int streamColumnsIncrementalCursor(String tableName, String columns, int limit, LocalDateTime lastModifyDate,
+                                              Long lastId, Consumer<CompactRow> consumer) {
         List<Object> params = new ArrayList<>();
+        String sql = buildIncrementalCursorSql(tableName, columns, limit, lastModifyDate, lastId, params);
+        return streamRows(sql, params.toArray(), consumer);
+    }
+
+    private String buildIncrementalCursorSql(String tableName, int limit, LocalDateTime lastModifyDate,
+                                             Long lastId, List<Object> params) {
+        return buildIncrementalCursorSql(tableName, "*", limit, lastModifyDate, lastId, params);
+    }
+
+    private String buildIncrementalCursorSql(String tableName, String columns, int limit, LocalDateTime lastModifyDate,
+                                             Long lastId, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT " + columns + " FROM " + tableName);
         
         if (lastModifyDate != null) {
             if (lastId != null) {
@@ -496,31 +556,109 @@ public class FormService {
         // 重要：按组合索引顺序排序，确保能使用索引
         sql.append(" ORDER BY modify_date, ID LIMIT ?");
         params.add(limit);
-        
-        try {
-            return jdbcTemplate.queryForList(sql.toString(), params.toArray());
-        } catch (Exception e) {
-            log.error("增量查询失败: tableName={}, lastModifyDate={}, lastId={}", 
-                    tableName, lastModifyDate, lastId, e);
-            return new ArrayList<>();
+        return sql.toString();
+    }
+
+    /**
+     * 流式执行查询：基于RowCallbackHandler逐行回调紧凑行，列元数据每次查询只解析一次
+     */
+    public int streamRows(String sql, Object[] params, Consumer<CompactRow> consumer) {
+        CompactRowHandler handler = new CompactRowHandler(consumer);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Math.max(1, dbFetchSize));
+            new ArgumentPreparedStatementSetter(params).setValues(ps);
+            return ps;
+        }, handler);
+        return handler.rowCount;
+    }
+
+    private static final class CompactRowHandler implements RowCallbackHandler {
+        private final Consumer<CompactRow> consumer;
+        private CompactRow.Columns columns;
+        private int rowCount;
+
+        private CompactRowHandler(Consumer<CompactRow> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (columns == null) {
+                columns = CompactRow.Columns.of(rs.getMetaData());
+            }
+            consumer.accept(CompactRow.read(rs, columns));
+            rowCount++;
         }
     }
     
     /**
-     * 无索引增量同步：基于ES已同步ID集合的差集查询
-     * 适用于大表无modify_date索引的场景
+     * 按ID游标获取下一页ID（只读ID列，走主键索引），返回升序数组；查询失败抛出异常
      */
-    public List<Map<String, Object>> getTableDataByIdBatch(String tableName, int limit, int offset) {
-        String sql = "SELECT * FROM " + tableName + " ORDER BY ID LIMIT ? OFFSET ?";
-        
-        try {
-            return jdbcTemplate.queryForList(sql, limit, offset);
-        } catch (Exception e) {
-            log.error("按ID批量查询失败: tableName={}, limit={}, offset={}", tableName, limit, offset, e);
-            return new ArrayList<>();
+    public long[] getTableIdsAfter(String tableName, Long afterId, int limit) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ID FROM " + tableName);
+        if (afterId != null) {
+            sql.append(" WHERE ID > ?");
+            params.add(afterId);
         }
+        sql.append(" ORDER BY ID LIMIT ?");
+        params.add(limit);
+
+        long[] ids = new long[limit];
+        int[] count = {0};
+        jdbcTemplate.query(sql.toString(), rs -> {
+            if (count[0] < ids.length) {
+                ids[count[0]++] = rs.getLong(1);
+            }
+        }, params.toArray());
+        return count[0] == ids.length ? ids : Arrays.copyOf(ids, count[0]);
     }
-    
+
+    /**
+     * 返回给定ID中在表里仍存在的ID；查询失败抛出异常
+     */
+    public Set<Long> getExistingIds(String tableName, Collection<Long> ids) {
+        Set<Long> existing = new HashSet<>();
+        if (ids == null || ids.isEmpty()) {
+            return existing;
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        jdbcTemplate.query("SELECT ID FROM " + tableName + " WHERE ID IN (" + placeholders + ")",
+                rs -> {
+                    existing.add(rs.getLong(1));
+                }, ids.toArray());
+        return existing;
+    }
+
+    /**
+     * 流式读取 column 取值在 values 中的整行，按 (column, ID) 排序；IN 列表每 chunkSize 个值一次查询，
+     * 查询失败抛出异常。用于按主表ID读取主表行、按外键读取附表行
+     */
+    public void streamTableDataByColumnValues(String tableName, String column, Collection<Long> values,
+                                              int chunkSize, Consumer<CompactRow> consumer) {
+        streamColumnsByColumnValues(tableName, "*", column, values, chunkSize, consumer);
+    }
+
+    /**
+     * 与 {@link #streamTableDataByColumnValues} 相同，只读取指定列
+     */
+    public void streamColumnsByColumnValues(String tableName, String columns, String column, Collection<Long> values,
+                                            int chunkSize, Consumer<CompactRow> consumer) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        List<Long> list = values instanceof List ? (List<Long>) values : new ArrayList<>(values);
+        int step = Math.max(1, chunkSize);
+        for (int from = 0; from < list.size(); from += step) {
+            List<Long> chunk = list.subList(from, Math.min(list.size(), from + step));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            String orderBy = "ID".equalsIgnoreCase(column) ? "ID" : column + ", ID";
+            streamRows("SELECT " + columns + " FROM " + tableName + " WHERE " + column + " IN (" + placeholders + ") ORDER BY " + orderBy,
+                    chunk.toArray(), consumer);
+        }
+    }
+
     /**
      * 获取表的总记录数
      */
@@ -536,21 +674,17 @@ public class FormService {
     }
     
     /**
-     * 根据ID列表查询特定记录（用于检查更新）
+     * 数据字典中各表的统计行数（表名大写 → NUM_ROWS），用于同步调度排序；未收集统计的表不在结果中
      */
-    public List<Map<String, Object>> getTableDataByIds(String tableName, List<Long> ids) {
-        if (ids == null || ids.isEmpty()) {
-            return new ArrayList<>();
-        }
-        
+    public Map<String, Long> getTableRowEstimates() {
+        Map<String, Long> estimates = new HashMap<>();
         try {
-            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
-            String sql = "SELECT * FROM " + tableName + " WHERE ID IN (" + placeholders + ")";
-            
-            return jdbcTemplate.queryForList(sql, ids.toArray());
+            jdbcTemplate.query("SELECT TABLE_NAME, NUM_ROWS FROM USER_TABLES WHERE NUM_ROWS IS NOT NULL", rs -> {
+                estimates.put(rs.getString(1).toUpperCase(), rs.getLong(2));
+            });
         } catch (Exception e) {
-            log.error("根据ID列表查询失败: tableName={}, ids={}", tableName, ids, e);
-            return new ArrayList<>();
+            log.warn("读取表统计行数失败: {}", e.getMessage());
         }
+        return estimates;
     }
 }
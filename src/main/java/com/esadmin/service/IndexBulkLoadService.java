@@ -0,0 +1,347 @@
+package com.esadmin.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpEntity;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetMappingsRequest;
+import org.elasticsearch.client.indices.GetMappingsResponse;
+import org.elasticsearch.client.indices.PutMappingRequest;
+import org.elasticsearch.cluster.metadata.MappingMetadata;
+import org.elasticsearch.common.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 全量同步的批量导入模式：同步期间把索引的 refresh_interval 设为 -1、副本数设为 0，
+ * 结束后恢复原设置、执行一次 refresh，并可选地 force-merge 到目标段数。
+ * <p>
+ * 原设置同时记录在索引 mapping 的 _meta.bulk_load 中，进程在同步中途退出时，
+ * 下次启动会按该记录恢复，不会让索引一直停留在不刷新、无副本的状态。
+ */
+@Service
+public class IndexBulkLoadService implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexBulkLoadService.class);
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+    /** _meta 中表示原值未显式设置（使用ES默认值） */
+    private static final String DEFAULT_VALUE = "default";
+
+    private final RestHighLevelClient esClient;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int forceMergeSegments;
+
+    /**
+     * 同一索引可能被多个同步任务同时使用，只在第一个进入时切换、最后一个退出时恢复。
+     * 每个索引一把锁，切换和恢复设置的ES请求只阻塞同一索引的进入和退出
+     */
+    private final Map<String, IndexState> states = new ConcurrentHashMap<>();
+
+    public IndexBulkLoadService(RestHighLevelClient esClient,
+                                ObjectMapper objectMapper,
+                                @Value("${app.sync.bulk-load.enabled:true}") boolean enabled,
+                                @Value("${app.sync.bulk-load.force-merge-segments:0}") int forceMergeSegments) {
+        this.esClient = esClient;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.forceMergeSegments = forceMergeSegments;
+    }
+
+    /**
+     * 进入批量导入模式，返回的句柄关闭时恢复设置；切换失败时按普通模式继续同步
+     */
+    public BulkLoad enter(String indexName) {
+        if (!enabled) {
+            return new BulkLoad(indexName, false);
+        }
+
+        while (true) {
+            IndexState state = states.computeIfAbsent(indexName, key -> new IndexState());
+            synchronized (state) {
+                if (state.retired) {
+                    // 最后一个使用者刚退出并移除了该状态，重新取
+                    continue;
+                }
+                if (state.count > 0) {
+                    state.count++;
+                    return new BulkLoad(indexName, true);
+                }
+
+                try {
+                    // 上次异常退出留下的标记里才是真正的原设置，当前值已是 -1 / 0
+                    Map<String, Object> original = readMarker(indexName);
+                    if (original == null) {
+                        original = readOriginalSettings(indexName);
+                    }
+                    writeMarker(indexName, original, true);
+                    updateSettings(indexName, "-1", "0");
+                    state.count = 1;
+                    log.info("索引 {} 进入批量导入模式: 原 refresh_interval={}, number_of_replicas={}",
+                            indexName, original.get("refresh_interval"), original.get("number_of_replicas"));
+                    return new BulkLoad(indexName, true);
+                } catch (Exception e) {
+                    log.warn("索引 {} 切换批量导入模式失败，按普通模式同步", indexName, e);
+                    restoreQuietly(indexName);
+                    retire(indexName, state);
+                    return new BulkLoad(indexName, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 启动时恢复上次中途退出、仍处于批量导入模式的索引
+     */
+    @Override
+    public void run(String... args) {
+        try {
+            Request request = new Request("GET", "/form_*/_settings/" + REFRESH_INTERVAL);
+            request.addParameter("filter_path", "*.settings.index.refresh_interval");
+            request.addParameter("ignore_unavailable", "true");
+            // 构建中的版本索引为隐藏索引
+            request.addParameter("expand_wildcards", "all");
+            Map<String, Object> response = readJson(esClient.getLowLevelClient().performRequest(request).getEntity());
+
+            for (Map.Entry<String, Object> entry : response.entrySet()) {
+                Object value = nested(entry.getValue(), "settings", "index", "refresh_interval");
+                if ("-1".equals(String.valueOf(value)) && readMarker(entry.getKey()) != null) {
+                    log.warn("索引 {} 上次同步未正常结束，恢复批量导入前的设置", entry.getKey());
+                    restoreQuietly(entry.getKey());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("检查未恢复的批量导入索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 退出批量导入模式。discard 表示该索引随后会被删除（失败的全量同步丢弃新一代索引），
+     * 最后一个使用者退出时只清除标记，不再恢复设置、刷新或 force-merge
+     */
+    private void exit(String indexName, boolean discard) {
+        IndexState state = states.get(indexName);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.discarded |= discard;
+            if (--state.count > 0) {
+                return;
+            }
+            if (state.discarded) {
+                clearMarkerQuietly(indexName);
+            } else {
+                restoreQuietly(indexName);
+            }
+            retire(indexName, state);
+        }
+        if (state.discarded) {
+            return;
+        }
+
+        try {
+            esClient.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            log.warn("刷新索引失败: {}", indexName, e);
+        }
+
+        if (forceMergeSegments > 0) {
+            forceMerge(indexName);
+        }
+    }
+
+    /**
+     * 在持有 state 锁时调用：之后等待该锁的进入方会重新创建状态
+     */
+    private void retire(String indexName, IndexState state) {
+        state.retired = true;
+        states.remove(indexName, state);
+    }
+
+    /**
+     * 按 _meta 中记录的原设置恢复，并清除标记
+     */
+    private void restoreQuietly(String indexName) {
+        try {
+            Map<String, Object> marker = readMarker(indexName);
+            if (marker == null) {
+                return;
+            }
+            updateSettings(indexName,
+                    String.valueOf(marker.get("refresh_interval")),
+                    String.valueOf(marker.get("number_of_replicas")));
+            writeMarker(indexName, marker, false);
+            log.info("索引 {} 已恢复批量导入前的设置: refresh_interval={}, number_of_replicas={}",
+                    indexName, marker.get("refresh_interval"), marker.get("number_of_replicas"));
+        } catch (Exception e) {
+            log.error("恢复索引 {} 的设置失败，将在下次启动时重试", indexName, e);
+        }
+    }
+
+    /**
+     * 只清除 _meta 中的批量导入标记，不恢复设置（索引即将删除）
+     */
+    private void clearMarkerQuietly(String indexName) {
+        try {
+            Map<String, Object> marker = readMarker(indexName);
+            if (marker != null) {
+                writeMarker(indexName, marker, false);
+            }
+            log.info("索引 {} 将被丢弃，退出批量导入模式时跳过恢复设置和 force-merge", indexName);
+        } catch (Exception e) {
+            log.warn("清除索引 {} 的批量导入标记失败: {}", indexName, e.getMessage());
+        }
+    }
+
+    /**
+     * 后台 force-merge，不等待完成（大索引可能持续数分钟）
+     */
+    private void forceMerge(String indexName) {
+        try {
+            Request request = new Request("POST", "/" + indexName + "/_forcemerge");
+            request.addParameter("max_num_segments", String.valueOf(forceMergeSegments));
+            request.addParameter("wait_for_completion", "false");
+            esClient.getLowLevelClient().performRequest(request);
+            log.info("索引 {} 已提交 force-merge，目标段数 {}", indexName, forceMergeSegments);
+        } catch (Exception e) {
+            log.warn("索引 {} force-merge 提交失败", indexName, e);
+        }
+    }
+
+    private Map<String, Object> readOriginalSettings(String indexName) throws Exception {
+        GetSettingsRequest request = new GetSettingsRequest()
+                .indices(indexName)
+                .names(REFRESH_INTERVAL, NUMBER_OF_REPLICAS);
+        GetSettingsResponse response = esClient.indices().getSettings(request, RequestOptions.DEFAULT);
+
+        Map<String, Object> original = new HashMap<>();
+        String refreshInterval = response.getSetting(indexName, REFRESH_INTERVAL);
+        String replicas = response.getSetting(indexName, NUMBER_OF_REPLICAS);
+        original.put("refresh_interval", refreshInterval != null ? refreshInterval : DEFAULT_VALUE);
+        original.put("number_of_replicas", replicas != null ? replicas : DEFAULT_VALUE);
+        return original;
+    }
+
+    private void updateSettings(String indexName, String refreshInterval, String replicas) throws Exception {
+        Settings.Builder settings = Settings.builder();
+        putOrReset(settings, REFRESH_INTERVAL, refreshInterval);
+        putOrReset(settings, NUMBER_OF_REPLICAS, replicas);
+        esClient.indices().putSettings(new UpdateSettingsRequest(indexName).settings(settings), RequestOptions.DEFAULT);
+    }
+
+    private void putOrReset(Settings.Builder settings, String key, String value) {
+        if (value == null || DEFAULT_VALUE.equals(value) || "null".equals(value)) {
+            settings.putNull(key);
+        } else {
+            settings.put(key, value);
+        }
+    }
+
+    private void writeMarker(String indexName, Map<String, Object> original, boolean active) throws Exception {
+        Map<String, Object> marker = new HashMap<>(original);
+        marker.put("active", active);
+        marker.put("updated_at", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+
+        Map<String, Object> source = new HashMap<>();
+        source.put("_meta", Map.of("bulk_load", marker));
+        esClient.indices().putMapping(new PutMappingRequest(indexName).source(source), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 读取仍处于激活状态的批量导入标记，没有则返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readMarker(String indexName) throws Exception {
+        GetMappingsResponse response = esClient.indices()
+                .getMapping(new GetMappingsRequest().indices(indexName), RequestOptions.DEFAULT);
+        MappingMetadata mapping = response.mappings().get(indexName);
+        if (mapping == null) {
+            return null;
+        }
+        Object marker = nested(mapping.sourceAsMap(), "_meta", "bulk_load");
+        if (marker instanceof Map && Boolean.TRUE.equals(((Map<String, Object>) marker).get("active"))) {
+            return (Map<String, Object>) marker;
+        }
+        return null;
+    }
+
+    private Object nested(Object value, String... path) {
+        Object current = value;
+        for (String key : path) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map<?, ?>) current).get(key);
+        }
+        return current;
+    }
+
+    private Map<String, Object> readJson(HttpEntity entity) throws Exception {
+        if (entity == null) {
+            return Map.of();
+        }
+        try (InputStream in = entity.getContent()) {
+            return objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {});
+        }
+    }
+
+    private static final class IndexState {
+        private int count;
+        private boolean retired;
+        private boolean discarded;
+    }
+
+    /**
+     * 批量导入模式句柄，配合 try-with-resources 使用，异常退出时同样恢复设置
+     */
+    public final class BulkLoad implements AutoCloseable {
+        private final String indexName;
+        private final boolean active;
+        private boolean closed;
+        private boolean discard;
+
+        private BulkLoad(String indexName, boolean active) {
+            this.indexName = indexName;
+            this.active = active;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * 标记该索引将被丢弃：关闭时只清除批量导入标记，不刷新、不恢复副本、不 force-merge
+         */
+        public void discard() {
+            discard = true;
+        }
+
+        @Override
+        public void close() {
+            if (closed || !active) {
+                return;
+            }
+            closed = true;
+            exit(indexName, discard);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.esadmin.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 版本化索引：表单索引名 form_&lt;id&gt; 作为别名，实际数据写在 form_&lt;id&gt;_v&lt;n&gt; 中。
+ * 全量同步在新一代索引中构建，完成后通过一次 _aliases 请求原子地把别名切到新索引，
+ * 旧一代在宽限期后删除，构建期间的查询始终落在完整的旧索引上。
+ * <p>
+ * 各代索引创建为隐藏索引，form_* 通配符查询只会经别名命中当前生效的一代。
+ */
+@Service
+public class IndexVersionService {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexVersionService.class);
+
+    private static final String VERSION_SEPARATOR = "_v";
+
+    private final RestHighLevelClient esClient;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long graceSeconds;
+    private final ScheduledExecutorService retireScheduler;
+
+    /** 正在构建中的索引，清理残留代时跳过 */
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+    /** 已排定、尚未删除的旧代索引 */
+    private final Set<String> retiring = ConcurrentHashMap.newKeySet();
+    private final Map<String, Object> aliasLocks = new ConcurrentHashMap<>();
+
+    public IndexVersionService(RestHighLevelClient esClient,
+                               ObjectMapper objectMapper,
+                               @Value("${app.sync.index-version.enabled:true}") boolean enabled,
+                               @Value("${app.sync.index-version.grace-seconds:300}") long graceSeconds) {
+        this.esClient = esClient;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.graceSeconds = Math.max(0, graceSeconds);
+        this.retireScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-retire");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 创建别名的下一代索引（隐藏），返回实际索引名；构建完成后调用 {@link #publish}，失败时调用 {@link #discard}
+     *
+     * @param indexSource 含 mappings / settings 的建索引请求体
+     */
+    public String createGeneration(String alias, Map<String, Object> indexSource) throws Exception {
+        synchronized (lockFor(alias)) {
+            String indexName = alias + VERSION_SEPARATOR + (latestGeneration(alias) + 1);
+
+            Map<String, Object> source = new LinkedHashMap<>(indexSource);
+            Map<String, Object> settings = new LinkedHashMap<>();
+            Object original = indexSource.get("settings");
+            if (original instanceof Map) {
+                ((Map<?, ?>) original).forEach((key, value) -> settings.put(String.valueOf(key), value));
+            }
+            settings.put("index.hidden", true);
+            source.put("settings", settings);
+
+            CreateIndexRequest request = new CreateIndexRequest(indexName);
+            request.source(objectMapper.writeValueAsString(source), XContentType.JSON);
+            esClient.indices().create(request, RequestOptions.DEFAULT);
+            building.add(indexName);
+            log.info("创建版本索引 {} 成功，别名 {}", indexName, alias);
+            return indexName;
+        }
+    }
+
+    /**
+     * 原子地把别名切换到 indexName：同一个 _aliases 请求中移除旧代上的别名，
+     * 若别名同名的旧版非版本化索引存在则一并删除（别名不能与索引重名）；旧代在宽限期后删除
+     */
+    public void publish(String alias, String indexName) throws Exception {
+        synchronized (lockFor(alias)) {
+            List<String> previous = aliasTargets(alias);
+            boolean legacyIndex = previous.isEmpty()
+                    && esClient.indices().exists(new GetIndexRequest(alias), RequestOptions.DEFAULT);
+
+            IndicesAliasesRequest request = new IndicesAliasesRequest();
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(indexName).alias(alias));
+            for (String old : previous) {
+                if (!old.equals(indexName)) {
+                    request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(old).alias(alias));
+                }
+            }
+            if (legacyIndex) {
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(alias));
+            }
+            esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+            building.remove(indexName);
+            log.info("别名 {} 已切换到 {}，原索引: {}", alias, indexName,
+                    legacyIndex ? alias + "（非版本化，已删除）" : previous);
+
+            List<String> retired = new ArrayList<>();
+            for (String old : previous) {
+                if (!old.equals(indexName)) {
+                    retired.add(old);
+                }
+            }
+            if (!retired.isEmpty()) {
+                retiring.addAll(retired);
+                retireScheduler.schedule(() -> {
+                    deleteQuietly(retired);
+                    retiring.removeAll(retired);
+                }, graceSeconds, TimeUnit.SECONDS);
+                log.info("旧版本索引 {} 将在 {} 秒后删除", retired, graceSeconds);
+            }
+
+            // 进程在宽限期内重启或构建中途退出留下的代，不再有别名指向
+            List<String> orphaned = new ArrayList<>();
+            for (String generation : listGenerations(alias).keySet()) {
+                if (!generation.equals(indexName) && !previous.contains(generation) && !building.contains(generation)) {
+                    orphaned.add(generation);
+                }
+            }
+            if (!orphaned.isEmpty()) {
+                log.info("清理别名 {} 下残留的版本索引: {}", alias, orphaned);
+                deleteQuietly(orphaned);
+            }
+        }
+    }
+
+    /**
+     * 应用关闭时放弃宽限期内待删除的旧代，它们不再有别名指向，下次发布该别名时作为残留代清理
+     */
+    @PreDestroy
+    public void shutdown() {
+        retireScheduler.shutdownNow();
+        if (!retiring.isEmpty()) {
+            log.info("应用关闭，旧版本索引 {} 未删除，将在下次发布时清理", retiring);
+        }
+    }
+
+    /**
+     * 构建失败时删除未发布的新一代索引，别名保持指向旧索引
+     */
+    public void discard(String indexName) {
+        if (indexName == null) {
+            return;
+        }
+        building.remove(indexName);
+        deleteQuietly(List.of(indexName));
+        log.info("已丢弃未完成的版本索引 {}", indexName);
+    }
+
+    /**
+     * 续传上次中途退出的构建：确认该代索引仍存在且尚未发布，重新登记为构建中
+     */
+    public boolean adopt(String alias, String indexName) {
+        if (parseGeneration(alias, indexName) <= 0) {
+            return false;
+        }
+        try {
+            if (!esClient.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT)
+                    || aliasTargets(alias).contains(indexName)) {
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("检查版本索引 {} 失败，不续传: {}", indexName, e.getMessage());
+            return false;
+        }
+        building.add(indexName);
+        log.info("续传未完成的版本索引 {}，别名 {}", indexName, alias);
+        return true;
+    }
+
+    private long latestGeneration(String alias) throws Exception {
+        long latest = 0;
+        for (long generation : listGenerations(alias).values()) {
+            latest = Math.max(latest, generation);
+        }
+        return latest;
+    }
+
+    /**
+     * 列出别名下已存在的所有代（含隐藏索引），索引名 → 代号
+     */
+    private Map<String, Long> listGenerations(String alias) throws Exception {
+        Request request = new Request("GET", "/_cat/indices/" + alias + VERSION_SEPARATOR + "*");
+        request.addParameter("h", "index");
+        request.addParameter("format", "json");
+        request.addParameter("expand_wildcards", "all");
+
+        Map<String, Long> generations = new HashMap<>();
+        Response response = esClient.getLowLevelClient().performRequest(request);
+        if (response.getEntity() == null) {
+            return generations;
+        }
+        try (InputStream in = response.getEntity().getContent()) {
+            List<Map<String, Object>> rows = objectMapper.readValue(in, new TypeReference<List<Map<String, Object>>>() {});
+            for (Map<String, Object> row : rows) {
+                String indexName = String.valueOf(row.get("index"));
+                long generation = parseGeneration(alias, indexName);
+                if (generation > 0) {
+                    generations.put(indexName, generation);
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * 别名当前指向的索引，别名不存在时返回空列表
+     */
+    private List<String> aliasTargets(String alias) throws Exception {
+        Request request = new Request("GET", "/_alias/" + alias);
+        request.addParameter("expand_wildcards", "all");
+        try {
+            Response response = esClient.getLowLevelClient().performRequest(request);
+            if (response.getEntity() == null) {
+                return new ArrayList<>();
+            }
+            try (InputStream in = response.getEntity().getContent()) {
+                Map<String, Object> targets = objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {});
+                return new ArrayList<>(targets.keySet());
+            }
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == 404) {
+                return new ArrayList<>();
+            }
+            throw e;
+        }
+    }
+
+    private long parseGeneration(String alias, String indexName) {
+        String prefix = alias + VERSION_SEPARATOR;
+        if (indexName == null || !indexName.startsWith(prefix)) {
+            return 0;
+        }
+        String suffix = indexName.substring(prefix.length());
+        return suffix.matches("\\d+") ? Long.parseLong(suffix) : 0;
+    }
+
+    private void deleteQuietly(List<String> indices) {
+        for (String indexName : indices) {
+            try {
+                esClient.indices().delete(new DeleteIndexRequest(indexName), RequestOptions.DEFAULT);
+                log.info("已删除版本索引 {}", indexName);
+            } catch (Exception e) {
+                log.warn("删除版本索引 {} 失败: {}", indexName, e.getMessage());
+            }
+        }
+    }
+
+    private Object lockFor(String alias) {
+        return aliasLocks.computeIfAbsent(alias, key -> new Object());
+    }
+}
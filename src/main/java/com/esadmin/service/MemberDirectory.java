@@ -0,0 +1,339 @@
+package com.esadmin.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内共享的成员目录：ORG_MEMBER 的 ID → 姓名。
+ * <p>
+ * 首次使用时整表加载为按 long 键开放寻址的只读快照，之后在后台定时重新加载并整体替换，
+ * 读取方无锁。快照中没有的ID（新入职成员、表单中的无效值）按批次懒加载到补充表中，
+ * 查不到的ID记为不存在，直到下次刷新前不再查询。同步服务和搜索服务共用这一份数据，
+ * 同步前不再需要扫描整张表单表收集成员ID。
+ * <p>
+ * 目录只提供姓名；部门和管理员标记属于授权信息，由 {@link MemberService#info(Long)} 每次从数据库读取，
+ * 不受刷新周期的滞后影响。
+ */
+@Service
+public class MemberDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(MemberDirectory.class);
+
+    private static final String SELECT_COLUMNS = "SELECT ID, NAME FROM ORG_MEMBER";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long refreshSeconds;
+    private final int fetchChunkSize;
+    private final ScheduledExecutorService refreshScheduler;
+    private final NameView nameView = new NameView();
+
+    private volatile Snapshot snapshot;
+    /** 快照之后懒加载到的成员 */
+    private volatile Map<Long, Member> supplement = new ConcurrentHashMap<>();
+    /** 查询过但不存在的ID */
+    private volatile Set<Long> missing = ConcurrentHashMap.newKeySet();
+
+    public MemberDirectory(JdbcTemplate jdbcTemplate,
+                           @Value("${app.member-directory.refresh-seconds:600}") long refreshSeconds,
+                           @Value("${app.member-directory.fetch-chunk-size:1000}") int fetchChunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshSeconds = refreshSeconds;
+        this.fetchChunkSize = Math.max(1, fetchChunkSize);
+        this.refreshScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-directory-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 成员信息，不存在时返回 null
+     */
+    public Member get(long memberId) {
+        if (memberId == 0) {
+            return null;
+        }
+        Member member = snapshot().get(memberId);
+        if (member != null) {
+            return member;
+        }
+        member = supplement.get(memberId);
+        if (member != null || missing.contains(memberId)) {
+            return member;
+        }
+        prefetch(Collections.singletonList(memberId));
+        return supplement.get(memberId);
+    }
+
+    public String name(long memberId) {
+        Member member = get(memberId);
+        return member != null ? member.getName() : null;
+    }
+
+    /**
+     * 批量补齐目录中还没有的成员，每 fetch-chunk-size 个ID一次 IN 查询
+     */
+    public void prefetch(Collection<Long> memberIds) {
+        Snapshot current = snapshot();
+        Map<Long, Member> currentSupplement = supplement;
+        Set<Long> currentMissing = missing;
+
+        Set<Long> unknown = new LinkedHashSet<>();
+        for (Long id : memberIds) {
+            if (id != null && id != 0 && current.get(id) == null
+                    && !currentSupplement.containsKey(id) && !currentMissing.contains(id)) {
+                unknown.add(id);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(unknown);
+        for (int from = 0; from < ids.size(); from += fetchChunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + fetchChunkSize));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            try {
+                jdbcTemplate.query(SELECT_COLUMNS + " WHERE ID IN (" + placeholders + ")",
+                        rs -> {
+                            Member member = readMember(rs);
+                            currentSupplement.put(member.getId(), member);
+                        }, chunk.toArray());
+            } catch (Exception e) {
+                // 查询失败不记为不存在，下次仍会重试
+                log.warn("懒加载成员信息失败: {} 个ID, {}", chunk.size(), e.getMessage());
+                continue;
+            }
+            for (Long id : chunk) {
+                if (!currentSupplement.containsKey(id)) {
+                    currentMissing.add(id);
+                }
+            }
+        }
+        log.debug("懒加载成员信息: 查询 {} 个ID", ids.size());
+    }
+
+    /**
+     * 以 Map&lt;成员ID字符串, 姓名&gt; 的只读视图提供给文档构建（不复制数据）
+     */
+    public NameView nameView() {
+        return nameView;
+    }
+
+    /**
+     * 立即重新加载整个目录
+     */
+    public synchronized void refresh() {
+        long startTime = System.currentTimeMillis();
+        SnapshotBuilder builder = new SnapshotBuilder();
+        jdbcTemplate.query(SELECT_COLUMNS, rs -> {
+            builder.add(readMember(rs));
+        });
+        snapshot = builder.build();
+        supplement = new ConcurrentHashMap<>();
+        missing = ConcurrentHashMap.newKeySet();
+        log.info("成员目录加载完成: {} 个成员，耗时 {} ms", snapshot.size(), System.currentTimeMillis() - startTime);
+    }
+
+    public int size() {
+        return snapshot().size() + supplement.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshScheduler.shutdownNow();
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    // 加载失败时以空目录继续，所有ID走懒加载，由后台刷新重试
+                    log.error("加载成员目录失败", e);
+                    snapshot = new SnapshotBuilder().build();
+                }
+                if (refreshSeconds > 0) {
+                    refreshScheduler.scheduleWithFixedDelay(this::refreshQuietly,
+                            refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("刷新成员目录失败，继续使用上次加载的数据: {}", e.getMessage());
+        }
+    }
+
+    private static Member readMember(ResultSet rs) throws SQLException {
+        long id = rs.getLong(1);
+        String name = rs.getString(2);
+        return new Member(id, name);
+    }
+
+    public static final class Member {
+        private final long id;
+        private final String name;
+
+        private Member(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * 姓名视图：按字符串形式的成员ID取姓名，数值ID可直接调用 {@link #name(long)} 免去解析
+     */
+    public final class NameView extends AbstractMap<String, String> {
+
+        public String name(long memberId) {
+            return MemberDirectory.this.name(memberId);
+        }
+
+        @Override
+        public String get(Object key) {
+            if (key == null) {
+                return null;
+            }
+            try {
+                return name(Long.parseLong(key.toString().trim()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            // 目录数据量大且随时刷新，不支持遍历
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * 只读快照：long 键开放寻址（线性探测），成员对象按槽位存放
+     */
+    private static final class Snapshot {
+        private final long[] keys;
+        private final Member[] members;
+        private final int mask;
+        private final int size;
+
+        private Snapshot(long[] keys, Member[] members, int size) {
+            this.keys = keys;
+            this.members = members;
+            this.mask = keys.length - 1;
+            this.size = size;
+        }
+
+        private Member get(long id) {
+            int slot = mix(id) & mask;
+            while (true) {
+                Member member = members[slot];
+                if (member == null) {
+                    return null;
+                }
+                if (keys[slot] == id) {
+                    return member;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int size() {
+            return size;
+        }
+    }
+
+    private static final class SnapshotBuilder {
+        private long[] keys = new long[1024];
+        private Member[] members = new Member[1024];
+        private int size;
+
+        private void add(Member member) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            if (insert(keys, members, member)) {
+                size++;
+            }
+        }
+
+        private Snapshot build() {
+            return new Snapshot(keys, members, size);
+        }
+
+        private void grow() {
+            long[] newKeys = new long[keys.length * 2];
+            Member[] newMembers = new Member[members.length * 2];
+            for (Member member : members) {
+                if (member != null) {
+                    insert(newKeys, newMembers, member);
+                }
+            }
+            keys = newKeys;
+            members = newMembers;
+        }
+
+        private static boolean insert(long[] keys, Member[] members, Member member) {
+            int mask = keys.length - 1;
+            int slot = mix(member.getId()) & mask;
+            while (members[slot] != null) {
+                if (keys[slot] == member.getId()) {
+                    members[slot] = member;
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = member.getId();
+            members[slot] = member;
+            return true;
+        }
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
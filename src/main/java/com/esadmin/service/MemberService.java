@@ -16,9 +16,11 @@ public class MemberService {
     private static final Logger log = LoggerFactory.getLogger(MemberService.class);
     
     private final OrgMemberRepository memberRepository;
+    private final MemberDirectory memberDirectory;
     
-    public MemberService(OrgMemberRepository memberRepository) {
+    public MemberService(OrgMemberRepository memberRepository, MemberDirectory memberDirectory) {
         this.memberRepository = memberRepository;
+        this.memberDirectory = memberDirectory;
     }
 
     public Map<String, String> getMembersBatch(List<Long> memberIds) {
@@ -36,24 +38,14 @@ public class MemberService {
         }
 
         try {
-            List<Object[]> results = memberRepository.findMembersByIds(validIds);
+            memberDirectory.prefetch(validIds);
             Map<String, String> memberMap = new HashMap<>();
-
-            for (Object[] row : results) {
-                // Handle both Long and BigInteger from DM database
-                Object idObj = row[0];
-                Long id;
-                if (idObj instanceof Long) {
-                    id = (Long) idObj;
-                } else if (idObj instanceof Number) {
-                    id = ((Number) idObj).longValue();
-                } else {
-                    id = Long.valueOf(idObj.toString());
+            for (Long id : validIds) {
+                String name = memberDirectory.name(id);
+                if (name != null) {
+                    memberMap.put(String.valueOf(id), name);
                 }
-                String name = (String) row[1];
-                memberMap.put(String.valueOf(id), name);
             }
-
             return memberMap;
         } catch (Exception e) {
             log.error("批量获取成员姓名失败", e);
@@ -67,15 +59,16 @@ public class MemberService {
         }
 
         try {
-            return memberRepository.findById(memberId)
-                    .map(member -> member.getName())
-                    .orElse(null);
+            return memberDirectory.name(memberId);
         } catch (Exception e) {
             log.error("获取成员姓名失败", e);
             return null;
         }
     }
 
+    /**
+     * 成员的部门和管理员标记：属于授权信息，每次按主键从数据库读取，不使用成员目录的快照
+     */
     public MemberDepartment info(Long memberId) {
         if (memberId == null || memberId == 0) {
             return null;
@@ -122,7 +115,8 @@ public class MemberService {
             
             // 这里可以添加具体的成员数据同步逻辑
             // 例如：从远程API获取最新成员数据并更新到本地数据库
-            // 目前只是刷新缓存
+            // 目前只是刷新成员目录
+            memberDirectory.refresh();
             
             long count = memberRepository.count();
             double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
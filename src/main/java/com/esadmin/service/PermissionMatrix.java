@@ -0,0 +1,142 @@
+package com.esadmin.service;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * form_department_permission 整表编译成的只读权限矩阵。
+ * <p>
+ * 数据源键（"类型:数据源ID"）和部门ID分别映射为连续的整数编号，配置了部门限制的数据源记在
+ * restricted 位图中，每个部门可访问的受限数据源是一个位图。没有任何部门限制的数据源对所有部门开放。
+ * 矩阵构建后不再修改，权限保存时整体替换；按部门解析出的可访问数据源列表缓存在矩阵实例上，
+ * 随矩阵一起失效。
+ */
+final class PermissionMatrix {
+
+    private static final BitSet EMPTY = new BitSet();
+
+    private final long version;
+    private final long builtAt = System.currentTimeMillis();
+    private final Map<String, Integer> sourceIndex;
+    private final Map<String, Integer> departmentIndex;
+    private final BitSet restricted;
+    private final BitSet[] allowedByDepartment;
+
+    /** 部门ID → 可访问数据源ID列表，附带计算时的数据源目录版本 */
+    private final Map<String, AccessibleSources> accessibleCache = new ConcurrentHashMap<>();
+
+    private PermissionMatrix(long version, Map<String, Integer> sourceIndex, Map<String, Integer> departmentIndex,
+                             BitSet restricted, BitSet[] allowedByDepartment) {
+        this.version = version;
+        this.sourceIndex = sourceIndex;
+        this.departmentIndex = departmentIndex;
+        this.restricted = restricted;
+        this.allowedByDepartment = allowedByDepartment;
+    }
+
+    static PermissionMatrix empty(long version) {
+        return new Builder().build(version);
+    }
+
+    /**
+     * 部门能否访问该数据源；departmentId 为 null 时只能访问未受限的数据源
+     */
+    boolean isAccessible(String departmentId, String sourceKey) {
+        Integer source = sourceKey != null ? sourceIndex.get(sourceKey) : null;
+        if (source == null || !restricted.get(source)) {
+            return true;
+        }
+        return allowed(departmentId).get(source);
+    }
+
+    boolean isRestricted(String sourceKey) {
+        Integer source = sourceKey != null ? sourceIndex.get(sourceKey) : null;
+        return source != null && restricted.get(source);
+    }
+
+    long version() {
+        return version;
+    }
+
+    long builtAt() {
+        return builtAt;
+    }
+
+    int sourceCount() {
+        return sourceIndex.size();
+    }
+
+    int departmentCount() {
+        return departmentIndex.size();
+    }
+
+    /**
+     * 缓存的可访问数据源列表；数据源目录版本变化后由调用方重新计算
+     */
+    List<String> cachedAccessible(String departmentId, long catalogVersion) {
+        AccessibleSources cached = accessibleCache.get(cacheKey(departmentId));
+        return cached != null && cached.catalogVersion == catalogVersion ? cached.sourceIds : null;
+    }
+
+    List<String> cacheAccessible(String departmentId, long catalogVersion, List<String> sourceIds) {
+        List<String> readOnly = Collections.unmodifiableList(sourceIds);
+        accessibleCache.put(cacheKey(departmentId), new AccessibleSources(catalogVersion, readOnly));
+        return readOnly;
+    }
+
+    private BitSet allowed(String departmentId) {
+        Integer department = departmentId != null ? departmentIndex.get(departmentId) : null;
+        return department != null ? allowedByDepartment[department] : EMPTY;
+    }
+
+    private static String cacheKey(String departmentId) {
+        return departmentId != null ? departmentId : "";
+    }
+
+    private static final class AccessibleSources {
+        private final long catalogVersion;
+        private final List<String> sourceIds;
+
+        private AccessibleSources(long catalogVersion, List<String> sourceIds) {
+            this.catalogVersion = catalogVersion;
+            this.sourceIds = sourceIds;
+        }
+    }
+
+    /**
+     * 逐条加入有效的 (数据源键, 部门ID) 权限记录
+     */
+    static final class Builder {
+        private final Map<String, Integer> sourceIndex = new HashMap<>();
+        private final Map<String, Integer> departmentIndex = new HashMap<>();
+        private final BitSet restricted = new BitSet();
+        private final Map<Integer, BitSet> allowed = new HashMap<>();
+
+        Builder add(String sourceKey, String departmentId) {
+            if (sourceKey == null) {
+                return this;
+            }
+            int source = sourceIndex.computeIfAbsent(sourceKey, key -> sourceIndex.size());
+            restricted.set(source);
+            if (departmentId != null) {
+                int department = departmentIndex.computeIfAbsent(departmentId, key -> departmentIndex.size());
+                allowed.computeIfAbsent(department, key -> new BitSet()).set(source);
+            }
+            return this;
+        }
+
+        PermissionMatrix build(long version) {
+            BitSet[] byDepartment = new BitSet[departmentIndex.size()];
+            for (int i = 0; i < byDepartment.length; i++) {
+                BitSet bits = allowed.get(i);
+                byDepartment[i] = bits != null ? bits : EMPTY;
+            }
+            return new PermissionMatrix(version, Collections.unmodifiableMap(new HashMap<>(sourceIndex)),
+                    Collections.unmodifiableMap(new HashMap<>(departmentIndex)), (BitSet) restricted.clone(), byDepartment);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.esadmin.service;
+
+import com.esadmin.util.CompactRow;
+import com.esadmin.util.ContentHash;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 表单文档投影计划：同步开始时按列布局编译一次，固定每一列的目标ES字段名、
+ * 值转换器和主要显示字段优先级，逐行构建文档时只需按计划平铺遍历，
+ * 不再对每个单元格重复做字段过滤、标签查找和正则匹配。
+ */
+public final class ProjectionPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectionPlan.class);
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /** 文档的固定字段，由调用方在投影字段之前写出 */
+    private static final List<String> FIXED_KEYS = Arrays.asList("form_id", "table_name", "table_type", "record_id", "content_hash", "sync_time");
+
+    /**
+     * 列值转换器，编译时按列名和JDBC类型选定
+     */
+    enum Converter {
+        /** 成员ID列：替换为成员姓名 */
+        MEMBER,
+        /** 数值列：直接转字符串 */
+        NUMERIC,
+        /** 字符列：识别日期字符串并转为ISO格式 */
+        TEXT,
+        /** 其他列：按值的运行时类型处理 */
+        GENERIC
+    }
+
+    private final CompactRow.Columns columns;
+    private volatile CompactRow.Columns lastSeenColumns;
+    private final int idIndex;
+    private final int[] indexes;
+    private final String[] rawNames;
+    private final String[] displayNames;
+    private final Converter[] converters;
+    private final boolean[] allowDateOnly;
+    private final String[] primaryFieldKeys;
+    private final String[] primaryValueKeys;
+    private final long[] fieldKeyHashes;
+    private final boolean streamable;
+
+    private ProjectionPlan(CompactRow.Columns columns, List<Field> fields) {
+        this.columns = columns;
+        this.lastSeenColumns = columns;
+        this.idIndex = columns.indexOf("ID");
+        int size = fields.size();
+        this.indexes = new int[size];
+        this.rawNames = new String[size];
+        this.displayNames = new String[size];
+        this.converters = new Converter[size];
+        this.allowDateOnly = new boolean[size];
+        this.primaryFieldKeys = new String[size];
+        this.primaryValueKeys = new String[size];
+        this.fieldKeyHashes = new long[size];
+        for (int i = 0; i < size; i++) {
+            Field field = fields.get(i);
+            indexes[i] = field.index;
+            rawNames[i] = field.rawName;
+            displayNames[i] = field.displayName;
+            converters[i] = field.converter;
+            allowDateOnly[i] = field.allowDateOnly;
+            fieldKeyHashes[i] = ContentHash.of(field.displayName + "|" + (field.rawName != null ? field.rawName : ""));
+            if (field.primaryPriority >= 0) {
+                primaryFieldKeys[i] = "_primary_field_" + field.primaryPriority;
+                primaryValueKeys[i] = "_primary_value_" + field.primaryPriority;
+            }
+        }
+        this.streamable = !hasKeyCollisions();
+    }
+
+    /**
+     * 输出字段名是否可能重复（如两列标签相同）。Map 构建时后写覆盖先写，
+     * 流式写出则会产生重复键被ES拒绝，此时只能先构建 Map 再序列化
+     */
+    private boolean hasKeyCollisions() {
+        Set<String> keys = new HashSet<>(FIXED_KEYS);
+        for (int f = 0; f < indexes.length; f++) {
+            if (rawNames[f] != null && !keys.add(rawNames[f])) {
+                return true;
+            }
+            if (!keys.add(displayNames[f])) {
+                return true;
+            }
+            if (primaryFieldKeys[f] != null && (!keys.add(primaryFieldKeys[f]) || !keys.add(primaryValueKeys[f]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static Builder builder(CompactRow.Columns columns) {
+        return new Builder(columns);
+    }
+
+    /**
+     * 该计划是否适用于给定的列布局（同一张表每个批次的列元数据对象不同，但布局相同）
+     */
+    public boolean appliesTo(CompactRow.Columns candidate) {
+        if (candidate == lastSeenColumns) {
+            return true;
+        }
+        if (columns.sameLayout(candidate)) {
+            lastSeenColumns = candidate;
+            return true;
+        }
+        return false;
+    }
+
+    public Object recordId(CompactRow row) {
+        return idIndex >= 0 ? row.value(idIndex) : row.get("ID");
+    }
+
+    /**
+     * 投影列的内容指纹：按计划中的列顺序混入字段名与原始值，字段标签变化同样视为内容变化。
+     * 成员ID列按ID计算，成员改名不会改变指纹
+     */
+    public long contentHash(CompactRow row) {
+        ContentHash hash = new ContentHash();
+        for (int f = 0; f < indexes.length; f++) {
+            hash.putLong(fieldKeyHashes[f]).putValue(row.value(indexes[f]));
+        }
+        return hash.finish();
+    }
+
+    /**
+     * 收集一行中成员列的ID（用于构建文档前批量补齐成员目录）
+     */
+    public void collectMemberIds(CompactRow row, Collection<Long> memberIds) {
+        for (int f = 0; f < indexes.length; f++) {
+            if (converters[f] != Converter.MEMBER) {
+                continue;
+            }
+            Object value = row.value(indexes[f]);
+            if (value instanceof Number) {
+                memberIds.add(((Number) value).longValue());
+            } else if (value != null) {
+                try {
+                    memberIds.add(Long.parseLong(value.toString().trim()));
+                } catch (NumberFormatException e) {
+                    // 非数值的成员列原样输出
+                }
+            }
+        }
+    }
+
+    /**
+     * 文档预估字段数（用于预设HashMap容量）
+     */
+    public int expectedDocumentSize() {
+        return indexes.length * 2 + 8;
+    }
+
+    /**
+     * 按计划将一行投影到文档中
+     */
+    public Map<String, Object> project(CompactRow row, Map<String, String> memberCache, Map<String, Object> doc) {
+        for (int f = 0; f < indexes.length; f++) {
+            Object value = row.value(indexes[f]);
+            if (value == null) {
+                continue;
+            }
+
+            Object formatted = convert(f, value, memberCache);
+            if (rawNames[f] != null) {
+                doc.put(rawNames[f], formatted);
+            }
+            doc.put(displayNames[f], formatted);
+            if (primaryFieldKeys[f] != null) {
+                doc.put(primaryFieldKeys[f], displayNames[f]);
+                doc.put(primaryValueKeys[f], formatted);
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * 是否可以用 {@link #write} 直接流式写出
+     */
+    public boolean isStreamable() {
+        return streamable;
+    }
+
+    /**
+     * 按计划把一行的投影字段直接写入JSON生成器（仅在 {@link #isStreamable()} 时使用），
+     * 输出与 {@link #project} 构建的 Map 相同，但不创建中间对象
+     */
+    public void write(CompactRow row, Map<String, String> memberCache, JsonGenerator generator) throws IOException {
+        for (int f = 0; f < indexes.length; f++) {
+            Object value = row.value(indexes[f]);
+            if (value == null) {
+                continue;
+            }
+
+            String formatted = String.valueOf(convert(f, value, memberCache));
+            if (rawNames[f] != null) {
+                generator.writeStringField(rawNames[f], formatted);
+            }
+            generator.writeStringField(displayNames[f], formatted);
+            if (primaryFieldKeys[f] != null) {
+                generator.writeStringField(primaryFieldKeys[f], displayNames[f]);
+                generator.writeStringField(primaryValueKeys[f], formatted);
+            }
+        }
+    }
+
+    private Object convert(int f, Object value, Map<String, String> memberCache) {
+        switch (converters[f]) {
+            case MEMBER: {
+                String memberName = memberCache instanceof MemberDirectory.NameView && value instanceof Number
+                        ? ((MemberDirectory.NameView) memberCache).name(((Number) value).longValue())
+                        : memberCache.get(String.valueOf(value));
+                return memberName != null ? memberName : String.valueOf(value);
+            }
+            case NUMERIC:
+                if (value instanceof Number) {
+                    return value.toString();
+                }
+                return convertGeneric(value, allowDateOnly[f]);
+            case TEXT:
+                if (value instanceof String) {
+                    return convertString((String) value, allowDateOnly[f]);
+                }
+                return convertGeneric(value, allowDateOnly[f]);
+            default:
+                return convertGeneric(value, allowDateOnly[f]);
+        }
+    }
+
+    private static Object convertGeneric(Object value, boolean allowDateOnly) {
+        if (value instanceof java.util.Date) {
+            try {
+                LocalDateTime dateTime = value instanceof java.sql.Timestamp
+                        ? ((java.sql.Timestamp) value).toLocalDateTime()
+                        : new java.sql.Timestamp(((java.util.Date) value).getTime()).toLocalDateTime();
+                return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            } catch (Exception e) {
+                log.warn("日期对象转换失败: {}", value, e);
+                return String.valueOf(value);
+            }
+        }
+        if (value instanceof String) {
+            return convertString((String) value, allowDateOnly);
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * 识别 "yyyy-MM-dd HH:mm:ss[.S+]" 与 "yyyy-MM-dd"（仅日期类字段）格式，
+     * 用逐字符判断代替正则匹配；不匹配时原样返回
+     */
+    private static Object convertString(String original, boolean allowDateOnly) {
+        String value = original.trim();
+        int length = value.length();
+        try {
+            if (length > 20 && isDateTime(value) && value.charAt(19) == '.' && isDigits(value, 20, length)) {
+                LocalDateTime dateTime = LocalDateTime.parse(value.substring(0, 19), DATE_TIME_FORMATTER);
+                return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            }
+            if (length == 19 && isDateTime(value)) {
+                LocalDateTime dateTime = LocalDateTime.parse(value, DATE_TIME_FORMATTER);
+                return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            }
+            if (allowDateOnly && length == 10 && isDate(value)) {
+                LocalDate date = LocalDate.parse(value, DATE_FORMATTER);
+                return date.atStartOfDay().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            }
+        } catch (Exception e) {
+            log.warn("日期字符串转换失败: {}", value, e);
+            return value;
+        }
+        return original;
+    }
+
+    private static boolean isDate(String value) {
+        return isDigits(value, 0, 4) && value.charAt(4) == '-'
+                && isDigits(value, 5, 7) && value.charAt(7) == '-'
+                && isDigits(value, 8, 10);
+    }
+
+    private static boolean isDateTime(String value) {
+        return isDate(value) && value.charAt(10) == ' '
+                && isDigits(value, 11, 13) && value.charAt(13) == ':'
+                && isDigits(value, 14, 16) && value.charAt(16) == ':'
+                && isDigits(value, 17, 19);
+    }
+
+    private static boolean isDigits(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Converter chooseConverter(String columnName, int sqlType) {
+        if (columnName.endsWith("member_id")) {
+            return Converter.MEMBER;
+        }
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                return Converter.NUMERIC;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return Converter.TEXT;
+            default:
+                return Converter.GENERIC;
+        }
+    }
+
+    public static final class Builder {
+        private final CompactRow.Columns columns;
+        private final List<Field> fields = new ArrayList<>();
+
+        private Builder(CompactRow.Columns columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * 添加一列投影
+         *
+         * @param index           列下标
+         * @param rawName         非空时额外以原始列名存储（系统字段）
+         * @param displayName     ES中的显示字段名
+         * @param primaryPriority 主要显示字段优先级，-1表示不是主要显示字段
+         */
+        public Builder field(int index, String rawName, String displayName, int primaryPriority) {
+            String columnName = columns.name(index);
+            fields.add(new Field(index, rawName, displayName,
+                    chooseConverter(columnName, columns.sqlType(index)),
+                    columnName.contains("date"), primaryPriority));
+            return this;
+        }
+
+        public ProjectionPlan build() {
+            return new ProjectionPlan(columns, fields);
+        }
+    }
+
+    private static final class Field {
+        private final int index;
+        private final String rawName;
+        private final String displayName;
+        private final Converter converter;
+        private final boolean allowDateOnly;
+        private final int primaryPriority;
+
+        private Field(int index, String rawName, String displayName, Converter converter,
+                      boolean allowDateOnly, int primaryPriority) {
+            this.index = index;
+            this.rawName = rawName;
+            this.displayName = displayName;
+            this.converter = converter;
+            this.allowDateOnly = allowDateOnly;
+            this.primaryPriority = primaryPriority;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.esadmin.service;
+
+import com.esadmin.dto.FormDto;
+import com.esadmin.dto.SyncResult;
+import com.esadmin.util.NdjsonBulkBody;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+/**
+ * 对账：找出ES中存在、数据库中已删除的记录并批量删除。
+ * <p>
+ * 数据库按主键游标、ES按 record_id 的 search_after 各自分页读取升序ID，两路归并，
+ * 内存中只保留各一页ID和一个待删除批次，千万行表单也不会把任何一侧整体载入内存。
+ * 候选孤儿在删除前按ID回表确认一次，避免扫描期间新插入的行被误删。
+ * 内嵌到主表文档的附表行由 {@link SyncService#reconcileEmbeddedRows(String)} 比对。
+ */
+@Service
+public class ReconcileService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReconcileService.class);
+
+    private final RestHighLevelClient esClient;
+    private final FormService formService;
+    private final EsBulkWriter bulkWriter;
+    private final BulkDispatcher bulkDispatcher;
+    private final DbReadPermits readPermits;
+    private final SyncService syncService;
+    private final int dbPageSize;
+    private final int esPageSize;
+    private final int deleteBatchSize;
+
+    public ReconcileService(RestHighLevelClient esClient,
+                            FormService formService,
+                            EsBulkWriter bulkWriter,
+                            BulkDispatcher bulkDispatcher,
+                            DbReadPermits readPermits,
+                            SyncService syncService,
+                            @Value("${app.sync.reconcile.db-page-size:10000}") int dbPageSize,
+                            @Value("${app.sync.reconcile.es-page-size:10000}") int esPageSize,
+                            @Value("${app.sync.reconcile.delete-batch-size:1000}") int deleteBatchSize) {
+        this.esClient = esClient;
+        this.formService = formService;
+        this.bulkWriter = bulkWriter;
+        this.bulkDispatcher = bulkDispatcher;
+        this.readPermits = readPermits;
+        this.syncService = syncService;
+        this.dbPageSize = Math.max(1, dbPageSize);
+        this.esPageSize = Math.max(1, esPageSize);
+        this.deleteBatchSize = Math.max(1, deleteBatchSize);
+    }
+
+    /**
+     * 对账表单主表及所有附表的索引
+     */
+    public SyncResult reconcileForm(String formId) {
+        long startTime = System.currentTimeMillis();
+        FormDto form = formService.getFormById(formId);
+        if (form == null) {
+            return failure("表单不存在", formId, null);
+        }
+        String tableName = formService.getFormTableName(formId);
+        if (tableName == null) {
+            return failure("无法获取表名", formId, form.getName());
+        }
+
+        try {
+            log.info("开始对账: formId={}, 表={}", formId, tableName);
+            ReconcileStats total = reconcileIndex("form_" + formId, tableName, id -> formId + "_" + id);
+
+            for (Map<String, Object> subTable : formService.getFormSubTables(formId)) {
+                String subTableName = formService.getSubTableName(subTable);
+                if (subTableName == null || !formService.checkTableExists(subTableName)) {
+                    continue;
+                }
+                ReconcileStats stats = reconcileIndex("form_" + formId + "_sub_" + subTableName.toLowerCase(),
+                        subTableName, id -> formId + "_" + subTableName + "_" + id);
+                total.add(stats);
+            }
+            // 内嵌模式下附表行在主表文档中，删除的附表行通过比对附表行ID、重建主表文档补齐
+            long reembedded = syncService.reconcileEmbeddedRows(formId);
+
+            double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
+            SyncResult result = new SyncResult();
+            result.setSuccess(total.failed == 0);
+            result.setMessage(String.format(Locale.ROOT,
+                    "对账完成，比对ES文档 %d 条、数据库记录 %d 条，删除已不存在的记录 %d 条%s%s，耗时 %.1f 秒",
+                    total.esCount, total.dbCount, total.deleted,
+                    total.failed > 0 ? "（" + total.failed + " 条删除失败）" : "",
+                    reembedded > 0 ? "，按附表行变化重建主表文档 " + reembedded + " 条" : "", elapsed));
+            result.setCount(total.deleted);
+            result.setTotal(total.esCount);
+            result.setElapsedTime(elapsed);
+            result.setRate(total.esCount / Math.max(elapsed, 0.001));
+            result.setFormId(formId);
+            result.setFormName(form.getName());
+            result.setType("form_reconcile");
+            log.info("表单对账完成: formId={}, {}", formId, result.getMessage());
+            return result;
+
+        } catch (Exception e) {
+            log.error("表单对账失败: formId={}", formId, e);
+            return failure("对账失败: " + e.getMessage(), formId, form.getName());
+        }
+    }
+
+    /**
+     * 归并单个索引与对应数据表的ID序列，删除ES中多出的文档
+     */
+    private ReconcileStats reconcileIndex(String indexName, String tableName, LongFunction<String> docId) throws Exception {
+        ReconcileStats stats = new ReconcileStats();
+        if (!esClient.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT)) {
+            log.debug("索引不存在，跳过对账: {}", indexName);
+            return stats;
+        }
+
+        DbIdStream dbIds = new DbIdStream(tableName);
+        EsIdStream esIds = new EsIdStream(indexName);
+        BulkDispatcher.Session session = bulkDispatcher.openSession("对账 索引=" + indexName);
+
+        try {
+            stats.deleted = mergeOrphans(esIds, dbIds, deleteBatchSize,
+                    candidates -> deleteOrphans(session, indexName, tableName, candidates, docId));
+        } finally {
+            session.awaitCompletion();
+        }
+
+        stats.esCount = esIds.count;
+        stats.dbCount = dbIds.count;
+        stats.failed = session.failedCount();
+        if (stats.deleted > 0) {
+            try {
+                esClient.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+            } catch (Exception e) {
+                log.warn("刷新索引失败: {}", indexName, e);
+            }
+        }
+        log.info("索引对账完成: {}, ES文档 {} 条, 数据库记录 {} 条, 删除 {} 条",
+                indexName, stats.esCount, stats.dbCount, stats.deleted);
+        return stats;
+    }
+
+    /**
+     * 归并两路升序ID：ES中有、数据库中没有的ID按 batchSize 分批交给 orphans（最后一批可能不满，不会为空），
+     * 返回 orphans 返回值之和
+     */
+    static long mergeOrphans(IdCursor esIds, IdCursor dbIds, int batchSize, OrphanHandler orphans) throws Exception {
+        List<Long> candidates = new ArrayList<>(batchSize);
+        long handled = 0;
+        while (esIds.hasNext()) {
+            long esId = esIds.next();
+            while (dbIds.hasNext() && dbIds.peek() < esId) {
+                dbIds.next();
+            }
+            if (!dbIds.hasNext() || dbIds.peek() != esId) {
+                candidates.add(esId);
+                if (candidates.size() >= batchSize) {
+                    handled += orphans.handle(candidates);
+                    candidates.clear();
+                }
+            }
+        }
+        if (!candidates.isEmpty()) {
+            handled += orphans.handle(candidates);
+        }
+        return handled;
+    }
+
+    /**
+     * 回表确认候选孤儿确实已删除后提交 bulk delete，返回提交删除的数量
+     */
+    private long deleteOrphans(BulkDispatcher.Session session, String indexName, String tableName,
+                               List<Long> candidates, LongFunction<String> docId) {
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        Set<Long> stillExisting;
+        try (DbReadPermits.Permit ignored = readPermits.acquireLookup(tableName)) {
+            stillExisting = formService.getExistingIds(tableName, candidates);
+        }
+
+        NdjsonBulkBody body = bulkWriter.acquire();
+        for (Long id : candidates) {
+            if (!stillExisting.contains(id)) {
+                body.addDelete(indexName, docId.apply(id));
+            }
+        }
+        int deleted = body.actionCount();
+        if (deleted > 0) {
+            log.info("索引 {} 发现 {} 条数据库中已删除的记录，提交删除", indexName, deleted);
+        }
+        session.submit(body);
+        return deleted;
+    }
+
+    private SyncResult failure(String message, String formId, String formName) {
+        SyncResult result = new SyncResult();
+        result.setSuccess(false);
+        result.setMessage(message);
+        result.setFormId(formId);
+        result.setFormName(formName);
+        result.setType("form_reconcile");
+        return result;
+    }
+
+    private static final class ReconcileStats {
+        private long esCount;
+        private long dbCount;
+        private long deleted;
+        private long failed;
+
+        private void add(ReconcileStats other) {
+            esCount += other.esCount;
+            dbCount += other.dbCount;
+            deleted += other.deleted;
+            failed += other.failed;
+        }
+    }
+
+    /**
+     * 升序ID流
+     */
+    interface IdCursor {
+        boolean hasNext() throws Exception;
+
+        long peek();
+
+        long next();
+    }
+
+    /**
+     * 一批候选孤儿ID的处理，返回实际删除的数量；调用返回后列表会被复用
+     */
+    @FunctionalInterface
+    interface OrphanHandler {
+        long handle(List<Long> candidates) throws Exception;
+    }
+
+    /**
+     * 数据库ID升序流：按主键游标每次读取一页
+     */
+    private final class DbIdStream implements IdCursor {
+        private final String tableName;
+        private long[] page = new long[0];
+        private int position;
+        private boolean exhausted;
+        private long count;
+
+        private DbIdStream(String tableName) {
+            this.tableName = tableName;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < page.length) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            Long after = page.length > 0 ? page[page.length - 1] : null;
+            try (DbReadPermits.Permit ignored = readPermits.acquireLookup(tableName)) {
+                page = formService.getTableIdsAfter(tableName, after, dbPageSize);
+            }
+            position = 0;
+            exhausted = page.length < dbPageSize;
+            return page.length > 0;
+        }
+
+        @Override
+        public long peek() {
+            return page[position];
+        }
+
+        @Override
+        public long next() {
+            count++;
+            return page[position++];
+        }
+    }
+
+    /**
+     * ES record_id 升序流：search_after 分页，只取排序值（来自 doc values），不读 _source
+     */
+    private final class EsIdStream implements IdCursor {
+        private final String indexName;
+        private long[] page = new long[0];
+        private int position;
+        private Object[] searchAfter;
+        private boolean exhausted;
+        private long count;
+
+        private EsIdStream(String indexName) {
+            this.indexName = indexName;
+        }
+
+        @Override
+        public boolean hasNext() throws Exception {
+            while (position >= page.length) {
+                if (exhausted) {
+                    return false;
+                }
+                fetch();
+            }
+            return true;
+        }
+
+        @Override
+        public long peek() {
+            return page[position];
+        }
+
+        @Override
+        public long next() {
+            count++;
+            return page[position++];
+        }
+
+        private void fetch() throws Exception {
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(QueryBuilders.existsQuery("record_id"))
+                    .fetchSource(false)
+                    .sort("record_id", SortOrder.ASC)
+                    .size(esPageSize)
+                    .trackTotalHits(false);
+            if (searchAfter != null) {
+                source.searchAfter(searchAfter);
+            }
+            SearchResponse response = esClient.search(new SearchRequest(indexName).source(source), RequestOptions.DEFAULT);
+            SearchHit[] hits = response.getHits().getHits();
+
+            long[] ids = new long[hits.length];
+            int size = 0;
+            for (SearchHit hit : hits) {
+                Object[] sortValues = hit.getSortValues();
+                if (sortValues.length > 0 && sortValues[0] instanceof Number) {
+                    ids[size++] = ((Number) sortValues[0]).longValue();
+                }
+            }
+            page = size == ids.length ? ids : Arrays.copyOf(ids, size);
+            position = 0;
+            exhausted = hits.length < esPageSize;
+            if (hits.length > 0) {
+                searchAfter = hits[hits.length - 1].getSortValues();
+            }
+        }
+    }
+}
@@ -7,30 +7,54 @@ import com.esadmin.entity.ReviewPolicy;
 import com.esadmin.repository.ReviewPolicyRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 审核策略。搜索路径上的查询都读内存快照：全部策略整表加载为不可变快照，写入提交后整体替换；
+ * REVIEW_POLICY_VERSION 表中的版本号每次写入加一，后台每 version-check-seconds 秒比对一次版本号，
+ * 变化时重新加载；读取方只读快照，不会在请求线程上查询版本号。
+ */
 @Service
 public class ReviewPolicyService {
     
     private static final Logger log = LoggerFactory.getLogger(ReviewPolicyService.class);
     
+    private static final String UPSERT_SQL = "MERGE INTO review_policy t " +
+            "USING (SELECT ? AS source_type, ? AS source_id FROM DUAL) s " +
+            "ON (t.source_type = s.source_type AND t.source_id = s.source_id) " +
+            "WHEN MATCHED THEN UPDATE SET t.review_mode = ?, t.updated_at = ? " +
+            "WHEN NOT MATCHED THEN INSERT (source_type, source_id, source_name, review_mode, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+    
     private final ReviewPolicyRepository reviewPolicyRepository;
-    private final FormService formService;
-    private final ExcelImportService excelImportService;
+    private final DataSourceCatalog dataSourceCatalog;
+    private final JdbcTemplate jdbcTemplate;
+    
+    private volatile PolicySnapshot snapshot;
     
     public ReviewPolicyService(ReviewPolicyRepository reviewPolicyRepository,
-                              FormService formService,
-                              ExcelImportService excelImportService) {
+                              DataSourceCatalog dataSourceCatalog,
+                              JdbcTemplate jdbcTemplate) {
         this.reviewPolicyRepository = reviewPolicyRepository;
-        this.formService = formService;
-        this.excelImportService = excelImportService;
+        this.dataSourceCatalog = dataSourceCatalog;
+        this.jdbcTemplate = jdbcTemplate;
     }
     
     /**
@@ -40,16 +64,11 @@ public class ReviewPolicyService {
         List<ReviewPolicyDto> result = new ArrayList<>();
         
         try {
-            // 获取所有已配置的审核策略
-            List<ReviewPolicy> policies = reviewPolicyRepository.findAll();
-            Map<String, ReviewPolicy> policyMap = policies.stream()
-                .collect(Collectors.toMap(
-                    p -> p.getSourceType() + ":" + p.getSourceId(),
-                    p -> p
-                ));
+            // 已配置的审核策略
+            Map<String, ReviewPolicy> policyMap = snapshot().policies;
             
             // 获取所有表单
-            List<FormDto> forms = formService.getAllForms();
+            List<FormDto> forms = dataSourceCatalog.forms();
             if (forms != null) {
                 for (FormDto form : forms) {
                     ReviewPolicyDto dto = new ReviewPolicyDto();
@@ -73,7 +92,7 @@ public class ReviewPolicyService {
             }
             
             // 获取所有Excel数据源
-            List<ExcelImportMetadata> excelList = excelImportService.listImports();
+            List<ExcelImportMetadata> excelList = dataSourceCatalog.excelImports();
             if (excelList != null) {
                 for (ExcelImportMetadata excel : excelList) {
                     ReviewPolicyDto dto = new ReviewPolicyDto();
@@ -129,6 +148,7 @@ public class ReviewPolicyService {
             }
             
             reviewPolicyRepository.save(policy);
+            markChanged();
             log.info("设置审核策略成功: type={}, id={}, mode={}", sourceType, sourceId, reviewMode);
             
         } catch (Exception e) {
@@ -141,13 +161,27 @@ public class ReviewPolicyService {
      * 获取指定数据源的审核模式
      */
     public String getReviewMode(String sourceType, String sourceId) {
-        try {
-            Optional<ReviewPolicy> policy = reviewPolicyRepository.findBySourceTypeAndSourceId(sourceType, sourceId);
-            return policy.map(ReviewPolicy::getReviewMode).orElse("view_first");
-        } catch (Exception e) {
-            log.warn("获取审核策略失败: type={}, id={}", sourceType, sourceId, e);
-            return "view_first"; // 默认先看后审
-        }
+        ReviewPolicy policy = snapshot().policies.get(sourceType + ":" + sourceId);
+        return policy != null ? policy.getReviewMode() : "view_first"; // 默认先看后审
+    }
+    
+    /**
+     * 当前为先审后看的数据源ID，按数据源类型分组（form → 表单ID，excel → 表名），只读
+     */
+    public Map<String, Set<String>> getReviewFirstSourceIds() {
+        return snapshot().reviewFirstIds;
+    }
+    
+    /**
+     * 当前快照的版本号和策略数
+     */
+    public Map<String, Object> getSnapshotStatus() {
+        PolicySnapshot current = snapshot();
+        Map<String, Object> status = new HashMap<>();
+        status.put("version", current.version);
+        status.put("policies", current.policies.size());
+        status.put("loaded_at", current.loadedAt);
+        return status;
     }
     
     /**
@@ -157,6 +191,7 @@ public class ReviewPolicyService {
     public void deleteReviewPolicy(String sourceType, String sourceId) {
         try {
             reviewPolicyRepository.deleteBySourceTypeAndSourceId(sourceType, sourceId);
+            markChanged();
             log.info("删除审核策略成功: type={}, id={}", sourceType, sourceId);
         } catch (Exception e) {
             log.error("删除审核策略失败: type={}, id={}", sourceType, sourceId, e);
@@ -165,52 +200,25 @@ public class ReviewPolicyService {
     }
     
     /**
-     * 批量设置审核策略 - 简化版本，使用单个事务
+     * 批量设置审核策略：一次 JDBC 批量 MERGE，只为新建的策略查询数据源名称
      */
     @Transactional
     public void batchSetReviewPolicy(String sourceType, String reviewMode, List<String> sourceIds) {
         try {
-            int successCount = 0;
-            
-            for (String sourceId : sourceIds) {
-                try {
-                    // 直接在当前事务中处理，避免嵌套事务问题
-                    Optional<ReviewPolicy> existingOpt = reviewPolicyRepository.findBySourceTypeAndSourceId(sourceType, sourceId);
-                    
-                    ReviewPolicy policy;
-                    if (existingOpt.isPresent()) {
-                        // 更新现有策略
-                        policy = existingOpt.get();
-                        policy.setReviewMode(reviewMode);
-                    } else {
-                        // 创建新策略
-                        policy = new ReviewPolicy();
-                        policy.setSourceType(sourceType);
-                        policy.setSourceId(sourceId);
-                        policy.setReviewMode(reviewMode);
-                        
-                        // 设置数据源名称
-                        try {
-                            String sourceName = getSourceName(sourceType, sourceId);
-                            policy.setSourceName(sourceName);
-                        } catch (Exception e) {
-                            policy.setSourceName("未知数据源");
-                            log.warn("获取数据源名称失败，使用默认名称: type={}, id={}", sourceType, sourceId);
-                        }
-                    }
-                    
-                    reviewPolicyRepository.save(policy);
-                    successCount++;
-                    
-                } catch (Exception e) {
-                    log.warn("设置单个审核策略失败: type={}, id={}, mode={}, error={}", 
-                        sourceType, sourceId, reviewMode, e.getMessage());
-                    // 继续处理其他项
-                }
+            Map<String, ReviewPolicy> existing = snapshot().policies;
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            List<Object[]> batch = new ArrayList<>();
+            for (String sourceId : new LinkedHashSet<>(sourceIds)) {
+                ReviewPolicy policy = existing.get(sourceType + ":" + sourceId);
+                String sourceName = policy != null ? policy.getSourceName() : getSourceName(sourceType, sourceId);
+                batch.add(new Object[]{sourceType, sourceId, reviewMode, now,
+                        sourceType, sourceId, sourceName, reviewMode, now, now});
             }
             
-            log.info("批量设置审核策略完成: type={}, mode={}, 成功: {}/{}", 
-                sourceType, reviewMode, successCount, sourceIds.size());
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch);
+            markChanged();
+            
+            log.info("批量设置审核策略完成: type={}, mode={}, 数量: {}", sourceType, reviewMode, batch.size());
                 
         } catch (Exception e) {
             log.error("批量设置审核策略失败: type={}, mode={}", sourceType, reviewMode, e);
@@ -246,6 +254,7 @@ public class ReviewPolicyService {
             
             // 保存策略
             reviewPolicyRepository.save(policy);
+            markChanged();
             
             log.debug("设置审核策略成功: type={}, id={}, mode={}", sourceType, sourceId, reviewMode);
             
@@ -255,17 +264,129 @@ public class ReviewPolicyService {
         }
     }
     
+    /**
+     * 当前快照；只在首次使用时同步加载，之后由 {@link #checkVersion()} 在后台替换
+     */
+    private PolicySnapshot snapshot() {
+        PolicySnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                reload();
+            }
+            return snapshot;
+        }
+    }
+    
+    /**
+     * 后台比对 REVIEW_POLICY_VERSION，其他实例写入后在一个检查周期内重新加载
+     */
+    @Scheduled(fixedDelayString = "${app.search.review-policy.version-check-seconds:5}",
+            initialDelayString = "${app.search.review-policy.version-check-seconds:5}", timeUnit = TimeUnit.SECONDS)
+    public void checkVersion() {
+        PolicySnapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        Long version = readVersion();
+        if (version != null && version != current.version) {
+            log.info("审核策略版本变化: {} -> {}，重新加载", current.version, version);
+            reload();
+        }
+    }
+    
+    /**
+     * 整表加载审核策略并替换快照；加载失败时保留旧快照（首次失败时为空快照，下次检查版本时重试）
+     */
+    private synchronized void reload() {
+        Long version = readVersion();
+        try {
+            Map<String, ReviewPolicy> policies = new HashMap<>();
+            Map<String, Set<String>> reviewFirstIds = new HashMap<>();
+            for (ReviewPolicy policy : reviewPolicyRepository.findAll()) {
+                policies.put(policy.getSourceType() + ":" + policy.getSourceId(), policy);
+                if ("review_first".equals(policy.getReviewMode())) {
+                    reviewFirstIds.computeIfAbsent(policy.getSourceType(), type -> new HashSet<>()).add(policy.getSourceId());
+                }
+            }
+            reviewFirstIds.replaceAll((type, ids) -> Collections.unmodifiableSet(ids));
+            snapshot = new PolicySnapshot(version != null ? version : -1, Collections.unmodifiableMap(policies),
+                    Collections.unmodifiableMap(reviewFirstIds));
+            log.debug("审核策略快照已加载: 版本={}, 策略数={}", version, policies.size());
+        } catch (Exception e) {
+            log.error("加载审核策略失败", e);
+            if (snapshot == null) {
+                snapshot = new PolicySnapshot(-1, Collections.emptyMap(), Collections.emptyMap());
+            }
+        }
+    }
+    
+    /**
+     * 写入后版本号加一，事务提交后重新加载本实例的快照
+     */
+    private void markChanged() {
+        try {
+            int updated = jdbcTemplate.update(
+                    "UPDATE REVIEW_POLICY_VERSION SET VERSION = VERSION + 1, UPDATE_TIME = ? WHERE ID = 1",
+                    new Timestamp(System.currentTimeMillis()));
+            if (updated == 0) {
+                jdbcTemplate.update("INSERT INTO REVIEW_POLICY_VERSION (ID, VERSION, UPDATE_TIME) VALUES (1, 1, ?)",
+                        new Timestamp(System.currentTimeMillis()));
+            }
+        } catch (Exception e) {
+            log.warn("更新审核策略版本号失败，其他实例要到重新加载后才能看到本次修改: {}", e.getMessage());
+        }
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reload();
+                }
+            });
+        } else {
+            reload();
+        }
+    }
+    
+    private Long readVersion() {
+        try {
+            return jdbcTemplate.queryForObject("SELECT VERSION FROM REVIEW_POLICY_VERSION WHERE ID = 1", Long.class);
+        } catch (Exception e) {
+            log.debug("读取审核策略版本号失败: {}", e.getMessage());
+            return null;
+        }
+    }
+    
     private String getSourceName(String sourceType, String sourceId) {
         try {
             if ("form".equals(sourceType)) {
-                FormDto form = formService.getFormById(sourceId);
-                return form != null ? form.getName() : "未知表单";
+                String name = dataSourceCatalog.formName(sourceId);
+                return name != null ? name : "未知表单";
             } else if ("excel".equals(sourceType)) {
-                return excelImportService.getDisplayName(sourceId);
+                return dataSourceCatalog.excelDisplayName(sourceId);
             }
         } catch (Exception e) {
             log.warn("获取数据源名称失败: type={}, id={}", sourceType, sourceId, e);
         }
         return "未知数据源";
     }
-}
\ No newline at end of file
+    
+    /**
+     * 不可变的审核策略快照，键为 "类型:数据源ID"
+     */
+    private static final class PolicySnapshot {
+        private final long version;
+        private final Map<String, ReviewPolicy> policies;
+        private final Map<String, Set<String>> reviewFirstIds;
+        private final long loadedAt = System.currentTimeMillis();
+        
+        private PolicySnapshot(long version, Map<String, ReviewPolicy> policies, Map<String, Set<String>> reviewFirstIds) {
+            this.version = version;
+            this.policies = policies;
+            this.reviewFirstIds = reviewFirstIds;
+        }
+    }
+}
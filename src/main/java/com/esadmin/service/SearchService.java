@@ -13,6 +13,7 @@ import org.elasticsearch.client.core.CountResponse;
 import org.elasticsearch.core.TimeValue;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
@@ -33,30 +34,27 @@ public class SearchService {
     private static final Logger log = LoggerFactory.getLogger(SearchService.class);
     
     private final RestHighLevelClient esClient;
-    private final FormService formService;
-    private final ExcelImportService excelImportService;
     private final ReviewPolicyService reviewPolicyService;
     private final KeyReviewService keyReviewService;
     private final AdminCheckService adminCheckService;
     private final FormDepartmentPermissionServiceUltra departmentPermissionService;
     private final MemberService memberService;
+    private final DataSourceCatalog dataSourceCatalog;
 
     public SearchService(RestHighLevelClient esClient,
-                         FormService formService,
-                         ExcelImportService excelImportService,
                          ReviewPolicyService reviewPolicyService,
                          KeyReviewService keyReviewService,
                          AdminCheckService adminCheckService,
                          FormDepartmentPermissionServiceUltra departmentPermissionService,
-                         MemberService memberService) {
+                         MemberService memberService,
+                         DataSourceCatalog dataSourceCatalog) {
         this.esClient = esClient;
-        this.formService = formService;
-        this.excelImportService = excelImportService;
         this.reviewPolicyService = reviewPolicyService;
         this.keyReviewService = keyReviewService;
         this.adminCheckService = adminCheckService;
         this.departmentPermissionService = departmentPermissionService;
         this.memberService = memberService;
+        this.dataSourceCatalog = dataSourceCatalog;
     }
 
     @Value("${app.search.max-size:100}")
@@ -65,6 +63,9 @@ public class SearchService {
     @Value("${app.search.timeout:30}")
     private int timeout;
     
+    /** 被先审后看策略过滤掉的命中数（聚合不受 post_filter 影响） */
+    private static final String REVIEW_FIRST_AGG = "review_first_hits";
+
     /**
      * 根据用户部门权限过滤数据源ID列表
      */
@@ -106,34 +107,10 @@ public class SearchService {
                 return PermissionFilterResult.allow(accessible, 0, null);
             }
 
-            PermissionMatrix permissionMatrix = departmentPermissionService.buildPermissionMatrix(memberInfo.getDepartmentId());
-            List<ExcelImportMetadata> excelDatasets = safeLoadExcelDatasets();
-            Map<String, ExcelImportMetadata> excelIndexMap = buildExcelIndexMap(excelDatasets);
-            Map<String, ExcelImportMetadata> excelTableMap = buildExcelTableMap(excelDatasets);
+            String departmentId = memberInfo.getDepartmentId();
 
             if (requestedIds == null || requestedIds.isEmpty()) {
-                List<String> accessibleIds = new ArrayList<>();
-                List<FormDto> allForms = safeLoadForms();
-
-                for (FormDto form : allForms) {
-                    if (form == null || StringUtils.isBlank(form.getId())) {
-                        continue;
-                    }
-                    String key = buildSourceKey("form", form.getId());
-                    if (isSourceAccessible(permissionMatrix, key)) {
-                        accessibleIds.add(form.getId());
-                    }
-                }
-
-                for (ExcelImportMetadata excel : excelDatasets) {
-                    if (excel == null || StringUtils.isAnyBlank(excel.getTableName(), excel.getIndexName())) {
-                        continue;
-                    }
-                    String key = buildSourceKey("excel", excel.getTableName());
-                    if (isSourceAccessible(permissionMatrix, key)) {
-                        accessibleIds.add("excel:" + excel.getIndexName());
-                    }
-                }
+                List<String> accessibleIds = departmentPermissionService.getAccessibleSourceIds(departmentId);
 
                 if (accessibleIds.isEmpty()) {
                     log.warn("用户 {} (部门{}) 没有可访问的数据源", userId, memberInfo.getDepartmentId());
@@ -154,22 +131,19 @@ public class SearchService {
                 boolean hasPermission;
                 if (requestedId.startsWith("excel:")) {
                     String excelKey = requestedId.substring(6);
-                    String excelSourceId = resolveExcelSourceId(excelKey, excelIndexMap, excelTableMap);
+                    String excelSourceId = resolveExcelSourceId(excelKey);
                     if (excelSourceId == null) {
                         log.warn("未找到Excel数据源: {}", requestedId);
                         rejectedCount++;
                         continue;
                     }
-                    String sourceKey = buildSourceKey("excel", excelSourceId);
-                    hasPermission = isSourceAccessible(permissionMatrix, sourceKey);
+                    hasPermission = departmentPermissionService.isAccessible(departmentId, "excel", excelSourceId);
                 } else {
-                    ExcelImportMetadata excelMetadata = excelTableMap.get(requestedId.toUpperCase(Locale.ROOT));
+                    ExcelImportMetadata excelMetadata = dataSourceCatalog.excelByTable(requestedId);
                     if (excelMetadata != null) {
-                        String sourceKey = buildSourceKey("excel", excelMetadata.getTableName());
-                        hasPermission = isSourceAccessible(permissionMatrix, sourceKey);
+                        hasPermission = departmentPermissionService.isAccessible(departmentId, "excel", excelMetadata.getTableName());
                     } else {
-                        String sourceKey = buildSourceKey("form", requestedId);
-                        hasPermission = isSourceAccessible(permissionMatrix, sourceKey);
+                        hasPermission = departmentPermissionService.isAccessible(departmentId, "form", requestedId);
                     }
                 }
 
@@ -197,79 +171,23 @@ public class SearchService {
 
     private List<String> collectAllDataSourceIds() {
         List<String> ids = new ArrayList<>();
-        safeLoadForms().stream()
-                .filter(Objects::nonNull)
-                .filter(form -> StringUtils.isNotBlank(form.getId()))
-                .forEach(form -> ids.add(form.getId()));
+        dataSourceCatalog.forms().forEach(form -> ids.add(form.getId()));
 
-        safeLoadExcelDatasets().stream()
-                .filter(Objects::nonNull)
+        dataSourceCatalog.excelImports().stream()
                 .filter(excel -> StringUtils.isNotBlank(excel.getIndexName()))
                 .forEach(excel -> ids.add("excel:" + excel.getIndexName()));
         return ids;
     }
 
-    private List<ExcelImportMetadata> safeLoadExcelDatasets() {
-        try {
-            List<ExcelImportMetadata> datasets = excelImportService.listImports();
-            return datasets != null ? datasets : Collections.emptyList();
-        } catch (Exception e) {
-            log.error("加载Excel数据源失败", e);
-            return Collections.emptyList();
-        }
-    }
-
-    private List<FormDto> safeLoadForms() {
-        try {
-            List<FormDto> forms = formService.getAllForms();
-            return forms != null ? forms : Collections.emptyList();
-        } catch (Exception e) {
-            log.error("加载表单数据源失败", e);
-            return Collections.emptyList();
-        }
-    }
-
-    private Map<String, ExcelImportMetadata> buildExcelIndexMap(List<ExcelImportMetadata> datasets) {
-        if (datasets == null || datasets.isEmpty()) {
-            return Collections.emptyMap();
-        }
-        return datasets.stream()
-                .filter(Objects::nonNull)
-                .filter(meta -> StringUtils.isNotBlank(meta.getIndexName()))
-                .collect(Collectors.toMap(
-                        meta -> meta.getIndexName().toLowerCase(Locale.ROOT),
-                        meta -> meta,
-                        (existing, replacement) -> existing,
-                        LinkedHashMap::new
-                ));
-    }
-
-    private Map<String, ExcelImportMetadata> buildExcelTableMap(List<ExcelImportMetadata> datasets) {
-        if (datasets == null || datasets.isEmpty()) {
-            return Collections.emptyMap();
-        }
-        return datasets.stream()
-                .filter(Objects::nonNull)
-                .filter(meta -> StringUtils.isNotBlank(meta.getTableName()))
-                .collect(Collectors.toMap(
-                        meta -> meta.getTableName().toUpperCase(Locale.ROOT),
-                        meta -> meta,
-                        (existing, replacement) -> existing,
-                        LinkedHashMap::new
-                ));
-    }
-
-    private String resolveExcelSourceId(String excelKey,
-                                        Map<String, ExcelImportMetadata> excelIndexMap,
-                                        Map<String, ExcelImportMetadata> excelTableMap) {
+    private String resolveExcelSourceId(String excelKey) {
         if (StringUtils.isBlank(excelKey)) {
             return null;
         }
-        ExcelImportMetadata byIndex = excelIndexMap.get(excelKey.toLowerCase(Locale.ROOT));
+        ExcelImportMetadata byIndex = dataSourceCatalog.excelByIndex(excelKey);
         if (byIndex != null && StringUtils.isNotBlank(byIndex.getTableName())) {
             return byIndex.getTableName();
         }
-        ExcelImportMetadata byTable = excelTableMap.get(excelKey.toUpperCase(Locale.ROOT));
+        ExcelImportMetadata byTable = dataSourceCatalog.excelByTable(excelKey);
         if (byTable != null && StringUtils.isNotBlank(byTable.getTableName())) {
             return byTable.getTableName();
         }
@@ -321,24 +239,26 @@ public class SearchService {
             searchRequest.indicesOptions(IndicesOptions.lenientExpandOpen());
 
             SearchSourceBuilder sourceBuilder = buildSearchSource(request, filterFormIds);
+
+            // 关键字审核通过前，先审后看数据源的记录在ES端用 post_filter 排除：
+            // 分页和总数只计可见记录，被排除的命中数由同一请求的聚合给出
+            String reviewResult = reviewKeyword(request.getUserId(), request.getQuery());
+            if (!"审核通过".equals(reviewResult)) {
+                QueryBuilder reviewFirstQuery = buildReviewFirstQuery();
+                if (reviewFirstQuery != null) {
+                    sourceBuilder.postFilter(QueryBuilders.boolQuery().mustNot(reviewFirstQuery));
+                    sourceBuilder.aggregation(
+                        org.elasticsearch.search.aggregations.AggregationBuilders.filter(REVIEW_FIRST_AGG, reviewFirstQuery));
+                }
+            }
             searchRequest.source(sourceBuilder);
 
-            // 先执行一次搜索获取所有结果，统计审核策略分布
-            SearchRequest countRequest = new SearchRequest(searchRequest.indices());
-            countRequest.indicesOptions(searchRequest.indicesOptions());
-            SearchSourceBuilder countSourceBuilder = buildSearchSource(request, filterFormIds);
-            countSourceBuilder.size(10000); // 获取更多结果用于统计
-            countSourceBuilder.from(0);
-            countRequest.source(countSourceBuilder);
-            
-            SearchResponse countResponse = esClient.search(countRequest, RequestOptions.DEFAULT);
-            
-            // 统计审核策略分布
-            ReviewFilterStats filterStats = calculateReviewFilterStats(countResponse, request.getUserId(), request.getQuery());
-            
-            // 执行原始搜索（分页）
+            // 执行搜索（分页）
             SearchResponse response = esClient.search(searchRequest, RequestOptions.DEFAULT);
             
+            // 统计审核策略过滤数
+            ReviewFilterStats filterStats = calculateReviewFilterStats(response, reviewResult);
+            
             // 转换结果并应用审核策略过滤，传入统计信息
             com.esadmin.dto.SearchResponse finalResponse = convertSearchResponseWithReviewFilter(response, startTime, request.getUserId(), request.getQuery(), filterStats);
 
@@ -386,6 +306,7 @@ public class SearchService {
             request.setIncludeStats(true);
             SearchSourceBuilder sourceBuilder = buildSearchSource(request, filterFormIds);
             sourceBuilder.size(0); // 不需要返回具体文档
+            sourceBuilder.trackTotalHits(false); // 只用聚合计数，不需要精确命中总数
             
             // 设置更短的超时时间，优先保证响应速度
             sourceBuilder.timeout(new TimeValue(3, TimeUnit.SECONDS));
@@ -435,7 +356,7 @@ public class SearchService {
         List<Map<String, Object>> result = new ArrayList<>();
 
         // 添加表单结果
-        List<FormDto> forms = formService.getAllForms();
+        List<FormDto> forms = dataSourceCatalog.forms();
         if (forms != null) {
             for (FormDto form : forms) {
                 if (form == null || StringUtils.isBlank(form.getId())) {
@@ -455,7 +376,7 @@ public class SearchService {
         }
 
         // 添加Excel结果
-        List<ExcelImportMetadata> excelDatasets = excelImportService.listImports();
+        List<ExcelImportMetadata> excelDatasets = dataSourceCatalog.excelImports();
         if (excelDatasets != null) {
             for (ExcelImportMetadata dataset : excelDatasets) {
                 if (dataset == null || StringUtils.isAnyBlank(dataset.getTableName(), dataset.getDisplayName())) {
@@ -516,7 +437,7 @@ public class SearchService {
 
         // 添加有结果的表单
         if (!formCounts.isEmpty()) {
-            List<FormDto> allForms = formService.getAllForms();
+            List<FormDto> allForms = dataSourceCatalog.forms();
             if (allForms != null) {
                 for (FormDto form : allForms) {
                     if (form != null && StringUtils.isNotBlank(form.getId())) {
@@ -537,7 +458,7 @@ public class SearchService {
 
         // 添加有结果的Excel数据
         if (!excelCounts.isEmpty()) {
-            List<ExcelImportMetadata> excelDatasets = excelImportService.listImports();
+            List<ExcelImportMetadata> excelDatasets = dataSourceCatalog.excelImports();
             if (excelDatasets != null) {
                 for (ExcelImportMetadata dataset : excelDatasets) {
                     if (dataset != null && StringUtils.isNotBlank(dataset.getTableName())) {
@@ -612,10 +533,10 @@ public class SearchService {
                 throw new IllegalStateException(filterResult.getMessage());
             }
 
-            List<String> accessibleIds = filterResult.getAllowedIds();
+            Set<String> accessibleIds = new HashSet<>(filterResult.getAllowedIds());
             
-            List<FormDto> forms = formService.getAllForms();
-            List<ExcelImportMetadata> excelDatasets = excelImportService.listImports();
+            List<FormDto> forms = dataSourceCatalog.forms();
+            List<ExcelImportMetadata> excelDatasets = dataSourceCatalog.excelImports();
 
             Map<String, String> datasetIndexMap = new LinkedHashMap<>();
             
@@ -697,8 +618,8 @@ public class SearchService {
 
     public List<Map<String, Object>> getFormDocumentStats() {
         try {
-            List<FormDto> forms = formService.getAllForms();
-            List<ExcelImportMetadata> excelDatasets = excelImportService.listImports();
+            List<FormDto> forms = dataSourceCatalog.forms();
+            List<ExcelImportMetadata> excelDatasets = dataSourceCatalog.excelImports();
 
             Map<String, String> datasetIndexMap = new LinkedHashMap<>();
             if (forms != null) {
@@ -810,6 +731,7 @@ public class SearchService {
             String indexName = datasetId.substring("excel:".length());
             return StringUtils.isNotBlank(indexName) ? indexName : null;
         }
+        // 表单索引别名，指向当前生效的版本索引
         return "form_" + datasetId;
     }
 
@@ -929,6 +851,8 @@ public class SearchService {
         // 分页和排序
         sourceBuilder.size(Math.min(request.getSize(), maxSize));
         sourceBuilder.from(request.getFrom());
+        // 总数超过10000时也要精确计数：分页总数和审核策略的可见数量都取自命中总数
+        sourceBuilder.trackTotalHits(true);
         sourceBuilder.sort("_score", SortOrder.DESC);
 
         // 排除不必要的字段
@@ -959,12 +883,12 @@ public class SearchService {
     
     // 审核过滤统计信息类
     private static class ReviewFilterStats {
-        private final int totalViewFirstCount;  // 先看后审记录数
-        private final int totalReviewFirstCount; // 先审后看记录数
+        private final long totalViewFirstCount;  // 先看后审记录数
+        private final long totalReviewFirstCount; // 先审后看记录数
         private final boolean isKeywordUnderReview; // 关键字是否在审核中
         private final String reviewResult; // 审核结果
         
-        public ReviewFilterStats(int totalViewFirstCount, int totalReviewFirstCount, 
+        public ReviewFilterStats(long totalViewFirstCount, long totalReviewFirstCount, 
                                 boolean isKeywordUnderReview, String reviewResult) {
             this.totalViewFirstCount = totalViewFirstCount;
             this.totalReviewFirstCount = totalReviewFirstCount;
@@ -972,66 +896,66 @@ public class SearchService {
             this.reviewResult = reviewResult;
         }
         
-        public int getTotalViewFirstCount() { return totalViewFirstCount; }
-        public int getTotalReviewFirstCount() { return totalReviewFirstCount; }
+        public long getTotalViewFirstCount() { return totalViewFirstCount; }
+        public long getTotalReviewFirstCount() { return totalReviewFirstCount; }
         public boolean isKeywordUnderReview() { return isKeywordUnderReview; }
         public String getReviewResult() { return reviewResult; }
     }
     
-    private ReviewFilterStats calculateReviewFilterStats(SearchResponse countResponse, String userId, String searchQuery) {
-        // 检查关键字审核状态
-        boolean isKeywordUnderReview = false;
-        String reviewResult = "";
+    /**
+     * 关键字审核结果，未审核（用户或关键字为空、审核调用失败）时为空串
+     */
+    private String reviewKeyword(String userId, String searchQuery) {
         try {
             if (StringUtils.isNotBlank(searchQuery) && StringUtils.isNotBlank(userId)) {
-                KeyReviewService.ReviewDecision decision = keyReviewService.reviewKeyword(userId, searchQuery);
-                reviewResult = decision.getMessage();
-                isKeywordUnderReview = "审核中".equals(reviewResult);
+                return keyReviewService.reviewKeyword(userId, searchQuery).getMessage();
             }
         } catch (Exception e) {
             log.warn("关键字审核检查失败", e);
         }
-        
-        // 统计审核策略分布
-        Map<String, String> reviewPolicyCache = new HashMap<>();
-        int viewFirstCount = 0;
-        int reviewFirstCount = 0;
-        
-        for (SearchHit hit : countResponse.getHits().getHits()) {
-            Map<String, Object> source = hit.getSourceAsMap();
-            String sourceType = StringUtils.defaultIfBlank((String) source.get("source_type"), "form");
-            String formId = (String) source.get("form_id");
-            String tableName = (String) source.get("table_name");
-            
-            String dataSourceId;
-            if ("excel".equalsIgnoreCase(sourceType)) {
-                dataSourceId = StringUtils.defaultIfBlank(tableName, "excel_dataset");
-            } else {
-                dataSourceId = StringUtils.defaultIfBlank(formId, "unknown_form");
-            }
-            
-            // 获取审核策略
-            String reviewMode = reviewPolicyCache.computeIfAbsent(
-                sourceType + ":" + dataSourceId,
-                key -> {
-                    try {
-                        return reviewPolicyService.getReviewMode(sourceType, dataSourceId);
-                    } catch (Exception e) {
-                        log.warn("获取审核策略失败: {}", key, e);
-                        return "view_first";
-                    }
-                }
-            );
-            
-            if ("review_first".equals(reviewMode)) {
-                reviewFirstCount++;
-            } else {
-                viewFirstCount++;
+        return "";
+    }
+
+    /**
+     * 匹配先审后看数据源记录的查询：表单按 form_id，Excel 按 table_name；没有先审后看的数据源时返回 null
+     */
+    private QueryBuilder buildReviewFirstQuery() {
+        Map<String, Set<String>> reviewFirst = reviewPolicyService.getReviewFirstSourceIds();
+        Set<String> formIds = reviewFirst.getOrDefault("form", Collections.emptySet());
+        Set<String> excelTables = reviewFirst.getOrDefault("excel", Collections.emptySet());
+        if (formIds.isEmpty() && excelTables.isEmpty()) {
+            return null;
+        }
+
+        BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch(1);
+        if (!formIds.isEmpty()) {
+            query.should(QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termsQuery("form_id", formIds))
+                .mustNot(QueryBuilders.termQuery("source_type", "excel")));
+        }
+        if (!excelTables.isEmpty()) {
+            query.should(QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termQuery("source_type", "excel"))
+                .filter(QueryBuilders.termsQuery("table_name", excelTables)));
+        }
+        return query;
+    }
+
+    private ReviewFilterStats calculateReviewFilterStats(SearchResponse response, String reviewResult) {
+        boolean isKeywordUnderReview = "审核中".equals(reviewResult);
+
+        long reviewFirstCount = 0;
+        if (response.getAggregations() != null) {
+            org.elasticsearch.search.aggregations.bucket.filter.Filter filter =
+                response.getAggregations().get(REVIEW_FIRST_AGG);
+            if (filter != null) {
+                reviewFirstCount = filter.getDocCount();
             }
         }
+        long viewFirstCount = response.getHits().getTotalHits() != null ? response.getHits().getTotalHits().value : 0;
         
-        log.info("审核策略统计完成: 先看后审={}, 先审后看={}, 总数={}, 关键字审核状态={}", 
-            viewFirstCount, reviewFirstCount, countResponse.getHits().getHits().length, reviewResult);
+        log.info("审核策略统计完成: 先看后审={}, 先审后看={}, 关键字审核状态={}", 
+            viewFirstCount, reviewFirstCount, reviewResult);
             
         return new ReviewFilterStats(viewFirstCount, reviewFirstCount, isKeywordUnderReview, reviewResult);
     }
@@ -1048,13 +972,11 @@ public class SearchService {
         String reviewResult = filterStats.getReviewResult();
         result.setReviewResult(reviewResult);
         
+        // 先审后看的记录已由查询的 post_filter 排除，返回的命中都可以显示
         List<com.esadmin.dto.SearchResponse.SearchHit> hits = new ArrayList<>();
         Map<String, String> formCache = new HashMap<>();
         Map<String, String> excelCache = new HashMap<>();
 
-        // 预加载审核策略，避免重复查询
-        Map<String, String> reviewPolicyCache = new HashMap<>();
-
         for (SearchHit hit : response.getHits().getHits()) {
             Map<String, Object> source = hit.getSourceAsMap();
             String sourceType = StringUtils.defaultIfBlank((String) source.get("source_type"), "form");
@@ -1064,45 +986,22 @@ public class SearchService {
             String formId = (String) source.get("form_id");
             String formName;
             String jumpUrl = null;
-            String dataSourceId;
 
             if ("excel".equalsIgnoreCase(sourceType)) {
                 String cacheKey = StringUtils.defaultIfBlank(tableName, "excel_dataset");
                 formName = excelCache.computeIfAbsent(cacheKey, key -> {
-                    String display = excelImportService.getDisplayName(key);
+                    String display = dataSourceCatalog.excelDisplayName(key);
                     return StringUtils.isNotBlank(display) ? display : key;
                 });
                 formId = "excel:" + cacheKey;
-                dataSourceId = cacheKey;
             } else {
                 String cacheKey = StringUtils.defaultIfBlank(formId, "unknown_form");
-                formName = formCache.computeIfAbsent(cacheKey, id -> {
-                    try {
-                        FormDto form = formService.getFormById(id);
-                        return form != null ? form.getName() : "未知表单";
-                    } catch (Exception e) {
-                        log.error("获取表单名称失败", e);
-                        return "未知表单";
-                    }
-                });
+                formName = formCache.computeIfAbsent(cacheKey,
+                        id -> StringUtils.defaultIfBlank(dataSourceCatalog.formName(id), "未知表单"));
                 formId = cacheKey;
                 jumpUrl = buildOpenDataUrl(formId, recordId, userId);
-                dataSourceId = formId;
             }
 
-            // 检查审核策略
-            String reviewMode = reviewPolicyCache.computeIfAbsent(
-                sourceType + ":" + dataSourceId,
-                key -> {
-                    try {
-                        return reviewPolicyService.getReviewMode(sourceType, dataSourceId);
-                    } catch (Exception e) {
-                        log.warn("获取审核策略失败: {}", key, e);
-                        return "view_first"; // 默认先看后审
-                    }
-                }
-            );
-
             Map<String, Object> displayData = extractDisplayData(source, sourceType);
             Map<String, List<String>> highlight = extractHighlight(hit);
 
@@ -1125,14 +1024,7 @@ public class SearchService {
             searchHit.setJumpUrl(jumpUrl);
             searchHit.setSourceType(sourceType);
 
-            // 根据审核策略决定是否包含在结果中
-            if ("review_first".equals(reviewMode)) {
-                // 先审后看的记录被过滤掉，不添加到结果中
-                // 过滤的记录数量统计由全局统计提供
-            } else {
-                // 先看后审的记录正常显示
-                hits.add(searchHit);
-            }
+            hits.add(searchHit);
         }
 
         result.setHits(hits);
@@ -1143,7 +1035,7 @@ public class SearchService {
         
         // 使用全局过滤统计信息
         if (filterStats.getTotalReviewFirstCount() > 0) {
-            result.setFilteredCount(filterStats.getTotalReviewFirstCount());
+            result.setFilteredCount((int) Math.min(Integer.MAX_VALUE, filterStats.getTotalReviewFirstCount()));
             String filterReason;
             if (isKeywordUnderReview) {
                 filterReason = "有 " + filterStats.getTotalReviewFirstCount() + " 条记录（先审后看）需要等关键字审核通过后才能查看";
@@ -1180,21 +1072,14 @@ public class SearchService {
             if ("excel".equalsIgnoreCase(sourceType)) {
                 String cacheKey = StringUtils.defaultIfBlank(tableName, "excel_dataset");
                 formName = excelCache.computeIfAbsent(cacheKey, key -> {
-                    String display = excelImportService.getDisplayName(key);
+                    String display = dataSourceCatalog.excelDisplayName(key);
                     return StringUtils.isNotBlank(display) ? display : key;
                 });
                 formId = "excel:" + cacheKey;
             } else {
                 String cacheKey = StringUtils.defaultIfBlank(formId, "unknown_form");
-                formName = formCache.computeIfAbsent(cacheKey, id -> {
-                    try {
-                        FormDto form = formService.getFormById(id);
-                        return form != null ? form.getName() : "未知表单";
-                    } catch (Exception e) {
-                        log.error("获取表单名称失败", e);
-                        return "未知表单";
-                    }
-                });
+                formName = formCache.computeIfAbsent(cacheKey,
+                        id -> StringUtils.defaultIfBlank(dataSourceCatalog.formName(id), "未知表单"));
                 formId = cacheKey;
                 jumpUrl = buildOpenDataUrl(formId, recordId, userId);
             }
@@ -1289,6 +1174,10 @@ public class SearchService {
             this.filterFormIds = filterFormIds;
         }
 
+        /**
+         * 表单的版本索引 form_&lt;id&gt;_v&lt;n&gt; 均为隐藏索引，form_* 只会经别名 form_&lt;id&gt; 命中当前生效的一代，
+         * 构建中和等待删除的旧一代不会出现在结果中
+         */
         static FormIndexSelection allIndices() {
             return new FormIndexSelection(new String[]{"form_*", "excel_*"}, Collections.emptyList());
         }
@@ -1410,20 +1299,6 @@ public class SearchService {
         return response;
     }
 
-    private boolean isSourceAccessible(PermissionMatrix matrix, String sourceKey) {
-        if (matrix == null) {
-            return true;
-        }
-        if (!matrix.isRestricted(sourceKey)) {
-            return true;
-        }
-        return matrix.isAllowed(sourceKey);
-    }
-
-    private String buildSourceKey(String sourceType, String sourceId) {
-        return (sourceType != null ? sourceType : "") + ":" + (sourceId != null ? sourceId : "");
-    }
-
     private com.esadmin.dto.SearchResponse createErrorResponse(String error, long startTime) {
         com.esadmin.dto.SearchResponse response = createEmptyResponse();
         response.setError(error);
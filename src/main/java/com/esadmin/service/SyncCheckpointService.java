@@ -0,0 +1,186 @@
+package com.esadmin.service;
+
+import com.esadmin.entity.SyncRecord;
+import com.esadmin.repository.SyncRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 同步检查点：记录增量游标、未完成的全量遍历位置和运行状态，只在bulk确认写入后推进。
+ * 读写失败（如检查点表不可用）只记日志，同步退化为无检查点模式。
+ */
+@Service
+public class SyncCheckpointService {
+
+    private static final Logger log = LoggerFactory.getLogger(SyncCheckpointService.class);
+
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+
+    public static final String MODE_FULL = "full";
+    public static final String MODE_INCREMENTAL = "incremental";
+
+    private final SyncRecordRepository syncRecordRepository;
+    private final boolean enabled;
+    private final AtomicBoolean failureLogged = new AtomicBoolean();
+
+    public SyncCheckpointService(SyncRecordRepository syncRecordRepository,
+                                 @Value("${app.sync.checkpoint.enabled:true}") boolean enabled) {
+        this.syncRecordRepository = syncRecordRepository;
+        this.enabled = enabled;
+    }
+
+    /**
+     * 附表检查点的键
+     */
+    public static String subTableKey(String formId, String subTableName) {
+        return formId + "/" + subTableName;
+    }
+
+    /**
+     * 读取检查点，不存在或读取失败返回 null
+     */
+    public SyncRecord load(String key) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            return syncRecordRepository.findById(key).orElse(null);
+        } catch (Exception e) {
+            logFailure("读取同步检查点失败: " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 开始一次新的按ID顺序遍历：记录写入索引（null 表示不可续传）和开始时表中最新的 (modify_date, ID)
+     */
+    public void beginPass(String key, String mode, String resumeIndex,
+                              LocalDateTime pendingModifyDate, Long pendingRecordId) {
+        update(key, record -> {
+            record.setSyncStatus(STATUS_RUNNING);
+            record.setSyncMode(mode);
+            record.setResumeIndex(resumeIndex);
+            record.setResumeLastId(resumeIndex != null ? 0L : null);
+            record.setPendingModifyDate(pendingModifyDate);
+            record.setPendingRecordId(pendingRecordId);
+        });
+    }
+
+    /**
+     * 开始增量同步或续传上次未完成的遍历，只更新状态
+     */
+    public void markRunning(String key, String mode) {
+        update(key, record -> {
+            record.setSyncStatus(STATUS_RUNNING);
+            record.setSyncMode(mode);
+        });
+    }
+
+    /**
+     * 全量遍历推进：该ID及之前的记录均已确认写入
+     */
+    public void saveResumeId(String key, long lastId) {
+        update(key, record -> record.setResumeLastId(lastId));
+    }
+
+    /**
+     * 增量游标推进：该 (modify_date, ID) 及之前的记录均已确认写入
+     */
+    public void saveCursor(String key, LocalDateTime lastModifyDate, Long lastRecordId) {
+        if (lastModifyDate == null) {
+            return;
+        }
+        update(key, record -> {
+            record.setLastModifyDate(lastModifyDate);
+            record.setLastRecordId(lastRecordId);
+        });
+    }
+
+    /**
+     * 遍历完成：全量同步开始时的表游标成为新的增量游标，清除续传信息
+     */
+    public void completePass(String key) {
+        update(key, record -> {
+            if (record.getPendingModifyDate() != null) {
+                record.setLastModifyDate(record.getPendingModifyDate());
+                record.setLastRecordId(record.getPendingRecordId());
+            }
+            clearPass(record);
+            record.setSyncStatus(STATUS_COMPLETED);
+            record.setLastSyncTime(LocalDateTime.now());
+        });
+    }
+
+    /**
+     * 增量同步完成，游标已在同步过程中推进
+     */
+    public void markCompleted(String key) {
+        update(key, record -> {
+            record.setSyncStatus(STATUS_COMPLETED);
+            record.setLastSyncTime(LocalDateTime.now());
+        });
+    }
+
+    /**
+     * 遍历失败且写入的版本索引已丢弃：清除续传信息，增量游标保持不变
+     */
+    public void failPass(String key) {
+        update(key, record -> {
+            clearPass(record);
+            record.setSyncStatus(STATUS_FAILED);
+        });
+    }
+
+    /**
+     * 同步失败但已写入的数据仍有效（直接写入生效索引），保留续传位置
+     */
+    public void markFailed(String key) {
+        update(key, record -> record.setSyncStatus(STATUS_FAILED));
+    }
+
+    private void clearPass(SyncRecord record) {
+        record.setResumeIndex(null);
+        record.setResumeLastId(null);
+        record.setPendingModifyDate(null);
+        record.setPendingRecordId(null);
+    }
+
+    private void update(String key, Consumer<SyncRecord> change) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            SyncRecord record = syncRecordRepository.findById(key).orElseGet(() -> {
+                SyncRecord created = new SyncRecord();
+                created.setFormId(key);
+                created.setCreateTime(now);
+                return created;
+            });
+            change.accept(record);
+            record.setUpdateTime(now);
+            syncRecordRepository.save(record);
+        } catch (Exception e) {
+            logFailure("保存同步检查点失败: " + key, e);
+        }
+    }
+
+    /**
+     * 检查点表不可用时每批都会失败，只在第一次输出完整告警
+     */
+    private void logFailure(String message, Exception e) {
+        if (failureLogged.compareAndSet(false, true)) {
+            log.warn("{}，同步将不使用检查点", message, e);
+        } else {
+            log.debug("{}: {}", message, e.getMessage());
+        }
+    }
+}
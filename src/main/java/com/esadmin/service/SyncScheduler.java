@@ -0,0 +1,406 @@
+package com.esadmin.service;
+
+import com.esadmin.dto.FormDto;
+import com.esadmin.dto.SyncResult;
+import com.esadmin.dto.SyncSliceProgress;
+import com.esadmin.entity.SyncRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 多表单同步调度器：表单同步作业进入优先队列，由 syncTaskExecutor 上有限个作业并发执行。
+ * <p>
+ * 同时运行的作业数不超过 concurrency（每个作业都会占用数据库读取连接，应与连接池大小匹配）；
+ * 全量同步整表写入ES，另受 max-full-syncs 限制；bulk 在途请求数已由 {@link BulkDispatcher} 全局限制。
+ * 手动触发的单表单同步排在批量作业之前，并可额外使用 manual-reserved 个名额，不必等夜间批量腾出位置。
+ * 批量作业按陈旧程度（距上次同步完成的小时数，从未同步的最先）、再按表行数降序排列，
+ * 大表先开始以缩短整批的收尾时间。
+ * <p>
+ * 每个表单同一时刻至多一个排队作业和一个运行中作业：同一表单已在排队时，新请求并入该作业
+ * （全量/手动标记取并集）；已在运行时，新请求直接挂到运行中的作业上共享其结果，
+ * 只有运行中的是增量而新请求要求全量时才排一个后续作业，待当前作业结束后再开始。
+ */
+@Service
+public class SyncScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(SyncScheduler.class);
+
+    /** 已结束作业保留数，供按任务ID查询结果 */
+    private static final int MAX_FINISHED_JOBS = 200;
+
+    private static final Comparator<SyncJob> ORDER = Comparator
+            .comparing((SyncJob job) -> !job.manual)
+            .thenComparing(job -> -job.staleHours)
+            .thenComparing(job -> -job.rowEstimate)
+            .thenComparingLong(job -> job.seq);
+
+    private final SyncService syncService;
+    private final FormService formService;
+    private final SyncCheckpointService checkpointService;
+    private final Executor executor;
+    private final int concurrency;
+    private final int maxFullSyncs;
+    private final int manualReserved;
+
+    private final AtomicLong sequence = new AtomicLong();
+    /** 等待中的作业，按 ORDER 排序；以下状态均由 this 保护 */
+    private final List<SyncJob> pending = new ArrayList<>();
+    private final Map<String, SyncJob> queuedByForm = new HashMap<>();
+    private final Map<String, SyncJob> runningByForm = new LinkedHashMap<>();
+    private final Map<String, SyncJob> finishedJobs = new LinkedHashMap<String, SyncJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SyncJob> eldest) {
+            return size() > MAX_FINISHED_JOBS;
+        }
+    };
+    private int runningFull;
+
+    public SyncScheduler(SyncService syncService,
+                         FormService formService,
+                         SyncCheckpointService checkpointService,
+                         @Qualifier("syncTaskExecutor") Executor executor,
+                         @Value("${app.sync.scheduler.concurrency:4}") int concurrency,
+                         @Value("${app.sync.scheduler.max-full-syncs:2}") int maxFullSyncs,
+                         @Value("${app.sync.scheduler.manual-reserved:1}") int manualReserved) {
+        this.syncService = syncService;
+        this.formService = formService;
+        this.checkpointService = checkpointService;
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxFullSyncs = Math.max(1, maxFullSyncs);
+        this.manualReserved = Math.max(0, manualReserved);
+    }
+
+    /**
+     * 手动触发的单表单同步：排在所有批量作业之前；该表单已有作业时返回的是已有作业
+     */
+    public Ticket submitManual(String formId, boolean fullSync) {
+        SyncJob job = new SyncJob(sequence.incrementAndGet(), formId, null, fullSync, true, 0, 0);
+        return enqueue(List.of(job)).get(0);
+    }
+
+    /**
+     * 批量提交表单同步，fullSync 按表单ID决定全量或增量；返回的结果与 forms 顺序一致
+     */
+    public List<CompletableFuture<SyncResult>> submitBatch(List<FormDto> forms, Predicate<String> fullSync) {
+        Map<String, Long> rowEstimates = formService.getTableRowEstimates();
+        LocalDateTime now = LocalDateTime.now();
+
+        List<SyncJob> jobs = new ArrayList<>(forms.size());
+        for (FormDto form : forms) {
+            String formId = form.getId();
+            SyncRecord checkpoint = checkpointService.load(formId);
+            long staleHours = checkpoint == null || checkpoint.getLastSyncTime() == null
+                    ? Long.MAX_VALUE
+                    : Math.max(0, Duration.between(checkpoint.getLastSyncTime(), now).toHours());
+            String tableName = formService.getFormTableName(formId);
+            long rowEstimate = tableName != null ? rowEstimates.getOrDefault(tableName.toUpperCase(), 0L) : 0L;
+            jobs.add(new SyncJob(sequence.incrementAndGet(), formId, form.getName(),
+                    fullSync.test(formId), false, staleHours, rowEstimate));
+        }
+        List<Ticket> tickets = enqueue(jobs);
+
+        List<CompletableFuture<SyncResult>> futures = new ArrayList<>(tickets.size());
+        int attached = 0;
+        for (Ticket ticket : tickets) {
+            futures.add(ticket.future);
+            if (ticket.attached) {
+                attached++;
+            }
+        }
+        log.info("批量同步已提交: {} 个表单（其中 {} 个并入已有作业），并发上限 {}，全量同步并发上限 {}",
+                jobs.size(), attached, concurrency, maxFullSyncs);
+        return futures;
+    }
+
+    /**
+     * 按任务ID查询作业状态和进度，不存在（或已结束较久）时返回 null
+     */
+    public synchronized Map<String, Object> getJob(String taskId) {
+        for (SyncJob job : runningByForm.values()) {
+            if (job.taskId.equals(taskId)) {
+                return describeRunning(job, System.currentTimeMillis());
+            }
+        }
+        for (SyncJob job : pending) {
+            if (job.taskId.equals(taskId)) {
+                return job.describe();
+            }
+        }
+        SyncJob finished = finishedJobs.get(taskId);
+        return finished != null ? finished.describe() : null;
+    }
+
+    /**
+     * 调度器当前状态：运行中和排队中的作业
+     */
+    public synchronized Map<String, Object> getStatus() {
+        List<Map<String, Object>> running = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (SyncJob job : runningByForm.values()) {
+            running.add(describeRunning(job, now));
+        }
+        List<Map<String, Object>> queued = new ArrayList<>();
+        for (int i = 0; i < Math.min(20, pending.size()); i++) {
+            queued.add(pending.get(i).describe());
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("concurrency", concurrency);
+        status.put("max_full_syncs", maxFullSyncs);
+        status.put("manual_reserved", manualReserved);
+        status.put("running", running);
+        status.put("queued_count", pending.size());
+        status.put("queued", queued);
+        return status;
+    }
+
+    private Map<String, Object> describeRunning(SyncJob job, long now) {
+        Map<String, Object> item = job.describe();
+        item.put("running_seconds", (now - job.startTime) / 1000);
+        List<SyncSliceProgress> slices = syncService.getPartitionProgress(job.formId);
+        if (!slices.isEmpty()) {
+            long readCount = 0;
+            long syncedCount = 0;
+            for (SyncSliceProgress slice : slices) {
+                readCount += slice.getReadCount();
+                syncedCount += slice.getSyncedCount();
+            }
+            item.put("read_count", readCount);
+            item.put("synced_count", syncedCount);
+        }
+        return item;
+    }
+
+    private List<Ticket> enqueue(List<SyncJob> jobs) {
+        List<Ticket> tickets = new ArrayList<>(jobs.size());
+        synchronized (this) {
+            for (SyncJob job : jobs) {
+                tickets.add(register(job));
+            }
+            pending.sort(ORDER);
+        }
+        drain();
+        return tickets;
+    }
+
+    /**
+     * 登记作业：同一表单已排队时并入排队作业；已运行且能满足本次请求（全量，或本次只要增量）时挂到运行中的作业上
+     */
+    private Ticket register(SyncJob job) {
+        SyncJob queued = queuedByForm.get(job.formId);
+        if (queued != null) {
+            queued.merge(job);
+            log.info("表单已在排队，并入已有作业: formId={}, taskId={}", job.formId, queued.taskId);
+            return new Ticket(queued, true);
+        }
+        SyncJob running = runningByForm.get(job.formId);
+        if (running != null && (running.fullSync || !job.fullSync)) {
+            running.requests++;
+            log.info("表单正在同步，挂到运行中的作业: formId={}, taskId={}", job.formId, running.taskId);
+            return new Ticket(running, true);
+        }
+        pending.add(job);
+        queuedByForm.put(job.formId, job);
+        return new Ticket(job, false);
+    }
+
+    /**
+     * 按优先顺序启动名额允许的作业：全量同步名额已满时跳过全量作业、继续看后面的增量作业
+     */
+    private void drain() {
+        List<SyncJob> started = new ArrayList<>();
+        synchronized (this) {
+            Iterator<SyncJob> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                SyncJob job = iterator.next();
+                if (runningByForm.containsKey(job.formId)) {
+                    // 同一表单的后续作业，等当前作业结束
+                    continue;
+                }
+                int limit = job.manual ? concurrency + manualReserved : concurrency;
+                if (runningByForm.size() >= limit) {
+                    if (job.manual) {
+                        continue;
+                    }
+                    break;
+                }
+                if (job.fullSync && runningFull >= maxFullSyncs) {
+                    continue;
+                }
+                iterator.remove();
+                queuedByForm.remove(job.formId);
+                job.startTime = System.currentTimeMillis();
+                runningByForm.put(job.formId, job);
+                if (job.fullSync) {
+                    runningFull++;
+                }
+                started.add(job);
+            }
+        }
+
+        for (SyncJob job : started) {
+            try {
+                executor.execute(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                log.error("同步线程池拒绝作业: formId={}", job.formId, e);
+                finish(job, failure(job, "同步线程池已满或已关闭"));
+            }
+        }
+    }
+
+    private void run(SyncJob job) {
+        SyncResult result = null;
+        try {
+            log.info("开始调度同步: formId={}, taskId={}, {}, {}", job.formId, job.taskId,
+                    job.fullSync ? "全量" : "增量", job.manual ? "手动" : "批量");
+            result = syncService.syncFormData(job.formId, job.fullSync);
+        } catch (Throwable e) {
+            log.error("同步作业异常: formId={}", job.formId, e);
+            result = failure(job, "同步失败: " + e.getMessage());
+        } finally {
+            // 无论同步如何结束都要释放表单占位并完成future，否则后续并入该作业的请求会永远等待
+            if (result == null) {
+                result = failure(job, "同步失败: 未返回同步结果");
+            }
+            if (result.getFormName() == null) {
+                result.setFormName(job.formName);
+            }
+            finish(job, result);
+            drain();
+        }
+    }
+
+    private void finish(SyncJob job, SyncResult result) {
+        synchronized (this) {
+            if (runningByForm.remove(job.formId, job) && job.fullSync) {
+                runningFull--;
+            }
+            job.result = result;
+            finishedJobs.put(job.taskId, job);
+        }
+        job.future.complete(result);
+    }
+
+    private static SyncResult failure(SyncJob job, String message) {
+        SyncResult result = new SyncResult();
+        result.setSuccess(false);
+        result.setMessage(message);
+        result.setFormId(job.formId);
+        result.setFormName(job.formName);
+        result.setType("form_sync");
+        return result;
+    }
+
+    /**
+     * 提交结果：作业的任务ID、是否并入了已有作业，以及作业完成时的同步结果
+     */
+    public static final class Ticket {
+        private final String taskId;
+        private final boolean attached;
+        private final CompletableFuture<SyncResult> future;
+
+        private Ticket(SyncJob job, boolean attached) {
+            this.taskId = job.taskId;
+            this.attached = attached;
+            this.future = job.future;
+        }
+
+        public String getTaskId() {
+            return taskId;
+        }
+
+        public boolean isAttached() {
+            return attached;
+        }
+
+        public CompletableFuture<SyncResult> getFuture() {
+            return future;
+        }
+    }
+
+    /**
+     * 排队中的字段可被后续请求合并修改，与调度器状态一样由调度器的锁保护
+     */
+    private static final class SyncJob {
+        private final long seq;
+        private final String taskId;
+        private final String formId;
+        private final long submitTime = System.currentTimeMillis();
+        private final CompletableFuture<SyncResult> future = new CompletableFuture<>();
+        private String formName;
+        private boolean fullSync;
+        private boolean manual;
+        private long staleHours;
+        private long rowEstimate;
+        private int requests = 1;
+        private long startTime;
+        private SyncResult result;
+
+        private SyncJob(long seq, String formId, String formName, boolean fullSync, boolean manual,
+                        long staleHours, long rowEstimate) {
+            this.seq = seq;
+            this.taskId = "sync_" + seq;
+            this.formId = formId;
+            this.formName = formName;
+            this.fullSync = fullSync;
+            this.manual = manual;
+            this.staleHours = staleHours;
+            this.rowEstimate = rowEstimate;
+        }
+
+        /**
+         * 并入同一表单的另一个请求：任一请求要求全量则全量，任一为手动则按手动优先
+         */
+        private void merge(SyncJob other) {
+            fullSync |= other.fullSync;
+            manual |= other.manual;
+            staleHours = Math.max(staleHours, other.staleHours);
+            rowEstimate = Math.max(rowEstimate, other.rowEstimate);
+            if (formName == null) {
+                formName = other.formName;
+            }
+            requests++;
+        }
+
+        private Map<String, Object> describe() {
+            Map<String, Object> item = new HashMap<>();
+            item.put("task_id", taskId);
+            item.put("state", result == null ? (startTime == 0 ? "queued" : "running")
+                    : (result.isSuccess() ? "completed" : "failed"));
+            item.put("requests", requests);
+            item.put("submit_time", submitTime);
+            item.put("form_id", formId);
+            item.put("form_name", formName);
+            item.put("full_sync", fullSync);
+            item.put("manual", manual);
+            item.put("stale_hours", staleHours == Long.MAX_VALUE ? null : staleHours);
+            item.put("row_estimate", rowEstimate);
+            if (result != null) {
+                item.put("success", result.isSuccess());
+                item.put("message", result.getMessage());
+                item.put("count", result.getCount());
+                item.put("elapsed_time", result.getElapsedTime());
+            }
+            return item;
+        }
+    }
+}
@@ -2,12 +2,16 @@ package com.esadmin.service;
 
 import com.esadmin.dto.FormDto;
 import com.esadmin.dto.SyncResult;
+import com.esadmin.dto.SyncSliceProgress;
+import com.esadmin.entity.SyncRecord;
+import com.esadmin.util.CompactRow;
+import com.esadmin.util.NdjsonBulkBody;
+import com.esadmin.util.SortedLongSet;
+import com.esadmin.util.SyncPipeline;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
@@ -16,6 +20,7 @@ import org.elasticsearch.client.ResponseException;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.PutMappingRequest;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
@@ -23,18 +28,27 @@ import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.xcontent.XContentType;
 import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.rest.RestStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.elasticsearch.core.TimeValue;
 
+import javax.annotation.PreDestroy;
+import java.math.BigInteger;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
-import java.sql.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.io.IOException;
 import java.util.Locale;
 
@@ -43,35 +57,56 @@ public class SyncService {
 
     private static final Logger log = LoggerFactory.getLogger(SyncService.class);
     
-    // 预编译正则表达式，提升性能
-    private static final Pattern DATE_TIME_WITH_MILLIS = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d+");
-    private static final Pattern DATE_TIME = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}");
-    private static final Pattern DATE_ONLY = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
-    
-    // 预创建DateTimeFormatter，避免重复创建
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int SYNCED_ID_PAGE_SIZE = 10000;
+    /** 按主表ID读取附表行时 IN 列表的长度上限 */
+    private static final int EMBEDDED_IN_CHUNK_SIZE = 1000;
+    /** 附表遍历结束但有文档写入失败或进入死信文件 */
+    private static final long INCOMPLETE_WRITE = -2L;
     
     private final RestHighLevelClient esClient;
     private final FormService formService;
-    private final MemberService memberService;
+    private final MemberDirectory memberDirectory;
     private final ObjectMapper objectMapper;
+    private final EsBulkWriter bulkWriter;
+    private final BulkDispatcher bulkDispatcher;
+    private final IndexBulkLoadService bulkLoadService;
+    private final IndexVersionService indexVersionService;
+    private final SyncCheckpointService checkpointService;
+    private final ContentHashService contentHashService;
+    private final BatchSizeTuner batchSizeTuner;
+    private final DbReadPermits readPermits;
+    private final Executor pipelineExecutor;
+    private final AsyncTaskExecutor sliceExecutor;
 
     private final Map<String, Boolean> indexExistenceCache = new ConcurrentHashMap<>();
     private final Map<String, Object> indexLocks = new ConcurrentHashMap<>();
+    private final Map<String, List<SyncSliceProgress>> partitionProgress = new ConcurrentHashMap<>();
 
 
     public SyncService(RestHighLevelClient esClient, FormService formService, 
-                      MemberService memberService, ObjectMapper objectMapper) {
+                      MemberDirectory memberDirectory, ObjectMapper objectMapper,
+                      EsBulkWriter bulkWriter, BulkDispatcher bulkDispatcher,
+                      IndexBulkLoadService bulkLoadService, IndexVersionService indexVersionService,
+                      SyncCheckpointService checkpointService, ContentHashService contentHashService,
+                      BatchSizeTuner batchSizeTuner, DbReadPermits readPermits,
+                      @Qualifier("syncPipelineExecutor") Executor pipelineExecutor,
+                      @Qualifier("syncSliceExecutor") AsyncTaskExecutor sliceExecutor) {
         this.esClient = esClient;
         this.formService = formService;
-        this.memberService = memberService;
+        this.memberDirectory = memberDirectory;
         this.objectMapper = objectMapper;
+        this.bulkWriter = bulkWriter;
+        this.bulkDispatcher = bulkDispatcher;
+        this.bulkLoadService = bulkLoadService;
+        this.indexVersionService = indexVersionService;
+        this.checkpointService = checkpointService;
+        this.contentHashService = contentHashService;
+        this.batchSizeTuner = batchSizeTuner;
+        this.readPermits = readPermits;
+        this.pipelineExecutor = pipelineExecutor;
+        this.sliceExecutor = sliceExecutor;
     }
 
-    @Value("${app.sync.batch-size:2000}")
-    private int batchSize;
-
     @Value("${app.sync.db-batch-size:1000}")
     private int dbBatchSize;
 
@@ -84,11 +119,40 @@ public class SyncService {
     @Value("${app.sync.es-retry-max-backoff-millis:5000}")
     private long esRetryMaxBackoffMillis;
 
-    @Value("${app.sync.es-bulk-timeout-seconds:60}")
-    private int bulkTimeoutSeconds;
+    @Value("${app.sync.pipeline.enabled:true}")
+    private boolean pipelineEnabled;
+
+    @Value("${app.sync.pipeline.builder-threads:0}")
+    private int pipelineBuilderThreads;
+
+    @Value("${app.sync.pipeline.queue-capacity:4}")
+    private int pipelineQueueCapacity;
+
+    @Value("${app.sync.partition.enabled:true}")
+    private boolean partitionEnabled;
+
+    @Value("${app.sync.partition.slices:8}")
+    private int partitionSlices;
+
+    @Value("${app.sync.partition.concurrency:4}")
+    private int partitionConcurrency;
+
+    @Value("${app.sync.partition.min-rows:500000}")
+    private long partitionMinRows;
 
-    @Value("${app.sync.es-bulk-max-actions:4000}")
-    private int esBulkMaxActions;
+    @Value("${app.sync.partition.strategy:quantile}")
+    private String partitionStrategy;
+
+    @Value("${app.sync.sub-table.concurrency:4}")
+    private int subTableConcurrency;
+
+    @Value("${app.sync.sub-table.mode:index}")
+    private String subTableMode;
+
+    @Value("${app.sync.sub-table.parent-column:formmain_id}")
+    private String subTableParentColumn;
+
+    private volatile ExecutorService subTableExecutor;
 
     public SyncResult syncFormData(String formId, boolean fullSync) {
         long startTime = System.currentTimeMillis();
@@ -127,14 +191,37 @@ public class SyncService {
             List<Map<String, Object>> fields = formService.getFormFields(formId);
             Map<String, String> fieldLabels = formService.getFieldLabels(formId);
 
-            // 创建索引映射
+            // 内嵌模式下附表行写入主表文档，不再单独建附表索引
+            List<EmbeddedTable> embeddedTables = embedSubTables()
+                    ? resolveEmbeddedTables(formId) : Collections.emptyList();
+            List<String> nestedFields = new ArrayList<>(embeddedTables.size());
+            Set<String> embeddedTableNames = new HashSet<>();
+            for (EmbeddedTable embeddedTable : embeddedTables) {
+                nestedFields.add(embeddedTable.fieldName);
+                embeddedTableNames.add(embeddedTable.tableName);
+            }
+
+            // 创建索引映射；全量同步写入新一代版本索引，完成后再切换别名
             String indexName = "form_" + formId;
-            if (!createIndexMapping(indexName, fields)) {
+            SyncRecord checkpoint = checkpointService.load(formId);
+            // 上次全量同步中途退出时，从检查点续传到原来的索引
+            String targetIndex = fullSync ? resumableIndex(checkpoint, indexName, true) : null;
+            Long resumeFromId = null;
+            if (targetIndex != null) {
+                resumeFromId = checkpoint.getResumeLastId();
+            } else {
+                targetIndex = prepareTargetIndex(indexName, fields, nestedFields, fullSync);
+            }
+            if (targetIndex == null) {
                 return createFailureResult("创建索引失败", formId, form.getName());
             }
+            if (indexName.equals(targetIndex) && !nestedFields.isEmpty()) {
+                // 直接写入已有索引时补充内嵌字段的映射
+                ensureNestedMapping(indexName, nestedFields);
+            }
 
-            // 预加载成员信息
-            Map<String, String> memberCache = preloadMemberCache(tableName);
+            // 成员姓名从共享的成员目录读取，目录中没有的ID在构建文档前按批次补齐
+            Map<String, String> memberCache = memberDirectory.nameView();
             
             // 预加载主要显示字段（避免每个文档都查询）
             List<String> primaryDisplayFields = getPrimaryDisplayFields(formId);
@@ -144,23 +231,68 @@ public class SyncService {
                 primaryFieldsMap.put(primaryDisplayFields.get(i), i);
             }
 
+            // 附表与主表并行同步（已内嵌的附表随主表文档写入）
+            WorkerGate subTableWorkers = new WorkerGate();
+            List<Future<Long>> subTableFutures = submitSubTables(formId, fullSync, memberCache, embeddedTableNames,
+                    subTableWorkers);
+            Map<EmbeddedTable, Object[]> pendingEmbeddedCursors = beginEmbeddedCursors(embeddedTables, fullSync);
+
             // 根据索引情况选择同步策略 - 主表同步
             SyncResult mainTableResult;
-            if (!fullSync && !hasIncrementalIndexes) {
-                // 无索引增量同步：使用ES差集方法
-                mainTableResult = syncFormDataWithoutIndexes(formId, form, tableName, fields, fieldLabels, memberCache, primaryFieldsMap, startTime);
-            } else {
-                // 有索引的常规同步
-                mainTableResult = syncFormDataWithIndexes(formId, form, tableName, fields, fieldLabels, memberCache, primaryFieldsMap, fullSync, hasIncrementalIndexes, startTime);
+            long[] partitionRange = fullSync && resumeFromId == null ? resolvePartitionRange(tableName) : null;
+            beginCheckpoint(formId, tableName, targetIndex, fullSync, resumeFromId, partitionRange == null);
+            // 全量同步期间关闭刷新和副本，结束（含异常）时恢复
+            try (IndexBulkLoadService.BulkLoad bulkLoad = fullSync ? bulkLoadService.enter(targetIndex) : null) {
+                boolean passed = false;
+                try {
+                    if (!fullSync && (!hasIncrementalIndexes || contentHashService.isAlways())) {
+                        // 无索引增量同步：按ID顺序扫描，与ES已有记录（或内容指纹）比对
+                        mainTableResult = syncFormDataWithoutIndexes(formId, form, tableName, fields, fieldLabels, memberCache, primaryFieldsMap, embeddedTables, startTime);
+                    } else if (partitionRange != null) {
+                        // 大表全量同步：按ID区间分片并行
+                        mainTableResult = syncFormDataPartitioned(formId, form, tableName, targetIndex, fieldLabels, memberCache, primaryFieldsMap, embeddedTables, partitionRange, startTime);
+                    } else {
+                        // 有索引的常规同步
+                        mainTableResult = syncFormDataWithIndexes(formId, form, tableName, targetIndex, fields, fieldLabels, memberCache, primaryFieldsMap, embeddedTables, fullSync, hasIncrementalIndexes, checkpoint, resumeFromId, startTime);
+                    }
+                    passed = mainTableResult.isSuccess();
+                } finally {
+                    if (!passed) {
+                        discardBulkLoad(bulkLoad, indexName, targetIndex);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // 先停止附表同步再返回，否则调度器释放该表单后新作业会与仍在写入的附表同步重叠
+                cancelSubTables(subTableFutures, subTableWorkers);
+                switchToTargetIndex(indexName, targetIndex, false);
+                finishCheckpoint(formId, indexName, targetIndex, fullSync, false, 0L);
+                throw e;
             }
-            
-            // 如果主表同步失败，直接返回
-            if (!mainTableResult.isSuccess()) {
-                return mainTableResult;
+
+            boolean switched = switchToTargetIndex(indexName, targetIndex, mainTableResult.isSuccess());
+            finishCheckpoint(formId, indexName, targetIndex, fullSync, switched && mainTableResult.isSuccess(),
+                    mainTableResult.getFailed());
+            if (fullSync && switched && mainTableResult.isSuccess()) {
+                // 索引已整体重写，本地指纹文件不再对应索引内容
+                contentHashService.invalidate(indexName);
+            }
+            if (switched && mainTableResult.isSuccess()) {
+                commitEmbeddedCursors(pendingEmbeddedCursors);
             }
             
-            // 同步附表
-            SyncResult subTableResult = syncSubTables(formId, form, fullSync, memberCache, startTime);
+            // 等待附表同步结束；内嵌附表在增量同步时再按附表游标重建受影响的主表文档
+            SyncResult subTableResult = awaitSubTables(formId, form, subTableFutures, subTableWorkers, startTime);
+            if (!embeddedTables.isEmpty()) {
+                SyncResult embeddedResult = !fullSync && switched && mainTableResult.isSuccess()
+                        ? syncEmbeddedChanges(formId, form, tableName, indexName, embeddedTables,
+                                fieldLabels, memberCache, primaryFieldsMap, startTime)
+                        : createSuccessResult(embeddedTables.size() + " 个附表已内嵌到主表文档",
+                                formId, form.getName(), 0, 0.0);
+                subTableResult = subTableFutures.isEmpty() ? embeddedResult : mergeSubResults(subTableResult, embeddedResult);
+            }
+            if (!switched) {
+                return createFailureResult("切换索引别名失败: " + targetIndex, formId, form.getName());
+            }
             
             // 合并主表和附表的同步结果
             return mergeResults(mainTableResult, subTableResult);
@@ -172,75 +304,54 @@ public class SyncService {
     }
     
     /**
-     * 无索引增量同步方案 - 适用于大表且无法创建modify_date索引的场景
+     * 无索引增量同步方案 - 适用于大表且无法创建modify_date索引的场景。
+     * 启用内容指纹时按ID顺序比对每行指纹，只重写新增或内容变化的行；否则只补写ES中不存在的行
      */
     private SyncResult syncFormDataWithoutIndexes(String formId, FormDto form, String tableName,
             List<Map<String, Object>> fields, Map<String, String> fieldLabels,
-            Map<String, String> memberCache, Map<String, Integer> primaryFieldsMap, long startTime) {
-
-        try {
-            log.info("执行无索引增量同步: formId={}", formId);
-
-            String indexName = "form_" + formId;
-            Set<Long> syncedIds = getSyncedIdsFromES(formId);
-            log.info("ES中已同步记录数: {}", syncedIds.size());
-
-            long dbTotalCount = formService.getTableTotalCount(tableName);
-            log.info("数据库总记录数: {}", dbTotalCount);
-
-            long successCount = 0;
-            long totalChecked = 0;
-            int offset = 0;
-            BulkSyncBuffer bulkBuffer = newBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache, primaryFieldsMap);
-
-            while (offset < dbTotalCount) {
-                List<Map<String, Object>> batch = formService.getTableDataByIdBatch(tableName, dbBatchSize, offset);
-                if (batch.isEmpty()) {
-                    break;
-                }
-
-                List<Map<String, Object>> recordsToSync = new ArrayList<>();
-                for (Map<String, Object> record : batch) {
-                    Object idObj = record.get("ID");
-                    if (idObj == null) {
-                        continue;
-                    }
-                    Long recordId = Long.valueOf(idObj.toString());
-                    if (!syncedIds.contains(recordId)) {
-                        recordsToSync.add(record);
-                    }
-                }
-
-                totalChecked += batch.size();
+            Map<String, String> memberCache, Map<String, Integer> primaryFieldsMap,
+            List<EmbeddedTable> embeddedTables, long startTime) {
+
+        String indexName = "form_" + formId;
+        boolean contentHash = contentHashService.isEnabled();
+
+        try (BulkSyncBuffer bulkBuffer = newBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache,
+                primaryFieldsMap, embeddedTables);
+             ContentHashService.Lookup hashLookup = contentHash ? contentHashService.openLookup(indexName) : null;
+             ContentHashService.Store hashStore = contentHash ? contentHashService.openStore(indexName) : null) {
+            RowSelector selector;
+            if (contentHash) {
+                log.info("执行无索引增量同步（内容指纹比对）: formId={}", formId);
+                selector = contentHashSelector(new ProjectionPlanCache(fieldLabels, primaryFieldsMap), hashLookup, hashStore);
+            } else {
+                log.info("执行无索引增量同步: formId={}", formId);
+                SortedLongSet syncedIds = getSyncedIdsFromES(formId);
+                log.info("ES中已同步记录数: {}，ID集合占用约 {} KB", syncedIds.size(), syncedIds.memoryBytes() / 1024);
+                // ES中的ID与数据库扫描都按ID升序，用前向游标归并，每行判断为均摊 O(1)
+                SortedLongSet.Cursor syncedCursor = syncedIds.cursor();
+                selector = (id, row) -> !syncedCursor.contains(id);
+            }
 
-                if (!recordsToSync.isEmpty()) {
-                    successCount += bulkBuffer.addRecords(recordsToSync);
-                    log.info("批次同步完成: 检查 {} 条，新增 {} 条，累计同步 {} 条",
-                            batch.size(), recordsToSync.size(), successCount);
-                }
+            ScanStats scan = scanSelectedRows(tableName, bulkBuffer, selector, startTime);
+            long totalChecked = scan.checked;
+            long successCount = scan.synced;
 
-                offset += batch.size();
+            successCount += bulkBuffer.finish();
+            refreshIndexSafely(indexName);
 
-                if (totalChecked % (dbBatchSize * 10) == 0) {
-                    double progress = (double) totalChecked / Math.max(1, dbTotalCount) * 100.0;
-                    double elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
-                    String progressStr = String.format(Locale.ROOT, "%.1f", progress);
-                    String elapsedStr = String.format(Locale.ROOT, "%.1f", elapsedSeconds);
-                    log.info("无索引增量同步进度: {}%，已检查 {}/{}，新增 {} 条，耗时 {}s",
-                            progressStr, totalChecked, dbTotalCount, successCount, elapsedStr);
-                }
+            if (hashStore != null) {
+                commitHashStore(hashStore, bulkBuffer, indexName);
             }
 
-            successCount += bulkBuffer.flush();
-            refreshIndexSafely(indexName);
-
             double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
             double rate = successCount / Math.max(elapsed, 0.001);
 
             SyncResult result = new SyncResult();
             result.setSuccess(true);
             result.setMessage(String.format(Locale.ROOT,
-                    "无索引增量同步完成，检查 %d 条记录，新增同步 %d 条记录，耗时 %.1f 秒，平均速度 %.1f 条/秒",
+                    contentHash
+                            ? "无索引增量同步完成，检查 %d 条记录，新增或变化同步 %d 条记录，耗时 %.1f 秒，平均速度 %.1f 条/秒"
+                            : "无索引增量同步完成，检查 %d 条记录，新增同步 %d 条记录，耗时 %.1f 秒，平均速度 %.1f 条/秒",
                     totalChecked, successCount, elapsed, rate));
             result.setCount(successCount);
             result.setTotal(totalChecked);
@@ -258,28 +369,106 @@ public class SyncService {
         }
     }
     
+    /**
+     * 按ID升序扫描整表，被 selector 选中的行转交写入缓冲区（不含 finish）
+     */
+    private ScanStats scanSelectedRows(String tableName, BulkSyncBuffer bulkBuffer, RowSelector selector, long startTime) {
+        long dbTotalCount = formService.getTableTotalCount(tableName);
+        log.info("数据库总记录数: {}, 表={}", dbTotalCount, tableName);
+
+        ScanStats stats = new ScanStats();
+        Long lastId = null;
+        int batches = 0;
+        while (true) {
+            SelectedRowFilter batch = new SelectedRowFilter(bulkBuffer, selector);
+            int limit = bulkBuffer.dbBatchSize();
+            long fetchStart = System.nanoTime();
+            try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                formService.streamTableDataBatchByMinId(tableName, limit, lastId, batch);
+            }
+            bulkBuffer.recordFetch(limit, batch.size(), System.nanoTime() - fetchStart - batch.forwardNanos());
+            if (batch.size() == 0) {
+                break;
+            }
+
+            stats.checked += batch.size();
+            stats.selected += batch.addedCount();
+            stats.synced += batch.syncedCount();
+            if (batch.addedCount() > 0) {
+                log.info("批次同步完成: 表={}, 检查 {} 条，写入 {} 条，累计写入 {} 条",
+                        tableName, batch.size(), batch.addedCount(), stats.selected);
+            }
+
+            if (batch.lastId() == null || batch.size() < limit) {
+                break;
+            }
+            lastId = batch.lastId();
+
+            if (++batches % 10 == 0) {
+                double progress = (double) stats.checked / Math.max(1, dbTotalCount) * 100.0;
+                double elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+                String progressStr = String.format(Locale.ROOT, "%.1f", progress);
+                String elapsedStr = String.format(Locale.ROOT, "%.1f", elapsedSeconds);
+                log.info("无索引增量同步进度: 表={}, {}%，已检查 {}/{}，写入 {} 条，耗时 {}s",
+                        tableName, progressStr, stats.checked, dbTotalCount, stats.selected, elapsedStr);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 内容指纹选择器：记录每行的新指纹，只选中新增或指纹变化的行。
+     * plans 须与写入缓冲区使用相同的字段配置，保证与文档中的 content_hash 一致
+     */
+    private RowSelector contentHashSelector(ProjectionPlanCache plans, ContentHashService.Lookup hashLookup,
+                                            ContentHashService.Store hashStore) {
+        return (id, row) -> {
+            long hash = plans.planFor(row.columns()).contentHash(row);
+            hashStore.append(id, hash);
+            return !hashLookup.matches(id, hash);
+        };
+    }
+
+    /**
+     * 缓冲区 finish 之后调用：所有选中的文档都已写入ES时才用新指纹文件替换旧文件，
+     * 否则保留旧文件，写入失败的行下次仍会被判定为变化
+     */
+    private void commitHashStore(ContentHashService.Store hashStore, BulkSyncBuffer bulkBuffer, String indexName)
+            throws IOException {
+        if (bulkBuffer.failedCount() == 0) {
+            hashStore.commit();
+        } else {
+            log.warn("有 {} 条文档写入失败，本次不更新指纹文件: {}", bulkBuffer.failedCount(), indexName);
+        }
+    }
+
     /**
      * 有索引的常规同步方案
      */
-    private SyncResult syncFormDataWithIndexes(String formId, FormDto form, String tableName, 
+    private SyncResult syncFormDataWithIndexes(String formId, FormDto form, String tableName, String indexName,
             List<Map<String, Object>> fields, Map<String, String> fieldLabels, 
-            Map<String, String> memberCache, Map<String, Integer> primaryFieldsMap, boolean fullSync, boolean hasIncrementalIndexes, long startTime) {
+            Map<String, String> memberCache, Map<String, Integer> primaryFieldsMap, List<EmbeddedTable> embeddedTables,
+            boolean fullSync, boolean hasIncrementalIndexes, SyncRecord checkpoint, Long resumeFromId, long startTime) {
         
-        try {
-            // 确保索引存在（已在主流程中创建，这里不需要重复）
-            String indexName = "form_" + formId;
-
+        // 索引已在主流程中创建（全量同步时为新一代版本索引）
+        try (BulkSyncBuffer bulkBuffer = newBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache,
+                primaryFieldsMap, embeddedTables)) {
             // 同步数据
             long successCount = 0;
             long totalCount = 0;
-            BulkSyncBuffer bulkBuffer = newBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache, primaryFieldsMap);
             
             // 使用基于时间的安全增量同步方法
             LocalDateTime lastModifyDateTime = null;
             Long lastRecordId = null;
             
-            if (!fullSync && hasIncrementalIndexes) {
-                // 获取ES中最新的修改时间和记录ID
+            if (!fullSync && hasIncrementalIndexes && checkpoint != null && checkpoint.getLastModifyDate() != null) {
+                // 从检查点中的游标继续，无需查询ES
+                lastModifyDateTime = checkpoint.getLastModifyDate();
+                lastRecordId = checkpoint.getLastRecordId();
+                log.info("执行增量同步（检查点）: formId={}, 最新修改时间={}, 最新记录ID={}",
+                        formId, lastModifyDateTime, lastRecordId);
+            } else if (!fullSync && hasIncrementalIndexes) {
+                // 没有检查点时，获取ES中最新的修改时间和记录ID
                 Map<String, Object> lastRecord = getLatestRecordFromES(formId);
                 if (lastRecord != null) {
                     Object modifyDateObj = lastRecord.get("modify_date");
@@ -294,6 +483,8 @@ public class SyncService {
                 }
                 log.info("执行ES增量同步: formId={}, 最新修改时间={}, 最新记录ID={}", 
                         formId, lastModifyDateTime, lastRecordId);
+            } else if (resumeFromId != null && resumeFromId > 0) {
+                log.info("从检查点续传全量同步: formId={}, 索引={}, 起始ID={}", formId, indexName, resumeFromId);
             } else {
                 log.info("执行全量同步: formId={}", formId);
             }
@@ -301,46 +492,46 @@ public class SyncService {
             // 游标分页变量
             LocalDateTime currentModifyDate = lastModifyDateTime;
             Long currentRecordId = lastRecordId;
-            Long lastProcessedId = 0L; // 用于全量同步的ID游标
+            Long lastProcessedId = resumeFromId != null ? resumeFromId : 0L; // 用于全量同步的ID游标
             
             while (true) {
-                List<Map<String, Object>> batch;
+                // 流式读取：行到达即投递给写入缓冲区，不在内存中保留整批数据
+                StreamedBatch batch = new StreamedBatch(bulkBuffer);
+                int limit = bulkBuffer.dbBatchSize();
+                long fetchStart = System.nanoTime();
                 
-                if (fullSync || !hasIncrementalIndexes) {
-                    // 全量同步使用基于ID的游标分页（性能更好）
-                    log.debug("查询数据库：tableName={}, limit={}, lastProcessedId={}", tableName, dbBatchSize, lastProcessedId);
-                    // 第一次查询时(lastProcessedId=0)传递null，从头开始；后续查询传递实际的ID作为游标
-                    Long minIdForQuery = (lastProcessedId == 0L) ? null : lastProcessedId;
-                    batch = formService.getTableDataBatchByMinId(tableName, dbBatchSize, 0, minIdForQuery);
-                } else {
-                    // 增量同步使用新的游标分页方法
-                    batch = formService.getTableDataIncrementalCursor(tableName, dbBatchSize, 
-                            currentModifyDate, currentRecordId);
+                try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                    if (fullSync || !hasIncrementalIndexes) {
+                        // 全量同步使用基于ID的游标分页（性能更好）
+                        log.debug("查询数据库：tableName={}, limit={}, lastProcessedId={}", tableName, limit, lastProcessedId);
+                        // 第一次查询时(lastProcessedId=0)传递null，从头开始；后续查询传递实际的ID作为游标
+                        Long minIdForQuery = (lastProcessedId == 0L) ? null : lastProcessedId;
+                        formService.streamTableDataBatchByMinId(tableName, limit, minIdForQuery, batch);
+                    } else {
+                        // 增量同步使用新的游标分页方法
+                        formService.streamTableDataIncrementalCursor(tableName, limit,
+                                currentModifyDate, currentRecordId, batch);
+                    }
                 }
+                bulkBuffer.recordFetch(limit, batch.size(), System.nanoTime() - fetchStart - batch.forwardNanos());
                 
                 if (batch.isEmpty()) {
                     break;
                 }
 
                 totalCount += batch.size();
-                successCount += bulkBuffer.addRecords(batch);
+                successCount += batch.syncedCount();
 
                 // 更新游标位置
-                if (!fullSync && !batch.isEmpty()) {
+                if (!fullSync) {
                     // 增量同步：更新游标到当前批次的最后一条记录
-                    Map<String, Object> lastRecord = batch.get(batch.size() - 1);
+                    Map<String, Object> lastRecord = batch.lastRow();
                     Object lastModifyDateObj = lastRecord.get("modify_date");
                     Object lastIdObj = lastRecord.get("ID");
                     
                     if (lastModifyDateObj != null) {
                         try {
-                            if (lastModifyDateObj instanceof java.sql.Timestamp) {
-                                currentModifyDate = ((java.sql.Timestamp) lastModifyDateObj).toLocalDateTime();
-                            } else if (lastModifyDateObj instanceof java.util.Date) {
-                                currentModifyDate = new java.sql.Timestamp(((java.util.Date) lastModifyDateObj).getTime()).toLocalDateTime();
-                            } else {
-                                currentModifyDate = parseModifyDate(lastModifyDateObj.toString());
-                            }
+                            currentModifyDate = toLocalDateTime(lastModifyDateObj);
                         } catch (Exception e) {
                             log.warn("解析最后记录修改时间失败: {}", lastModifyDateObj, e);
                         }
@@ -355,24 +546,26 @@ public class SyncService {
                     }
                     
                     log.debug("游标推进到: modifyDate={}, recordId={}", currentModifyDate, currentRecordId);
+                    LocalDateTime checkpointDate = currentModifyDate;
+                    Long checkpointId = currentRecordId;
+                    bulkBuffer.checkpoint(() -> checkpointService.saveCursor(formId, checkpointDate, checkpointId));
                 } else if (fullSync || !hasIncrementalIndexes) {
                     // 全量同步：更新ID游标到当前批次的最后一条记录ID（因为数据已按ID排序）
-                    if (!batch.isEmpty()) {
-                        Map<String, Object> lastRecord = batch.get(batch.size() - 1);
-                        Object lastIdObj = lastRecord.get("ID");
-                        if (lastIdObj != null) {
-                            try {
-                                lastProcessedId = Long.valueOf(lastIdObj.toString());
-                                log.info("全量同步ID游标推进到: {} (批次最后记录)", lastProcessedId);
-                            } catch (NumberFormatException e) {
-                                log.warn("解析最后记录ID失败: {}", lastIdObj, e);
-                            }
+                    Object lastIdObj = batch.lastRow().get("ID");
+                    if (lastIdObj != null) {
+                        try {
+                            lastProcessedId = Long.valueOf(lastIdObj.toString());
+                            log.info("全量同步ID游标推进到: {} (批次最后记录)", lastProcessedId);
+                        } catch (NumberFormatException e) {
+                            log.warn("解析最后记录ID失败: {}", lastIdObj, e);
                         }
                     }
+                    long checkpointId = lastProcessedId;
+                    bulkBuffer.checkpoint(() -> checkpointService.saveResumeId(formId, checkpointId));
                 }
                 
                 // 如果返回的数据少于批次大小，说明已经是最后一批
-                if (batch.size() < dbBatchSize) {
+                if (batch.size() < limit) {
                     break;
                 }
                 
@@ -383,8 +576,18 @@ public class SyncService {
                     successCount, totalCount, elapsed, rate));
             }
 
-            successCount += bulkBuffer.flush();
+            successCount += bulkBuffer.finish();
             refreshIndexSafely(indexName);
+            if (!bulkBuffer.fullyWritten()) {
+                // 有文档未写入时按失败返回，全量同步写入的新一代索引随之丢弃，别名保持不变
+                log.error("同步未完整写入: formId={}, 索引={}, 失败 {} 条，已确认写入 {}/{} 条",
+                        formId, indexName, bulkBuffer.failedCount(), successCount, totalCount);
+                SyncResult failure = createFailureResult(String.format(Locale.ROOT,
+                        "同步未完整写入: %d 条文档写入失败，已写入 %d/%d 条",
+                        bulkBuffer.failedCount(), successCount, totalCount), formId, form.getName());
+                failure.setFailed(bulkBuffer.failedCount());
+                return failure;
+            }
 
             double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
             double rate = successCount / elapsed;
@@ -409,171 +612,550 @@ public class SyncService {
         }
     }
 
-    private boolean createIndexMapping(String indexName, List<Map<String, Object>> fields) {
-        Object lock = indexLocks.computeIfAbsent(indexName, key -> new Object());
-        synchronized (lock) {
-            if (Boolean.TRUE.equals(indexExistenceCache.get(indexName))) {
-                return true;
-            }
+    /**
+     * 判断是否启用分区并行全量同步，启用时返回表的 [minId, maxId]
+     */
+    private long[] resolvePartitionRange(String tableName) {
+        if (!partitionEnabled || partitionSlices <= 1) {
+            return null;
+        }
+        long[] idRange = formService.getTableIdRange(tableName);
+        if (idRange == null || idRange[0] == idRange[1]) {
+            return null;
+        }
+        long rowCount = formService.getTableTotalCount(tableName);
+        if (rowCount < partitionMinRows) {
+            log.debug("表 {} 记录数 {} 未达到分区同步阈值 {}，使用单游标全量同步", tableName, rowCount, partitionMinRows);
+            return null;
+        }
+        return idRange;
+    }
 
-            if (indexExists(indexName)) {
-                log.debug("索引已存在，跳过创建: {}", indexName);
-                return true;
+    /**
+     * 分区并行全量同步：将ID范围切分为多个分片，每个分片使用独立游标并发同步
+     */
+    private SyncResult syncFormDataPartitioned(String formId, FormDto form, String tableName, String indexName,
+            Map<String, String> fieldLabels, Map<String, String> memberCache,
+            Map<String, Integer> primaryFieldsMap, List<EmbeddedTable> embeddedTables, long[] idRange, long startTime) {
+
+        List<SyncSliceProgress> slices = planIdSlices(tableName, idRange);
+        partitionProgress.put(formId, slices);
+
+        int concurrency = Math.max(1, Math.min(partitionConcurrency, slices.size()));
+        int builderThreads = Math.max(1, resolveBuilderThreads() / concurrency);
+        log.info("执行分区并行全量同步: formId={}, ID范围=[{}, {}], 分片数={}, 并发数={}",
+                formId, idRange[0], idRange[1], slices.size(), concurrency);
+
+        // 分片在共享的分片线程池上执行：提交 concurrency 个任务依次领取分片，限制本表单同时读取的分片数
+        Queue<SyncSliceProgress> remainingSlices = new ConcurrentLinkedQueue<>(slices);
+        List<Future<Long>> futures = new ArrayList<>(concurrency);
+        WorkerGate workers = new WorkerGate();
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(sliceExecutor.submit(() -> {
+                    if (!workers.enter()) {
+                        return 0L;
+                    }
+                    try {
+                        long synced = 0;
+                        SyncSliceProgress slice;
+                        while (!Thread.currentThread().isInterrupted() && (slice = remainingSlices.poll()) != null) {
+                            synced += syncIdSlice(formId, indexName, tableName, slice,
+                                    fieldLabels, memberCache, primaryFieldsMap, embeddedTables, builderThreads);
+                        }
+                        return synced;
+                    } finally {
+                        workers.exit();
+                    }
+                }));
             }
 
+            long successCount = 0;
             try {
-                Map<String, Object> properties = new HashMap<>();
-                properties.put("form_id", Map.of("type", "keyword"));
-                properties.put("table_name", Map.of("type", "keyword"));
-                properties.put("record_id", Map.of("type", "long"));
-                properties.put("sync_time", Map.of("type", "date"));
-
-                String dateFormats = "strict_date_optional_time||epoch_millis||yyyy-MM-dd HH:mm:ss.S||yyyy-MM-dd HH:mm:ss||yyyy-MM-dd";
-                properties.put("modify_date", Map.of("type", "date", "format", dateFormats));
-                properties.put("start_date", Map.of("type", "date", "format", dateFormats));
-                properties.put("start_member_id", Map.of("type", "long"));
-                properties.put("modify_member_id", Map.of("type", "long"));
-                properties.put("approve_member_id", Map.of("type", "long"));
-                properties.put("ratify_member_id", Map.of("type", "long"));
-
-                for (Map<String, Object> field : fields) {
-                    String fieldName = getFieldName(field);
-                    String fieldType = getFieldType(field);
-
-                    if (fieldType.matches("(?i)text|VARCHAR")) {
-                        properties.put(fieldName, Map.of("type", "text", "analyzer", "standard"));
-                    } else if (fieldType.matches("(?i)datetime|TIMESTAMP|date|DATE")) {
-                        properties.put(fieldName, Map.of("type", "date", "format", dateFormats));
-                    } else if (fieldType.matches("(?i)DECIMAL|INTEGER")) {
-                        properties.put(fieldName, Map.of("type", "double"));
-                    } else if (fieldType.equals("member")) {
-                        properties.put(fieldName, Map.of("type", "keyword"));
-                    } else {
-                        properties.put(fieldName, Map.of("type", "text"));
-                    }
+                for (Future<Long> future : futures) {
+                    successCount += future.get();
                 }
+            } catch (ExecutionException e) {
+                // 任一分片失败即放弃本次全量同步：取消其余分片，由调用方丢弃新索引、不切换别名
+                for (Future<Long> future : futures) {
+                    future.cancel(true);
+                }
+                log.error("分区并行全量同步中止: formId={}, 原因: {}", formId, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+            refreshIndexSafely(indexName);
 
-                Map<String, Object> mapping = Map.of(
-                    "mappings", Map.of("properties", properties),
-                    "settings", Map.of(
-                        "analysis", Map.of(
-                            "analyzer", Map.of(
-                                "default", Map.of("type", "standard")
-                            )
-                        )
-                    )
-                );
-
-                CreateIndexRequest createRequest = new CreateIndexRequest(indexName);
-                createRequest.source(objectMapper.writeValueAsString(mapping), XContentType.JSON);
+            long totalCount = 0;
+            List<Integer> failedSlices = new ArrayList<>();
+            for (SyncSliceProgress slice : slices) {
+                totalCount += slice.getReadCount();
+                if (!"completed".equals(slice.getStatus())) {
+                    failedSlices.add(slice.getSliceIndex());
+                }
+            }
 
-                executeWithRetry(() -> {
-                    esClient.indices().create(createRequest, RequestOptions.DEFAULT);
-                    return Boolean.TRUE;
-                }, "创建索引 " + indexName);
+            double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
+            double rate = successCount / Math.max(elapsed, 0.001);
 
-                indexExistenceCache.put(indexName, true);
-                log.info("创建索引 {} 成功", indexName);
-                return true;
+            SyncResult result = new SyncResult();
+            result.setSuccess(failedSlices.isEmpty());
+            result.setMessage(String.format(Locale.ROOT,
+                    "分区并行全量同步%s，%d 个分片，成功同步 %d 条记录，耗时 %.1f 秒，平均速度 %.1f 条/秒%s",
+                    failedSlices.isEmpty() ? "完成" : "部分失败", slices.size(), successCount, elapsed, rate,
+                    failedSlices.isEmpty() ? "" : "，失败分片: " + failedSlices));
+            result.setCount(successCount);
+            result.setTotal(totalCount);
+            result.setElapsedTime(elapsed);
+            result.setRate(rate);
+            result.setFormId(formId);
+            result.setFormName(form.getName());
+            result.setType("form_sync_partitioned");
+            return result;
 
-            } catch (Exception e) {
-                indexExistenceCache.remove(indexName);
-                log.error("创建索引失败: {}", indexName, e);
-                return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return createFailureResult("分区同步被中断", formId, form.getName());
+        } catch (Exception e) {
+            log.error("分区并行全量同步失败: formId={}", formId, e);
+            return createFailureResult("分区同步失败: " + e.getMessage(), formId, form.getName());
+        } finally {
+            for (Future<Long> future : futures) {
+                future.cancel(true);
             }
+            // 等已开始的分片关闭各自的写入缓冲区（取消重发、等待在途bulk），调用方才能安全丢弃目标索引
+            workers.closeAndAwait();
         }
     }
 
-    private boolean indexExists(String indexName) {
-        Boolean cached = indexExistenceCache.get(indexName);
-        if (Boolean.TRUE.equals(cached)) {
-            return true;
-        }
+    /**
+     * 同步单个ID分片 (lower, upper]
+     */
+    private long syncIdSlice(String formId, String indexName, String tableName, SyncSliceProgress slice,
+                             Map<String, String> fieldLabels, Map<String, String> memberCache,
+                             Map<String, Integer> primaryFieldsMap, List<EmbeddedTable> embeddedTables,
+                             int builderThreads) {
+        slice.setStatus("running");
+        slice.setStartTime(System.currentTimeMillis());
+        long cursor = slice.getLowerBoundExclusive();
+        long readCount = 0;
+        long successCount = 0;
+
+        try (BulkSyncBuffer bulkBuffer = newBulkBuffer(formId, indexName, tableName, fieldLabels,
+                memberCache, primaryFieldsMap, embeddedTables, builderThreads)) {
+            while (true) {
+                StreamedBatch batch = new StreamedBatch(bulkBuffer);
+                int limit = bulkBuffer.dbBatchSize();
+                long fetchStart = System.nanoTime();
+                try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                    formService.streamTableDataBatchByIdRange(tableName, limit, cursor, slice.getUpperBoundInclusive(), batch);
+                }
+                bulkBuffer.recordFetch(limit, batch.size(), System.nanoTime() - fetchStart - batch.forwardNanos());
+                if (batch.isEmpty()) {
+                    break;
+                }
 
-        GetIndexRequest getRequest = new GetIndexRequest(indexName);
-        try {
-            Boolean exists = executeWithRetry(
-                () -> esClient.indices().exists(getRequest, RequestOptions.DEFAULT),
-                "检查索引是否存在 " + indexName
-            );
+                readCount += batch.size();
+                successCount += batch.syncedCount();
+                cursor = Long.parseLong(String.valueOf(batch.lastRow().get("ID")));
 
-            if (Boolean.TRUE.equals(exists)) {
-                indexExistenceCache.put(indexName, true);
-                return true;
-            }
+                slice.setCursorId(cursor);
+                slice.setReadCount(readCount);
+                slice.setSyncedCount(successCount);
 
-            return false;
+                if (batch.size() < limit) {
+                    break;
+                }
+            }
 
-        } catch (Exception e) {
-            log.error("检查索引是否存在失败: {}", indexName, e);
-            return false;
+            successCount += bulkBuffer.finish();
+            slice.setSyncedCount(successCount);
+            if (!bulkBuffer.fullyWritten()) {
+                // 有文档写入失败或进入死信文件时分片按失败处理，本次全量同步不发布新索引
+                throw new IllegalStateException(String.format(Locale.ROOT,
+                        "分片 %d 有 %d 条文档写入失败", slice.getSliceIndex(), bulkBuffer.failedCount()));
+            }
+            slice.setStatus("completed");
+            log.info("分片同步完成: formId={}, 分片={}, 区间=({}, {}], 读取 {} 条，同步 {} 条，耗时 {}s",
+                    formId, slice.getSliceIndex(), slice.getLowerBoundExclusive(), slice.getUpperBoundInclusive(),
+                    readCount, successCount, String.format(Locale.ROOT, "%.1f", slice.getElapsedTime()));
+
+        } catch (RuntimeException e) {
+            slice.setStatus("failed");
+            slice.setMessage(e.getMessage());
+            log.error("分片同步失败: formId={}, 分片={}, 游标={}", formId, slice.getSliceIndex(), cursor, e);
+            throw e;
+        } finally {
+            slice.setEndTime(System.currentTimeMillis());
         }
+        return successCount;
     }
 
-    private <T> T executeWithRetry(ESCallable<T> action, String actionDescription) throws Exception {
-        int attempt = 0;
-        int maxRetries = Math.max(0, esMaxRetries);
-
-        while (true) {
-            try {
-                return action.call();
-            } catch (Exception ex) {
-                attempt++;
+    /**
+     * 规划ID分片：优先使用分位数边界，失败时按MIN/MAX等分
+     */
+    private List<SyncSliceProgress> planIdSlices(String tableName, long[] idRange) {
+        int sliceCount = Math.max(1, partitionSlices);
+        List<Long> upperBounds = "quantile".equalsIgnoreCase(partitionStrategy)
+                ? formService.getTableIdQuantiles(tableName, sliceCount)
+                : new ArrayList<>();
+        if (upperBounds.isEmpty()) {
+            upperBounds = splitIdRange(idRange[0], idRange[1], sliceCount);
+        }
 
-                if (!shouldRetry(ex) || attempt > maxRetries) {
-                    throw ex;
-                }
+        List<SyncSliceProgress> slices = new ArrayList<>();
+        long lower = idRange[0] - 1;
+        for (Long upper : upperBounds) {
+            if (upper == null || upper <= lower) {
+                continue;
+            }
+            slices.add(new SyncSliceProgress(slices.size(), lower, upper));
+            lower = upper;
+        }
 
-                long sleepMillis = calculateBackoffMillis(attempt);
-                String sleepHuman = String.format(Locale.ROOT, "%.1f", sleepMillis / 1000.0);
-                log.warn("ES操作 {} 失败: {}，将在 {} ms (~{} 秒) 后重试 (第 {}/{})",
-                        actionDescription, getStatusForLog(ex), sleepMillis, sleepHuman, attempt, maxRetries);
+        // 最后一个分片不设上界，覆盖规划之后新插入的记录
+        if (slices.isEmpty()) {
+            slices.add(new SyncSliceProgress(0, lower, Long.MAX_VALUE));
+        } else {
+            SyncSliceProgress last = slices.remove(slices.size() - 1);
+            slices.add(new SyncSliceProgress(last.getSliceIndex(), last.getLowerBoundExclusive(), Long.MAX_VALUE));
+        }
+        return slices;
+    }
 
-                try {
-                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new IllegalStateException("重试被中断", ie);
-                }
-            }
+    private List<Long> splitIdRange(long minId, long maxId, int sliceCount) {
+        BigInteger min = BigInteger.valueOf(minId);
+        BigInteger span = BigInteger.valueOf(maxId).subtract(min).add(BigInteger.ONE);
+        BigInteger count = BigInteger.valueOf(sliceCount);
+        List<Long> bounds = new ArrayList<>();
+        for (int i = 1; i < sliceCount; i++) {
+            bounds.add(min.add(span.multiply(BigInteger.valueOf(i)).divide(count)).subtract(BigInteger.ONE).longValue());
         }
+        bounds.add(maxId);
+        return bounds;
     }
 
-    private long calculateBackoffMillis(int attempt) {
-        long baseDelay = Math.max(50L, esRetryInitialBackoffMillis);
-        long maxDelay = Math.max(baseDelay, esRetryMaxBackoffMillis);
-        long multiplier = 1L << Math.max(0, attempt - 1);
-        long backoff = baseDelay * multiplier;
-        return Math.min(backoff, maxDelay);
+    /**
+     * 获取表单最近一次分区同步的分片进度
+     */
+    public List<SyncSliceProgress> getPartitionProgress(String formId) {
+        return partitionProgress.getOrDefault(formId, Collections.emptyList());
     }
 
-    private boolean shouldRetry(Throwable throwable) {
-        if (throwable == null) {
-            return false;
+    /**
+     * 确定本次同步写入的索引：全量同步且启用版本化索引时新建下一代索引，
+     * 否则确保 indexName 存在后直接写入；失败返回 null
+     */
+    private String prepareTargetIndex(String indexName, List<Map<String, Object>> fields, boolean fullSync) {
+        return prepareTargetIndex(indexName, fields, Collections.emptyList(), fullSync);
+    }
+
+    /**
+     * 同上，nestedFields 为主表文档中内嵌附表行的字段名
+     */
+    private String prepareTargetIndex(String indexName, List<Map<String, Object>> fields, List<String> nestedFields,
+                                      boolean fullSync) {
+        if (!fullSync || !indexVersionService.isEnabled()) {
+            return createIndexMapping(indexName, fields, nestedFields) ? indexName : null;
         }
+        try {
+            return indexVersionService.createGeneration(indexName, buildIndexSource(fields, nestedFields));
+        } catch (Exception e) {
+            log.error("创建版本索引失败: {}", indexName, e);
+            return null;
+        }
+    }
 
-        ElasticsearchStatusException statusException = findCause(throwable, ElasticsearchStatusException.class);
-        if (statusException != null && statusException.status() == RestStatus.TOO_MANY_REQUESTS) {
+    /**
+     * 写入的是新一代版本索引时：同步成功则原子切换别名，失败则丢弃新索引、别名仍指向旧数据。
+     * 仅在切换别名失败时返回 false
+     */
+    private boolean switchToTargetIndex(String indexName, String targetIndex, boolean success) {
+        if (indexName.equals(targetIndex)) {
             return true;
         }
-
-        ResponseException responseException = findCause(throwable, ResponseException.class);
-        if (responseException != null && responseException.getResponse() != null &&
-                responseException.getResponse().getStatusLine().getStatusCode() == 429) {
+        if (!success) {
+            indexVersionService.discard(targetIndex);
             return true;
         }
-
-        if (findCause(throwable, IOException.class) != null) {
+        try {
+            indexVersionService.publish(indexName, targetIndex);
+            indexExistenceCache.put(indexName, true);
             return true;
+        } catch (Exception e) {
+            log.error("切换索引别名失败: {} -> {}", indexName, targetIndex, e);
+            indexVersionService.discard(targetIndex);
+            return false;
         }
+    }
 
-        return false;
+    /**
+     * 同步失败、写入的新一代版本索引随后会被丢弃时，退出批量导入模式不再刷新、恢复副本和 force-merge；
+     * 直接写入生效索引时仍要完整恢复
+     */
+    private void discardBulkLoad(IndexBulkLoadService.BulkLoad bulkLoad, String indexName, String targetIndex) {
+        if (bulkLoad != null && !indexName.equals(targetIndex)) {
+            bulkLoad.discard();
+        }
     }
 
-    private String getStatusForLog(Throwable throwable) {
-        ElasticsearchStatusException statusException = findCause(throwable, ElasticsearchStatusException.class);
-        if (statusException != null) {
-            return statusException.status().toString();
+    /**
+     * 检查点中记录的未完成遍历可以续传时返回其写入的索引：版本化全量同步要求该代索引仍存在且未发布，
+     * 直接写入生效索引时要求索引名一致；否则返回 null
+     */
+    private String resumableIndex(SyncRecord checkpoint, String indexName, boolean fullSync) {
+        if (checkpoint == null || checkpoint.getResumeIndex() == null || checkpoint.getResumeLastId() == null) {
+            return null;
+        }
+        String previous = checkpoint.getResumeIndex();
+        if (fullSync && indexVersionService.isEnabled()) {
+            return !previous.equals(indexName) && indexVersionService.adopt(indexName, previous) ? previous : null;
+        }
+        return previous.equals(indexName) ? previous : null;
+    }
+
+    /**
+     * 登记主表同步开始：全量同步记录开始时表中最新的 (modify_date, ID)，完成后作为增量游标；
+     * 单游标全量同步同时记录写入索引以便续传
+     */
+    private void beginCheckpoint(String formId, String tableName, String targetIndex, boolean fullSync,
+                                 Long resumeFromId, boolean resumable) {
+        if (!fullSync) {
+            checkpointService.markRunning(formId, SyncCheckpointService.MODE_INCREMENTAL);
+        } else if (resumeFromId != null) {
+            checkpointService.markRunning(formId, SyncCheckpointService.MODE_FULL);
+        } else {
+            Map<String, Object> latest = formService.getLatestModifyCursor(tableName);
+            LocalDateTime pendingModifyDate = null;
+            Long pendingRecordId = null;
+            if (latest != null) {
+                try {
+                    pendingModifyDate = toLocalDateTime(latest.get("MODIFY_DATE"));
+                    Object recordId = latest.get("RECORD_ID");
+                    pendingRecordId = recordId != null ? Long.valueOf(recordId.toString()) : null;
+                } catch (Exception e) {
+                    log.warn("解析表最新修改游标失败: {}", latest, e);
+                }
+            }
+            checkpointService.beginPass(formId, SyncCheckpointService.MODE_FULL,
+                    resumable ? targetIndex : null, pendingModifyDate, pendingRecordId);
+        }
+    }
+
+    /**
+     * 登记主表同步结束。只有全部文档都写入（无失败、无死信）时全量遍历才推进增量游标；
+     * 失败时若写入的版本索引已丢弃或有文档未写入则清除续传信息，直接写入生效索引则保留续传位置
+     */
+    private void finishCheckpoint(String formId, String indexName, String targetIndex, boolean fullSync,
+                                  boolean success, long failedDocuments) {
+        if (!fullSync) {
+            if (success && failedDocuments == 0) {
+                checkpointService.markCompleted(formId);
+            } else {
+                checkpointService.markFailed(formId);
+            }
+        } else if (success && failedDocuments == 0) {
+            checkpointService.completePass(formId);
+        } else if (indexName.equals(targetIndex) && failedDocuments == 0) {
+            checkpointService.markFailed(formId);
+        } else {
+            checkpointService.failPass(formId);
+        }
+    }
+
+    private boolean createIndexMapping(String indexName, List<Map<String, Object>> fields, List<String> nestedFields) {
+        Object lock = indexLocks.computeIfAbsent(indexName, key -> new Object());
+        synchronized (lock) {
+            if (Boolean.TRUE.equals(indexExistenceCache.get(indexName))) {
+                return true;
+            }
+
+            if (indexExists(indexName)) {
+                log.debug("索引已存在，跳过创建: {}", indexName);
+                return true;
+            }
+
+            try {
+                Map<String, Object> source = buildIndexSource(fields, nestedFields);
+                if (indexVersionService.isEnabled()) {
+                    // 新索引直接以第一代版本索引 + 别名的形式创建
+                    String generation = indexVersionService.createGeneration(indexName, source);
+                    try {
+                        indexVersionService.publish(indexName, generation);
+                    } catch (Exception e) {
+                        indexVersionService.discard(generation);
+                        throw e;
+                    }
+                } else {
+                    CreateIndexRequest createRequest = new CreateIndexRequest(indexName);
+                    createRequest.source(objectMapper.writeValueAsString(source), XContentType.JSON);
+
+                    executeWithRetry(() -> {
+                        esClient.indices().create(createRequest, RequestOptions.DEFAULT);
+                        return Boolean.TRUE;
+                    }, "创建索引 " + indexName);
+                }
+
+                indexExistenceCache.put(indexName, true);
+                log.info("创建索引 {} 成功", indexName);
+                return true;
+
+            } catch (Exception e) {
+                indexExistenceCache.remove(indexName);
+                log.error("创建索引失败: {}", indexName, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 按表单字段生成建索引请求体（mappings + settings），nestedFields 声明为内嵌附表行字段
+     */
+    private Map<String, Object> buildIndexSource(List<Map<String, Object>> fields, List<String> nestedFields) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("form_id", Map.of("type", "keyword"));
+        properties.put("table_name", Map.of("type", "keyword"));
+        properties.put("record_id", Map.of("type", "long"));
+        properties.put("content_hash", Map.of("type", "long", "index", false));
+        properties.put("sync_time", Map.of("type", "date"));
+
+        String dateFormats = "strict_date_optional_time||epoch_millis||yyyy-MM-dd HH:mm:ss.S||yyyy-MM-dd HH:mm:ss||yyyy-MM-dd";
+        properties.put("modify_date", Map.of("type", "date", "format", dateFormats));
+        properties.put("start_date", Map.of("type", "date", "format", dateFormats));
+        properties.put("start_member_id", Map.of("type", "long"));
+        properties.put("modify_member_id", Map.of("type", "long"));
+        properties.put("approve_member_id", Map.of("type", "long"));
+        properties.put("ratify_member_id", Map.of("type", "long"));
+
+        for (Map<String, Object> field : fields) {
+            String fieldName = getFieldName(field);
+            String fieldType = getFieldType(field);
+
+            if (fieldType.matches("(?i)text|VARCHAR")) {
+                properties.put(fieldName, Map.of("type", "text", "analyzer", "standard"));
+            } else if (fieldType.matches("(?i)datetime|TIMESTAMP|date|DATE")) {
+                properties.put(fieldName, Map.of("type", "date", "format", dateFormats));
+            } else if (fieldType.matches("(?i)DECIMAL|INTEGER")) {
+                properties.put(fieldName, Map.of("type", "double"));
+            } else if (fieldType.equals("member")) {
+                properties.put(fieldName, Map.of("type", "keyword"));
+            } else {
+                properties.put(fieldName, Map.of("type", "text"));
+            }
+        }
+        for (String nestedField : nestedFields) {
+            properties.put(nestedField, nestedFieldMapping());
+        }
+
+        return Map.of(
+            "mappings", Map.of("properties", properties),
+            "settings", Map.of(
+                "analysis", Map.of(
+                    "analyzer", Map.of(
+                        "default", Map.of("type", "standard")
+                    )
+                )
+            )
+        );
+    }
+
+    /**
+     * 内嵌附表行的映射：nested 保留每一行字段间的对应关系（nested 查询可定位到具体明细行），
+     * include_in_parent 同时把字段平铺到主文档，form_* 上的全文搜索无需改写即可命中明细内容
+     */
+    private static Map<String, Object> nestedFieldMapping() {
+        return Map.of("type", "nested", "include_in_parent", true,
+                "properties", Map.of("record_id", Map.of("type", "long")));
+    }
+
+    private boolean indexExists(String indexName) {
+        Boolean cached = indexExistenceCache.get(indexName);
+        if (Boolean.TRUE.equals(cached)) {
+            return true;
+        }
+
+        GetIndexRequest getRequest = new GetIndexRequest(indexName);
+        try {
+            Boolean exists = executeWithRetry(
+                () -> esClient.indices().exists(getRequest, RequestOptions.DEFAULT),
+                "检查索引是否存在 " + indexName
+            );
+
+            if (Boolean.TRUE.equals(exists)) {
+                indexExistenceCache.put(indexName, true);
+                return true;
+            }
+
+            return false;
+
+        } catch (Exception e) {
+            log.error("检查索引是否存在失败: {}", indexName, e);
+            return false;
+        }
+    }
+
+    private <T> T executeWithRetry(ESCallable<T> action, String actionDescription) throws Exception {
+        int attempt = 0;
+        int maxRetries = Math.max(0, esMaxRetries);
+
+        while (true) {
+            try {
+                return action.call();
+            } catch (Exception ex) {
+                attempt++;
+
+                if (!shouldRetry(ex) || attempt > maxRetries) {
+                    throw ex;
+                }
+
+                long sleepMillis = calculateBackoffMillis(attempt);
+                String sleepHuman = String.format(Locale.ROOT, "%.1f", sleepMillis / 1000.0);
+                log.warn("ES操作 {} 失败: {}，将在 {} ms (~{} 秒) 后重试 (第 {}/{})",
+                        actionDescription, getStatusForLog(ex), sleepMillis, sleepHuman, attempt, maxRetries);
+
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("重试被中断", ie);
+                }
+            }
+        }
+    }
+
+    private long calculateBackoffMillis(int attempt) {
+        long baseDelay = Math.max(50L, esRetryInitialBackoffMillis);
+        long maxDelay = Math.max(baseDelay, esRetryMaxBackoffMillis);
+        long multiplier = 1L << Math.max(0, attempt - 1);
+        long backoff = baseDelay * multiplier;
+        return Math.min(backoff, maxDelay);
+    }
+
+    private boolean shouldRetry(Throwable throwable) {
+        if (throwable == null) {
+            return false;
+        }
+
+        ElasticsearchStatusException statusException = findCause(throwable, ElasticsearchStatusException.class);
+        if (statusException != null && statusException.status() == RestStatus.TOO_MANY_REQUESTS) {
+            return true;
+        }
+
+        ResponseException responseException = findCause(throwable, ResponseException.class);
+        if (responseException != null && responseException.getResponse() != null &&
+                responseException.getResponse().getStatusLine().getStatusCode() == 429) {
+            return true;
+        }
+
+        if (findCause(throwable, IOException.class) != null) {
+            return true;
+        }
+
+        return false;
+    }
+
+    private String getStatusForLog(Throwable throwable) {
+        ElasticsearchStatusException statusException = findCause(throwable, ElasticsearchStatusException.class);
+        if (statusException != null) {
+            return statusException.status().toString();
         }
 
         ResponseException responseException = findCause(throwable, ResponseException.class);
@@ -600,197 +1182,106 @@ public class SyncService {
         T call() throws Exception;
     }
 
-    private Map<String, Object> buildDocument(String formId, String tableName, 
-            Map<String, Object> record, Map<String, String> fieldLabels, Map<String, String> memberCache, 
-            Map<String, Integer> primaryFieldsMap) {
-        
-        Map<String, Object> doc = new HashMap<>();
+    /**
+     * 按预编译的投影计划构建文档（主表与附表共用，附表额外标记 table_type）
+     */
+    Map<String, Object> buildDocument(String formId, String tableName, CompactRow row, ProjectionPlan plan,
+                                      Map<String, String> memberCache, boolean subTable) {
+        Map<String, Object> doc = new HashMap<>(plan.expectedDocumentSize());
         doc.put("form_id", formId);
         doc.put("table_name", tableName);
-        doc.put("record_id", Long.valueOf(String.valueOf(record.get("ID"))));
+        if (subTable) {
+            doc.put("table_type", "sub_table");
+        }
+        doc.put("record_id", Long.valueOf(String.valueOf(plan.recordId(row))));
+        doc.put("content_hash", plan.contentHash(row));
         doc.put("sync_time", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return plan.project(row, memberCache, doc);
+    }
 
-        // 使用预加载的主要显示字段（避免重复查询）
-        
-        // 添加主表字段数据，并转换字段名为中文标签
-        for (Map.Entry<String, Object> entry : record.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-            
-            if (value == null || shouldSkipField(key)) {
-                continue;
-            }
+    /**
+     * 按投影计划把文档直接写入bulk请求体的生成器，字段与 {@link #buildDocument} 的结果一致；
+     * 计划存在重复字段名时退回先构建 Map 再序列化
+     */
+    void writeDocument(JsonGenerator generator, String formId, String tableName, CompactRow row,
+                       ProjectionPlan plan, Map<String, String> memberCache, boolean subTable) throws IOException {
+        writeDocument(generator, formId, tableName, row, plan, memberCache, subTable, null);
+    }
 
-            // 对于系统字段，同时存储原始字段名和中文名
-            if (isSystemField(key)) {
-                Object formattedValue = formatFieldValue(key, value, memberCache);
-                if (formattedValue != null) {
-                    // 存储原始字段名（用于查询和排序）
-                    doc.put(key, formattedValue);
-                    // 存储中文显示名（用于前端显示）
-                    String displayName = getFieldDisplayName(key, fieldLabels);
-                    doc.put(displayName, formattedValue);
-                }
-            } else {
-                // 转换字段名为中文标签
-                String displayName = getFieldDisplayName(key, fieldLabels);
-                
-                // 格式化值
-                Object formattedValue = formatFieldValue(key, value, memberCache);
-                if (formattedValue != null) {
-                    doc.put(displayName, formattedValue);
-                    
-                    // 标记主要显示字段，用于前端标题提取（O(1)查找）
-                    Integer priority = primaryFieldsMap.get(key);
-                    if (priority != null) {
-                        doc.put("_primary_field_" + priority, displayName);
-                        doc.put("_primary_value_" + priority, formattedValue);
-                    }
-                }
+    /**
+     * 同上，embedded 非空时在文档末尾写入该记录的内嵌附表行
+     */
+    private void writeDocument(JsonGenerator generator, String formId, String tableName, CompactRow row,
+                               ProjectionPlan plan, Map<String, String> memberCache, boolean subTable,
+                               EmbeddedRows embedded) throws IOException {
+        if (!plan.isStreamable()) {
+            Map<String, Object> doc = buildDocument(formId, tableName, row, plan, memberCache, subTable);
+            if (embedded != null) {
+                embedded.putInto(doc, (Long) doc.get("record_id"), memberCache);
             }
+            generator.writeObject(doc);
+            return;
         }
 
-        return doc;
+        generator.writeStartObject();
+        generator.writeStringField("form_id", formId);
+        generator.writeStringField("table_name", tableName);
+        if (subTable) {
+            generator.writeStringField("table_type", "sub_table");
+        }
+        generator.writeNumberField("record_id", Long.parseLong(String.valueOf(plan.recordId(row))));
+        generator.writeNumberField("content_hash", plan.contentHash(row));
+        generator.writeStringField("sync_time", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        plan.write(row, memberCache, generator);
+        if (embedded != null) {
+            embedded.write(generator, Long.parseLong(String.valueOf(plan.recordId(row))), memberCache);
+        }
+        generator.writeEndObject();
     }
 
-    private Map<String, String> preloadMemberCache(String tableName) {
-        try {
-            log.info("预加载成员信息缓存");
-            long startTime = System.currentTimeMillis();
-            
-            // 优化SQL: 使用UNION ALL一次性获取所有不重复的成员ID
-            String sql = "SELECT DISTINCT member_id FROM (" +
-                        "SELECT start_member_id as member_id FROM " + tableName + " WHERE start_member_id IS NOT NULL AND start_member_id != 0 " +
-                        "UNION ALL " +
-                        "SELECT modify_member_id as member_id FROM " + tableName + " WHERE modify_member_id IS NOT NULL AND modify_member_id != 0 " +
-                        "UNION ALL " +
-                        "SELECT approve_member_id as member_id FROM " + tableName + " WHERE approve_member_id IS NOT NULL AND approve_member_id != 0 " +
-                        "UNION ALL " +
-                        "SELECT ratify_member_id as member_id FROM " + tableName + " WHERE ratify_member_id IS NOT NULL AND ratify_member_id != 0" +
-                        ") t";
-            
-            List<Map<String, Object>> memberRecords = formService.getJdbcTemplate().queryForList(sql);
-            Set<Long> memberIds = new HashSet<>();
-            
-            // 收集所有成员ID
-            for (Map<String, Object> record : memberRecords) {
-                addMemberIdIfValid(memberIds, record.get("member_id"));
-            }
-            
-            // 批量获取成员姓名
-            Map<String, String> memberCache = new HashMap<>();
-            if (!memberIds.isEmpty()) {
-                memberCache = memberService.getMembersBatch(new ArrayList<>(memberIds));
+    /**
+     * 按列布局编译投影计划：字段过滤、显示名、系统字段双写和主要显示字段优先级都在这里一次确定
+     */
+    ProjectionPlan compileProjectionPlan(CompactRow.Columns columns, Map<String, String> fieldLabels,
+                                         Map<String, Integer> primaryFieldsMap) {
+        ProjectionPlan.Builder builder = ProjectionPlan.builder(columns);
+        for (int i = 0; i < columns.size(); i++) {
+            String key = columns.name(i);
+            if (shouldSkipField(key)) {
+                continue;
             }
-            
-            double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
-            log.info("成员信息缓存预加载完成: {} 个成员，耗时 {} 秒", memberCache.size(), String.format("%.1f", elapsed));
-            
-            return memberCache;
-        } catch (Exception e) {
-            log.error("预加载成员信息缓存失败", e);
-            return new HashMap<>();
-        }
-    }
-    
-    private void addMemberIdIfValid(Set<Long> memberIds, Object memberIdObj) {
-        if (memberIdObj != null) {
-            try {
-                Long memberId;
-                if (memberIdObj instanceof Number) {
-                    memberId = ((Number) memberIdObj).longValue();
-                } else {
-                    memberId = Long.valueOf(memberIdObj.toString());
-                }
-                
-                if (memberId != 0) {
-                    memberIds.add(memberId);
-                }
-            } catch (NumberFormatException e) {
-                log.debug("无效的成员ID: {}", memberIdObj);
-                // 忽略无效的成员ID
+            String displayName = getFieldDisplayName(key, fieldLabels);
+            if (isSystemField(key)) {
+                builder.field(i, key, displayName, -1);
+            } else {
+                Integer priority = primaryFieldsMap.get(key);
+                builder.field(i, null, displayName, priority != null ? priority : -1);
             }
         }
+        return builder.build();
     }
 
-    private Object formatFieldValue(String fieldName, Object value, Map<String, String> memberCache) {
-        if (value == null) return null;
-        
-        
+    /**
+     * 单次同步内复用的投影计划，列布局变化时重新编译
+     */
+    private final class ProjectionPlanCache {
+        private final Map<String, String> fieldLabels;
+        private final Map<String, Integer> primaryFieldsMap;
+        private volatile ProjectionPlan plan;
 
-        // 处理成员字段 - 特别处理系统成员字段
-        if (fieldName.endsWith("_member_id") || fieldName.endsWith("member_id") || 
-            fieldName.equals("start_member_id") || fieldName.equals("modify_member_id") ||
-            fieldName.equals("approve_member_id") || fieldName.equals("ratify_member_id")) {
-            
-            String memberName = memberCache.get(String.valueOf(value));
-            if (memberName != null) {
-                return memberName;
-            }
-            
-            // 如果缓存中没有，直接返回ID值（避免单独查询）
-            return String.valueOf(value);
+        private ProjectionPlanCache(Map<String, String> fieldLabels, Map<String, Integer> primaryFieldsMap) {
+            this.fieldLabels = fieldLabels;
+            this.primaryFieldsMap = primaryFieldsMap;
         }
 
-        // 处理日期字段 - 优先处理，避免错误的格式进入ES
-        if (value instanceof Date) {
-            try {
-                if (value instanceof java.sql.Date) {
-                    // java.sql.Date 不支持 toInstant()，使用 getTime() 转换
-                    LocalDateTime dateTime = new java.sql.Timestamp(((java.sql.Date) value).getTime()).toLocalDateTime();
-                    return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                } else if (value instanceof java.sql.Timestamp) {
-                    LocalDateTime dateTime = ((java.sql.Timestamp) value).toLocalDateTime();
-                    return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                } else {
-                    LocalDateTime dateTime = new java.sql.Timestamp(((Date) value).getTime()).toLocalDateTime();
-                    return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                }
-            } catch (Exception e) {
-                log.warn("日期对象转换失败: {} (类型: {})", value, value.getClass().getSimpleName(), e);
-                // 如果日期转换失败，尝试字符串转换
-                String valueStr = value.toString();
-                if (valueStr.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d+")) {
-                    try {
-                        String cleanDateStr = valueStr.replaceAll("\\.\\d+$", "");
-                        LocalDateTime dateTime = LocalDateTime.parse(cleanDateStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                        return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                    } catch (Exception e2) {
-                        log.error("字符串日期转换也失败: {}", valueStr, e2);
-                    }
-                }
-                return String.valueOf(value);
-            }
-        }
-        
-        // 处理所有可能的日期字符串格式
-        if (value instanceof String) {
-            String valueStr = value.toString().trim();
-            
-            // 使用预编译的正则表达式，避免重复编译
-            try {
-                if (DATE_TIME_WITH_MILLIS.matcher(valueStr).matches()) {
-                    // 处理形如 "2025-09-20 16:33:47.0" 的格式
-                    String cleanDateStr = valueStr.replaceAll("\\.\\d+$", "");
-                    LocalDateTime dateTime = LocalDateTime.parse(cleanDateStr, DATE_TIME_FORMATTER);
-                    return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                } else if (DATE_TIME.matcher(valueStr).matches()) {
-                    // 处理形如 "2025-09-20 16:33:47" 的格式
-                    LocalDateTime dateTime = LocalDateTime.parse(valueStr, DATE_TIME_FORMATTER);
-                    return dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                } else if (fieldName.contains("date") && DATE_ONLY.matcher(valueStr).matches()) {
-                    // 处理形如 "2025-09-20" 的格式
-                    java.time.LocalDate date = java.time.LocalDate.parse(valueStr, DATE_FORMATTER);
-                    return date.atStartOfDay().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                }
-            } catch (Exception e) {
-                log.warn("日期字符串转换失败: {} (字段: {})", valueStr, fieldName, e);
-                // 如果日期解析失败，返回原字符串
-                return valueStr;
+        private ProjectionPlan planFor(CompactRow.Columns columns) {
+            ProjectionPlan current = plan;
+            if (current == null || !current.appliesTo(columns)) {
+                current = compileProjectionPlan(columns, fieldLabels, primaryFieldsMap);
+                plan = current;
             }
+            return current;
         }
-
-        return String.valueOf(value);
     }
 
     private String getFieldDisplayName(String fieldName, Map<String, String> fieldLabels) {
@@ -989,6 +1480,25 @@ public class SyncService {
         return maxTime;
     }
 
+    /**
+     * 将数据库返回的时间值（Timestamp / Date / 字符串）转换为LocalDateTime
+     */
+    private LocalDateTime toLocalDateTime(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof java.sql.Timestamp) {
+            return ((java.sql.Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof java.util.Date) {
+            return new java.sql.Timestamp(((java.util.Date) value).getTime()).toLocalDateTime();
+        }
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        return parseModifyDate(value.toString());
+    }
+
     /**
      * 解析从ES获取的时间字符串为LocalDateTime
      */
@@ -1009,10 +1519,11 @@ public class SyncService {
     }
 
     /**
-     * 获取ES中已同步的记录ID集合
+     * 从ES获取已同步的记录ID集合：按 record_id 升序以 search_after 分页，只取排序值（来自 doc values），
+     * 不读取 _source，结果存入紧凑的有序集合
      */
-    private Set<Long> getSyncedIdsFromES(String formId) {
-        Set<Long> syncedIds = new HashSet<>();
+    private SortedLongSet getSyncedIdsFromES(String formId) {
+        SortedLongSet syncedIds = new SortedLongSet();
         
         try {
             String indexName = "form_" + formId;
@@ -1022,71 +1533,41 @@ public class SyncService {
                 return syncedIds;
             }
             
-            // 使用scroll API获取所有记录ID（内存效率高）
-            SearchRequest searchRequest = new SearchRequest(indexName);
-            SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+            Object[] searchAfter = null;
+            while (true) {
+                SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                        .query(QueryBuilders.existsQuery("record_id"))
+                        .fetchSource(false)
+                        .sort("record_id", SortOrder.ASC)
+                        .size(SYNCED_ID_PAGE_SIZE)
+                        .trackTotalHits(false);
+                if (searchAfter != null) {
+                    searchSourceBuilder.searchAfter(searchAfter);
+                }
+                SearchRequest searchRequest = new SearchRequest(indexName).source(searchSourceBuilder);
+
+                SearchResponse searchResponse = executeWithRetry(
+                        () -> esClient.search(searchRequest, RequestOptions.DEFAULT),
+                        "分页查询已同步ID " + indexName);
+                SearchHit[] hits = searchResponse.getHits().getHits();
+                if (hits.length == 0) {
+                    break;
+                }
+                
+                for (SearchHit hit : hits) {
+                    Object[] sortValues = hit.getSortValues();
+                    if (sortValues.length > 0 && sortValues[0] instanceof Number) {
+                        syncedIds.add(((Number) sortValues[0]).longValue());
+                    }
+                }
+                
+                if (hits.length < SYNCED_ID_PAGE_SIZE) {
+                    break;
+                }
+                searchAfter = hits[hits.length - 1].getSortValues();
+            }
             
-            // 只查询record_id字段
-            searchSourceBuilder.fetchSource(new String[]{"record_id"}, null);
-            searchSourceBuilder.size(10000); // 每次获取10000条
-            searchSourceBuilder.query(QueryBuilders.matchAllQuery());
-            
-            searchRequest.source(searchSourceBuilder);
-            searchRequest.scroll(TimeValue.timeValueMinutes(2L));
-            
-            SearchResponse searchResponse = executeWithRetry(
-                    () -> esClient.search(searchRequest, RequestOptions.DEFAULT),
-                    "初始化scroll查询 " + indexName);
-            String scrollId = searchResponse.getScrollId();
-            
-            // 处理第一批结果
-            for (SearchHit hit : searchResponse.getHits().getHits()) {
-                Object recordIdObj = hit.getSourceAsMap().get("record_id");
-                if (recordIdObj != null) {
-                    try {
-                        syncedIds.add(Long.valueOf(recordIdObj.toString()));
-                    } catch (NumberFormatException e) {
-                        log.debug("无效的record_id: {}", recordIdObj);
-                    }
-                }
-            }
-            
-            // 处理后续批次
-            while (searchResponse.getHits().getHits().length > 0) {
-                org.elasticsearch.action.search.SearchScrollRequest scrollRequest = 
-                    new org.elasticsearch.action.search.SearchScrollRequest(scrollId);
-                scrollRequest.scroll(TimeValue.timeValueMinutes(2L));
-                
-                SearchResponse nextResponse = executeWithRetry(
-                        () -> esClient.scroll(scrollRequest, RequestOptions.DEFAULT),
-                        "scroll分页查询 " + indexName);
-                scrollId = nextResponse.getScrollId();
-                searchResponse = nextResponse;
-                
-                for (SearchHit hit : searchResponse.getHits().getHits()) {
-                    Object recordIdObj = hit.getSourceAsMap().get("record_id");
-                    if (recordIdObj != null) {
-                        try {
-                            syncedIds.add(Long.valueOf(recordIdObj.toString()));
-                        } catch (NumberFormatException e) {
-                            log.debug("无效的record_id: {}", recordIdObj);
-                        }
-                    }
-                }
-            }
-            
-            // 清理scroll
-            if (scrollId != null && !scrollId.isEmpty()) {
-                org.elasticsearch.action.search.ClearScrollRequest clearScrollRequest =
-                        new org.elasticsearch.action.search.ClearScrollRequest();
-                clearScrollRequest.addScrollId(scrollId);
-                executeWithRetry(() -> {
-                    esClient.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
-                    return Boolean.TRUE;
-                }, "清理scroll上下文 " + indexName);
-            }
-            
-            log.debug("从ES获取已同步ID集合完成: formId={}, 记录数={}", formId, syncedIds.size());
+            log.debug("从ES获取已同步ID集合完成: formId={}, 记录数={}", formId, syncedIds.size());
             
         } catch (Exception e) {
             log.error("获取ES已同步ID集合失败: formId={}", formId, e);
@@ -1096,62 +1577,115 @@ public class SyncService {
     }
     
     /**
-     * 批量同步记录到ES
+     * 将一批记录直接序列化为NDJSON请求体（流水线的转换阶段，可并行执行），
+     * 请求体超过字节上限时切分为多个，避免宽表单产生超大bulk
      */
-    private long syncRecordBatch(String formId, String indexName, String tableName, 
-                                List<Map<String, Object>> records, Map<String, String> fieldLabels,
-                                Map<String, String> memberCache, Map<String, Integer> primaryFieldsMap) {
-        if (records == null || records.isEmpty()) {
-            return 0L;
+    private List<NdjsonBulkBody> buildBulkBodies(String indexName, List<CompactRow> records,
+                                                 DocumentBuilder documentBuilder, EmbeddedRows embedded) {
+        long maxBytes = bulkDispatcher.getMaxBulkBytes();
+        List<NdjsonBulkBody> bodies = new ArrayList<>(1);
+        NdjsonBulkBody body = bulkWriter.acquire();
+        try {
+            for (CompactRow record : records) {
+                body.addIndex(indexName, documentBuilder.docId(record),
+                        generator -> documentBuilder.write(generator, record, embedded));
+                if (body.sizeInBytes() >= maxBytes) {
+                    bodies.add(body);
+                    body = bulkWriter.acquire();
+                }
+            }
+        } catch (RuntimeException e) {
+            bulkWriter.release(body);
+            bodies.forEach(bulkWriter::release);
+            throw e;
         }
 
-        long successCount = 0L;
-        int flushThreshold = Math.max(1, esBulkMaxActions);
-        int chunkSize = Math.max(1, Math.min(batchSize, flushThreshold));
-        int timeoutSeconds = Math.max(5, bulkTimeoutSeconds);
-
-        for (int from = 0; from < records.size(); from += chunkSize) {
-            int to = Math.min(records.size(), from + chunkSize);
-            List<Map<String, Object>> chunk = records.subList(from, to);
+        if (body.isEmpty()) {
+            bulkWriter.release(body);
+        } else {
+            bodies.add(body);
+        }
+        return bodies;
+    }
 
-            BulkRequest bulkRequest = new BulkRequest();
-            bulkRequest.timeout(TimeValue.timeValueSeconds(timeoutSeconds));
+    private BulkSyncBuffer newBulkBuffer(String formId, String indexName, String tableName,
+                                         Map<String, String> fieldLabels,
+                                         Map<String, String> memberCache,
+                                         Map<String, Integer> primaryFieldsMap,
+                                         List<EmbeddedTable> embeddedTables) {
+        return newBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache, primaryFieldsMap,
+                embeddedTables, resolveBuilderThreads());
+    }
 
-            for (Map<String, Object> record : chunk) {
-                String docId = formId + "_" + record.get("ID");
-                Map<String, Object> doc = buildDocument(formId, tableName, record, fieldLabels, memberCache, primaryFieldsMap);
+    /**
+     * 主表写入缓冲区；embeddedTables 非空时每个主表文档内嵌其附表行
+     */
+    private BulkSyncBuffer newBulkBuffer(String formId, String indexName, String tableName,
+                                         Map<String, String> fieldLabels,
+                                         Map<String, String> memberCache,
+                                         Map<String, Integer> primaryFieldsMap,
+                                         List<EmbeddedTable> embeddedTables,
+                                         int builderThreads) {
+        ProjectionPlanCache plans = new ProjectionPlanCache(fieldLabels, primaryFieldsMap);
+        return new BulkSyncBuffer(formId, indexName, builderThreads, batchSizeTuner.forTable(tableName),
+                new DocumentBuilder() {
+            @Override
+            public String docId(CompactRow record) {
+                return formId + "_" + record.get("ID");
+            }
 
-                IndexRequest indexRequest = new IndexRequest(indexName)
-                    .id(docId)
-                    .source(doc, XContentType.JSON);
-                bulkRequest.add(indexRequest);
+            @Override
+            public EmbeddedRows prepare(List<CompactRow> records) {
+                EmbeddedRows embedded = embeddedTables.isEmpty() ? null : loadEmbeddedRows(embeddedTables, records);
+                prefetchMembers(records, plans, embedded);
+                return embedded;
             }
 
-            try {
-                BulkResponse bulkResponse = executeWithRetry(
-                        () -> esClient.bulk(bulkRequest, RequestOptions.DEFAULT),
-                        "批量写入索引 " + indexName);
+            @Override
+            public void write(JsonGenerator generator, CompactRow row, EmbeddedRows embedded) throws IOException {
+                writeDocument(generator, formId, tableName, row, plans.planFor(row.columns()), memberCache, false, embedded);
+            }
+        });
+    }
 
-                if (bulkResponse.hasFailures()) {
-                    log.error("批量同步失败: {}", bulkResponse.buildFailureMessage());
-                } else {
-                    successCount += chunk.size();
-                }
+    private BulkSyncBuffer newSubTableBulkBuffer(String formId, String indexName, String tableName,
+                                                 Map<String, String> fieldLabels,
+                                                 Map<String, String> memberCache) {
+        ProjectionPlanCache plans = new ProjectionPlanCache(fieldLabels, Collections.emptyMap());
+        return new BulkSyncBuffer(formId, indexName, resolveBuilderThreads(), batchSizeTuner.forTable(tableName),
+                new DocumentBuilder() {
+            @Override
+            public String docId(CompactRow record) {
+                return formId + "_" + tableName + "_" + record.get("ID");
+            }
 
-            } catch (Exception e) {
-                log.error("批量同步记录失败: formId={}, 索引={}, 批次大小={}",
-                        formId, indexName, chunk.size(), e);
+            @Override
+            public EmbeddedRows prepare(List<CompactRow> records) {
+                prefetchMembers(records, plans, null);
+                return null;
             }
-        }
 
-        return successCount;
+            @Override
+            public void write(JsonGenerator generator, CompactRow row, EmbeddedRows embedded) throws IOException {
+                writeDocument(generator, formId, tableName, row, plans.planFor(row.columns()), memberCache, true);
+            }
+        });
     }
 
-    private BulkSyncBuffer newBulkBuffer(String formId, String indexName, String tableName,
-                                         Map<String, String> fieldLabels,
-                                         Map<String, String> memberCache,
-                                         Map<String, Integer> primaryFieldsMap) {
-        return new BulkSyncBuffer(formId, indexName, tableName, fieldLabels, memberCache, primaryFieldsMap);
+    /**
+     * 收集一批记录（及其内嵌附表行）中成员列的ID，一次性补齐成员目录中还没有的成员
+     */
+    private void prefetchMembers(List<CompactRow> records, ProjectionPlanCache plans, EmbeddedRows embedded) {
+        Set<Long> memberIds = new HashSet<>();
+        for (CompactRow row : records) {
+            plans.planFor(row.columns()).collectMemberIds(row, memberIds);
+        }
+        if (embedded != null) {
+            embedded.collectMemberIds(memberIds);
+        }
+        if (!memberIds.isEmpty()) {
+            memberDirectory.prefetch(memberIds);
+        }
     }
 
     private void refreshIndexSafely(String indexName) {
@@ -1165,239 +1699,1176 @@ public class SyncService {
         }
     }
 
-    private final class BulkSyncBuffer {
-        private final List<Map<String, Object>> buffer = new ArrayList<>();
-        private final int flushThreshold;
-        private final String formId;
-        private final String indexName;
-        private final String tableName;
-        private final Map<String, String> fieldLabels;
-        private final Map<String, String> memberCache;
-        private final Map<String, Integer> primaryFieldsMap;
+    /**
+     * 记录到ES文档的转换规则
+     */
+    private interface DocumentBuilder {
+        String docId(CompactRow record);
+
+        /**
+         * 构建一批文档前调用（构建线程上），用于批量补齐成员目录、读取要内嵌的附表行；
+         * 返回值传给该批每条记录的 {@link #write}
+         */
+        default EmbeddedRows prepare(List<CompactRow> records) {
+            return null;
+        }
 
-        private BulkSyncBuffer(String formId, String indexName, String tableName,
-                               Map<String, String> fieldLabels,
-                               Map<String, String> memberCache,
-                               Map<String, Integer> primaryFieldsMap) {
-            this.formId = formId;
+        void write(JsonGenerator generator, CompactRow record, EmbeddedRows embedded) throws IOException;
+    }
+
+    /**
+     * 写入缓冲区：启用流水线时，读取线程只负责攒批并投递，
+     * 文档构建在多核上并行执行，bulk请求交给异步分发器发送（在途请求数受全局上限约束）
+     */
+    private final class BulkSyncBuffer implements AutoCloseable {
+        private List<CompactRow> buffer;
+        private final BatchSizeTuner.Tuning tuning;
+        private final String indexName;
+        private final DocumentBuilder documentBuilder;
+        private final SyncPipeline<DispatchedChunk, DispatchedChunk> pipeline;
+        private final BulkDispatcher.Session session;
+        private final AckWatermark watermark = new AckWatermark();
+        private long dispatchedSeq = 0L;
+        private long reportedCount = 0L;
+
+        private BulkSyncBuffer(String formId, String indexName, int builderThreads, BatchSizeTuner.Tuning tuning,
+                               DocumentBuilder documentBuilder) {
             this.indexName = indexName;
-            this.tableName = tableName;
-            this.fieldLabels = fieldLabels;
-            this.memberCache = memberCache;
-            this.primaryFieldsMap = primaryFieldsMap;
-            this.flushThreshold = Math.max(1, esBulkMaxActions);
+            this.documentBuilder = documentBuilder;
+            this.tuning = tuning;
+            this.buffer = new ArrayList<>(tuning.bulkActions());
+            this.session = bulkDispatcher.openSession("formId=" + formId + ", 索引=" + indexName);
+            this.session.observe(tuning::recordBulk);
+            this.pipeline = pipelineEnabled
+                    ? new SyncPipeline<>(indexName, pipelineExecutor, builderThreads, pipelineQueueCapacity,
+                            this::buildChunk, this::submitChunk)
+                    : null;
         }
 
-        private long addRecords(Collection<Map<String, Object>> records) {
-            if (records == null || records.isEmpty()) {
+        /**
+         * 添加单条记录，返回自上次调用以来新确认写入的记录数
+         */
+        private long addRecord(CompactRow record) {
+            if (record == null) {
                 return 0L;
             }
+            buffer.add(record);
+            if (buffer.size() >= tuning.bulkActions()) {
+                dispatch();
+            }
+            return drainCompleted();
+        }
 
-            long synced = 0L;
-            for (Map<String, Object> record : records) {
-                if (record == null) {
-                    continue;
-                }
-                buffer.add(record);
-                if (buffer.size() >= flushThreshold) {
-                    synced += flush();
-                }
+        /**
+         * 本表当前的数据库读取批次大小
+         */
+        private int dbBatchSize() {
+            return tuning.dbBatchSize();
+        }
+
+        /**
+         * 报告一批读取的耗时（已扣除向本缓冲区投递时的阻塞），供自适应调整
+         */
+        private void recordFetch(int limit, int rows, long fetchNanos) {
+            tuning.recordFetch(limit, rows, fetchNanos);
+        }
+
+        /**
+         * 发送剩余记录并等待所有阶段及在途bulk请求完成，返回尚未报告的确认写入数
+         */
+        private long finish() {
+            dispatch();
+            if (pipeline != null) {
+                pipeline.finish();
             }
-            return synced;
+            session.awaitCompletion();
+            watermark.commitCheckpoints();
+            return drainCompleted();
+        }
+
+        /**
+         * 登记检查点：此前添加的记录（含尚在缓冲区中的）全部确认写入后，由调用线程执行 action。
+         * 同时执行已满足条件的检查点，多个已满足时只执行最新的一个
+         */
+        private void checkpoint(Runnable action) {
+            long requiredSeq = dispatchedSeq + (buffer.isEmpty() ? 0 : 1);
+            watermark.checkpoint(requiredSeq, action);
         }
 
-        private long flush() {
+        private void dispatch() {
             if (buffer.isEmpty()) {
+                return;
+            }
+            DispatchedChunk chunk = new DispatchedChunk(++dispatchedSeq, buffer);
+            buffer = new ArrayList<>(tuning.bulkActions());
+            if (pipeline != null) {
+                pipeline.submit(chunk);
+            } else {
+                submitChunk(buildChunk(chunk));
+            }
+        }
+
+        /**
+         * 构建阶段：记录转为bulk请求体后即释放
+         */
+        private DispatchedChunk buildChunk(DispatchedChunk chunk) {
+            EmbeddedRows embedded = documentBuilder.prepare(chunk.records);
+            chunk.bodies = buildBulkBodies(indexName, chunk.records, documentBuilder, embedded);
+            chunk.records = null;
+            return chunk;
+        }
+
+        /**
+         * 发送阶段：交给异步分发器，在途请求已满时在此阻塞（反压到构建与读取阶段）；
+         * 一次分发的所有请求体都被确认后推进确认水位
+         */
+        private long submitChunk(DispatchedChunk chunk) {
+            List<NdjsonBulkBody> bodies = chunk.bodies;
+            chunk.bodies = null;
+            if (bodies.isEmpty()) {
+                watermark.complete(chunk.seq);
                 return 0L;
             }
-            List<Map<String, Object>> toFlush = new ArrayList<>(buffer);
-            buffer.clear();
-            return syncRecordBatch(formId, indexName, tableName, toFlush, fieldLabels, memberCache, primaryFieldsMap);
+            chunk.remaining.set(bodies.size());
+            for (NdjsonBulkBody body : bodies) {
+                tuning.recordBody(body.actionCount(), body.sizeInBytes());
+                session.submit(body, acknowledged -> {
+                    if (!acknowledged) {
+                        chunk.failed = true;
+                    }
+                    if (chunk.remaining.decrementAndGet() == 0 && !chunk.failed) {
+                        watermark.complete(chunk.seq);
+                    }
+                });
+            }
+            return bodies.size();
+        }
+
+        /**
+         * 未写入ES的文档数（含进入死信文件的项）
+         */
+        private long failedCount() {
+            return session.failedCount();
+        }
+
+        /**
+         * finish 之后调用：分发的记录全部确认写入ES，没有失败或进入死信文件的项
+         */
+        private boolean fullyWritten() {
+            return session.failedCount() == 0 && watermark.acknowledged() == dispatchedSeq;
+        }
+
+        private long drainCompleted() {
+            long total = session.succeededCount();
+            long delta = total - reportedCount;
+            reportedCount = total;
+            return delta;
+        }
+
+        /**
+         * 正常结束时 finish 已等待所有请求，这里不再有在途请求；异常退出时中止流水线和会话，
+         * 取消待重发并等待在途bulk结束，调用方随后丢弃目标索引时不会再有请求写入
+         */
+        @Override
+        public void close() {
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            session.abort();
         }
     }
 
     /**
-     * 同步表单的所有附表
+     * 一次分发的记录，构建后替换为请求体；seq 按分发顺序从 1 递增
      */
-    private SyncResult syncSubTables(String formId, FormDto form, boolean fullSync, 
-                                   Map<String, String> memberCache, long startTime) {
-        try {
-            List<Map<String, Object>> subTables = formService.getFormSubTables(formId);
-            if (subTables.isEmpty()) {
-                log.debug("表单 {} 没有附表", formId);
-                return createSuccessResult("无附表需要同步", formId, form.getName(), 0, 0.0);
+    private static final class DispatchedChunk {
+        private final long seq;
+        private final AtomicInteger remaining = new AtomicInteger();
+        private List<CompactRow> records;
+        private List<NdjsonBulkBody> bodies;
+        private volatile boolean failed;
+
+        private DispatchedChunk(long seq, List<CompactRow> records) {
+            this.seq = seq;
+            this.records = records;
+        }
+    }
+
+    /**
+     * 流式读取的一个批次：逐行转交写入缓冲区，只保留行数与最后一行（用于推进游标）
+     */
+    private static final class StreamedBatch implements Consumer<CompactRow> {
+        private final BulkSyncBuffer bulkBuffer;
+        private int size;
+        private long syncedCount;
+        private long forwardNanos;
+        private CompactRow lastRow;
+
+        private StreamedBatch(BulkSyncBuffer bulkBuffer) {
+            this.bulkBuffer = bulkBuffer;
+        }
+
+        @Override
+        public void accept(CompactRow row) {
+            long start = System.nanoTime();
+            syncedCount += bulkBuffer.addRecord(row);
+            forwardNanos += System.nanoTime() - start;
+            lastRow = row;
+            size++;
+        }
+
+        /**
+         * 投递给写入缓冲区（含反压阻塞）所用的时间，不计入读取耗时
+         */
+        private long forwardNanos() {
+            return forwardNanos;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private long syncedCount() {
+            return syncedCount;
+        }
+
+        private CompactRow lastRow() {
+            return lastRow;
+        }
+    }
+
+    /**
+     * 跟踪已开始执行的后台任务：关闭后新任务不再开始，并等待已开始的任务结束（不响应中断，返回前恢复中断标记）
+     */
+    private static final class WorkerGate {
+        private int active;
+        private boolean closed;
+
+        private synchronized boolean enter() {
+            if (closed) {
+                return false;
             }
-            
-            long totalSubTableCount = 0;
-            long totalSubTableRecords = 0;
-            
-            for (Map<String, Object> subTable : subTables) {
-                String subTableName = formService.getSubTableName(subTable);
-                if (subTableName == null) {
-                    log.warn("附表表名为空，跳过同步");
-                    continue;
+            active++;
+            return true;
+        }
+
+        private synchronized void exit() {
+            active--;
+            if (active == 0) {
+                notifyAll();
+            }
+        }
+
+        private synchronized void closeAndAwait() {
+            closed = true;
+            boolean interrupted = false;
+            while (active > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
-                
-                log.info("开始同步附表: {}", subTableName);
-                
-                // 检查附表是否存在
-                if (!formService.checkTableExists(subTableName)) {
-                    log.warn("附表不存在，跳过: {}", subTableName);
-                    continue;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class ScanStats {
+        private long checked;
+        private long selected;
+        private long synced;
+    }
+
+    /**
+     * 无索引增量同步中判断一行是否需要写入，按ID升序调用
+     */
+    @FunctionalInterface
+    private interface RowSelector {
+        boolean select(long id, CompactRow row);
+    }
+
+    /**
+     * 无索引增量同步的一个批次：按ID升序逐行判断，被选中（ES中不存在或内容变化）的记录才转交写入缓冲区
+     */
+    private static final class SelectedRowFilter implements Consumer<CompactRow> {
+        private final BulkSyncBuffer bulkBuffer;
+        private final RowSelector selector;
+        private int size;
+        private long addedCount;
+        private long syncedCount;
+        private long forwardNanos;
+        private Long lastId;
+
+        private SelectedRowFilter(BulkSyncBuffer bulkBuffer, RowSelector selector) {
+            this.bulkBuffer = bulkBuffer;
+            this.selector = selector;
+        }
+
+        @Override
+        public void accept(CompactRow row) {
+            size++;
+            Object idObj = row.get("ID");
+            if (idObj == null) {
+                return;
+            }
+            long id = idObj instanceof Number ? ((Number) idObj).longValue() : Long.parseLong(idObj.toString());
+            lastId = id;
+            long start = System.nanoTime();
+            if (selector.select(id, row)) {
+                syncedCount += bulkBuffer.addRecord(row);
+                addedCount++;
+            }
+            forwardNanos += System.nanoTime() - start;
+        }
+
+        /**
+         * 比对和投递所用的时间，不计入读取耗时
+         */
+        private long forwardNanos() {
+            return forwardNanos;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private long addedCount() {
+            return addedCount;
+        }
+
+        private long syncedCount() {
+            return syncedCount;
+        }
+
+        private Long lastId() {
+            return lastId;
+        }
+    }
+
+    private int resolveBuilderThreads() {
+        if (pipelineBuilderThreads > 0) {
+            return pipelineBuilderThreads;
+        }
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * 附表同步线程池，所有表单共用，首次使用时创建
+     */
+    private ExecutorService subTableExecutor() {
+        ExecutorService executor = subTableExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (subTableExecutor == null) {
+                AtomicInteger threadCounter = new AtomicInteger();
+                subTableExecutor = Executors.newFixedThreadPool(Math.max(1, subTableConcurrency), runnable -> {
+                    Thread thread = new Thread(runnable, "sync-sub-table-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return subTableExecutor;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ExecutorService executor = subTableExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 把表单的所有附表提交到共享的附表同步线程池，与主表及彼此并行执行；
+     * 线程池在所有表单间共用，同时进行的附表同步数不超过 app.sync.sub-table.concurrency
+     */
+    private List<Future<Long>> submitSubTables(String formId, boolean fullSync, Map<String, String> memberCache,
+                                               Set<String> embeddedTableNames, WorkerGate workers) {
+        List<Map<String, Object>> subTables = formService.getFormSubTables(formId);
+        if (subTables.isEmpty()) {
+            log.debug("表单 {} 没有附表", formId);
+            return Collections.emptyList();
+        }
+
+        ExecutorService executor = subTableExecutor();
+        List<Future<Long>> futures = new ArrayList<>(subTables.size());
+        for (Map<String, Object> subTable : subTables) {
+            if (embeddedTableNames.contains(formService.getSubTableName(subTable))) {
+                continue;
+            }
+            futures.add(executor.submit(() -> {
+                if (!workers.enter()) {
+                    return null;
                 }
-                
-                // 获取附表字段信息
-                List<Map<String, Object>> subTableFields = formService.getSubTableFields(subTable);
-                Map<String, String> subTableFieldLabels = getSubTableFieldLabels(subTableFields);
-                
-                // 创建附表索引
-                String subTableIndexName = "form_" + formId + "_sub_" + subTableName.toLowerCase();
-                if (!createIndexMapping(subTableIndexName, subTableFields)) {
-                    log.error("创建附表索引失败: {}", subTableIndexName);
-                    continue;
+                try {
+                    return syncSubTable(formId, subTable, fullSync, memberCache);
+                } finally {
+                    workers.exit();
                 }
-                
-                // 同步附表数据
-                long subTableSyncCount = syncSubTableData(formId, subTableIndexName, subTableName, 
-                        subTableFields, subTableFieldLabels, memberCache, fullSync);
-                
-                totalSubTableCount++;
-                totalSubTableRecords += subTableSyncCount;
-                
-                log.info("附表同步完成: {}, 同步记录数: {}", subTableName, subTableSyncCount);
+            }));
+        }
+        if (!futures.isEmpty()) {
+            log.info("表单 {} 的 {} 个附表已提交并行同步", formId, futures.size());
+        }
+        return futures;
+    }
+
+    /**
+     * 取消附表同步，并等待已开始的附表同步退出（关闭写入缓冲区、登记检查点）
+     */
+    private void cancelSubTables(List<Future<Long>> futures, WorkerGate workers) {
+        futures.forEach(pending -> pending.cancel(true));
+        workers.closeAndAwait();
+    }
+
+    /**
+     * 等待附表同步全部结束并汇总结果
+     */
+    private SyncResult awaitSubTables(String formId, FormDto form, List<Future<Long>> futures, WorkerGate workers,
+                                      long startTime) {
+        if (futures.isEmpty()) {
+            return createSuccessResult("无附表需要同步", formId, form.getName(), 0, 0.0);
+        }
+
+        long totalSubTableCount = 0;
+        long totalSubTableRecords = 0;
+        int failedSubTables = 0;
+        for (Future<Long> future : futures) {
+            Long count;
+            try {
+                count = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelSubTables(futures, workers);
+                return createFailureResult("附表同步被中断", formId, form.getName());
+            } catch (Exception e) {
+                log.error("同步附表失败: formId={}", formId, e);
+                count = -1L;
             }
-            
-            double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
-            return createSuccessResult(
-                String.format("附表同步完成，共同步 %d 个附表，%d 条记录", totalSubTableCount, totalSubTableRecords),
-                formId, form.getName(), totalSubTableRecords, elapsed);
-                
-        } catch (Exception e) {
-            log.error("同步附表失败", e);
-            return createFailureResult("附表同步失败: " + e.getMessage(), formId, form.getName());
+            if (count == null) {
+                continue;
+            }
+            if (count < 0) {
+                failedSubTables++;
+                continue;
+            }
+            totalSubTableCount++;
+            totalSubTableRecords += count;
         }
+
+        double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
+        SyncResult result = createSuccessResult(
+            String.format("附表同步完成，共同步 %d 个附表，%d 条记录%s", totalSubTableCount, totalSubTableRecords,
+                    failedSubTables > 0 ? "，" + failedSubTables + " 个附表失败" : ""),
+            formId, form.getName(), totalSubTableRecords, elapsed);
+        result.setSuccess(failedSubTables == 0);
+        return result;
     }
-    
+
     /**
-     * 同步单个附表的数据
+     * 同步单个附表：全量同步按ID遍历（版本化索引、可续传）；增量同步在附表有 modify_date 时
+     * 从检查点中的 (modify_date, ID) 游标继续，否则按内容指纹只重写变化的行。
+     * 返回同步记录数，跳过返回 null，失败返回 -1
      */
-    private long syncSubTableData(String formId, String indexName, String tableName, 
-                                List<Map<String, Object>> fields, Map<String, String> fieldLabels,
-                                Map<String, String> memberCache, boolean fullSync) {
+    private Long syncSubTable(String formId, Map<String, Object> subTable, boolean fullSync,
+                              Map<String, String> memberCache) {
+        String subTableName = formService.getSubTableName(subTable);
+        if (subTableName == null) {
+            log.warn("附表表名为空，跳过同步");
+            return null;
+        }
+
+        log.info("开始同步附表: {}", subTableName);
+
+        // 检查附表是否存在
+        if (!formService.checkTableExists(subTableName)) {
+            log.warn("附表不存在，跳过: {}", subTableName);
+            return null;
+        }
+
+        long startTime = System.currentTimeMillis();
+        // 获取附表字段信息
+        List<Map<String, Object>> subTableFields = formService.getSubTableFields(subTable);
+        Map<String, String> subTableFieldLabels = getSubTableFieldLabels(subTableFields);
+        String subTableIndexName = "form_" + formId + "_sub_" + subTableName.toLowerCase();
+        String checkpointKey = SyncCheckpointService.subTableKey(formId, subTableName);
+        SyncRecord checkpoint = checkpointService.load(checkpointKey);
+        boolean hasModifyDate = formService.hasColumn(subTableName, "modify_date");
+        boolean unfinishedPass = checkpoint != null && checkpoint.getResumeIndex() != null;
+
+        long subTableSyncCount;
+        if (!fullSync && !unfinishedPass && indexExists(subTableIndexName)) {
+            boolean cursorUsable = hasModifyDate && !contentHashService.isAlways()
+                    && formService.ensureIncrementalSyncIndexes(subTableName);
+            if (cursorUsable && checkpoint != null && checkpoint.getLastModifyDate() != null) {
+                checkpointService.markRunning(checkpointKey, SyncCheckpointService.MODE_INCREMENTAL);
+                subTableSyncCount = syncSubTableIncremental(formId, subTableIndexName, subTableName,
+                        subTableFieldLabels, memberCache, checkpointKey,
+                        checkpoint.getLastModifyDate(), checkpoint.getLastRecordId());
+                finishCheckpoint(checkpointKey, subTableIndexName, subTableIndexName, false, subTableSyncCount >= 0, 0L);
+                return logSubTableDone(subTableName, subTableSyncCount, startTime);
+            }
+            if (!cursorUsable && contentHashService.isEnabled()) {
+                checkpointService.markRunning(checkpointKey, SyncCheckpointService.MODE_INCREMENTAL);
+                subTableSyncCount = syncSubTableByContentHash(formId, subTableIndexName, subTableName,
+                        subTableFieldLabels, memberCache, startTime);
+                finishCheckpoint(checkpointKey, subTableIndexName, subTableIndexName, false, subTableSyncCount >= 0, 0L);
+                return logSubTableDone(subTableName, subTableSyncCount, startTime);
+            }
+        }
+
+        // 按ID遍历整表：全量同步写入新一代版本索引，上次中途退出时续传到原索引；
+        // 增量同步尚无游标时也走这里，开始前记录表中最新的 (modify_date, ID)，完成后作为增量游标
+        String subTableTargetIndex = resumableIndex(checkpoint, subTableIndexName, fullSync);
+        Long resumeFromId = null;
+        if (subTableTargetIndex != null) {
+            resumeFromId = checkpoint.getResumeLastId();
+            checkpointService.markRunning(checkpointKey, fullSync
+                    ? SyncCheckpointService.MODE_FULL : SyncCheckpointService.MODE_INCREMENTAL);
+        } else {
+            subTableTargetIndex = prepareTargetIndex(subTableIndexName, subTableFields, fullSync);
+            if (subTableTargetIndex == null) {
+                log.error("创建附表索引失败: {}", subTableIndexName);
+                return -1L;
+            }
+            LocalDateTime pendingModifyDate = null;
+            Long pendingRecordId = null;
+            if (hasModifyDate) {
+                Object[] cursor = latestModifyCursor(subTableName);
+                pendingModifyDate = (LocalDateTime) cursor[0];
+                pendingRecordId = (Long) cursor[1];
+            }
+            checkpointService.beginPass(checkpointKey, fullSync
+                    ? SyncCheckpointService.MODE_FULL : SyncCheckpointService.MODE_INCREMENTAL,
+                    subTableTargetIndex, pendingModifyDate, pendingRecordId);
+        }
+
+        try (IndexBulkLoadService.BulkLoad bulkLoad = fullSync ? bulkLoadService.enter(subTableTargetIndex) : null) {
+            subTableSyncCount = syncSubTableData(formId, subTableTargetIndex, subTableName,
+                    subTableFields, subTableFieldLabels, memberCache, checkpointKey, resumeFromId);
+            if (subTableSyncCount < 0) {
+                discardBulkLoad(bulkLoad, subTableIndexName, subTableTargetIndex);
+            }
+        }
+        boolean switched = switchToTargetIndex(subTableIndexName, subTableTargetIndex, subTableSyncCount >= 0);
+        if (switched && subTableSyncCount >= 0) {
+            checkpointService.completePass(checkpointKey);
+            // 附表索引已整体重写，本地指纹文件不再对应索引内容
+            contentHashService.invalidate(subTableIndexName);
+        } else if (subTableIndexName.equals(subTableTargetIndex) && subTableSyncCount != INCOMPLETE_WRITE) {
+            checkpointService.markFailed(checkpointKey);
+        } else {
+            checkpointService.failPass(checkpointKey);
+        }
+        if (!switched) {
+            log.error("切换附表索引别名失败: {}", subTableIndexName);
+            return -1L;
+        }
+        return logSubTableDone(subTableName, subTableSyncCount, startTime);
+    }
+
+    private Long logSubTableDone(String subTableName, long count, long startTime) {
+        if (count < 0) {
+            log.error("附表同步失败: {}", subTableName);
+        } else {
+            log.info("附表同步完成: {}, 同步记录数: {}, 耗时 {}s", subTableName, count,
+                    String.format(Locale.ROOT, "%.1f", (System.currentTimeMillis() - startTime) / 1000.0));
+        }
+        return count;
+    }
+
+    /**
+     * 表中最新的 (modify_date, ID)，取不到时两项均为 null
+     */
+    private Object[] latestModifyCursor(String tableName) {
+        Map<String, Object> latest = formService.getLatestModifyCursor(tableName);
+        if (latest == null) {
+            return new Object[2];
+        }
         try {
+            LocalDateTime modifyDate = toLocalDateTime(latest.get("MODIFY_DATE"));
+            Object recordId = latest.get("RECORD_ID");
+            return new Object[]{modifyDate, recordId != null ? Long.valueOf(recordId.toString()) : null};
+        } catch (Exception e) {
+            log.warn("解析表最新修改游标失败: {}", latest, e);
+            return new Object[2];
+        }
+    }
+
+    /**
+     * 按 (modify_date, ID) 游标增量同步附表，游标在bulk确认写入后推进；失败返回 -1
+     */
+    private long syncSubTableIncremental(String formId, String indexName, String tableName,
+                                         Map<String, String> fieldLabels, Map<String, String> memberCache,
+                                         String checkpointKey, LocalDateTime lastModifyDate, Long lastRecordId) {
+        log.info("执行附表增量同步（检查点）: {}, 最新修改时间={}, 最新记录ID={}", tableName, lastModifyDate, lastRecordId);
+        try (BulkSyncBuffer bulkBuffer = newSubTableBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache)) {
             long successCount = 0;
-            Long lastProcessedId = 0L;
-            
+            LocalDateTime currentModifyDate = lastModifyDate;
+            Long currentRecordId = lastRecordId;
+
             while (true) {
-                // 使用ID游标分页获取附表数据
-                List<Map<String, Object>> batch = formService.getTableDataBatchByMinId(tableName, dbBatchSize, 0, lastProcessedId);
-                
+                StreamedBatch batch = new StreamedBatch(bulkBuffer);
+                int limit = bulkBuffer.dbBatchSize();
+                long fetchStart = System.nanoTime();
+                try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                    formService.streamTableDataIncrementalCursor(tableName, limit,
+                            currentModifyDate, currentRecordId, batch);
+                }
+                bulkBuffer.recordFetch(limit, batch.size(), System.nanoTime() - fetchStart - batch.forwardNanos());
                 if (batch.isEmpty()) {
                     break;
                 }
-                int flushThreshold = Math.max(1, esBulkMaxActions);
-                int chunkSize = Math.max(1, Math.min(dbBatchSize, flushThreshold));
-                int timeoutSeconds = Math.max(5, bulkTimeoutSeconds);
+                successCount += batch.syncedCount();
+
+                Map<String, Object> lastRecord = batch.lastRow();
+                Object lastModifyDateObj = lastRecord.get("modify_date");
+                if (lastModifyDateObj != null) {
+                    currentModifyDate = toLocalDateTime(lastModifyDateObj);
+                }
+                Object lastIdObj = lastRecord.get("ID");
+                if (lastIdObj != null) {
+                    currentRecordId = Long.valueOf(lastIdObj.toString());
+                }
+                LocalDateTime checkpointDate = currentModifyDate;
+                Long checkpointId = currentRecordId;
+                bulkBuffer.checkpoint(() -> checkpointService.saveCursor(checkpointKey, checkpointDate, checkpointId));
 
-                for (int from = 0; from < batch.size(); from += chunkSize) {
-                    int to = Math.min(batch.size(), from + chunkSize);
-                    List<Map<String, Object>> chunk = batch.subList(from, to);
+                if (batch.size() < limit) {
+                    break;
+                }
+            }
 
-                    BulkRequest bulkRequest = new BulkRequest();
-                    bulkRequest.timeout(TimeValue.timeValueSeconds(timeoutSeconds));
+            successCount += bulkBuffer.finish();
+            refreshIndexSafely(indexName);
+            return successCount;
 
-                    for (Map<String, Object> record : chunk) {
-                        String docId = formId + "_" + tableName + "_" + record.get("ID");
-                        Map<String, Object> doc = buildSubTableDocument(formId, tableName, record, fieldLabels, memberCache);
+        } catch (Exception e) {
+            log.error("附表增量同步失败: {}", tableName, e);
+            return -1;
+        }
+    }
 
-                        IndexRequest indexRequest = new IndexRequest(indexName)
-                                .id(docId)
-                                .source(doc, XContentType.JSON);
-                        bulkRequest.add(indexRequest);
-                    }
+    /**
+     * 附表没有可用的 modify_date 时按内容指纹增量同步，只重写新增或变化的行；失败返回 -1
+     */
+    private long syncSubTableByContentHash(String formId, String indexName, String tableName,
+                                           Map<String, String> fieldLabels, Map<String, String> memberCache,
+                                           long startTime) {
+        log.info("执行附表增量同步（内容指纹比对）: {}", tableName);
+        try (BulkSyncBuffer bulkBuffer = newSubTableBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache);
+             ContentHashService.Lookup hashLookup = contentHashService.openLookup(indexName);
+             ContentHashService.Store hashStore = contentHashService.openStore(indexName)) {
+            RowSelector selector = contentHashSelector(
+                    new ProjectionPlanCache(fieldLabels, Collections.emptyMap()), hashLookup, hashStore);
+            ScanStats scan = scanSelectedRows(tableName, bulkBuffer, selector, startTime);
+            long successCount = scan.synced + bulkBuffer.finish();
+            refreshIndexSafely(indexName);
+            commitHashStore(hashStore, bulkBuffer, indexName);
+            log.info("附表指纹比对完成: {}, 检查 {} 条，写入 {} 条", tableName, scan.checked, scan.selected);
+            return successCount;
 
-                    try {
-                        BulkResponse bulkResponse = executeWithRetry(
-                                () -> esClient.bulk(bulkRequest, RequestOptions.DEFAULT),
-                                "附表批量写入索引 " + indexName);
-
-                        if (bulkResponse.hasFailures()) {
-                            log.error("附表批量插入失败: {}", bulkResponse.buildFailureMessage());
-                        } else {
-                            successCount += chunk.size();
-                        }
+        } catch (Exception e) {
+            log.error("附表内容指纹同步失败: {}", tableName, e);
+            return -1;
+        }
+    }
 
-                    } catch (Exception e) {
-                        log.error("附表批量同步失败: formId={}, tableName={}, 批次大小={}",
-                                formId, tableName, chunk.size(), e);
-                    }
+    /**
+     * 同步单个附表的数据（从 resumeFromId 之后开始，为空则从头），失败返回 -1，
+     * 有文档写入失败或进入死信文件时返回 {@link #INCOMPLETE_WRITE}
+     */
+    private long syncSubTableData(String formId, String indexName, String tableName, 
+                                List<Map<String, Object>> fields, Map<String, String> fieldLabels,
+                                Map<String, String> memberCache, String checkpointKey, Long resumeFromId) {
+        try (BulkSyncBuffer bulkBuffer = newSubTableBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache)) {
+            long successCount = 0;
+            Long lastProcessedId = resumeFromId != null ? resumeFromId : 0L;
+            if (lastProcessedId > 0) {
+                log.info("从检查点续传附表同步: {}, 索引={}, 起始ID={}", tableName, indexName, lastProcessedId);
+            }
+            
+            while (true) {
+                // 使用ID游标分页获取附表数据
+                int limit = bulkBuffer.dbBatchSize();
+                long fetchStart = System.nanoTime();
+                StreamedBatch batch = new StreamedBatch(bulkBuffer);
+                try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                    formService.streamTableDataBatchByMinId(tableName, limit, lastProcessedId, batch);
+                }
+                bulkBuffer.recordFetch(limit, batch.size(), System.nanoTime() - fetchStart - batch.forwardNanos());
+                successCount += batch.syncedCount();
+                
+                if (batch.isEmpty()) {
+                    break;
                 }
                 
                 // 更新ID游标到当前批次的最后一条记录ID（因为数据已按ID排序）
-                if (!batch.isEmpty()) {
-                    Map<String, Object> lastRecord = batch.get(batch.size() - 1);
-                    Object lastIdObj = lastRecord.get("ID");
-                    if (lastIdObj != null) {
-                        try {
-                            lastProcessedId = Long.valueOf(lastIdObj.toString());
-                            log.debug("附表ID游标推进到: {} (批次最后记录)", lastProcessedId);
-                        } catch (NumberFormatException e) {
-                            log.warn("解析附表最后记录ID失败: {}", lastIdObj, e);
-                        }
+                Object lastIdObj = batch.lastRow().get("ID");
+                if (lastIdObj != null) {
+                    try {
+                        lastProcessedId = Long.valueOf(lastIdObj.toString());
+                        log.debug("附表ID游标推进到: {} (批次最后记录)", lastProcessedId);
+                    } catch (NumberFormatException e) {
+                        log.warn("解析附表最后记录ID失败: {}", lastIdObj, e);
                     }
                 }
+                long checkpointId = lastProcessedId;
+                bulkBuffer.checkpoint(() -> checkpointService.saveResumeId(checkpointKey, checkpointId));
                 
                 // 如果返回的数据少于批次大小，说明已经是最后一批
-                if (batch.size() < dbBatchSize) {
+                if (batch.size() < limit) {
                     break;
                 }
             }
-            
+
+            successCount += bulkBuffer.finish();
             refreshIndexSafely(indexName);
+            if (!bulkBuffer.fullyWritten()) {
+                log.error("附表同步未完整写入: {}, 失败 {} 条", tableName, bulkBuffer.failedCount());
+                return INCOMPLETE_WRITE;
+            }
             
             return successCount;
             
         } catch (Exception e) {
             log.error("同步附表数据失败: {}", tableName, e);
-            return 0;
+            return -1;
         }
     }
     
     /**
-     * 构建附表文档
+     * 附表是否内嵌到主表文档（app.sync.sub-table.mode=nested）
      */
-    private Map<String, Object> buildSubTableDocument(String formId, String tableName, 
-            Map<String, Object> record, Map<String, String> fieldLabels, Map<String, String> memberCache) {
-        
-        Map<String, Object> doc = new HashMap<>();
-        doc.put("form_id", formId);
-        doc.put("table_name", tableName);
-        doc.put("table_type", "sub_table"); // 标记为附表
-        doc.put("record_id", Long.valueOf(String.valueOf(record.get("ID"))));
-        doc.put("sync_time", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        
-        // 处理附表字段
-        for (Map.Entry<String, Object> entry : record.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-            
-            if (value == null || shouldSkipField(key)) {
+    private boolean embedSubTables() {
+        return "nested".equalsIgnoreCase(subTableMode);
+    }
+
+    /**
+     * 可内嵌的附表：表存在且有指向主表ID的外键列；没有外键列的附表仍按独立索引同步
+     */
+    private List<EmbeddedTable> resolveEmbeddedTables(String formId) {
+        List<EmbeddedTable> tables = new ArrayList<>();
+        for (Map<String, Object> subTable : formService.getFormSubTables(formId)) {
+            String subTableName = formService.getSubTableName(subTable);
+            if (subTableName == null || !formService.checkTableExists(subTableName)) {
                 continue;
             }
-            
-            // 转换字段名为中文标签
-            String displayName = getFieldDisplayName(key, fieldLabels);
-            
-            // 格式化值
-            Object formattedValue = formatFieldValue(key, value, memberCache);
-            if (formattedValue != null) {
-                doc.put(displayName, formattedValue);
+            if (!formService.hasColumn(subTableName, subTableParentColumn)) {
+                log.warn("附表 {} 没有外键列 {}，仍按独立索引同步", subTableName, subTableParentColumn);
+                continue;
             }
+            formService.ensureColumnIndex(subTableName, subTableParentColumn);
+            boolean cursorUsable = formService.hasColumn(subTableName, "modify_date")
+                    && formService.ensureIncrementalSyncIndexes(subTableName);
+            Map<String, String> fieldLabels = getSubTableFieldLabels(formService.getSubTableFields(subTable));
+            tables.add(new EmbeddedTable(SyncCheckpointService.subTableKey(formId, subTableName), subTableName,
+                    fieldLabels, cursorUsable));
         }
-        
-        return doc;
+        if (!tables.isEmpty()) {
+            log.info("表单 {} 的 {} 个附表内嵌到主表文档", formId, tables.size());
+        }
+        return tables;
     }
-    
+
+    /**
+     * 已有索引由之前的模式创建时补充内嵌字段映射；字段已被动态映射为普通对象时无法修改，需执行一次全量同步
+     */
+    private void ensureNestedMapping(String indexName, List<String> nestedFields) {
+        Map<String, Object> properties = new HashMap<>();
+        for (String nestedField : nestedFields) {
+            properties.put(nestedField, nestedFieldMapping());
+        }
+        try {
+            PutMappingRequest request = new PutMappingRequest(indexName).source(Map.of("properties", properties));
+            executeWithRetry(() -> esClient.indices().putMapping(request, RequestOptions.DEFAULT),
+                    "更新内嵌字段映射 " + indexName);
+        } catch (Exception e) {
+            log.warn("索引 {} 无法添加内嵌附表映射，附表行将按普通对象写入，请执行一次全量同步: {}",
+                    indexName, e.getMessage());
+        }
+    }
+
+    /**
+     * 内嵌附表首次同步或全量同步前，记录附表中最新的 (modify_date, ID)；主表同步成功后作为附表增量游标
+     */
+    private Map<EmbeddedTable, Object[]> beginEmbeddedCursors(List<EmbeddedTable> tables, boolean fullSync) {
+        Map<EmbeddedTable, Object[]> pending = new LinkedHashMap<>();
+        for (EmbeddedTable table : tables) {
+            if (!table.cursorUsable) {
+                continue;
+            }
+            SyncRecord checkpoint = fullSync ? null : checkpointService.load(table.checkpointKey);
+            if (checkpoint == null || checkpoint.getLastModifyDate() == null) {
+                pending.put(table, latestModifyCursor(table.tableName));
+            }
+        }
+        return pending;
+    }
+
+    private void commitEmbeddedCursors(Map<EmbeddedTable, Object[]> pending) {
+        pending.forEach((table, cursor) ->
+                checkpointService.saveCursor(table.checkpointKey, (LocalDateTime) cursor[0], (Long) cursor[1]));
+    }
+
+    /**
+     * 内嵌附表增量：按各附表的 (modify_date, ID) 游标找出变化的附表行，取其外键对应的主表行重新构建整篇文档
+     * （文档中带该记录当前的全部附表行）。附表游标在重建的文档确认写入后推进；
+     * 没有 modify_date 的附表依赖主表 modify_date 随明细编辑一起更新。
+     * 被删除的附表行不会出现在游标中，由 {@link #reconcileEmbeddedRows(String)} 在对账时补齐
+     */
+    private SyncResult syncEmbeddedChanges(String formId, FormDto form, String tableName, String indexName,
+                                           List<EmbeddedTable> tables, Map<String, String> fieldLabels,
+                                           Map<String, String> memberCache, Map<String, Integer> primaryFieldsMap,
+                                           long startTime) {
+        long changedRows = 0;
+        long rebuiltCount = 0;
+        String cursorColumns = "ID, modify_date, " + subTableParentColumn;
+        try (BulkSyncBuffer bulkBuffer = newBulkBuffer(formId, indexName, tableName, fieldLabels, memberCache,
+                primaryFieldsMap, tables)) {
+            // 同一主表记录在本次只重建一次
+            Set<Long> rebuiltParents = new HashSet<>();
+            for (EmbeddedTable table : tables) {
+                SyncRecord checkpoint = table.cursorUsable ? checkpointService.load(table.checkpointKey) : null;
+                if (checkpoint == null || checkpoint.getLastModifyDate() == null) {
+                    continue;
+                }
+                LocalDateTime currentModifyDate = checkpoint.getLastModifyDate();
+                Long currentRecordId = checkpoint.getLastRecordId();
+                while (true) {
+                    int limit = bulkBuffer.dbBatchSize();
+                    List<CompactRow> changed = new ArrayList<>();
+                    try (DbReadPermits.Permit ignored = readPermits.acquireLookup(table.tableName)) {
+                        formService.streamColumnsIncrementalCursor(table.tableName, cursorColumns, limit,
+                                currentModifyDate, currentRecordId, changed::add);
+                    }
+                    if (changed.isEmpty()) {
+                        break;
+                    }
+                    changedRows += changed.size();
+
+                    List<Long> parentIds = new ArrayList<>();
+                    for (CompactRow row : changed) {
+                        Long parentId = toParentId(row.get(subTableParentColumn));
+                        if (parentId != null && rebuiltParents.add(parentId)) {
+                            parentIds.add(parentId);
+                        }
+                    }
+                    StreamedBatch batch = new StreamedBatch(bulkBuffer);
+                    try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                        formService.streamTableDataByColumnValues(tableName, "ID", parentIds, EMBEDDED_IN_CHUNK_SIZE, batch);
+                    }
+                    rebuiltCount += batch.syncedCount();
+
+                    CompactRow lastRow = changed.get(changed.size() - 1);
+                    currentModifyDate = toLocalDateTime(lastRow.get("modify_date"));
+                    currentRecordId = Long.valueOf(lastRow.get("ID").toString());
+                    LocalDateTime checkpointDate = currentModifyDate;
+                    Long checkpointId = currentRecordId;
+                    bulkBuffer.checkpoint(() -> checkpointService.saveCursor(table.checkpointKey, checkpointDate, checkpointId));
+
+                    if (changed.size() < limit) {
+                        break;
+                    }
+                }
+            }
+
+            rebuiltCount += bulkBuffer.finish();
+            if (rebuiltCount > 0) {
+                refreshIndexSafely(indexName);
+            }
+            double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
+            log.info("内嵌附表增量同步完成: formId={}, 附表变化 {} 行，重建主表文档 {} 条", formId, changedRows, rebuiltCount);
+            SyncResult result = createSuccessResult(String.format(
+                    "内嵌附表增量同步完成，附表变化 %d 行，重建主表文档 %d 条", changedRows, rebuiltCount),
+                    formId, form.getName(), rebuiltCount, elapsed);
+            result.setTotal(changedRows);
+            return result;
+
+        } catch (Exception e) {
+            log.error("内嵌附表增量同步失败: formId={}", formId, e);
+            return createFailureResult("内嵌附表增量同步失败: " + e.getMessage(), formId, form.getName());
+        }
+    }
+
+    /**
+     * 内嵌附表对账：按 record_id 分页读取主表文档中各内嵌附表行的ID，与数据库中该记录当前的附表行ID比对，
+     * 不一致（附表行已删除，或增量游标遗漏）的主表记录重新构建整篇文档。返回重建的文档数，失败时抛出异常
+     */
+    public long reconcileEmbeddedRows(String formId) throws Exception {
+        if (!embedSubTables()) {
+            return 0;
+        }
+        String indexName = "form_" + formId;
+        String tableName = formService.getFormTableName(formId);
+        if (tableName == null || !indexExists(indexName)) {
+            return 0;
+        }
+        List<EmbeddedTable> tables = resolveEmbeddedTables(formId);
+        if (tables.isEmpty()) {
+            return 0;
+        }
+
+        String[] includes = new String[tables.size()];
+        for (int t = 0; t < tables.size(); t++) {
+            includes[t] = tables.get(t).fieldName + ".record_id";
+        }
+        Map<String, Integer> primaryFieldsMap = new HashMap<>();
+        List<String> primaryDisplayFields = getPrimaryDisplayFields(formId);
+        for (int i = 0; i < primaryDisplayFields.size(); i++) {
+            primaryFieldsMap.put(primaryDisplayFields.get(i), i);
+        }
+
+        long checkedCount = 0;
+        long staleCount = 0;
+        long rebuiltCount = 0;
+        try (BulkSyncBuffer bulkBuffer = newBulkBuffer(formId, indexName, tableName, formService.getFieldLabels(formId),
+                memberDirectory.nameView(), primaryFieldsMap, tables)) {
+            Object[] searchAfter = null;
+            while (true) {
+                SearchSourceBuilder source = new SearchSourceBuilder()
+                        .query(QueryBuilders.existsQuery("record_id"))
+                        .fetchSource(includes, null)
+                        .sort("record_id", SortOrder.ASC)
+                        .size(EMBEDDED_IN_CHUNK_SIZE)
+                        .trackTotalHits(false);
+                if (searchAfter != null) {
+                    source.searchAfter(searchAfter);
+                }
+                SearchRequest request = new SearchRequest(indexName).source(source);
+                SearchHit[] hits = executeWithRetry(() -> esClient.search(request, RequestOptions.DEFAULT),
+                        "分页读取内嵌附表行ID " + indexName).getHits().getHits();
+                if (hits.length == 0) {
+                    break;
+                }
+
+                // 主表ID → 各附表在ES中的附表行ID
+                Map<Long, List<Set<Long>>> indexed = new LinkedHashMap<>();
+                for (SearchHit hit : hits) {
+                    Object[] sortValues = hit.getSortValues();
+                    if (sortValues.length == 0 || !(sortValues[0] instanceof Number)) {
+                        continue;
+                    }
+                    Map<String, Object> doc = hit.getSourceAsMap();
+                    List<Set<Long>> childIds = new ArrayList<>(tables.size());
+                    for (EmbeddedTable table : tables) {
+                        childIds.add(embeddedRecordIds(doc != null ? doc.get(table.fieldName) : null));
+                    }
+                    indexed.put(((Number) sortValues[0]).longValue(), childIds);
+                }
+                checkedCount += indexed.size();
+
+                List<Long> stale = findStaleParents(tables, indexed);
+                if (!stale.isEmpty()) {
+                    staleCount += stale.size();
+                    StreamedBatch batch = new StreamedBatch(bulkBuffer);
+                    try (DbReadPermits.Permit ignored = readPermits.acquireCursor(tableName)) {
+                        formService.streamTableDataByColumnValues(tableName, "ID", stale, EMBEDDED_IN_CHUNK_SIZE, batch);
+                    }
+                    rebuiltCount += batch.syncedCount();
+                }
+
+                if (hits.length < EMBEDDED_IN_CHUNK_SIZE) {
+                    break;
+                }
+                searchAfter = hits[hits.length - 1].getSortValues();
+            }
+            rebuiltCount += bulkBuffer.finish();
+        }
+        if (rebuiltCount > 0) {
+            refreshIndexSafely(indexName);
+        }
+        log.info("内嵌附表对账完成: formId={}, 比对主表文档 {} 条，附表行不一致 {} 条，重建 {} 条",
+                formId, checkedCount, staleCount, rebuiltCount);
+        return rebuiltCount;
+    }
+
+    /**
+     * 数据库中当前附表行ID与文档中不一致的主表记录
+     */
+    private List<Long> findStaleParents(List<EmbeddedTable> tables, Map<Long, List<Set<Long>>> indexed) {
+        List<Long> parentIds = new ArrayList<>(indexed.keySet());
+        Set<Long> stale = new LinkedHashSet<>();
+        String columns = "ID, " + subTableParentColumn;
+        for (int t = 0; t < tables.size(); t++) {
+            EmbeddedTable table = tables.get(t);
+            Map<Long, Set<Long>> current = new HashMap<>();
+            try (DbReadPermits.Permit ignored = readPermits.acquireLookup(table.tableName)) {
+                formService.streamColumnsByColumnValues(table.tableName, columns, subTableParentColumn, parentIds,
+                        EMBEDDED_IN_CHUNK_SIZE, row -> {
+                            Long parentId = toParentId(row.get(subTableParentColumn));
+                            Long childId = toParentId(row.get("ID"));
+                            if (parentId != null && childId != null) {
+                                current.computeIfAbsent(parentId, key -> new HashSet<>()).add(childId);
+                            }
+                        });
+            }
+            for (Map.Entry<Long, List<Set<Long>>> entry : indexed.entrySet()) {
+                Set<Long> rows = current.getOrDefault(entry.getKey(), Collections.emptySet());
+                if (!rows.equals(entry.getValue().get(t))) {
+                    stale.add(entry.getKey());
+                }
+            }
+        }
+        return new ArrayList<>(stale);
+    }
+
+    private static Set<Long> embeddedRecordIds(Object nested) {
+        if (!(nested instanceof List)) {
+            return Collections.emptySet();
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Object item : (List<?>) nested) {
+            Long id = item instanceof Map ? toParentId(((Map<?, ?>) item).get("record_id")) : null;
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 读取一批主表记录的内嵌附表行（构建线程上执行）；查询失败抛出异常，该批文档不会缺少附表行写入
+     */
+    private EmbeddedRows loadEmbeddedRows(List<EmbeddedTable> tables, List<CompactRow> records) {
+        List<Long> parentIds = new ArrayList<>(records.size());
+        for (CompactRow record : records) {
+            Long parentId = toParentId(record.get("ID"));
+            if (parentId != null) {
+                parentIds.add(parentId);
+            }
+        }
+
+        List<Map<Long, List<CompactRow>>> rowsByTable = new ArrayList<>(tables.size());
+        for (EmbeddedTable table : tables) {
+            Map<Long, List<CompactRow>> rows = new HashMap<>();
+            try (DbReadPermits.Permit ignored = readPermits.acquireLookup(table.tableName)) {
+                formService.streamTableDataByColumnValues(table.tableName, subTableParentColumn, parentIds,
+                        EMBEDDED_IN_CHUNK_SIZE, row -> {
+                            Long parentId = toParentId(row.get(subTableParentColumn));
+                            if (parentId != null) {
+                                rows.computeIfAbsent(parentId, key -> new ArrayList<>(4)).add(row);
+                            }
+                        });
+            }
+            rowsByTable.add(rows);
+        }
+        return new EmbeddedRows(tables, rowsByTable);
+    }
+
+    private static Long toParentId(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 内嵌到主表文档的附表：字段名为 sub_&lt;表名小写&gt;，附表行经外键列关联主表ID
+     */
+    private final class EmbeddedTable {
+        private final String checkpointKey;
+        private final String tableName;
+        private final String fieldName;
+        private final boolean cursorUsable;
+        private final ProjectionPlanCache plans;
+
+        private EmbeddedTable(String checkpointKey, String tableName, Map<String, String> fieldLabels, boolean cursorUsable) {
+            this.checkpointKey = checkpointKey;
+            this.tableName = tableName;
+            this.fieldName = "sub_" + tableName.toLowerCase();
+            this.cursorUsable = cursorUsable;
+            this.plans = new ProjectionPlanCache(fieldLabels, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * 一批主表记录的内嵌附表行：按附表、主表ID分组，组内按附表ID升序
+     */
+    private static final class EmbeddedRows {
+        private final List<EmbeddedTable> tables;
+        private final List<Map<Long, List<CompactRow>>> rowsByTable;
+
+        private EmbeddedRows(List<EmbeddedTable> tables, List<Map<Long, List<CompactRow>>> rowsByTable) {
+            this.tables = tables;
+            this.rowsByTable = rowsByTable;
+        }
+
+        private void collectMemberIds(Collection<Long> memberIds) {
+            for (int t = 0; t < tables.size(); t++) {
+                ProjectionPlanCache plans = tables.get(t).plans;
+                for (List<CompactRow> rows : rowsByTable.get(t).values()) {
+                    for (CompactRow row : rows) {
+                        plans.planFor(row.columns()).collectMemberIds(row, memberIds);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 在主表文档中写入该记录的附表行数组，没有附表行的附表不写字段
+         */
+        private void write(JsonGenerator generator, long parentId, Map<String, String> memberCache) throws IOException {
+            for (int t = 0; t < tables.size(); t++) {
+                List<CompactRow> rows = rowsByTable.get(t).get(parentId);
+                if (rows == null) {
+                    continue;
+                }
+                EmbeddedTable table = tables.get(t);
+                generator.writeArrayFieldStart(table.fieldName);
+                for (CompactRow row : rows) {
+                    ProjectionPlan plan = table.plans.planFor(row.columns());
+                    if (plan.isStreamable()) {
+                        generator.writeStartObject();
+                        generator.writeNumberField("record_id", Long.parseLong(String.valueOf(plan.recordId(row))));
+                        plan.write(row, memberCache, generator);
+                        generator.writeEndObject();
+                    } else {
+                        generator.writeObject(project(row, plan, memberCache));
+                    }
+                }
+                generator.writeEndArray();
+            }
+        }
+
+        private void putInto(Map<String, Object> doc, Long parentId, Map<String, String> memberCache) {
+            for (int t = 0; t < tables.size(); t++) {
+                List<CompactRow> rows = rowsByTable.get(t).get(parentId);
+                if (rows == null) {
+                    continue;
+                }
+                EmbeddedTable table = tables.get(t);
+                List<Map<String, Object>> projected = new ArrayList<>(rows.size());
+                for (CompactRow row : rows) {
+                    projected.add(project(row, table.plans.planFor(row.columns()), memberCache));
+                }
+                doc.put(table.fieldName, projected);
+            }
+        }
+
+        private static Map<String, Object> project(CompactRow row, ProjectionPlan plan, Map<String, String> memberCache) {
+            Map<String, Object> doc = new HashMap<>(plan.expectedDocumentSize());
+            doc.put("record_id", Long.valueOf(String.valueOf(plan.recordId(row))));
+            return plan.project(row, memberCache, doc);
+        }
+    }
+
     /**
      * 获取附表字段标签
      */
@@ -1440,6 +2911,17 @@ public class SyncService {
         return mergedResult;
     }
     
+    /**
+     * 合并独立索引附表与内嵌附表的结果
+     */
+    private SyncResult mergeSubResults(SyncResult indexed, SyncResult embedded) {
+        SyncResult merged = createSuccessResult(indexed.getMessage() + "；" + embedded.getMessage(),
+                indexed.getFormId(), indexed.getFormName(), indexed.getCount() + embedded.getCount(),
+                Math.max(indexed.getElapsedTime(), embedded.getElapsedTime()));
+        merged.setSuccess(indexed.isSuccess() && embedded.isSuccess());
+        return merged;
+    }
+
     /**
      * 创建成功结果
      */
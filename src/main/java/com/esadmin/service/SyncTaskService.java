@@ -15,6 +15,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class SyncTaskService {
@@ -22,7 +23,7 @@ public class SyncTaskService {
     private static final Logger log = LoggerFactory.getLogger(SyncTaskService.class);
 
     @Autowired
-    private SyncService syncService;
+    private SyncScheduler syncScheduler;
 
     @Autowired
     private FormService formService;
@@ -56,21 +57,17 @@ public class SyncTaskService {
             int successCount = 0;
             int totalCount = forms.size();
             
-            for (FormDto form : forms) {
+            // 交给同步调度器并发执行，是否全量按每个表单的索引状态决定
+            List<CompletableFuture<SyncResult>> futures = syncScheduler.submitBatch(forms, this::isFirstSync);
+            for (int i = 0; i < forms.size(); i++) {
+                String formId = forms.get(i).getId();
                 try {
-                    String formId = form.getId();
-                    log.info("开始同步表单: formId={}, formName={}", formId, form.getName());
-                    
-                    // 判断是否为首次同步（检查ES索引是否存在且有数据）
-                    boolean isFirstSync = isFirstSync(formId);
-                    
-                    // 执行同步
-                    SyncResult result = syncService.syncFormData(formId, isFirstSync);
+                    SyncResult result = futures.get(i).join();
                     
                     if (result.isSuccess()) {
                         successCount++;
-                        log.info("表单同步成功: formId={}, 同步条数={}, 同步类型={}, 耗时={} 秒, 速度={} 条/秒", 
-                                formId, result.getCount(), isFirstSync ? "全量" : "增量",
+                        log.info("表单同步成功: formId={}, 同步条数={}, 耗时={} 秒, 速度={} 条/秒", 
+                                formId, result.getCount(),
                                 String.format("%.1f", result.getElapsedTime()),
                                 String.format("%.1f", result.getRate()));
                     } else {
@@ -78,7 +75,7 @@ public class SyncTaskService {
                     }
                     
                 } catch (Exception e) {
-                    log.error("同步表单时发生异常: formId={}", form.getId(), e);
+                    log.error("同步表单时发生异常: formId={}", formId, e);
                 }
             }
             
@@ -0,0 +1,157 @@
+package com.esadmin.util;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 紧凑行：按列下标存放的值数组，列元数据每次查询只解析一次并在所有行间共享。
+ * 实现只读的 Map 接口以兼容按列名取值的旧代码，热点路径应使用 {@link #value(int)} 按下标访问。
+ */
+public final class CompactRow extends AbstractMap<String, Object> {
+
+    private final Columns columns;
+    private final Object[] values;
+
+    public CompactRow(Columns columns, Object[] values) {
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * 从结果集当前行读取，取值规则与 JdbcTemplate.queryForList 相同
+     */
+    public static CompactRow read(ResultSet rs, Columns columns) throws SQLException {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+        }
+        return new CompactRow(columns, values);
+    }
+
+    public Columns columns() {
+        return columns;
+    }
+
+    public Object value(int index) {
+        return values[index];
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = key instanceof String ? columns.indexOf((String) key) : -1;
+        return index >= 0 ? values[index] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && columns.indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next++;
+                        return new SimpleImmutableEntry<>(columns.name(index), values[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    /**
+     * 一次查询的列元数据：列名数组、JDBC类型 + 大小写不敏感的列名到下标映射
+     */
+    public static final class Columns {
+        private final String[] names;
+        private final int[] sqlTypes;
+        private final Map<String, Integer> positions;
+
+        public Columns(String[] names) {
+            this(names, null);
+        }
+
+        public Columns(String[] names, int[] sqlTypes) {
+            this.names = names;
+            this.sqlTypes = sqlTypes;
+            this.positions = new LinkedCaseInsensitiveMap<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                positions.putIfAbsent(names[i], i);
+            }
+        }
+
+        public static Columns of(ResultSetMetaData metaData) throws SQLException {
+            int count = metaData.getColumnCount();
+            String[] names = new String[count];
+            int[] sqlTypes = new int[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+                sqlTypes[i] = metaData.getColumnType(i + 1);
+            }
+            return new Columns(names, sqlTypes);
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String name(int index) {
+            return names[index];
+        }
+
+        /**
+         * 列的 java.sql.Types 类型，未知时返回 Types.OTHER
+         */
+        public int sqlType(int index) {
+            return sqlTypes != null ? sqlTypes[index] : Types.OTHER;
+        }
+
+        /**
+         * 列名序列是否相同（不同查询返回的列元数据对象不同，但列布局可能一致）
+         */
+        public boolean sameLayout(Columns other) {
+            return other == this || (other != null && Arrays.equals(names, other.names));
+        }
+
+        public int indexOf(String name) {
+            Integer index = positions.get(name);
+            return index != null ? index : -1;
+        }
+    }
+}
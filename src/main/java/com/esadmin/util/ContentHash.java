@@ -0,0 +1,134 @@
+package com.esadmin.util;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * 64 位内容指纹（xxHash64 风格的轮函数与末尾雪崩），用于判断一行的投影列是否变化。
+ * 按值的运行时类型直接混入，常见类型不产生中间字符串；不用于安全场景。
+ */
+public final class ContentHash {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    /** 值类型标记，避免 "1"、1L、null 等取值混淆 */
+    private static final long TAG_NULL = 1;
+    private static final long TAG_STRING = 2;
+    private static final long TAG_LONG = 3;
+    private static final long TAG_DOUBLE = 4;
+    private static final long TAG_DECIMAL = 5;
+    private static final long TAG_TIME = 6;
+    private static final long TAG_BYTES = 7;
+    private static final long TAG_OTHER = 8;
+
+    private long state = PRIME_5;
+    private long length;
+
+    public ContentHash reset() {
+        state = PRIME_5;
+        length = 0;
+        return this;
+    }
+
+    public ContentHash putLong(long value) {
+        state ^= round(value);
+        state = Long.rotateLeft(state, 27) * PRIME_1 + PRIME_4;
+        length++;
+        return this;
+    }
+
+    public ContentHash putString(CharSequence value) {
+        int count = value.length();
+        int i = 0;
+        // 每次混入4个字符
+        for (; i + 4 <= count; i += 4) {
+            putLong((long) value.charAt(i)
+                    | (long) value.charAt(i + 1) << 16
+                    | (long) value.charAt(i + 2) << 32
+                    | (long) value.charAt(i + 3) << 48);
+        }
+        long tail = 0;
+        for (int shift = 0; i < count; i++, shift += 16) {
+            tail |= (long) value.charAt(i) << shift;
+        }
+        return putLong(tail).putLong(count);
+    }
+
+    public ContentHash putBytes(byte[] value) {
+        int i = 0;
+        for (; i + 8 <= value.length; i += 8) {
+            long word = 0;
+            for (int b = 0; b < 8; b++) {
+                word |= (value[i + b] & 0xFFL) << (b * 8);
+            }
+            putLong(word);
+        }
+        long tail = 0;
+        for (int shift = 0; i < value.length; i++, shift += 8) {
+            tail |= (value[i] & 0xFFL) << shift;
+        }
+        return putLong(tail).putLong(value.length);
+    }
+
+    /**
+     * 按运行时类型混入一个单元格的值
+     */
+    public ContentHash putValue(Object value) {
+        if (value == null) {
+            return putLong(TAG_NULL);
+        }
+        if (value instanceof String) {
+            return putLong(TAG_STRING).putString((String) value);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return putLong(TAG_LONG).putLong(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return putLong(TAG_DOUBLE).putLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            // 1.50 与 1.5 视为相同的值
+            return putLong(TAG_DECIMAL).putString(decimal.signum() == 0 ? "0" : decimal.stripTrailingZeros().toPlainString());
+        }
+        if (value instanceof java.sql.Timestamp) {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            return putLong(TAG_TIME).putLong(timestamp.getTime()).putLong(timestamp.getNanos());
+        }
+        if (value instanceof Date) {
+            return putLong(TAG_TIME).putLong(((Date) value).getTime());
+        }
+        if (value instanceof byte[]) {
+            return putLong(TAG_BYTES).putBytes((byte[]) value);
+        }
+        return putLong(TAG_OTHER).putString(String.valueOf(value));
+    }
+
+    public long finish() {
+        long hash = state + length * PRIME_3;
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    /**
+     * 字符串的独立指纹（编译投影计划时预先计算字段名的指纹）
+     */
+    public static long of(String value) {
+        return new ContentHash().putBytes(value.getBytes(StandardCharsets.UTF_8)).finish();
+    }
+
+    private static long round(long input) {
+        long acc = input * PRIME_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME_1;
+    }
+}
@@ -0,0 +1,218 @@
+package com.esadmin.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 可复用的 bulk 请求体：用 Jackson 流式生成器把 action 行和文档行直接写入字节缓冲区，
+ * 发送时按原数组构造 HTTP 实体，不经过 Map → IndexRequest → BulkRequest 的多次拷贝。
+ * 记录每个操作的起始偏移，重试时可按原字节复制部分操作到新的请求体。
+ * 非线程安全，同一时刻只能由一个线程填充或发送。
+ */
+public final class NdjsonBulkBody {
+
+    private static final SerializedString LINE_SEPARATOR = new SerializedString("\n");
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", "UTF-8");
+
+    /**
+     * 将一个文档对象写入生成器（需自行写出起止大括号）
+     */
+    @FunctionalInterface
+    public interface DocumentWriter {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    private final JsonFactory jsonFactory;
+    private final Buffer out;
+    private final List<String> ids = new ArrayList<>();
+    private int[] offsets = new int[256];
+    private JsonGenerator generator;
+    private boolean terminated;
+
+    public NdjsonBulkBody(JsonFactory jsonFactory, int initialCapacity) {
+        this.jsonFactory = jsonFactory;
+        this.out = new Buffer(Math.max(1024, initialCapacity));
+    }
+
+    /**
+     * 追加一条 index 操作
+     */
+    public void addIndex(String index, String id, DocumentWriter document) {
+        try {
+            JsonGenerator g = generator();
+            g.flush();
+            markOffset();
+            g.writeStartObject();
+            g.writeObjectFieldStart("index");
+            g.writeStringField("_index", index);
+            g.writeStringField("_id", id);
+            g.writeEndObject();
+            g.writeEndObject();
+            document.writeTo(g);
+            ids.add(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入bulk请求体失败: id=" + id, e);
+        }
+    }
+
+    /**
+     * 追加一条 delete 操作（只有 action 行）
+     */
+    public void addDelete(String index, String id) {
+        try {
+            JsonGenerator g = generator();
+            g.flush();
+            markOffset();
+            g.writeStartObject();
+            g.writeObjectFieldStart("delete");
+            g.writeStringField("_index", index);
+            g.writeStringField("_id", id);
+            g.writeEndObject();
+            g.writeEndObject();
+            ids.add(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入bulk请求体失败: id=" + id, e);
+        }
+    }
+
+    /**
+     * 按原字节把 source 的第 position 个操作（action行，index 操作还有文档行）追加到本请求体，
+     * 用于只重发bulk中失败的部分；只能用于尚未通过生成器写入的请求体
+     */
+    public void copyAction(NdjsonBulkBody source, int position) {
+        if (generator != null || terminated) {
+            throw new IllegalStateException("只能向空的或仅含复制操作的请求体追加");
+        }
+        source.flushGenerator();
+        byte[] data = source.out.array();
+        int start = source.offsets[position];
+        int end = position + 1 < source.actionCount() ? source.offsets[position + 1] : source.out.size();
+        // 去掉首尾的换行分隔符，统一按 "action\n[doc\n]" 写入
+        while (start < end && data[start] == '\n') {
+            start++;
+        }
+        while (end > start && data[end - 1] == '\n') {
+            end--;
+        }
+        markOffset();
+        out.write(data, start, end - start);
+        out.write('\n');
+        ids.add(source.id(position));
+    }
+
+    public int actionCount() {
+        return ids.size();
+    }
+
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    /**
+     * 第 position 个操作的文档ID（与bulk响应中的 items 顺序一致）
+     */
+    public String id(int position) {
+        return ids.get(position);
+    }
+
+    public long sizeInBytes() {
+        flushGenerator();
+        return out.size();
+    }
+
+    /**
+     * 当前缓冲区已分配的容量，用于决定是否归还对象池
+     */
+    public int capacity() {
+        return out.capacity();
+    }
+
+    /**
+     * 以缓冲区原数组构造请求实体（补齐最后的换行，不复制数据）；发送完成前不能重置
+     */
+    public HttpEntity toEntity() {
+        flushGenerator();
+        if (!terminated && out.size() > 0) {
+            if (out.array()[out.size() - 1] != '\n') {
+                out.write('\n');
+            }
+            terminated = true;
+        }
+        return new NByteArrayEntity(out.array(), 0, out.size(), NDJSON);
+    }
+
+    /**
+     * 清空内容以便复用，保留已分配的缓冲区
+     */
+    public void reset() {
+        if (generator != null) {
+            try {
+                generator.close();
+            } catch (IOException ignored) {
+                // 写入内存缓冲区不会失败
+            }
+            generator = null;
+        }
+        out.reset();
+        ids.clear();
+        terminated = false;
+    }
+
+    private void markOffset() {
+        int count = ids.size();
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count] = out.size();
+    }
+
+    private JsonGenerator generator() throws IOException {
+        if (terminated) {
+            throw new IllegalStateException("bulk请求体已封口，需reset后才能继续写入");
+        }
+        if (generator == null) {
+            generator = jsonFactory.createGenerator(out);
+            // 顶层值之间以换行分隔，即 NDJSON 格式
+            generator.setRootValueSeparator(LINE_SEPARATOR);
+        }
+        return generator;
+    }
+
+    private void flushGenerator() {
+        if (generator != null) {
+            try {
+                generator.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("写入bulk请求体失败", e);
+            }
+        }
+    }
+
+    /**
+     * 暴露内部数组的字节缓冲区，避免 toByteArray 复制
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        private Buffer(int size) {
+            super(size);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.esadmin.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 记录指纹文件：按ID升序存放 (ID, 64位指纹)，ID 存与前一个的差（无符号变长编码），指纹固定 8 字节。
+ * 连续自增ID每条约 9 字节，千万行约 90MB 磁盘、读写都是顺序流，内存占用与行数无关。
+ * <p>
+ * 文件头为魔数和版本号；写入方负责先写临时文件、完成后原子替换，因此读到的文件总是完整的。
+ */
+public final class RecordHashFile {
+
+    private static final int MAGIC = 0x52484631; // "RHF1"
+
+    private RecordHashFile() {
+    }
+
+    public static Writer create(Path file) throws IOException {
+        return new Writer(file);
+    }
+
+    public static Reader open(Path file) throws IOException {
+        return new Reader(file);
+    }
+
+    /**
+     * 顺序写入，ID 必须严格递增
+     */
+    public static final class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private long previous = Long.MIN_VALUE;
+        private long count;
+
+        private Writer(Path file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+            out.writeInt(MAGIC);
+        }
+
+        public void append(long id, long hash) throws IOException {
+            if (count > 0 && id <= previous) {
+                throw new IllegalArgumentException("必须按ID升序写入: " + id + " <= " + previous);
+            }
+            // 首条与 Long.MIN_VALUE 的差按无符号处理，负数ID同样适用
+            writeUnsignedVarLong(id - previous);
+            out.writeLong(hash);
+            previous = id;
+            count++;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void writeUnsignedVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    /**
+     * 前向读取游标：查询的ID必须非递减，与按ID排序的数据库扫描归并
+     */
+    public static final class Reader implements AutoCloseable {
+        private final DataInputStream in;
+        private long currentId = Long.MIN_VALUE;
+        private long currentHash;
+        private boolean positioned;
+        private boolean exhausted;
+
+        private Reader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("不是记录指纹文件: " + file);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * 定位到 id，存在时返回 true，此时 {@link #hash()} 为其指纹
+         */
+        public boolean seek(long id) throws IOException {
+            while (!exhausted && (!positioned || currentId < id)) {
+                advance();
+            }
+            return positioned && !exhausted && currentId == id;
+        }
+
+        public long hash() {
+            return currentHash;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void advance() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                exhausted = true;
+                return;
+            }
+            long delta = first & 0x7F;
+            int shift = 7;
+            int b = first;
+            while ((b & 0x80) != 0) {
+                b = in.readUnsignedByte();
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            }
+            try {
+                currentHash = in.readLong();
+            } catch (EOFException e) {
+                throw new IOException("记录指纹文件被截断", e);
+            }
+            currentId += delta;
+            positioned = true;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.esadmin.util;
+
+import java.util.Arrays;
+
+/**
+ * 只追加的有序 long 集合：按升序添加，每 128 个值一块，块首存原值，块内存与前一个值的差（无符号变长编码）。
+ * 连续自增ID每个约 1 字节，稀疏的 64 位ID约 5~6 字节，远小于 HashSet&lt;Long&gt; 每项 50 字节以上的开销。
+ * <p>
+ * 支持二分查找的随机查询，也支持按升序查询的前向游标（与按ID排序的数据库扫描做归并时使用）。
+ * 非线程安全；构建完成后只读时可被多个线程各自创建游标并发读取。
+ */
+public final class SortedLongSet {
+
+    private static final int BLOCK_SIZE = 128;
+
+    private long[] blockFirst = new long[16];
+    private int[] blockOffset = new int[16];
+    private byte[] data = new byte[1024];
+    private int dataLength;
+    private int blockCount;
+    private int lastBlockSize;
+    private long size;
+    private long last;
+
+    /**
+     * 添加一个值，必须不小于上一个值（相等的重复值忽略）
+     */
+    public void add(long value) {
+        if (size > 0) {
+            if (value == last) {
+                return;
+            }
+            if (value < last) {
+                throw new IllegalArgumentException("必须按升序添加: " + value + " < " + last);
+            }
+        }
+
+        if (size == 0 || lastBlockSize == BLOCK_SIZE) {
+            if (blockCount == blockFirst.length) {
+                blockFirst = Arrays.copyOf(blockFirst, blockCount * 2);
+                blockOffset = Arrays.copyOf(blockOffset, blockCount * 2);
+            }
+            blockFirst[blockCount] = value;
+            blockOffset[blockCount] = dataLength;
+            blockCount++;
+            lastBlockSize = 1;
+        } else {
+            // value > last，差值按无符号处理，跨越正负范围时也不会溢出
+            writeUnsignedVarLong(value - last);
+            lastBlockSize++;
+        }
+        last = value;
+        size++;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 随机查询：二分定位所在块后在块内顺序解码
+     */
+    public boolean contains(long value) {
+        if (size == 0 || value < blockFirst[0] || value > last) {
+            return false;
+        }
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blockFirst[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Cursor cursor = new Cursor();
+        cursor.seekBlock(low);
+        return cursor.contains(value);
+    }
+
+    /**
+     * 前向游标：查询值必须非递减，整体扫描为线性时间
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 估算占用的堆内存字节数
+     */
+    public long memoryBytes() {
+        return (long) blockFirst.length * Long.BYTES + (long) blockOffset.length * Integer.BYTES + data.length;
+    }
+
+    private void writeUnsignedVarLong(long value) {
+        ensureCapacity(dataLength + 10);
+        while ((value & ~0x7FL) != 0) {
+            data[dataLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[dataLength++] = (byte) value;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.max(required, data.length + (data.length >> 1)));
+        }
+    }
+
+    public final class Cursor {
+        private int block = -1;
+        private int remainingInBlock;
+        private int position;
+        private long current;
+        private boolean exhausted = size == 0;
+
+        /**
+         * 集合中是否包含 value；调用之间 value 不能减小
+         */
+        public boolean contains(long value) {
+            if (exhausted) {
+                return false;
+            }
+            if (block < 0) {
+                seekBlock(0);
+            }
+            while (current < value) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return current == value;
+        }
+
+        private void seekBlock(int index) {
+            block = index;
+            position = blockOffset[index];
+            current = blockFirst[index];
+            remainingInBlock = (index == blockCount - 1 ? lastBlockSize : BLOCK_SIZE) - 1;
+        }
+
+        private boolean next() {
+            if (remainingInBlock > 0) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                current += delta;
+                remainingInBlock--;
+                return true;
+            }
+            if (block + 1 < blockCount) {
+                seekBlock(block + 1);
+                return true;
+            }
+            exhausted = true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.esadmin.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 三段式同步流水线：读取线程 -> 并行转换阶段 -> 发送阶段
+ * 转换和发送不占用专属线程，而是作为任务提交到所有流水线共用的有界线程池：
+ * 有待处理项时才提交排空任务，每条流水线同时至多 transformThreads 个转换任务和 1 个发送任务。
+ * 在途数据项（已提交、尚未发送完成）不超过 queueCapacity + transformThreads，超出时读取线程阻塞（反压），
+ * 整体吞吐由最慢的阶段决定，而不是三个阶段耗时之和。
+ */
+public class SyncPipeline<I, O> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SyncPipeline.class);
+
+    private final String name;
+    private final Executor executor;
+    private final Function<I, O> transformer;
+    private final ToLongFunction<O> sink;
+    private final int transformThreads;
+    private final Semaphore slots;
+    private final Queue<I> inputQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<O> outputQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeTransformers = new AtomicInteger();
+    private final AtomicBoolean sinkActive = new AtomicBoolean();
+    /** 已提交、尚未发送完成（或被丢弃）的数据项数，由 this 的监视器通知 */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean finished;
+
+    public SyncPipeline(String name, Executor executor, int transformThreads, int queueCapacity,
+                        Function<I, O> transformer, ToLongFunction<O> sink) {
+        this.name = name;
+        this.executor = executor;
+        this.transformThreads = Math.max(1, transformThreads);
+        this.slots = new Semaphore(Math.max(1, queueCapacity) + this.transformThreads);
+        this.transformer = transformer;
+        this.sink = sink;
+    }
+
+    /**
+     * 提交一个输入项，在途数据项已满时阻塞
+     */
+    public void submit(I item) {
+        if (finished) {
+            throw new IllegalStateException("流水线已结束: " + name);
+        }
+        try {
+            // 失败时排队的数据项被丢弃、名额归还，阻塞的读取线程随即醒来并抛出异常
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("同步流水线被中断: " + name, e);
+        }
+        rethrowFailure();
+        pending.incrementAndGet();
+        inputQueue.add(item);
+        scheduleTransformer();
+    }
+
+    /**
+     * 已被发送阶段确认的数量（由sink返回值累加）
+     */
+    public long completedCount() {
+        return completed.get();
+    }
+
+    /**
+     * 关闭输入并等待所有阶段排空，返回累计完成数量
+     */
+    public long finish() {
+        finished = true;
+        synchronized (this) {
+            while (pending.get() > 0 && failure.get() == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    abort();
+                    throw new IllegalStateException("等待同步流水线结束被中断: " + name, e);
+                }
+            }
+        }
+        rethrowFailure();
+        return completed.get();
+    }
+
+    /**
+     * 异常退出时调用：丢弃未处理的数据，正在执行的转换或发送任务结束后不再继续
+     */
+    public void abort() {
+        finished = true;
+        failure.compareAndSet(null, new IllegalStateException("同步流水线已中止: " + name));
+        discardQueued();
+    }
+
+    @Override
+    public void close() {
+        if (pending.get() > 0) {
+            abort();
+        }
+    }
+
+    private void scheduleTransformer() {
+        while (true) {
+            int active = activeTransformers.get();
+            if (active >= transformThreads || inputQueue.isEmpty()) {
+                return;
+            }
+            if (activeTransformers.compareAndSet(active, active + 1)) {
+                execute(this::runTransformer, activeTransformers::decrementAndGet);
+                return;
+            }
+        }
+    }
+
+    private void scheduleSink() {
+        if (!outputQueue.isEmpty() && sinkActive.compareAndSet(false, true)) {
+            execute(this::runSink, () -> sinkActive.set(false));
+        }
+    }
+
+    private void execute(Runnable task, Runnable onRejected) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            onRejected.run();
+            fail(e);
+        }
+    }
+
+    private void runTransformer() {
+        try {
+            I item;
+            while (failure.get() == null && (item = inputQueue.poll()) != null) {
+                O output = transformer.apply(item);
+                if (output != null) {
+                    outputQueue.add(output);
+                    scheduleSink();
+                } else {
+                    done();
+                }
+            }
+        } catch (Throwable t) {
+            done();
+            fail(t);
+        } finally {
+            activeTransformers.decrementAndGet();
+        }
+        // 退出前可能有新提交的输入项
+        scheduleTransformer();
+    }
+
+    private void runSink() {
+        try {
+            O item;
+            while (failure.get() == null && (item = outputQueue.poll()) != null) {
+                try {
+                    completed.addAndGet(sink.applyAsLong(item));
+                } finally {
+                    done();
+                }
+            }
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            sinkActive.set(false);
+        }
+        scheduleSink();
+    }
+
+    /**
+     * 一个数据项处理结束，归还名额
+     */
+    private void done() {
+        slots.release();
+        if (pending.decrementAndGet() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void fail(Throwable t) {
+        if (failure.compareAndSet(null, t)) {
+            log.error("同步流水线 {} 执行失败", name, t);
+        }
+        finished = true;
+        discardQueued();
+    }
+
+    private void discardQueued() {
+        while (inputQueue.poll() != null) {
+            done();
+        }
+        while (outputQueue.poll() != null) {
+            done();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure.get();
+        if (t == null) {
+            return;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException("同步流水线执行失败: " + name, t);
+    }
+}
@@ -0,0 +1,125 @@
+package com.esadmin.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AckWatermarkTest {
+
+    @Test
+    void outOfOrderCompletionWaitsForGaps() {
+        AckWatermark watermark = new AckWatermark();
+
+        watermark.complete(2);
+        watermark.complete(3);
+        assertEquals(0, watermark.acknowledged());
+
+        watermark.complete(1);
+        assertEquals(3, watermark.acknowledged());
+
+        watermark.complete(5);
+        assertEquals(3, watermark.acknowledged());
+        watermark.complete(4);
+        assertEquals(5, watermark.acknowledged());
+    }
+
+    @Test
+    void checkpointRunsOnlyAfterItsDispatchIsAcknowledged() {
+        AckWatermark watermark = new AckWatermark();
+        List<String> saved = new ArrayList<>();
+
+        watermark.checkpoint(2, () -> saved.add("cursor-2"));
+        watermark.complete(2);
+        watermark.commitCheckpoints();
+        assertTrue(saved.isEmpty());
+
+        watermark.complete(1);
+        watermark.commitCheckpoints();
+        assertEquals(List.of("cursor-2"), saved);
+
+        // 已执行的检查点不会重复执行
+        watermark.commitCheckpoints();
+        assertEquals(List.of("cursor-2"), saved);
+    }
+
+    @Test
+    void onlyTheLatestSatisfiedCheckpointRuns() {
+        AckWatermark watermark = new AckWatermark();
+        List<String> saved = new ArrayList<>();
+
+        watermark.checkpoint(1, () -> saved.add("cursor-1"));
+        watermark.checkpoint(2, () -> saved.add("cursor-2"));
+        watermark.checkpoint(3, () -> saved.add("cursor-3"));
+        watermark.checkpoint(4, () -> saved.add("cursor-4"));
+
+        watermark.complete(3);
+        watermark.complete(1);
+        watermark.complete(2);
+        watermark.commitCheckpoints();
+        assertEquals(List.of("cursor-3"), saved);
+
+        watermark.complete(4);
+        watermark.commitCheckpoints();
+        assertEquals(List.of("cursor-3", "cursor-4"), saved);
+    }
+
+    @Test
+    void checkpointWithNothingOutstandingRunsImmediately() {
+        AckWatermark watermark = new AckWatermark();
+        List<String> saved = new ArrayList<>();
+
+        watermark.checkpoint(0, () -> saved.add("start"));
+        assertEquals(List.of("start"), saved);
+
+        watermark.complete(1);
+        watermark.checkpoint(1, () -> saved.add("cursor-1"));
+        assertEquals(List.of("start", "cursor-1"), saved);
+    }
+
+    @Test
+    void failedDispatchHoldsBackLaterCheckpoints() {
+        AckWatermark watermark = new AckWatermark();
+        List<String> saved = new ArrayList<>();
+
+        watermark.checkpoint(1, () -> saved.add("cursor-1"));
+        watermark.checkpoint(3, () -> saved.add("cursor-3"));
+        watermark.complete(1);
+        // 序号 2 整体失败，永远不会确认
+        watermark.complete(3);
+        watermark.complete(4);
+        watermark.commitCheckpoints();
+
+        assertEquals(1, watermark.acknowledged());
+        assertEquals(List.of("cursor-1"), saved);
+    }
+
+    @Test
+    void concurrentCompletionReachesTheHighestSequence() throws InterruptedException {
+        AckWatermark watermark = new AckWatermark();
+        List<Long> sequences = new ArrayList<>();
+        for (long seq = 1; seq <= 10_000; seq++) {
+            sequences.add(seq);
+        }
+        Collections.shuffle(sequences);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (long seq : sequences) {
+                executor.execute(() -> watermark.complete(seq));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(10_000, watermark.acknowledged());
+    }
+}
@@ -0,0 +1,280 @@
+package com.esadmin.service;
+
+import com.esadmin.util.CompactRow;
+import com.esadmin.util.NdjsonBulkBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 文档构建基准：旧的逐单元格判断路径（{@link LegacyDocumentBuilder}，仅作对照）vs 预编译投影计划
+ * vs 投影计划直接写NDJSON。
+ * 运行方式：mvn test-compile 后执行本类 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionPlanBenchmark {
+
+    @Param({"20", "300"})
+    private int columnCount;
+
+    private SyncService syncService;
+    private Map<String, Object> mapRecord;
+    private CompactRow compactRow;
+    private ProjectionPlan plan;
+    private Map<String, String> fieldLabels;
+    private Map<String, String> memberCache;
+    private Map<String, Integer> primaryFieldsMap;
+    private ObjectMapper objectMapper;
+    private NdjsonBulkBody bulkBody;
+
+    @Setup
+    public void setUp() {
+        syncService = new SyncService(null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+
+        String[] names = new String[columnCount + 4];
+        int[] types = new int[names.length];
+        Object[] values = new Object[names.length];
+        names[0] = "ID";
+        types[0] = Types.BIGINT;
+        values[0] = 1234567890123L;
+        names[1] = "start_member_id";
+        types[1] = Types.BIGINT;
+        values[1] = 42L;
+        names[2] = "modify_date";
+        types[2] = Types.TIMESTAMP;
+        values[2] = Timestamp.valueOf("2025-09-20 16:33:47");
+        names[3] = "state";
+        types[3] = Types.INTEGER;
+        values[3] = 1;
+
+        fieldLabels = new HashMap<>();
+        primaryFieldsMap = new HashMap<>();
+        memberCache = new HashMap<>();
+        memberCache.put("42", "张三");
+
+        for (int i = 0; i < columnCount; i++) {
+            int column = i + 4;
+            String name = String.format("field%04d", i + 1);
+            names[column] = name;
+            fieldLabels.put(name, "字段" + (i + 1));
+            switch (i % 4) {
+                case 0:
+                    types[column] = Types.VARCHAR;
+                    values[column] = "普通文本内容 " + i;
+                    break;
+                case 1:
+                    types[column] = Types.DECIMAL;
+                    values[column] = new BigDecimal("1234.56");
+                    break;
+                case 2:
+                    types[column] = Types.VARCHAR;
+                    values[column] = "2025-09-20 16:33:47.0";
+                    break;
+                default:
+                    types[column] = Types.TIMESTAMP;
+                    values[column] = Timestamp.valueOf("2025-09-20 15:58:00");
+                    break;
+            }
+            if (i < 3) {
+                primaryFieldsMap.put(name, i);
+            }
+        }
+
+        LinkedCaseInsensitiveMap<Object> legacyRecord = new LinkedCaseInsensitiveMap<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            legacyRecord.put(names[i], values[i]);
+        }
+        mapRecord = legacyRecord;
+
+        CompactRow.Columns columns = new CompactRow.Columns(names, types);
+        compactRow = new CompactRow(columns, values);
+        plan = syncService.compileProjectionPlan(columns, fieldLabels, primaryFieldsMap);
+
+        objectMapper = new ObjectMapper();
+        bulkBody = new NdjsonBulkBody(objectMapper.getFactory(), 1 << 20);
+    }
+
+    @Benchmark
+    public Map<String, Object> legacyMapRecord() {
+        return LegacyDocumentBuilder.build("1", "formmain_0001", mapRecord, fieldLabels, memberCache, primaryFieldsMap);
+    }
+
+    @Benchmark
+    public Map<String, Object> legacyCompactRow() {
+        return LegacyDocumentBuilder.build("1", "formmain_0001", compactRow, fieldLabels, memberCache, primaryFieldsMap);
+    }
+
+    @Benchmark
+    public Map<String, Object> projectionPlan() {
+        return syncService.buildDocument("1", "formmain_0001", compactRow, plan, memberCache, false);
+    }
+
+    /**
+     * 旧路径的序列化部分：构建 Map 后再整体序列化
+     */
+    @Benchmark
+    public byte[] projectionPlanMapSerialized() throws Exception {
+        return objectMapper.writeValueAsBytes(
+                syncService.buildDocument("1", "formmain_0001", compactRow, plan, memberCache, false));
+    }
+
+    @Benchmark
+    public long projectionPlanNdjson() {
+        if (bulkBody.actionCount() >= 200) {
+            bulkBody.reset();
+        }
+        bulkBody.addIndex("form_1", "1_1234567890123", generator ->
+                syncService.writeDocument(generator, "1", "formmain_0001", compactRow, plan, memberCache, false));
+        return bulkBody.actionCount();
+    }
+
+    /**
+     * 投影计划之前的文档构建方式：每条记录逐列判断隐藏字段、系统字段、显示名和值格式
+     */
+    private static final class LegacyDocumentBuilder {
+
+        private static final Pattern DATE_TIME_WITH_MILLIS = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d+");
+        private static final Pattern DATE_TIME = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}");
+        private static final Pattern DATE_ONLY = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+        private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+        private LegacyDocumentBuilder() {
+        }
+
+        static Map<String, Object> build(String formId, String tableName, Map<String, Object> record,
+                                         Map<String, String> fieldLabels, Map<String, String> memberCache,
+                                         Map<String, Integer> primaryFieldsMap) {
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("form_id", formId);
+            doc.put("table_name", tableName);
+            doc.put("record_id", Long.valueOf(String.valueOf(record.get("ID"))));
+            doc.put("sync_time", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            for (Map.Entry<String, Object> entry : record.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                if (value == null || shouldSkipField(key)) {
+                    continue;
+                }
+                String displayName = getFieldDisplayName(key, fieldLabels);
+                Object formattedValue = formatFieldValue(key, value, memberCache);
+                if (formattedValue == null) {
+                    continue;
+                }
+                if (isSystemField(key)) {
+                    doc.put(key, formattedValue);
+                    doc.put(displayName, formattedValue);
+                } else {
+                    doc.put(displayName, formattedValue);
+                    Integer priority = primaryFieldsMap.get(key);
+                    if (priority != null) {
+                        doc.put("_primary_field_" + priority, displayName);
+                        doc.put("_primary_value_" + priority, formattedValue);
+                    }
+                }
+            }
+            return doc;
+        }
+
+        private static Object formatFieldValue(String fieldName, Object value, Map<String, String> memberCache) {
+            if (fieldName.endsWith("member_id")) {
+                String memberName = memberCache.get(String.valueOf(value));
+                return memberName != null ? memberName : String.valueOf(value);
+            }
+            if (value instanceof Timestamp) {
+                return ((Timestamp) value).toLocalDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            }
+            if (value instanceof Date) {
+                return new Timestamp(((Date) value).getTime()).toLocalDateTime()
+                        .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            }
+            if (value instanceof String) {
+                String valueStr = value.toString().trim();
+                try {
+                    if (DATE_TIME_WITH_MILLIS.matcher(valueStr).matches()) {
+                        return LocalDateTime.parse(valueStr.replaceAll("\\.\\d+$", ""), DATE_TIME_FORMATTER)
+                                .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+                    } else if (DATE_TIME.matcher(valueStr).matches()) {
+                        return LocalDateTime.parse(valueStr, DATE_TIME_FORMATTER)
+                                .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+                    } else if (fieldName.contains("date") && DATE_ONLY.matcher(valueStr).matches()) {
+                        return LocalDate.parse(valueStr, DATE_FORMATTER).atStartOfDay()
+                                .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+                    }
+                } catch (Exception e) {
+                    return valueStr;
+                }
+            }
+            return String.valueOf(value);
+        }
+
+        private static String getFieldDisplayName(String fieldName, Map<String, String> fieldLabels) {
+            String label = fieldLabels.get(fieldName);
+            if (label != null) {
+                return label;
+            }
+            Map<String, String> systemFields = Map.of(
+                    "start_date", "创建时间",
+                    "modify_date", "修改时间",
+                    "start_member_id", "创建人",
+                    "modify_member_id", "修改人",
+                    "approve_member_id", "审核人",
+                    "ratify_member_id", "核定人");
+            return systemFields.getOrDefault(fieldName, fieldName);
+        }
+
+        private static boolean shouldSkipField(String fieldName) {
+            Set<String> hiddenFields = Set.of(
+                    "ID", "id", "form_id", "table_name", "record_id", "sync_time",
+                    "state", "sort", "ratifyflag", "finishedflag", "approve_date", "ratify_date",
+                    "start_date", "modify_date", "start_member_id", "modify_member_id",
+                    "approve_member_id", "ratify_member_id");
+            return hiddenFields.contains(fieldName);
+        }
+
+        private static boolean isSystemField(String fieldName) {
+            Set<String> systemFields = Set.of(
+                    "start_date", "modify_date", "start_member_id", "modify_member_id",
+                    "approve_member_id", "ratify_member_id");
+            return systemFields.contains(fieldName);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ProjectionPlanBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
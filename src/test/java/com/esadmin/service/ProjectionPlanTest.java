@@ -0,0 +1,161 @@
+package com.esadmin.service;
+
+import com.esadmin.util.CompactRow;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProjectionPlanTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SyncService syncService;
+    private Map<String, String> fieldLabels;
+    private Map<String, Integer> primaryFieldsMap;
+    private Map<String, String> memberCache;
+
+    @BeforeEach
+    void setUp() {
+        syncService = new SyncService(null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        fieldLabels = new HashMap<>();
+        fieldLabels.put("field0001", "文本");
+        fieldLabels.put("field0002", "金额");
+        fieldLabels.put("field0003", "提交时间");
+        fieldLabels.put("field0004", "毫秒时间");
+        fieldLabels.put("field0005", "日期");
+        fieldLabels.put("field0006", "通用日期");
+        fieldLabels.put("field0007", "时间文本");
+        fieldLabels.put("field0008", "毫秒时间文本");
+        fieldLabels.put("apply_date", "申请日期");
+        fieldLabels.put("field0009", "非日期列的日期文本");
+        fieldLabels.put("handler_member_id", "经办人");
+        fieldLabels.put("field0010", "数量");
+        primaryFieldsMap = new HashMap<>();
+        primaryFieldsMap.put("field0001", 0);
+        primaryFieldsMap.put("field0003", 1);
+        primaryFieldsMap.put("handler_member_id", 2);
+        memberCache = new HashMap<>();
+        memberCache.put("42", "张三");
+    }
+
+    @Test
+    void textNumbersMembersAndPrimaryFields() throws Exception {
+        CompactRow row = row(new Object[][]{
+                {"ID", Types.BIGINT, 1234567890123L},
+                {"state", Types.INTEGER, 1},
+                {"modify_date", Types.TIMESTAMP, Timestamp.valueOf("2025-09-20 16:33:47")},
+                {"start_member_id", Types.BIGINT, 42L},
+                {"field0001", Types.VARCHAR, "普通文本"},
+                {"field0002", Types.DECIMAL, new BigDecimal("1234.56")},
+                {"field0007", Types.VARCHAR, "2025-09-20 16:33:47"},
+                {"field0008", Types.VARCHAR, " 2025-09-20 16:33:47.0 "},
+                {"apply_date", Types.VARCHAR, "2025-09-20"},
+                {"field0009", Types.VARCHAR, "2025-09-20"},
+                {"handler_member_id", Types.BIGINT, 42L},
+                {"field0010", Types.INTEGER, 7},
+                {"field0011", Types.VARCHAR, null},
+        });
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("文本", "普通文本");
+        expected.put("_primary_field_0", "文本");
+        expected.put("_primary_value_0", "普通文本");
+        expected.put("金额", "1234.56");
+        expected.put("时间文本", "2025-09-20T16:33:47");
+        expected.put("毫秒时间文本", "2025-09-20T16:33:47");
+        expected.put("申请日期", "2025-09-20T00:00:00");
+        expected.put("非日期列的日期文本", "2025-09-20");
+        expected.put("经办人", "张三");
+        expected.put("_primary_field_2", "经办人");
+        expected.put("_primary_value_2", "张三");
+        expected.put("数量", "7");
+
+        assertProjection(row, expected);
+    }
+
+    @Test
+    void timestampAndDateColumnsAreIsoFormatted() throws Exception {
+        CompactRow row = row(new Object[][]{
+                {"ID", Types.BIGINT, 1L},
+                {"field0003", Types.TIMESTAMP, Timestamp.valueOf("2025-09-20 15:58:00")},
+                {"field0004", Types.TIMESTAMP, Timestamp.valueOf("2025-09-20 15:58:00.123")},
+                {"field0005", Types.DATE, java.sql.Date.valueOf("2025-09-20")},
+                {"field0006", Types.OTHER, new Date(Timestamp.valueOf("2025-09-20 08:00:00").getTime())},
+        });
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("提交时间", "2025-09-20T15:58:00");
+        expected.put("_primary_field_1", "提交时间");
+        expected.put("_primary_value_1", "2025-09-20T15:58:00");
+        expected.put("毫秒时间", "2025-09-20T15:58:00.123");
+        expected.put("日期", "2025-09-20T00:00:00");
+        expected.put("通用日期", "2025-09-20T08:00:00");
+
+        assertProjection(row, expected);
+    }
+
+    @Test
+    void unknownMembersAndUnlabelledColumnsKeepRawValues() throws Exception {
+        CompactRow row = row(new Object[][]{
+                {"ID", Types.BIGINT, 2L},
+                {"handler_member_id", Types.BIGINT, 99L},
+                {"other_member_id", Types.VARCHAR, "42"},
+                {"field0012", Types.NUMERIC, 3.5d},
+                {"field0013", Types.VARCHAR, "2025-13-45 99:99:99"},
+        });
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("经办人", "99");
+        expected.put("_primary_field_2", "经办人");
+        expected.put("_primary_value_2", "99");
+        expected.put("other_member_id", "张三");
+        expected.put("field0012", "3.5");
+        expected.put("field0013", "2025-13-45 99:99:99");
+
+        assertProjection(row, expected);
+    }
+
+    /**
+     * 经 compileProjectionPlan 编译，project 构建的 Map 与 write 流式写出的JSON都应等于 expected
+     */
+    private void assertProjection(CompactRow row, Map<String, Object> expected) throws Exception {
+        ProjectionPlan plan = syncService.compileProjectionPlan(row.columns(), fieldLabels, primaryFieldsMap);
+        assertTrue(plan.isStreamable());
+
+        assertEquals(expected, plan.project(row, memberCache, new HashMap<>()));
+
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            plan.write(row, memberCache, generator);
+            generator.writeEndObject();
+        }
+        Map<String, Object> written = objectMapper.readValue(json.toString(), new TypeReference<Map<String, Object>>() {
+        });
+        assertEquals(expected, written);
+    }
+
+    private static CompactRow row(Object[][] cells) {
+        String[] names = new String[cells.length];
+        int[] types = new int[cells.length];
+        Object[] values = new Object[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            names[i] = (String) cells[i][0];
+            types[i] = (Integer) cells[i][1];
+            values[i] = cells[i][2];
+        }
+        return new CompactRow(new CompactRow.Columns(names, types), values);
+    }
+}
@@ -0,0 +1,133 @@
+package com.esadmin.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconcileServiceTest {
+
+    @Test
+    void identicalIdsHaveNoOrphans() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        long handled = merge(ids(1, 2, 3, 5, 8), ids(1, 2, 3, 5, 8), 10, batches);
+
+        assertEquals(0, handled);
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void interleavedGapsAreOrphans() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        // 数据库中多出的ID（2、6、9）不影响结果
+        long handled = merge(ids(1, 3, 4, 7, 10, 11), ids(1, 2, 4, 6, 9, 10), 10, batches);
+
+        assertEquals(3, handled);
+        assertEquals(List.of(List.of(3L, 7L, 11L)), batches);
+    }
+
+    @Test
+    void idsPastTheEndOfTheTableAreOrphans() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        merge(ids(1, 2, 100, 200), ids(1, 2), 10, batches);
+
+        assertEquals(List.of(List.of(100L, 200L)), batches);
+    }
+
+    @Test
+    void emptyTableOrphansEverything() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        merge(ids(4, 5, 6), ids(), 10, batches);
+
+        assertEquals(List.of(List.of(4L, 5L, 6L)), batches);
+    }
+
+    @Test
+    void emptyIndexNeverCallsHandler() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        long handled = merge(ids(), ids(1, 2, 3), 10, batches);
+
+        assertEquals(0, handled);
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void orphansAreHandedOverInFullBatches() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        long handled = merge(ids(1, 2, 3, 4, 5, 6, 7), ids(4), 3, batches);
+
+        assertEquals(6, handled);
+        assertEquals(List.of(List.of(1L, 2L, 3L), List.of(5L, 6L, 7L)), batches);
+    }
+
+    @Test
+    void lastPartialBatchIsFlushed() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        merge(ids(1, 2, 3, 4, 5), ids(), 2, batches);
+
+        assertEquals(List.of(List.of(1L, 2L), List.of(3L, 4L), List.of(5L)), batches);
+    }
+
+    @Test
+    void negativeIdsMergeInSignedOrder() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+
+        merge(ids(-9, -5, -1, 0, 3), ids(-9, -2, 0, 3), 10, batches);
+
+        assertEquals(List.of(List.of(-5L, -1L)), batches);
+    }
+
+    @Test
+    void handlerResultIsSummed() throws Exception {
+        // 回表确认后只删除了其中一部分
+        long handled = ReconcileService.mergeOrphans(new ArrayCursor(ids(1, 2, 3, 4)), new ArrayCursor(ids()), 2,
+                candidates -> candidates.size() - 1);
+
+        assertEquals(2, handled);
+    }
+
+    private static long merge(long[] esIds, long[] dbIds, int batchSize, List<List<Long>> batches) throws Exception {
+        return ReconcileService.mergeOrphans(new ArrayCursor(esIds), new ArrayCursor(dbIds), batchSize, candidates -> {
+            batches.add(new ArrayList<>(candidates));
+            return candidates.size();
+        });
+    }
+
+    private static long[] ids(long... ids) {
+        return ids;
+    }
+
+    private static final class ArrayCursor implements ReconcileService.IdCursor {
+        private final long[] ids;
+        private int position;
+
+        private ArrayCursor(long[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < ids.length;
+        }
+
+        @Override
+        public long peek() {
+            return ids[position];
+        }
+
+        @Override
+        public long next() {
+            return ids[position++];
+        }
+    }
+}
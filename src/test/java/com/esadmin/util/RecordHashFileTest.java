@@ -0,0 +1,134 @@
+package com.esadmin.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordHashFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripWithSequentialSparseAndNegativeIds() throws IOException {
+        long[] ids = {Long.MIN_VALUE, -42L, -1L, 0L, 1L, 2L, 3L, 1000L, 1L << 40, Long.MAX_VALUE};
+        Path file = dir.resolve("hashes.bin");
+        try (RecordHashFile.Writer writer = RecordHashFile.create(file)) {
+            for (long id : ids) {
+                writer.append(id, id * 31 + 7);
+            }
+            assertEquals(ids.length, writer.count());
+        }
+
+        try (RecordHashFile.Reader reader = RecordHashFile.open(file)) {
+            for (long id : ids) {
+                assertTrue(reader.seek(id), "缺少 " + id);
+                assertEquals(id * 31 + 7, reader.hash());
+            }
+        }
+    }
+
+    @Test
+    void seekSkipsMissingIdsInOrder() throws IOException {
+        Path file = dir.resolve("hashes.bin");
+        try (RecordHashFile.Writer writer = RecordHashFile.create(file)) {
+            for (long id = 10; id <= 1000; id += 10) {
+                writer.append(id, id);
+            }
+        }
+
+        try (RecordHashFile.Reader reader = RecordHashFile.open(file)) {
+            assertFalse(reader.seek(5));
+            assertTrue(reader.seek(10));
+            assertFalse(reader.seek(15));
+            assertTrue(reader.seek(20));
+            assertEquals(20, reader.hash());
+            // 同一个ID可以重复查询
+            assertTrue(reader.seek(20));
+            assertTrue(reader.seek(1000));
+            assertFalse(reader.seek(1001));
+        }
+    }
+
+    @Test
+    void emptyFileHasNoRecords() throws IOException {
+        Path file = dir.resolve("hashes.bin");
+        try (RecordHashFile.Writer writer = RecordHashFile.create(file)) {
+            assertEquals(0, writer.count());
+        }
+
+        try (RecordHashFile.Reader reader = RecordHashFile.open(file)) {
+            assertFalse(reader.seek(0));
+        }
+    }
+
+    @Test
+    void truncatedHashIsReported() throws IOException {
+        Path file = writeSequential(3);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (RecordHashFile.Reader reader = RecordHashFile.open(file)) {
+            assertTrue(reader.seek(2));
+            IOException error = assertThrows(IOException.class, () -> reader.seek(3));
+            assertEquals("记录指纹文件被截断", error.getMessage());
+        }
+    }
+
+    @Test
+    void truncatedIdDeltaIsReported() throws IOException {
+        Path file = dir.resolve("hashes.bin");
+        try (RecordHashFile.Writer writer = RecordHashFile.create(file)) {
+            writer.append(1, 1);
+            // 差值需要多个字节
+            writer.append(1L << 40, 2);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        // 头 4 字节 + 首条（10 字节差值 + 8 字节指纹）+ 第二条差值的第一个字节
+        Files.write(file, Arrays.copyOf(bytes, 4 + 10 + 8 + 1));
+
+        try (RecordHashFile.Reader reader = RecordHashFile.open(file)) {
+            assertTrue(reader.seek(1));
+            assertThrows(IOException.class, () -> reader.seek(1L << 40));
+        }
+    }
+
+    @Test
+    void missingOrForeignHeaderIsRejected() throws IOException {
+        Path empty = dir.resolve("empty.bin");
+        Files.write(empty, new byte[0]);
+        assertThrows(IOException.class, () -> RecordHashFile.open(empty));
+
+        Path foreign = dir.resolve("foreign.bin");
+        Files.write(foreign, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> RecordHashFile.open(foreign));
+    }
+
+    @Test
+    void idsMustBeStrictlyAscending() throws IOException {
+        try (RecordHashFile.Writer writer = RecordHashFile.create(dir.resolve("hashes.bin"))) {
+            writer.append(5, 0);
+            assertThrows(IllegalArgumentException.class, () -> writer.append(5, 0));
+            assertThrows(IllegalArgumentException.class, () -> writer.append(4, 0));
+        }
+    }
+
+    private Path writeSequential(int count) throws IOException {
+        Path file = dir.resolve("hashes.bin");
+        try (RecordHashFile.Writer writer = RecordHashFile.create(file)) {
+            for (long id = 1; id <= count; id++) {
+                writer.append(id, id);
+            }
+        }
+        return file;
+    }
+}
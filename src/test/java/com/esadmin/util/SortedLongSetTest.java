@@ -0,0 +1,118 @@
+package com.esadmin.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SortedLongSetTest {
+
+    @Test
+    void emptySetContainsNothing() {
+        SortedLongSet set = new SortedLongSet();
+
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0L));
+        assertFalse(set.cursor().contains(0L));
+    }
+
+    @Test
+    void randomLookupAcrossBlockBoundaries() {
+        SortedLongSet set = new SortedLongSet();
+        // 3 个满块加 1 个只有一项的块，覆盖第 128、129 个值所在的块边界
+        for (long id = 1; id <= 385; id++) {
+            set.add(id * 3);
+        }
+
+        assertEquals(385, set.size());
+        for (long id = 1; id <= 385; id++) {
+            assertTrue(set.contains(id * 3), "缺少 " + id * 3);
+            assertFalse(set.contains(id * 3 + 1));
+        }
+        assertTrue(set.contains(384));
+        assertTrue(set.contains(387));
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(1158));
+    }
+
+    @Test
+    void cursorWalksAllBlocksInOrder() {
+        SortedLongSet set = new SortedLongSet();
+        for (long id = 0; id < 1000; id += 2) {
+            set.add(id);
+        }
+
+        SortedLongSet.Cursor cursor = set.cursor();
+        for (long id = 0; id < 1000; id++) {
+            assertEquals(id % 2 == 0, cursor.contains(id), "id=" + id);
+        }
+        assertFalse(cursor.contains(1000));
+    }
+
+    @Test
+    void wideGapsUseMultiByteVarints() {
+        SortedLongSet set = new SortedLongSet();
+        long[] values = {1L, 1L + 127, 1L + 127 + 128, 1L << 35, (1L << 35) + (1L << 56), Long.MAX_VALUE};
+        for (long value : values) {
+            set.add(value);
+        }
+
+        SortedLongSet.Cursor cursor = set.cursor();
+        for (long value : values) {
+            assertTrue(set.contains(value), "缺少 " + value);
+            assertTrue(cursor.contains(value), "游标缺少 " + value);
+        }
+        assertFalse(set.contains(129L));
+        assertFalse(set.contains(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    void negativeIdsAndFullRangeDeltas() {
+        SortedLongSet set = new SortedLongSet();
+        long[] values = {Long.MIN_VALUE, -1_000_000_000_000L, -5L, -1L, 0L, 7L, Long.MAX_VALUE};
+        for (long value : values) {
+            set.add(value);
+        }
+
+        for (long value : values) {
+            assertTrue(set.contains(value), "缺少 " + value);
+        }
+        assertFalse(set.contains(-2L));
+        assertFalse(set.contains(Long.MIN_VALUE + 1));
+
+        SortedLongSet.Cursor cursor = set.cursor();
+        assertTrue(cursor.contains(Long.MIN_VALUE));
+        assertFalse(cursor.contains(-6L));
+        assertTrue(cursor.contains(-5L));
+        assertTrue(cursor.contains(0L));
+        assertTrue(cursor.contains(Long.MAX_VALUE));
+    }
+
+    @Test
+    void negativeIdsAcrossBlockBoundary() {
+        SortedLongSet set = new SortedLongSet();
+        for (long id = -200; id < 100; id++) {
+            set.add(id);
+        }
+
+        SortedLongSet.Cursor cursor = set.cursor();
+        for (long id = -200; id < 100; id++) {
+            assertTrue(set.contains(id), "缺少 " + id);
+            assertTrue(cursor.contains(id), "游标缺少 " + id);
+        }
+        assertFalse(set.contains(-201));
+        assertFalse(set.contains(100));
+    }
+
+    @Test
+    void duplicatesAreIgnoredAndDescendingValuesRejected() {
+        SortedLongSet set = new SortedLongSet();
+        set.add(5L);
+        set.add(5L);
+
+        assertEquals(1, set.size());
+        assertThrows(IllegalArgumentException.class, () -> set.add(4L));
+    }
+}